@@ -0,0 +1,250 @@
+package com.viskan.quartz.elasticsearch;
+
+import static org.quartz.SimpleScheduleBuilder.simpleSchedule;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.quartz.Job;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.SchedulerRepository;
+import org.quartz.impl.StdSchedulerFactory;
+
+import com.viskan.quartz.elasticsearch.common.FakeElasticsearchServer;
+import com.viskan.quartz.elasticsearch.common.GsonSerializer;
+
+/**
+ * Starts several clustered schedulers in one JVM that race for the same triggers, and reports
+ * how the acquisition behaves under contention.
+ * <p>
+ * Runs against an in-process {@link FakeElasticsearchServer} unless a port is given. Configured
+ * through system properties:
+ * <pre>
+ * mvn -P benchmark test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.viskan.quartz.elasticsearch.ContentionHarness \
+ *     -Dnodes=4 -Dtriggers=500 -Dinterval=1000 -Dduration=30
+ * </pre>
+ * <table summary="Properties">
+ * <tr><td>nodes</td><td>The number of schedulers, defaults to 3.</td></tr>
+ * <tr><td>threads</td><td>The number of worker threads of each scheduler, defaults to 10.</td></tr>
+ * <tr><td>batchSize</td><td>The maximum number of triggers that a scheduler acquires at once, defaults to 1.</td></tr>
+ * <tr><td>triggers</td><td>The number of triggers to schedule, defaults to 100.</td></tr>
+ * <tr><td>interval</td><td>The repeat interval of the triggers in milliseconds, defaults to 1000.</td></tr>
+ * <tr><td>duration</td><td>The number of seconds to measure, defaults to 20.</td></tr>
+ * <tr><td>hostName, port</td><td>The elasticsearch node to run against, instead of the fake server.</td></tr>
+ * <tr><td>asyncTransport</td><td>Makes the requests over non-blocking connections instead of pooled ones.</td></tr>
+ * <tr><td>partitioned</td><td>Partitions the triggers among the schedulers instead of letting all of them compete.</td></tr>
+ * <tr><td>minLatency, maxLatency, errorRate, conflictRate</td><td>The faults injected by the fake server.</td></tr>
+ * <tr><td>verbose</td><td>Keeps the debug logging of the tests.</td></tr>
+ * </table>
+ *
+ * @author Anton Johansson
+ */
+public class ContentionHarness
+{
+	private static final String INDEX_NAME = "contention";
+	private static final ConcurrentMap<String, AtomicInteger> FIRES = new ConcurrentHashMap<>();
+	private static final ConcurrentLinkedQueue<Long> LAGS = new ConcurrentLinkedQueue<>();
+	private static volatile boolean recording;
+
+	public static void main(String[] args) throws IOException, SchedulerException, InterruptedException
+	{
+		if (!Boolean.getBoolean("verbose"))
+		{
+			LogManager.getRootLogger().setLevel(Level.WARN);
+		}
+
+		int nodes = Integer.getInteger("nodes", 3);
+		int triggers = Integer.getInteger("triggers", 100);
+		long interval = Long.getLong("interval", 1000);
+		long duration = Long.getLong("duration", 20) * 1000;
+
+		FakeElasticsearchServer server = null;
+		String hostName = System.getProperty("hostName", "localhost");
+		Integer port = Integer.getInteger("port");
+		if (port == null)
+		{
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+			server = new FakeElasticsearchServer(0, 8 * nodes);
+			server.setLatency(Long.getLong("minLatency", 0), Long.getLong("maxLatency", 0));
+			server.setErrorRate(Double.parseDouble(System.getProperty("errorRate", "0")));
+			server.setConflictRate(Double.parseDouble(System.getProperty("conflictRate", "0")));
+			server.start();
+			port = server.getPort();
+		}
+
+		List<Scheduler> schedulers = new ArrayList<>();
+		try
+		{
+			for (int i = 1; i <= nodes; i++)
+			{
+				schedulers.add(createScheduler(hostName, port, i));
+			}
+			schedulers.get(0).clear();
+			schedule(schedulers.get(0), triggers, interval);
+
+			for (Scheduler scheduler : schedulers)
+			{
+				scheduler.start();
+			}
+
+			// Let the first round of triggers come due before measuring
+			Thread.sleep(interval + 2000);
+			long versionedWrites = server != null ? server.getVersionedWrites() : 0;
+			long conflicts = server != null ? server.getConflicts() : 0;
+			recording = true;
+			Thread.sleep(duration);
+			recording = false;
+
+			report(nodes, triggers, interval, duration);
+			if (server != null)
+			{
+				versionedWrites = server.getVersionedWrites() - versionedWrites;
+				conflicts = server.getConflicts() - conflicts;
+				System.out.printf("Version conflicts:  %d of %d versioned writes (%.2f%%), %d injected in total%n", conflicts, versionedWrites, versionedWrites > 0 ? 100.0 * conflicts / versionedWrites : 0, server.getInjectedConflicts());
+			}
+		}
+		finally
+		{
+			for (Scheduler scheduler : schedulers)
+			{
+				scheduler.shutdown(true);
+			}
+			if (server != null)
+			{
+				server.stop();
+			}
+		}
+	}
+
+	private static Scheduler createScheduler(String hostName, int port, int node) throws SchedulerException
+	{
+		Properties properties = new Properties();
+		properties.setProperty("org.quartz.scheduler.instanceName", "ContentionHarness");
+		properties.setProperty("org.quartz.scheduler.instanceId", "node" + node);
+		properties.setProperty("org.quartz.scheduler.skipUpdateCheck", "true");
+		properties.setProperty("org.quartz.scheduler.batchTriggerAcquisitionMaxCount", Integer.getInteger("batchSize", 1).toString());
+		properties.setProperty("org.quartz.threadPool.class", "org.quartz.simpl.SimpleThreadPool");
+		properties.setProperty("org.quartz.threadPool.threadCount", Integer.getInteger("threads", 10).toString());
+		properties.setProperty("org.quartz.threadPool.threadNamePrefix", "node" + node + "_Worker");
+		properties.setProperty("org.quartz.jobStore.class", ElasticsearchJobStore.class.getName());
+		properties.setProperty("org.quartz.jobStore.hostName", hostName);
+		properties.setProperty("org.quartz.jobStore.port", String.valueOf(port));
+		properties.setProperty("org.quartz.jobStore.indexName", INDEX_NAME);
+		properties.setProperty("org.quartz.jobStore.serializerClassName", GsonSerializer.class.getName());
+		properties.setProperty("org.quartz.jobStore.createIndex", "true");
+		properties.setProperty("org.quartz.jobStore.connectionPooling", "true");
+		properties.setProperty("org.quartz.jobStore.asyncTransport", String.valueOf(Boolean.getBoolean("asyncTransport")));
+		properties.setProperty("org.quartz.jobStore.partitioned", String.valueOf(Boolean.getBoolean("partitioned")));
+
+		StdSchedulerFactory schedulerFactory = new StdSchedulerFactory();
+		schedulerFactory.initialize(properties);
+		Scheduler scheduler = schedulerFactory.getScheduler();
+
+		// The repository returns the existing scheduler of the same name, which a cluster node must not do
+		SchedulerRepository.getInstance().remove(scheduler.getSchedulerName());
+		return scheduler;
+	}
+
+	private static void schedule(Scheduler scheduler, int triggers, long interval) throws SchedulerException
+	{
+		JobDetail job = JobBuilder.newJob(RecordingJob.class)
+			.withIdentity("Job", "ContentionHarness")
+			.build();
+
+		// Spread the triggers evenly over the interval
+		long start = System.currentTimeMillis() + 2000;
+		Set<Trigger> jobTriggers = new HashSet<>();
+		for (int i = 0; i < triggers; i++)
+		{
+			jobTriggers.add(TriggerBuilder.newTrigger()
+				.withIdentity("Trigger" + i, "ContentionHarness")
+				.forJob(job)
+				.startAt(new Date(start + i * interval / triggers))
+				.withSchedule(simpleSchedule()
+					.withIntervalInMilliseconds(interval)
+					.repeatForever())
+				.build());
+		}
+
+		Map<JobDetail, Set<? extends Trigger>> jobs = new LinkedHashMap<>();
+		jobs.put(job, jobTriggers);
+		scheduler.scheduleJobs(jobs, true);
+	}
+
+	private static void report(int nodes, int triggers, long interval, long duration)
+	{
+		int fires = 0;
+		int duplicates = 0;
+		for (AtomicInteger count : FIRES.values())
+		{
+			fires += count.get();
+			duplicates += count.get() - 1;
+		}
+
+		Long[] lags = LAGS.toArray(new Long[0]);
+		Arrays.sort(lags);
+
+		System.out.printf("Nodes: %d, triggers: %d, interval: %d ms, measured: %d s%n", nodes, triggers, interval, duration / 1000);
+		System.out.printf("Fires per second:   %.1f (expected %.1f)%n", fires * 1000.0 / duration, triggers * 1000.0 / interval);
+		System.out.printf("Duplicate fires:    %d%n", duplicates);
+		System.out.printf("Fire lag (ms):      p50 %d, p90 %d, p99 %d, max %d%n", percentile(lags, 50), percentile(lags, 90), percentile(lags, 99), percentile(lags, 100));
+	}
+
+	private static long percentile(Long[] values, int percentile)
+	{
+		if (values.length == 0)
+		{
+			return 0;
+		}
+		int index = (int) Math.ceil(percentile / 100.0 * values.length) - 1;
+		return values[Math.max(index, 0)];
+	}
+
+	/**
+	 * Records each fire by its trigger and scheduled fire time, so that a fire made by more
+	 * than one node is counted as a duplicate.
+	 */
+	public static class RecordingJob implements Job
+	{
+		/** {@inheritDoc} */
+		@Override
+		public void execute(JobExecutionContext context) throws JobExecutionException
+		{
+			if (!recording)
+			{
+				return;
+			}
+
+			Date scheduledFireTime = context.getScheduledFireTime();
+			String fire = context.getTrigger().getKey() + "@" + scheduledFireTime.getTime();
+			AtomicInteger count = FIRES.putIfAbsent(fire, new AtomicInteger(1));
+			if (count != null)
+			{
+				count.incrementAndGet();
+			}
+			LAGS.add(context.getFireTime().getTime() - scheduledFireTime.getTime());
+		}
+	}
+}
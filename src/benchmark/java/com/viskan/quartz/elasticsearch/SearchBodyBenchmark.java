@@ -0,0 +1,64 @@
+package com.viskan.quartz.elasticsearch;
+
+import com.viskan.quartz.elasticsearch.common.GsonSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quartz.SchedulerConfigException;
+
+/**
+ * Benchmarks of building the body of the search that acquires triggers.
+ *
+ * @author Anton Johansson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBodyBenchmark
+{
+	@Param({ "true", "false" })
+	private boolean domainSerializer;
+
+	private ElasticsearchJobStore store;
+	private long noLaterThan = 1414141414000L;
+
+	@Setup
+	public void setUp() throws SchedulerConfigException
+	{
+		store = new ElasticsearchJobStore();
+		store.setHostName("localhost");
+		store.setPort(9200);
+		store.setIndexName("benchmark");
+		store.setSerializerClassName(GsonSerializer.class.getName());
+		store.setDomainSerializer(domainSerializer);
+		store.initialize(null, null);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		store.shutdown();
+	}
+
+	@Benchmark
+	public String getSearchBody()
+	{
+		// Vary the input so that the body cannot be hoisted out of the loop
+		return store.getSearchBody(noLaterThan++, 30000, 20);
+	}
+}
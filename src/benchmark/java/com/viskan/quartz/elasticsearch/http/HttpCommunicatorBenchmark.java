@@ -0,0 +1,109 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quartz.JobPersistenceException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Benchmarks of HTTP requests against a stub server on the loopback interface,
+ * with and without connection pooling.
+ *
+ * @author Anton Johansson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpCommunicatorBenchmark
+{
+	private static final byte[] RESPONSE = "{\"_index\":\"benchmark\",\"_type\":\"quartz_trigger\",\"_id\":\"group.trigger\",\"_version\":1,\"found\":true,\"_source\":{\"name\":\"trigger\",\"group\":\"group\"}}".getBytes();
+
+	@Param({ "false", "true" })
+	private boolean pooled;
+
+	private HttpServer server;
+	private HttpCommunicator communicator;
+	private String requestURL;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		// Otherwise delayed acknowledgements of the stub responses dominate the measurements
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new StubHandler());
+		server.start();
+		requestURL = "http://localhost:" + server.getAddress().getPort() + "/benchmark/quartz_trigger/group.trigger";
+		communicator = pooled ? new PooledHttpCommunicator(4, 4, 30000, 2000) : new HttpCommunicator();
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		if (communicator instanceof PooledHttpCommunicator)
+		{
+			((PooledHttpCommunicator) communicator).close();
+		}
+		server.stop(0);
+	}
+
+	@Benchmark
+	public HttpResponse get() throws JobPersistenceException
+	{
+		return communicator.request("GET", requestURL);
+	}
+
+	@Benchmark
+	public HttpResponse put() throws JobPersistenceException
+	{
+		return communicator.request("PUT", requestURL, "{\"name\":\"trigger\",\"group\":\"group\",\"nextFireTime\":1414141414000}");
+	}
+
+	/**
+	 * Responds with the same document to every request.
+	 */
+	private static class StubHandler implements HttpHandler
+	{
+		@Override
+		public void handle(HttpExchange exchange) throws IOException
+		{
+			try (InputStream inputStream = exchange.getRequestBody())
+			{
+				byte[] buffer = new byte[1024];
+				while (inputStream.read(buffer) != -1)
+				{
+					// Read the whole request before responding
+				}
+			}
+
+			exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+			exchange.sendResponseHeaders(200, RESPONSE.length);
+			try (OutputStream outputStream = exchange.getResponseBody())
+			{
+				outputStream.write(RESPONSE);
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.viskan.quartz.elasticsearch.serializer;
+
+import com.viskan.quartz.elasticsearch.common.GsonSerializer;
+import com.viskan.quartz.elasticsearch.domain.Hit;
+import com.viskan.quartz.elasticsearch.domain.Hits;
+import com.viskan.quartz.elasticsearch.domain.SearchResult;
+import com.viskan.quartz.elasticsearch.domain.TriggerWrapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of reading search responses and writing triggers, with Gson and with the
+ * {@link DomainSerializer}.
+ *
+ * @author Anton Johansson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark
+{
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Param({ "10", "100", "1000" })
+	private int hits;
+
+	@Param({ "gson", "domain" })
+	private String serializerName;
+
+	private ISerializer serializer;
+	private String searchResponse;
+	private byte[] searchResponseBytes;
+	private List<TriggerWrapper> triggers;
+
+	@Setup
+	public void setUp()
+	{
+		GsonSerializer gson = new GsonSerializer();
+		serializer = "gson".equals(serializerName) ? gson : new DomainSerializer(gson);
+
+		triggers = new ArrayList<>(hits);
+		List<Hit<TriggerWrapper>> hitList = new ArrayList<>(hits);
+		for (int i = 0; i < hits; i++)
+		{
+			TriggerWrapper triggerWrapper = new TriggerWrapper();
+			triggerWrapper.setName("trigger" + i);
+			triggerWrapper.setGroup("group");
+			triggerWrapper.setTriggerClass("org.quartz.impl.triggers.SimpleTriggerImpl");
+			triggerWrapper.setJobName("job" + i);
+			triggerWrapper.setJobGroup("group");
+			triggerWrapper.setStartTime(1414141414000L);
+			triggerWrapper.setNextFireTime(1414141414000L + i * 1000L);
+			triggerWrapper.setPriority(5);
+			triggerWrapper.setRepeatCount(-1);
+			triggerWrapper.setRepeatInterval(60000);
+			triggers.add(triggerWrapper);
+
+			Hit<TriggerWrapper> hit = new Hit<>();
+			hit.setId("group.trigger" + i);
+			hit.setVersion(3);
+			hit.setSource(triggerWrapper);
+			hitList.add(hit);
+		}
+
+		Hits<TriggerWrapper> searchHits = new Hits<>();
+		searchHits.setTotal(hits);
+		searchHits.setHits(hitList);
+		SearchResult<TriggerWrapper> searchResult = new SearchResult<>();
+		searchResult.setTook(1);
+		searchResult.setHits(searchHits);
+
+		searchResponse = gson.to(searchResult);
+		searchResponseBytes = searchResponse.getBytes(UTF_8);
+	}
+
+	@Benchmark
+	public SearchResult<TriggerWrapper> readSearchResult()
+	{
+		return serializer.from(searchResponse, TypeTokens.SEARCH_TRIGGERS);
+	}
+
+	@Benchmark
+	public SearchResult<TriggerWrapper> readSearchResultFromBytes() throws IOException
+	{
+		if (serializer instanceof IStreamingSerializer)
+		{
+			return ((IStreamingSerializer) serializer).from(new ByteArrayInputStream(searchResponseBytes), TypeTokens.SEARCH_TRIGGERS);
+		}
+		return serializer.from(new String(searchResponseBytes, UTF_8), TypeTokens.SEARCH_TRIGGERS);
+	}
+
+	@Benchmark
+	public void writeTriggers(Blackhole blackhole)
+	{
+		for (TriggerWrapper triggerWrapper : triggers)
+		{
+			blackhole.consume(serializer.to(triggerWrapper));
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package com.viskan.quartz.elasticsearch.serializer;
+
+import com.viskan.quartz.elasticsearch.domain.SearchResult;
+import com.viskan.quartz.elasticsearch.domain.TriggerWrapper;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares creating a type token per call with sharing one from {@link TypeTokens}.
+ *
+ * @author Anton Johansson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeTokenBenchmark
+{
+	@Benchmark
+	public Type newTypeToken()
+	{
+		return new TypeToken<SearchResult<TriggerWrapper>>() {}.getType();
+	}
+
+	@Benchmark
+	public Type sharedTypeToken()
+	{
+		return TypeTokens.SEARCH_TRIGGERS.getType();
+	}
+}
@@ -0,0 +1,107 @@
+package com.viskan.quartz.elasticsearch.utils;
+
+import static com.viskan.quartz.elasticsearch.domain.TriggerWrapper.STATE_WAITING;
+import static org.quartz.CronScheduleBuilder.cronSchedule;
+import static org.quartz.JobBuilder.newJob;
+import static org.quartz.SimpleScheduleBuilder.simpleSchedule;
+import static org.quartz.TriggerBuilder.newTrigger;
+
+import com.viskan.quartz.elasticsearch.common.TestJob;
+import com.viskan.quartz.elasticsearch.domain.JobWrapper;
+import com.viskan.quartz.elasticsearch.domain.TriggerWrapper;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quartz.JobDetail;
+import org.quartz.JobPersistenceException;
+import org.quartz.spi.OperableTrigger;
+
+/**
+ * Benchmarks of the conversions between Quartz jobs and triggers and the stored documents.
+ *
+ * @author Anton Johansson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WrapperBenchmark
+{
+	private OperableTrigger simpleTrigger;
+	private OperableTrigger cronTrigger;
+	private TriggerWrapper simpleTriggerWrapper;
+	private TriggerWrapper cronTriggerWrapper;
+	private JobWrapper jobWrapper;
+
+	@Setup
+	public void setUp()
+	{
+		simpleTrigger = (OperableTrigger) newTrigger()
+			.withIdentity("simple", "group")
+			.forJob("job", "group")
+			.startAt(new Date(1414141414000L))
+			.withSchedule(simpleSchedule().withIntervalInMilliseconds(60000).repeatForever())
+			.build();
+		simpleTrigger.computeFirstFireTime(null);
+		simpleTriggerWrapper = TriggerUtils.toTriggerWrapper(simpleTrigger, STATE_WAITING);
+
+		cronTrigger = (OperableTrigger) newTrigger()
+			.withIdentity("cron", "group")
+			.forJob("job", "group")
+			.startAt(new Date(1414141414000L))
+			.withSchedule(cronSchedule("0 0/5 * * * ?"))
+			.build();
+		cronTrigger.computeFirstFireTime(null);
+		cronTriggerWrapper = TriggerUtils.toTriggerWrapper(cronTrigger, STATE_WAITING);
+
+		JobDetail job = newJob(TestJob.class)
+			.withIdentity("job", "group")
+			.usingJobData("key", "value")
+			.usingJobData("number", 42)
+			.build();
+		jobWrapper = JobUtils.toJobWrapper(job);
+	}
+
+	@Benchmark
+	public TriggerWrapper toSimpleTriggerWrapper()
+	{
+		return TriggerUtils.toTriggerWrapper(simpleTrigger, STATE_WAITING);
+	}
+
+	@Benchmark
+	public OperableTrigger fromSimpleTriggerWrapper()
+	{
+		return TriggerUtils.fromWrapper(simpleTriggerWrapper);
+	}
+
+	@Benchmark
+	public TriggerWrapper toCronTriggerWrapper()
+	{
+		return TriggerUtils.toTriggerWrapper(cronTrigger, STATE_WAITING);
+	}
+
+	@Benchmark
+	public OperableTrigger fromCronTriggerWrapper()
+	{
+		return TriggerUtils.fromWrapper(cronTriggerWrapper);
+	}
+
+	@Benchmark
+	public JobDetail fromJobWrapper() throws JobPersistenceException
+	{
+		return JobUtils.fromWrapper(jobWrapper);
+	}
+}
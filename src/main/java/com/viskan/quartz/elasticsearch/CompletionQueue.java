@@ -0,0 +1,244 @@
+package com.viskan.quartz.elasticsearch;
+
+import com.viskan.quartz.elasticsearch.domain.TriggerWrapper;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.quartz.TriggerKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queues completed triggers so that they can be written by a background thread
+ * instead of by the worker thread that executed the job.
+ * <p>
+ * Completions are coalesced per trigger, so only the latest completion of a trigger
+ * is written. The queue is bounded, and worker threads wait for room when it is full.
+ * Completions are flushed in batches, either when a batch is full or when the flush
+ * interval has passed.
+ *
+ * @author Anton Johansson
+ */
+class CompletionQueue implements Runnable
+{
+	private static final transient Logger LOGGER = LoggerFactory.getLogger(CompletionQueue.class);
+
+	private final ElasticsearchJobStore jobStore;
+	private final int capacity;
+	private final int batchSize;
+	private final long flushInterval;
+	private final Map<TriggerKey, Completion> pending = new LinkedHashMap<>();
+	private Thread thread;
+	private boolean stopped;
+
+	CompletionQueue(ElasticsearchJobStore jobStore, int capacity, int batchSize, long flushInterval)
+	{
+		this.jobStore = jobStore;
+		this.capacity = capacity;
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Starts the background thread that flushes the queue.
+	 *
+	 * @param name The name of the thread.
+	 */
+	synchronized void start(String name)
+	{
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Adds a completion to the queue, replacing any pending completion of the same trigger.
+	 * Waits for room if the queue is full.
+	 *
+	 * @param completion The completion to add.
+	 * @return Returns <code>false</code> if the queue is stopped and the completion must be handled by the caller.
+	 * @throws InterruptedException Thrown if the thread was interrupted while waiting for room.
+	 */
+	synchronized boolean add(Completion completion) throws InterruptedException
+	{
+		TriggerKey key = completion.getKey();
+		while (!stopped && pending.size() >= capacity && !pending.containsKey(key))
+		{
+			wait();
+		}
+		if (stopped)
+		{
+			return false;
+		}
+
+		pending.put(key, completion);
+		if (pending.size() >= batchSize)
+		{
+			notifyAll();
+		}
+		return true;
+	}
+
+	/**
+	 * Stops the background thread after the pending completions have been flushed.
+	 */
+	void shutdown()
+	{
+		Thread flushThread;
+		synchronized (this)
+		{
+			stopped = true;
+			flushThread = thread;
+			notifyAll();
+		}
+
+		if (flushThread != null)
+		{
+			try
+			{
+				flushThread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				LOGGER.warn("Interrupted while waiting for completed triggers to be written");
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of completions waiting to be flushed.
+	 *
+	 * @return Returns the number of pending completions.
+	 */
+	synchronized int size()
+	{
+		return pending.size();
+	}
+
+	@Override
+	public void run()
+	{
+		while (true)
+		{
+			List<Completion> batch;
+			try
+			{
+				batch = takeBatch();
+			}
+			catch (InterruptedException e)
+			{
+				LOGGER.warn("Interrupted while waiting for completed triggers, {} will not be written", size());
+				return;
+			}
+
+			if (batch.isEmpty())
+			{
+				return;
+			}
+
+			try
+			{
+				jobStore.flushCompletions(batch);
+			}
+			catch (RuntimeException e)
+			{
+				LOGGER.error("Exception occurred when writing completed triggers", e);
+			}
+		}
+	}
+
+	/**
+	 * Takes the next batch of completions, waiting until the batch is full or the flush interval has passed.
+	 *
+	 * @return Returns the batch, which is only empty when the queue is stopped and drained.
+	 */
+	private synchronized List<Completion> takeBatch() throws InterruptedException
+	{
+		while (pending.isEmpty() && !stopped)
+		{
+			wait();
+		}
+
+		// Give more completions a chance to join the batch, or to be coalesced with the pending ones
+		long deadline = System.currentTimeMillis() + flushInterval;
+		long remaining;
+		while (!stopped && pending.size() < batchSize && (remaining = deadline - System.currentTimeMillis()) > 0)
+		{
+			wait(remaining);
+		}
+
+		List<Completion> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+		for (Iterator<Completion> iterator = pending.values().iterator(); iterator.hasNext() && batch.size() < batchSize;)
+		{
+			batch.add(iterator.next());
+			iterator.remove();
+		}
+		notifyAll();
+		return batch;
+	}
+
+	/**
+	 * A completed trigger waiting to be written.
+	 */
+	static class Completion
+	{
+		private final TriggerKey key;
+		private final TriggerWrapper triggerWrapper;
+		private final boolean signal;
+
+		private Completion(TriggerKey key, TriggerWrapper triggerWrapper, boolean signal)
+		{
+			this.key = key;
+			this.triggerWrapper = triggerWrapper;
+			this.signal = signal;
+		}
+
+		/**
+		 * Creates a completion that writes the new state of a trigger.
+		 */
+		static Completion update(TriggerKey key, TriggerWrapper triggerWrapper)
+		{
+			return new Completion(key, triggerWrapper, true);
+		}
+
+		/**
+		 * Creates a completion that deletes a trigger.
+		 *
+		 * @param signal Whether or not the scheduler should be signaled when the trigger is deleted.
+		 */
+		static Completion delete(TriggerKey key, boolean signal)
+		{
+			return new Completion(key, null, signal);
+		}
+
+		TriggerKey getKey()
+		{
+			return key;
+		}
+
+		/**
+		 * Gets the trigger to write.
+		 *
+		 * @return Returns the trigger, or <code>null</code> if the trigger should be deleted.
+		 */
+		TriggerWrapper getTriggerWrapper()
+		{
+			return triggerWrapper;
+		}
+
+		boolean isDelete()
+		{
+			return triggerWrapper == null;
+		}
+
+		boolean isSignal()
+		{
+			return signal;
+		}
+	}
+}
@@ -1,34 +1,74 @@
 package com.viskan.quartz.elasticsearch;
 
+import com.viskan.quartz.elasticsearch.bulk.BulkRequestBuilder;
+import com.viskan.quartz.elasticsearch.cache.CacheStatistics;
+import com.viskan.quartz.elasticsearch.cache.LruCache;
+import com.viskan.quartz.elasticsearch.domain.BulkItem;
+import com.viskan.quartz.elasticsearch.domain.BulkItemResult;
+import com.viskan.quartz.elasticsearch.domain.BulkResult;
 import com.viskan.quartz.elasticsearch.domain.CountResult;
 import com.viskan.quartz.elasticsearch.domain.GetResult;
 import com.viskan.quartz.elasticsearch.domain.Hit;
 import com.viskan.quartz.elasticsearch.domain.JobWrapper;
+import com.viskan.quartz.elasticsearch.domain.MultiGetResult;
 import com.viskan.quartz.elasticsearch.domain.PutResult;
+import com.viskan.quartz.elasticsearch.domain.SchedulerState;
 import com.viskan.quartz.elasticsearch.domain.SearchResult;
 import com.viskan.quartz.elasticsearch.domain.TriggerWrapper;
+import com.viskan.quartz.elasticsearch.http.AsyncHttpCommunicator;
+import com.viskan.quartz.elasticsearch.http.CircuitBreaker;
+import com.viskan.quartz.elasticsearch.http.ConnectionPoolStatistics;
 import com.viskan.quartz.elasticsearch.http.HttpCommunicator;
 import com.viskan.quartz.elasticsearch.http.HttpResponse;
+import com.viskan.quartz.elasticsearch.http.Node;
+import com.viskan.quartz.elasticsearch.http.NodeSelector;
+import com.viskan.quartz.elasticsearch.http.PooledHttpCommunicator;
+import com.viskan.quartz.elasticsearch.http.RetryPolicy;
+import com.viskan.quartz.elasticsearch.metrics.Metrics;
+import com.viskan.quartz.elasticsearch.serializer.DomainSerializer;
 import com.viskan.quartz.elasticsearch.serializer.ISerializer;
+import com.viskan.quartz.elasticsearch.serializer.IStreamingSerializer;
 import com.viskan.quartz.elasticsearch.serializer.TypeToken;
+import com.viskan.quartz.elasticsearch.serializer.TypeTokens;
+import com.viskan.quartz.elasticsearch.utils.PartitionUtils;
 
 import static com.viskan.quartz.elasticsearch.domain.TriggerWrapper.STATE_ACQUIRED;
 import static com.viskan.quartz.elasticsearch.domain.TriggerWrapper.STATE_COMPLETED;
 import static com.viskan.quartz.elasticsearch.domain.TriggerWrapper.STATE_ERROR;
 import static com.viskan.quartz.elasticsearch.domain.TriggerWrapper.STATE_EXECUTING;
 import static com.viskan.quartz.elasticsearch.domain.TriggerWrapper.STATE_WAITING;
+import static com.viskan.quartz.elasticsearch.http.HttpResponse.isConflict;
 import static com.viskan.quartz.elasticsearch.http.HttpResponse.isOK;
 import static com.viskan.quartz.elasticsearch.utils.JobUtils.fromWrapper;
+import static com.viskan.quartz.elasticsearch.utils.JobUtils.toJobWrapper;
+import static com.viskan.quartz.elasticsearch.utils.MappingUtils.getIndexDefinition;
+import static com.viskan.quartz.elasticsearch.utils.MappingUtils.getJobMapping;
+import static com.viskan.quartz.elasticsearch.utils.MappingUtils.getSchedulerMapping;
+import static com.viskan.quartz.elasticsearch.utils.MappingUtils.getTriggerMapping;
+import static com.viskan.quartz.elasticsearch.utils.PartitionUtils.getBucket;
 import static com.viskan.quartz.elasticsearch.utils.TriggerUtils.fromWrapper;
 import static com.viskan.quartz.elasticsearch.utils.TriggerUtils.toTriggerWrapper;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import org.quartz.Calendar;
 import org.quartz.JobDetail;
@@ -57,23 +97,81 @@ import org.slf4j.LoggerFactory;
  * 
  * @author Anton Johansson
  */
-public class ElasticsearchJobStore implements JobStore
+public class ElasticsearchJobStore implements JobStore, ElasticsearchJobStoreMXBean
 {
 	private static final transient Logger LOGGER = LoggerFactory.getLogger(ElasticsearchJobStore.class);
 	private static final String JOB_TYPE = "job";
 	private static final String TRIGGER_TYPE = "trigger";
+	private static final String SCHEDULER_TYPE = "scheduler";
+	private static final String NON_CLUSTERED_INSTANCE_ID = "NON_CLUSTERED";
+	private static final int LEASE_RECOVERY_BATCH_SIZE = 500;
+	private static final String NODE_SELECTOR_ROUND_ROBIN = "roundRobin";
+	private static final String NODE_SELECTOR_LEAST_IN_FLIGHT = "leastInFlight";
 	
 	// Properties
 	private String hostName;
 	private int port;
+	private String hosts;
+	private String nodeSelector = NODE_SELECTOR_ROUND_ROBIN;
+	private long deadNodeBackoff = 1000;
+	private long maxDeadNodeBackoff = 60000;
+	private boolean sniffNodes;
+	private int maxRetries = 2;
+	private long retryBackoff = 100;
+	private long maxRetryBackoff = 2000;
+	private int circuitBreakerThreshold = 10;
+	private long circuitBreakerOpenTime = 5000;
 	private String indexName;
 	private String typePrefix = "quartz_";
 	private String serializerClassName;
+	private boolean domainSerializer = true;
+	private boolean createIndex;
+	private int numberOfShards = 5;
+	private int numberOfReplicas = 1;
+	private boolean connectionPooling;
+	private int maxConnections = 20;
+	private int maxConnectionsPerHost = 10;
+	private long connectionIdleTimeout = 30000;
+	private long validateAfterInactivity = 2000;
+	private boolean asyncTransport;
+	private int ioThreads = 2;
+	private int versionCacheSize = 10000;
+	private int jobCacheSize = 1000;
+	private long jobCacheTimeToLive = 60000;
+	private boolean jobCacheRevalidate;
+	private boolean asyncCompletion;
+	private int completionQueueSize = 10000;
+	private int completionBatchSize = 500;
+	private long completionFlushInterval = 50;
+	private long leaseDuration = 15000;
+	private long heartbeatInterval = 5000;
+	private boolean partitioned;
+	private volatile int bulkChunkDocuments = 1000;
+	private volatile int bulkChunkBytes = 5 * 1024 * 1024;
+	private volatile double acquisitionHeadroom = 2;
+	private volatile int readTimeout = HttpCommunicator.DEFAULT_READ_TIMEOUT;
+	private long fireLagWindow = Metrics.DEFAULT_FIRE_LAG_WINDOW;
+	private volatile long slowFireThreshold;
+	private boolean jmxExport;
+	private String instanceName;
+	private String instanceId;
 	
 	// Internal variables
+	private final Metrics metrics = new Metrics();
 	private SchedulerSignaler signaler;
 	private HttpCommunicator httpCommunicator;
 	private ISerializer serializer;
+	private LruCache<TriggerKey, GetResult<TriggerWrapper>> triggerVersions;
+	private LruCache<JobKey, GetResult<JobDetail>> jobCache;
+	private CompletionQueue completionQueue;
+	private LeaseSweeper leaseSweeper;
+	private final AtomicLong recoveredTriggers = new AtomicLong();
+	private volatile List<Integer> ownedBuckets;
+	private final List<ObjectName> registeredMBeans = new ArrayList<>();
+	private volatile int lastAcquisitionMaxCount;
+	private volatile int lastAcquisitionCandidates;
+	private volatile int lastAcquisitionSize;
+	private volatile double lastAcquisitionTime;
 	
 	/**
 	 * Gets the host name or IP address to the elasticsearch instance.
@@ -123,6 +221,127 @@ public class ElasticsearchJobStore implements JobStore
 		this.port = port;
 	}
 
+	/**
+	 * Gets the elasticsearch nodes to spread requests over.
+	 * 
+	 * @return Returns the comma separated nodes, or <code>null</code> if only the host name is used.
+	 */
+	public String getHosts()
+	{
+		return hosts;
+	}
+
+	/**
+	 * Sets the elasticsearch nodes to spread requests over, as a comma separated list of <code>host</code> or
+	 * <code>host:port</code>. Nodes without a port use the port property. Requests that fail on one node are
+	 * retried on the others. Takes precedence over the host name.
+	 * 
+	 * @param hosts The comma separated nodes.
+	 */
+	public void setHosts(String hosts)
+	{
+		if (hosts.trim().isEmpty())
+		{
+			throw new IllegalArgumentException("The property 'hosts' cannot be empty");
+		}
+		this.hosts = hosts;
+	}
+
+	/**
+	 * Gets how requests are spread over the nodes.
+	 * 
+	 * @return Returns <code>roundRobin</code> or <code>leastInFlight</code>.
+	 */
+	public String getNodeSelector()
+	{
+		return nodeSelector;
+	}
+
+	/**
+	 * Sets how requests are spread over the nodes, either <code>roundRobin</code> to send them to the nodes in turn
+	 * or <code>leastInFlight</code> to send them to the node with the fewest requests in flight. Defaults to <code>roundRobin</code>.
+	 * 
+	 * @param nodeSelector The node selection strategy.
+	 */
+	public void setNodeSelector(String nodeSelector)
+	{
+		if (!NODE_SELECTOR_ROUND_ROBIN.equals(nodeSelector) && !NODE_SELECTOR_LEAST_IN_FLIGHT.equals(nodeSelector))
+		{
+			throw new IllegalArgumentException("The property 'nodeSelector' must be '" + NODE_SELECTOR_ROUND_ROBIN + "' or '" + NODE_SELECTOR_LEAST_IN_FLIGHT + "'");
+		}
+		this.nodeSelector = nodeSelector;
+	}
+
+	/**
+	 * Gets the number of milliseconds before a node that failed a request is tried again.
+	 * 
+	 * @return Returns the backoff of a dead node.
+	 */
+	public long getDeadNodeBackoff()
+	{
+		return deadNodeBackoff;
+	}
+
+	/**
+	 * Sets the number of milliseconds before a node that failed a request is tried again. The backoff doubles
+	 * with each consecutive failure. Defaults to <code>1000</code>.
+	 * 
+	 * @param deadNodeBackoff The backoff of a dead node.
+	 */
+	public void setDeadNodeBackoff(long deadNodeBackoff)
+	{
+		if (deadNodeBackoff <= 0)
+		{
+			throw new IllegalArgumentException("The property 'deadNodeBackoff' must be positive");
+		}
+		this.deadNodeBackoff = deadNodeBackoff;
+	}
+
+	/**
+	 * Gets the maximum number of milliseconds before a dead node is tried again.
+	 * 
+	 * @return Returns the maximum backoff of a dead node.
+	 */
+	public long getMaxDeadNodeBackoff()
+	{
+		return maxDeadNodeBackoff;
+	}
+
+	/**
+	 * Sets the maximum number of milliseconds before a dead node is tried again. Defaults to <code>60000</code>.
+	 * 
+	 * @param maxDeadNodeBackoff The maximum backoff of a dead node.
+	 */
+	public void setMaxDeadNodeBackoff(long maxDeadNodeBackoff)
+	{
+		if (maxDeadNodeBackoff <= 0)
+		{
+			throw new IllegalArgumentException("The property 'maxDeadNodeBackoff' must be positive");
+		}
+		this.maxDeadNodeBackoff = maxDeadNodeBackoff;
+	}
+
+	/**
+	 * Gets whether or not the nodes are discovered from the cluster on initialization.
+	 * 
+	 * @return Returns <code>true</code> if the nodes are discovered.
+	 */
+	public boolean isSniffNodes()
+	{
+		return sniffNodes;
+	}
+
+	/**
+	 * Sets whether or not the nodes are discovered from the cluster on initialization, through the nodes info API
+	 * of the configured nodes. Defaults to <code>false</code>.
+	 * 
+	 * @param sniffNodes <code>true</code> if the nodes should be discovered.
+	 */
+	public void setSniffNodes(boolean sniffNodes)
+	{
+		this.sniffNodes = sniffNodes;
+	}
+
 	/**
 	 * Gets the name of the index within the elasticsearch instance to put scheduler data.
 	 * 
@@ -191,686 +410,3122 @@ public class ElasticsearchJobStore implements JobStore
 		this.serializerClassName = serializerClassName;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public void initialize(ClassLoadHelper loadHelper, SchedulerSignaler signaler) throws SchedulerConfigException
+	/**
+	 * Gets whether or not the domain types are serialized by the built-in {@link DomainSerializer}.
+	 * 
+	 * @return Returns <code>true</code> if the built-in serializer is used.
+	 */
+	public boolean isDomainSerializer()
 	{
-		this.signaler = signaler;
-		
-		checkSetting(hostName,				"org.quartz.jobStore.hostName");
-		checkSetting(port,					"org.quartz.jobStore.port");
-		checkSetting(indexName,				"org.quartz.jobStore.indexName");
-		checkSetting(serializerClassName,	"org.quartz.jobStore.serializerClassName");
-		
-		LOGGER.info("Initializing against '{}:{}' using index name '{}'", new Object[] { hostName, port, indexName });
-		
-		createHttpCommunicator();
-		createSerializer();
+		return domainSerializer;
 	}
 
 	/**
-	 * Sets the HTTP communicator.
+	 * Sets whether or not the domain types are serialized by the built-in {@link DomainSerializer}. Defaults to <code>true</code>.
 	 * <p>
-	 * Exposed as package private to enable mocking.
+	 * The built-in serializer reads and writes documents and responses without reflection. The configured
+	 * serializer is still used for the data maps of jobs.
+	 * 
+	 * @param domainSerializer Whether or not the built-in serializer is used.
 	 */
-	void createHttpCommunicator(HttpCommunicator httpCommunicator)
+	public void setDomainSerializer(boolean domainSerializer)
 	{
-		this.httpCommunicator = httpCommunicator;
+		this.domainSerializer = domainSerializer;
 	}
 
-	private void createHttpCommunicator()
+	/**
+	 * Gets whether or not the index and its mappings are created when the job store is initialized.
+	 * 
+	 * @return Returns <code>true</code> if the index is created.
+	 */
+	public boolean isCreateIndex()
 	{
-		createHttpCommunicator(new HttpCommunicator());
+		return createIndex;
 	}
 
-	private void createSerializer() throws SchedulerConfigException
+	/**
+	 * Sets whether or not the index and its mappings are created when the job store is initialized. Defaults to <code>false</code>.
+	 * <p>
+	 * If the index does not exist, it is created with the configured number of shards and replicas. If it
+	 * already exists, the mappings of the job and trigger types are put, which fails if they conflict with
+	 * the existing mappings.
+	 * 
+	 * @param createIndex Whether or not the index is created.
+	 */
+	public void setCreateIndex(boolean createIndex)
 	{
-		try
-		{
-			Class<? extends ISerializer> serializerClass = Class.forName(serializerClassName).asSubclass(ISerializer.class);
-			serializer = serializerClass.newInstance();
-		}
-		catch (Exception e)
-		{
-			throw new SchedulerConfigException("Could not create serializer", e);
-		}
+		this.createIndex = createIndex;
 	}
-	
-	private void checkSetting(Object setting, String propertyKey) throws SchedulerConfigException
+
+	/**
+	 * Gets the number of primary shards of a created index.
+	 * 
+	 * @return Returns the number of shards.
+	 */
+	public int getNumberOfShards()
 	{
-		if (setting == null)
-		{
-			throw new SchedulerConfigException("The property '" + propertyKey + "' must be set");
-		}
+		return numberOfShards;
 	}
-	
-	private String getTypeURL(String type, String data)
+
+	/**
+	 * Sets the number of primary shards of a created index. Defaults to <code>5</code>.
+	 * 
+	 * @param numberOfShards The number of shards.
+	 */
+	public void setNumberOfShards(int numberOfShards)
 	{
-		return new StringBuilder(getBaseURL())
-			.append(typePrefix)
-			.append(type)
-			.append("/")
-			.append(data)
-			.toString();
+		if (numberOfShards <= 0)
+		{
+			throw new IllegalArgumentException("The property 'numberOfShards' must be positive");
+		}
+		this.numberOfShards = numberOfShards;
 	}
-	
-	private String getBaseURL()
+
+	/**
+	 * Gets the number of replicas of each shard of a created index.
+	 * 
+	 * @return Returns the number of replicas.
+	 */
+	public int getNumberOfReplicas()
 	{
-		return new StringBuilder("http://")
-			.append(hostName)
-			.append(":")
-			.append(port)
-			.append("/")
-			.append(indexName)
-			.append("/")
-			.toString();
+		return numberOfReplicas;
 	}
-	
-	/** {@inheritDoc} */
-	@Override
-	public void schedulerStarted() throws SchedulerException
+
+	/**
+	 * Sets the number of replicas of each shard of a created index. Defaults to <code>1</code>.
+	 * 
+	 * @param numberOfReplicas The number of replicas.
+	 */
+	public void setNumberOfReplicas(int numberOfReplicas)
 	{
+		if (numberOfReplicas < 0)
+		{
+			throw new IllegalArgumentException("The property 'numberOfReplicas' cannot be negative");
+		}
+		this.numberOfReplicas = numberOfReplicas;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public void schedulerPaused()
+	/**
+	 * Gets whether or not persistent HTTP connections are pooled and reused between requests.
+	 * 
+	 * @return Returns <code>true</code> if HTTP connections are pooled.
+	 */
+	public boolean isConnectionPooling()
 	{
+		return connectionPooling;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public void schedulerResumed()
+	/**
+	 * Sets whether or not persistent HTTP connections are pooled and reused between requests. Defaults to <code>false</code>.
+	 * 
+	 * @param connectionPooling <code>true</code> if HTTP connections should be pooled.
+	 */
+	public void setConnectionPooling(boolean connectionPooling)
 	{
+		this.connectionPooling = connectionPooling;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public void shutdown()
+	/**
+	 * Gets the maximum number of pooled HTTP connections.
+	 * 
+	 * @return Returns the maximum number of pooled HTTP connections.
+	 */
+	public int getMaxConnections()
 	{
+		return maxConnections;
 	}
 
-	/** Always returns <code>true</code>. */
-	@Override
-	public boolean supportsPersistence()
+	/**
+	 * Sets the maximum number of pooled HTTP connections. Defaults to <code>20</code>.
+	 * 
+	 * @param maxConnections The maximum number of pooled HTTP connections.
+	 */
+	public void setMaxConnections(int maxConnections)
 	{
-		return true;
+		if (maxConnections <= 0)
+		{
+			throw new IllegalArgumentException("The property 'maxConnections' must be positive");
+		}
+		this.maxConnections = maxConnections;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public long getEstimatedTimeToReleaseAndAcquireTrigger()
+	/**
+	 * Gets the maximum number of pooled HTTP connections to a single host.
+	 * 
+	 * @return Returns the maximum number of pooled HTTP connections to a single host.
+	 */
+	public int getMaxConnectionsPerHost()
 	{
-		return 10;
+		return maxConnectionsPerHost;
 	}
 
-	/** Always returns <code>true</code>. */
-	@Override
-	public boolean isClustered()
+	/**
+	 * Sets the maximum number of pooled HTTP connections to a single host. Defaults to <code>10</code>.
+	 * 
+	 * @param maxConnectionsPerHost The maximum number of pooled HTTP connections to a single host.
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost)
 	{
-		return true;
+		if (maxConnectionsPerHost <= 0)
+		{
+			throw new IllegalArgumentException("The property 'maxConnectionsPerHost' must be positive");
+		}
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
 	}
 
-	/** {@inheritDoc} */
+	/**
+	 * Gets the number of milliseconds to wait for a response from elasticsearch.
+	 * 
+	 * @return Returns the read timeout.
+	 */
 	@Override
-	public void storeJobAndTrigger(JobDetail newJob, OperableTrigger newTrigger) throws ObjectAlreadyExistsException, JobPersistenceException
+	public int getReadTimeout()
 	{
-		storeJob(newJob, false);
-		storeTrigger(newTrigger, false);
+		return readTimeout;
 	}
 
-	/** {@inheritDoc} */
+	/**
+	 * Sets the number of milliseconds to wait for a response from elasticsearch. Defaults to <code>2000</code>.
+	 * <p>
+	 * With connection pooling, this is also the connect timeout and the time to wait for a pooled connection.
+	 * Can be changed while the scheduler is running.
+	 * 
+	 * @param readTimeout The read timeout in milliseconds.
+	 */
 	@Override
-	public void storeJob(JobDetail newJob, boolean replaceExisting) throws ObjectAlreadyExistsException, JobPersistenceException
+	public void setReadTimeout(int readTimeout)
 	{
-		JobKey key = newJob.getKey();
-		String jobURL = getTypeURL(JOB_TYPE, key.toString());
-
-		JobWrapper jobWrapper = new JobWrapper();
-		jobWrapper.setName(key.getName());
-		jobWrapper.setGroup(key.getGroup());
-		jobWrapper.setJobClass(newJob.getJobClass().getName());
-		jobWrapper.setDataMap(newJob.getJobDataMap().getWrappedMap());
-		String requestData = serializer.to(jobWrapper);
-		
-		HttpResponse response = httpCommunicator.request("PUT", jobURL, requestData);
-		
-		int responseCode = response.getResponseCode();
-		if (responseCode == 200 || responseCode == 201)
+		if (readTimeout <= 0)
 		{
-			String responseData = response.getResponseData();
-			PutResult result = serializer.from(responseData, new TypeToken<PutResult>() {});
-			
-			if (!result.isCreated())
-			{
-				throw new ObjectAlreadyExistsException(newJob);
-			}
+			throw new IllegalArgumentException("The property 'readTimeout' must be positive");
 		}
-		else
+		this.readTimeout = readTimeout;
+		if (httpCommunicator != null)
 		{
-			throw new JobPersistenceException("Error when storing job: " + responseCode + " " + response.getResponseMessage());
+			httpCommunicator.setReadTimeout(readTimeout);
 		}
-		
-		LOGGER.info("Succesfully stored job '{}'", key.toString());
 	}
-	
-	/** {@inheritDoc} */
-	@Override
-	public void storeJobsAndTriggers(Map<JobDetail, Set<? extends Trigger>> triggersAndJobs, boolean replace)
-			throws ObjectAlreadyExistsException, JobPersistenceException
+
+	/**
+	 * Gets the number of milliseconds a pooled HTTP connection can be idle before it is closed.
+	 * 
+	 * @return Returns the idle timeout of pooled HTTP connections.
+	 */
+	public long getConnectionIdleTimeout()
 	{
-		for (JobDetail job : triggersAndJobs.keySet())
-		{
-			storeJob(job, replace);
-			Set<? extends Trigger> triggers = triggersAndJobs.get(job);
-			for (Trigger trigger : triggers)
-			{
-				storeTrigger((OperableTrigger) trigger, replace);
-			}
-		}
+		return connectionIdleTimeout;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public boolean removeJob(JobKey key) throws JobPersistenceException
+	/**
+	 * Sets the number of milliseconds a pooled HTTP connection can be idle before it is closed. Defaults to <code>30000</code>.
+	 * 
+	 * @param connectionIdleTimeout The idle timeout of pooled HTTP connections.
+	 */
+	public void setConnectionIdleTimeout(long connectionIdleTimeout)
 	{
-		String requestURL = getTypeURL(JOB_TYPE, key.toString());
-		HttpResponse response = httpCommunicator.request("DELETE", requestURL);
-		
-		if (isOK(response))
-		{
-			LOGGER.debug("Successfully removed job {}", key);
-			return true;
-		}
-		else
+		if (connectionIdleTimeout <= 0)
 		{
-			LOGGER.warn("Got '{} {}' when attempting to remove job {}", new Object[] { response.getResponseCode(), response.getResponseMessage(), key });
-			return false;
+			throw new IllegalArgumentException("The property 'connectionIdleTimeout' must be positive");
 		}
+		this.connectionIdleTimeout = connectionIdleTimeout;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public boolean removeJobs(List<JobKey> keys) throws JobPersistenceException
+	/**
+	 * Gets the number of milliseconds a pooled HTTP connection can be idle before it is validated on reuse.
+	 * 
+	 * @return Returns the inactivity period after which pooled HTTP connections are validated.
+	 */
+	public long getValidateAfterInactivity()
 	{
-		boolean failed = false;
-		for (JobKey key : keys)
-		{
-			failed |= !removeJob(key);
-		}
-		return !failed;
+		return validateAfterInactivity;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public JobDetail retrieveJob(JobKey jobKey) throws JobPersistenceException
+	/**
+	 * Sets the number of milliseconds a pooled HTTP connection can be idle before it is validated on reuse. Defaults to <code>2000</code>.
+	 * 
+	 * @param validateAfterInactivity The inactivity period after which pooled HTTP connections are validated.
+	 */
+	public void setValidateAfterInactivity(long validateAfterInactivity)
 	{
-		String requestURL = getTypeURL(JOB_TYPE, jobKey.toString());
-		HttpResponse response = httpCommunicator.request("GET", requestURL);
-		if (!isOK(response))
-		{
-			LOGGER.debug("Error when requesting job {}", jobKey);
-			return null;
-		}
-		
-		GetResult<JobWrapper> result = serializer.from(response.getResponseData(), new TypeToken<GetResult<JobWrapper>>() {});
-		if (!result.isFound())
+		if (validateAfterInactivity < 0)
 		{
-			LOGGER.debug("Did not find any jobs with the key {}", jobKey);
-			return null;
+			throw new IllegalArgumentException("The property 'validateAfterInactivity' cannot be negative");
 		}
-		
-		JobWrapper jobWrapper = result.getSource();
-		return fromWrapper(jobWrapper);
+		this.validateAfterInactivity = validateAfterInactivity;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public void storeTrigger(OperableTrigger newTrigger, boolean replaceExisting) throws ObjectAlreadyExistsException, JobPersistenceException
+	/**
+	 * Gets whether or not HTTP requests are made over non-blocking connections.
+	 * 
+	 * @return Returns <code>true</code> if HTTP requests are made asynchronously.
+	 */
+	public boolean isAsyncTransport()
 	{
-		TriggerKey key = newTrigger.getKey();
-		String requestURL = getTypeURL(TRIGGER_TYPE, key.toString());
+		return asyncTransport;
+	}
 
-		TriggerWrapper triggerWrapper = toTriggerWrapper(newTrigger, STATE_WAITING);
-		String requestData = serializer.to(triggerWrapper);
-		
-		HttpResponse response = httpCommunicator.request("PUT", requestURL, requestData);
-		
-		int responseCode = response.getResponseCode();
-		if (responseCode == 200 || responseCode == 201)
-		{
-			String responseData = response.getResponseData();
-			PutResult result = serializer.from(responseData, new TypeToken<PutResult>() {});
-			
-			if (!result.isCreated())
-			{
-				throw new ObjectAlreadyExistsException(newTrigger);
-			}
-		}
-		else
-		{
-			throw new JobPersistenceException("Error when storing trigger: " + responseCode + " " + response.getResponseMessage());
-		}
-		
-		LOGGER.info("Succesfully stored trigger '{}'", key.toString());
+	/**
+	 * Sets whether or not HTTP requests are made over non-blocking connections, so that the chunks of a bulk
+	 * request are sent concurrently. Takes precedence over connection pooling. Defaults to <code>false</code>.
+	 * 
+	 * @param asyncTransport <code>true</code> if HTTP requests should be made asynchronously.
+	 */
+	public void setAsyncTransport(boolean asyncTransport)
+	{
+		this.asyncTransport = asyncTransport;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public boolean removeTrigger(TriggerKey key) throws JobPersistenceException
+	/**
+	 * Gets the number of threads that complete asynchronous HTTP requests.
+	 * 
+	 * @return Returns the number of I/O threads.
+	 */
+	public int getIoThreads()
 	{
-		String requestURL = getTypeURL(TRIGGER_TYPE, key.toString());
-		HttpResponse response = httpCommunicator.request("DELETE", requestURL);
-		
-		if (isOK(response))
-		{
-			LOGGER.debug("Successfully removed trigger {}", key);
-			return true;
-		}
-		else
-		{
-			LOGGER.warn("Got '{} {}' when attempting to remove trigger {}", new Object[] { response.getResponseCode(), response.getResponseMessage(), key });
-			return false;
-		}
+		return ioThreads;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public boolean removeTriggers(List<TriggerKey> keys) throws JobPersistenceException
+	/**
+	 * Sets the number of threads that complete asynchronous HTTP requests. Defaults to <code>2</code>.
+	 * 
+	 * @param ioThreads The number of I/O threads.
+	 */
+	public void setIoThreads(int ioThreads)
 	{
-		boolean failed = false;
-		for (TriggerKey key : keys)
+		if (ioThreads <= 0)
 		{
-			failed |= !removeTrigger(key);
+			throw new IllegalArgumentException("The property 'ioThreads' must be positive");
 		}
-		return !failed;
+		this.ioThreads = ioThreads;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public boolean replaceTrigger(TriggerKey key, OperableTrigger newTrigger) throws JobPersistenceException
+	/**
+	 * Gets the maximum number of times a failed HTTP request is made again.
+	 * 
+	 * @return Returns the maximum number of retries.
+	 */
+	public int getMaxRetries()
 	{
-		boolean removed = removeTrigger(key);
-		storeTrigger(newTrigger, false);
-		return removed;
+		return maxRetries;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public OperableTrigger retrieveTrigger(TriggerKey triggerKey) throws JobPersistenceException
+	/**
+	 * Sets the maximum number of times a failed HTTP request is made again. Only requests that cannot be applied twice
+	 * are retried: reads, requests that could not connect and requests rejected with <code>429</code> or <code>503</code>.
+	 * Defaults to <code>2</code>.
+	 * 
+	 * @param maxRetries The maximum number of retries, or <code>0</code> to never retry.
+	 */
+	public void setMaxRetries(int maxRetries)
 	{
-		return null;
+		if (maxRetries < 0)
+		{
+			throw new IllegalArgumentException("The property 'maxRetries' cannot be negative");
+		}
+		this.maxRetries = maxRetries;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public boolean checkExists(JobKey jobKey) throws JobPersistenceException
+	/**
+	 * Gets the number of milliseconds to wait before the first retry of a failed HTTP request.
+	 * 
+	 * @return Returns the retry backoff.
+	 */
+	public long getRetryBackoff()
 	{
-		String requestURL = getTypeURL(JOB_TYPE, jobKey.toString());
-		HttpResponse response = httpCommunicator.request("GET", requestURL);
-		return isOK(response);
+		return retryBackoff;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public boolean checkExists(TriggerKey triggerKey) throws JobPersistenceException
+	/**
+	 * Sets the number of milliseconds to wait before the first retry of a failed HTTP request. The backoff doubles
+	 * for each retry and is jittered. Defaults to <code>100</code>.
+	 * 
+	 * @param retryBackoff The retry backoff.
+	 */
+	public void setRetryBackoff(long retryBackoff)
 	{
-		String requestURL = getTypeURL(TRIGGER_TYPE, triggerKey.toString());
-		HttpResponse response = httpCommunicator.request("GET", requestURL);
-		return isOK(response);
+		if (retryBackoff <= 0)
+		{
+			throw new IllegalArgumentException("The property 'retryBackoff' must be positive");
+		}
+		this.retryBackoff = retryBackoff;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public void clearAllSchedulingData() throws JobPersistenceException
+	/**
+	 * Gets the maximum number of milliseconds to wait before a retry of a failed HTTP request.
+	 * 
+	 * @return Returns the maximum retry backoff.
+	 */
+	public long getMaxRetryBackoff()
 	{
+		return maxRetryBackoff;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public void storeCalendar(String name, Calendar calendar, boolean replaceExisting, boolean updateTriggers)
-			throws ObjectAlreadyExistsException, JobPersistenceException
+	/**
+	 * Sets the maximum number of milliseconds to wait before a retry of a failed HTTP request. Defaults to <code>2000</code>.
+	 * 
+	 * @param maxRetryBackoff The maximum retry backoff.
+	 */
+	public void setMaxRetryBackoff(long maxRetryBackoff)
 	{
+		if (maxRetryBackoff <= 0)
+		{
+			throw new IllegalArgumentException("The property 'maxRetryBackoff' must be positive");
+		}
+		this.maxRetryBackoff = maxRetryBackoff;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public boolean removeCalendar(String calName) throws JobPersistenceException
+	/**
+	 * Gets the number of consecutive failed HTTP requests that opens the circuit breaker.
+	 * 
+	 * @return Returns the failure threshold of the circuit breaker.
+	 */
+	public int getCircuitBreakerThreshold()
 	{
-		return false;
+		return circuitBreakerThreshold;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public Calendar retrieveCalendar(String calName) throws JobPersistenceException
+	/**
+	 * Sets the number of consecutive failed HTTP requests that opens the circuit breaker. While the breaker is open,
+	 * requests fail immediately instead of waiting for elasticsearch. Defaults to <code>10</code>.
+	 * 
+	 * @param circuitBreakerThreshold The failure threshold, or <code>0</code> to disable the circuit breaker.
+	 */
+	public void setCircuitBreakerThreshold(int circuitBreakerThreshold)
 	{
-		return null;
+		if (circuitBreakerThreshold < 0)
+		{
+			throw new IllegalArgumentException("The property 'circuitBreakerThreshold' cannot be negative");
+		}
+		this.circuitBreakerThreshold = circuitBreakerThreshold;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public int getNumberOfJobs() throws JobPersistenceException
+	/**
+	 * Gets the number of milliseconds the circuit breaker stays open before a trial request is made.
+	 * 
+	 * @return Returns the open time of the circuit breaker.
+	 */
+	public long getCircuitBreakerOpenTime()
 	{
-		String requestURL = getTypeURL(JOB_TYPE, "_count");
-		HttpResponse response = httpCommunicator.request("GET", requestURL);
-		if (isOK(response))
-		{
-			CountResult result = serializer.from(response.getResponseData(), new TypeToken<CountResult>() {});
-			return result.getCount();
-		}
-		throw new JobPersistenceException("Got HTTP response code " + response.getResponseCode() + " when counting jobs");
+		return circuitBreakerOpenTime;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public int getNumberOfTriggers() throws JobPersistenceException
+	/**
+	 * Sets the number of milliseconds the circuit breaker stays open before a trial request is made. Defaults to <code>5000</code>.
+	 * 
+	 * @param circuitBreakerOpenTime The open time of the circuit breaker.
+	 */
+	public void setCircuitBreakerOpenTime(long circuitBreakerOpenTime)
 	{
-		String requestURL = getTypeURL(TRIGGER_TYPE, "_count");
-		HttpResponse response = httpCommunicator.request("GET", requestURL);
-		if (isOK(response))
+		if (circuitBreakerOpenTime <= 0)
 		{
-			CountResult result = serializer.from(response.getResponseData(), new TypeToken<CountResult>() {});
-			return result.getCount();
+			throw new IllegalArgumentException("The property 'circuitBreakerOpenTime' must be positive");
 		}
-		throw new JobPersistenceException("Got HTTP response code " + response.getResponseCode() + " when counting triggers");
+		this.circuitBreakerOpenTime = circuitBreakerOpenTime;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public int getNumberOfCalendars() throws JobPersistenceException
+	/**
+	 * Gets the maximum number of trigger versions remembered between state transitions.
+	 * 
+	 * @return Returns the maximum number of remembered trigger versions.
+	 */
+	public int getVersionCacheSize()
 	{
-		return 0;
+		return versionCacheSize;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public Set<JobKey> getJobKeys(GroupMatcher<JobKey> matcher) throws JobPersistenceException
+	/**
+	 * Sets the maximum number of trigger versions remembered between state transitions. Defaults to <code>10000</code>.
+	 * <p>
+	 * Remembered versions let the job store update triggers without reading them first. Setting this to zero
+	 * disables the cache.
+	 * 
+	 * @param versionCacheSize The maximum number of remembered trigger versions.
+	 */
+	public void setVersionCacheSize(int versionCacheSize)
 	{
-		return null;
+		if (versionCacheSize < 0)
+		{
+			throw new IllegalArgumentException("The property 'versionCacheSize' cannot be negative");
+		}
+		this.versionCacheSize = versionCacheSize;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public Set<TriggerKey> getTriggerKeys(GroupMatcher<TriggerKey> matcher) throws JobPersistenceException
+	/**
+	 * Gets the maximum number of cached jobs.
+	 * 
+	 * @return Returns the maximum number of cached jobs.
+	 */
+	public int getJobCacheSize()
 	{
-		return null;
+		return jobCacheSize;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public List<String> getJobGroupNames() throws JobPersistenceException
+	/**
+	 * Sets the maximum number of cached jobs. Defaults to <code>1000</code>.
+	 * <p>
+	 * Cached jobs are used when firing triggers, so that the job does not have to be read and its class loaded
+	 * on every fire. Setting this to zero disables the cache.
+	 * 
+	 * @param jobCacheSize The maximum number of cached jobs.
+	 */
+	public void setJobCacheSize(int jobCacheSize)
 	{
-		return null;
+		if (jobCacheSize < 0)
+		{
+			throw new IllegalArgumentException("The property 'jobCacheSize' cannot be negative");
+		}
+		this.jobCacheSize = jobCacheSize;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public List<String> getTriggerGroupNames() throws JobPersistenceException
+	/**
+	 * Gets the number of milliseconds a job is cached.
+	 * 
+	 * @return Returns the number of milliseconds a job is cached.
+	 */
+	public long getJobCacheTimeToLive()
 	{
-		return null;
+		return jobCacheTimeToLive;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public List<String> getCalendarNames() throws JobPersistenceException
+	/**
+	 * Sets the number of milliseconds a job is cached. Defaults to <code>60000</code>.
+	 * <p>
+	 * Jobs stored or removed by this scheduler are invalidated immediately, but changes made by other
+	 * schedulers are not seen until the cached job expires, unless {@link #setJobCacheRevalidate(boolean) revalidation}
+	 * is enabled. Setting this to zero keeps jobs until they are evicted.
+	 * 
+	 * @param jobCacheTimeToLive The number of milliseconds a job is cached.
+	 */
+	public void setJobCacheTimeToLive(long jobCacheTimeToLive)
 	{
-		return null;
+		if (jobCacheTimeToLive < 0)
+		{
+			throw new IllegalArgumentException("The property 'jobCacheTimeToLive' cannot be negative");
+		}
+		this.jobCacheTimeToLive = jobCacheTimeToLive;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public List<OperableTrigger> getTriggersForJob(JobKey jobKey) throws JobPersistenceException
+	/**
+	 * Gets whether or not cached jobs are revalidated before they are used.
+	 * 
+	 * @return Returns <code>true</code> if cached jobs are revalidated.
+	 */
+	public boolean isJobCacheRevalidate()
 	{
-		return null;
+		return jobCacheRevalidate;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public TriggerState getTriggerState(TriggerKey triggerKey) throws JobPersistenceException
+	/**
+	 * Sets whether or not cached jobs are revalidated before they are used. Defaults to <code>false</code>.
+	 * <p>
+	 * When enabled, the version of a cached job is compared to the version of the stored job, without
+	 * reading its source. This still requires a request, but changes made by other schedulers are seen immediately.
+	 * 
+	 * @param jobCacheRevalidate Whether or not cached jobs are revalidated.
+	 */
+	public void setJobCacheRevalidate(boolean jobCacheRevalidate)
 	{
-		return null;
+		this.jobCacheRevalidate = jobCacheRevalidate;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public void pauseTrigger(TriggerKey triggerKey) throws JobPersistenceException
+	/**
+	 * Gets whether or not completed triggers are written asynchronously.
+	 * 
+	 * @return Returns <code>true</code> if completed triggers are written asynchronously.
+	 */
+	public boolean isAsyncCompletion()
 	{
+		return asyncCompletion;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public Collection<String> pauseTriggers(GroupMatcher<TriggerKey> matcher) throws JobPersistenceException
+	/**
+	 * Sets whether or not completed triggers are written asynchronously. Defaults to <code>false</code>.
+	 * <p>
+	 * When enabled, the worker thread that executed a job only queues the completed trigger, and a background
+	 * thread writes the queued triggers in bulk. Until then, the trigger stays in the executing state in
+	 * elasticsearch. Completions that require a search, such as completing all triggers of a job, are still
+	 * written synchronously.
+	 * 
+	 * @param asyncCompletion Whether or not completed triggers are written asynchronously.
+	 */
+	public void setAsyncCompletion(boolean asyncCompletion)
 	{
-		return null;
+		this.asyncCompletion = asyncCompletion;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public void pauseJob(JobKey jobKey) throws JobPersistenceException
+	/**
+	 * Gets the maximum number of completed triggers waiting to be written.
+	 * 
+	 * @return Returns the maximum number of queued completions.
+	 */
+	public int getCompletionQueueSize()
 	{
+		return completionQueueSize;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public Collection<String> pauseJobs(GroupMatcher<JobKey> groupMatcher) throws JobPersistenceException
+	/**
+	 * Sets the maximum number of completed triggers waiting to be written. Defaults to <code>10000</code>.
+	 * <p>
+	 * When the queue is full, worker threads wait for room before they can take the next job.
+	 * 
+	 * @param completionQueueSize The maximum number of queued completions.
+	 */
+	public void setCompletionQueueSize(int completionQueueSize)
 	{
-		return null;
+		if (completionQueueSize <= 0)
+		{
+			throw new IllegalArgumentException("The property 'completionQueueSize' must be positive");
+		}
+		this.completionQueueSize = completionQueueSize;
 	}
 
-	/** {@inheritDoc} */
-	@Override
-	public void resumeTrigger(TriggerKey triggerKey) throws JobPersistenceException
+	/**
+	 * Gets the maximum number of completed triggers written in a single bulk request.
+	 * 
+	 * @return Returns the maximum number of completions per bulk request.
+	 */
+	public int getCompletionBatchSize()
 	{
+		return completionBatchSize;
 	}
 
-	/** {@inheritDoc} */
+	/**
+	 * Sets the maximum number of completed triggers written in a single bulk request. Defaults to <code>500</code>.
+	 * 
+	 * @param completionBatchSize The maximum number of completions per bulk request.
+	 */
+	public void setCompletionBatchSize(int completionBatchSize)
+	{
+		if (completionBatchSize <= 0)
+		{
+			throw new IllegalArgumentException("The property 'completionBatchSize' must be positive");
+		}
+		this.completionBatchSize = completionBatchSize;
+	}
+
+	/**
+	 * Gets the maximum number of milliseconds a completed trigger waits for more completions before it is written.
+	 * 
+	 * @return Returns the flush interval.
+	 */
+	public long getCompletionFlushInterval()
+	{
+		return completionFlushInterval;
+	}
+
+	/**
+	 * Sets the maximum number of milliseconds a completed trigger waits for more completions before it is written.
+	 * Defaults to <code>50</code>.
+	 * <p>
+	 * A full batch is written immediately. A longer interval gives larger batches, but delays the next fire of
+	 * the completed triggers.
+	 * 
+	 * @param completionFlushInterval The flush interval.
+	 */
+	public void setCompletionFlushInterval(long completionFlushInterval)
+	{
+		if (completionFlushInterval < 0)
+		{
+			throw new IllegalArgumentException("The property 'completionFlushInterval' cannot be negative");
+		}
+		this.completionFlushInterval = completionFlushInterval;
+	}
+
+	/**
+	 * Gets the number of milliseconds that an acquired or executing trigger is leased to the instance that owns it.
+	 * 
+	 * @return Returns the lease duration.
+	 */
+	public long getLeaseDuration()
+	{
+		return leaseDuration;
+	}
+
+	/**
+	 * Sets the number of milliseconds that an acquired or executing trigger is leased to the instance that owns it.
+	 * Defaults to <code>15000</code>.
+	 * <p>
+	 * Acquired triggers are leased until this long after their fire time, and executing triggers until this long
+	 * after they were fired. When the lease has expired and the owner has not checked in for this long either,
+	 * the trigger is made waiting again by another instance. The clocks of the instances must be synchronized
+	 * to well within this duration.
+	 * 
+	 * @param leaseDuration The lease duration.
+	 */
+	public void setLeaseDuration(long leaseDuration)
+	{
+		if (leaseDuration <= 0)
+		{
+			throw new IllegalArgumentException("The property 'leaseDuration' must be positive");
+		}
+		this.leaseDuration = leaseDuration;
+	}
+
+	/**
+	 * Gets the number of milliseconds between the check-ins of this instance.
+	 * 
+	 * @return Returns the heartbeat interval, or <code>0</code> if expired leases are not recovered.
+	 */
+	public long getHeartbeatInterval()
+	{
+		return heartbeatInterval;
+	}
+
+	/**
+	 * Sets the number of milliseconds between the check-ins of this instance, where each check-in also recovers
+	 * the triggers of instances that have stopped checking in. Must be shorter than the lease duration, and
+	 * <code>0</code> disables the recovery. Defaults to <code>5000</code>.
+	 * <p>
+	 * The recovery needs a unique instance ID, so the scheduler should be configured with
+	 * <code>org.quartz.scheduler.instanceId = AUTO</code>.
+	 * 
+	 * @param heartbeatInterval The heartbeat interval.
+	 */
+	public void setHeartbeatInterval(long heartbeatInterval)
+	{
+		if (heartbeatInterval < 0)
+		{
+			throw new IllegalArgumentException("The property 'heartbeatInterval' cannot be negative");
+		}
+		this.heartbeatInterval = heartbeatInterval;
+	}
+
+	/**
+	 * Gets whether or not the triggers are partitioned among the instances.
+	 * 
+	 * @return Returns <code>true</code> if the triggers are partitioned.
+	 */
+	public boolean isPartitioned()
+	{
+		return partitioned;
+	}
+
+	/**
+	 * Sets whether or not the triggers are partitioned among the instances. Defaults to <code>false</code>.
+	 * <p>
+	 * Each trigger is stored in a bucket derived from its key, and the buckets are assigned to the instances
+	 * that have checked in through consistent hashing. Each instance then only acquires the triggers of its own
+	 * buckets, instead of competing with every other instance for the same triggers. Triggers stored before
+	 * partitioning have no bucket, and are acquired by any instance until they are written again.
+	 * <p>
+	 * The buckets of an instance that stops checking in are taken over by the others once its heartbeat is
+	 * older than the lease duration. Must be set on all instances, and needs a positive heartbeat interval.
+	 * 
+	 * @param partitioned <code>true</code> if the triggers should be partitioned.
+	 */
+	public void setPartitioned(boolean partitioned)
+	{
+		this.partitioned = partitioned;
+	}
+
+	/**
+	 * Gets the maximum number of documents stored in a single bulk request.
+	 * 
+	 * @return Returns the maximum number of documents per bulk request.
+	 */
+	@Override
+	public int getBulkChunkDocuments()
+	{
+		return bulkChunkDocuments;
+	}
+
+	/**
+	 * Sets the maximum number of documents stored in a single bulk request. Defaults to <code>1000</code>.
+	 * <p>
+	 * Used when storing many jobs and triggers at once.
+	 * 
+	 * @param bulkChunkDocuments The maximum number of documents per bulk request.
+	 */
+	@Override
+	public void setBulkChunkDocuments(int bulkChunkDocuments)
+	{
+		if (bulkChunkDocuments <= 0)
+		{
+			throw new IllegalArgumentException("The property 'bulkChunkDocuments' must be positive");
+		}
+		this.bulkChunkDocuments = bulkChunkDocuments;
+	}
+
+	/**
+	 * Gets the approximate maximum size of a single bulk request.
+	 * 
+	 * @return Returns the maximum size of a bulk request, in bytes.
+	 */
+	@Override
+	public int getBulkChunkBytes()
+	{
+		return bulkChunkBytes;
+	}
+
+	/**
+	 * Sets the approximate maximum size of a single bulk request. Defaults to 5 MB.
+	 * <p>
+	 * The size is measured in characters of the request body, which equals bytes for documents
+	 * without non-ASCII characters. A single document larger than this is sent in a request of its own.
+	 * 
+	 * @param bulkChunkBytes The maximum size of a bulk request, in bytes.
+	 */
+	@Override
+	public void setBulkChunkBytes(int bulkChunkBytes)
+	{
+		if (bulkChunkBytes <= 0)
+		{
+			throw new IllegalArgumentException("The property 'bulkChunkBytes' must be positive");
+		}
+		this.bulkChunkBytes = bulkChunkBytes;
+	}
+
+	/**
+	 * Gets the factor of extra candidates searched for when acquiring triggers.
+	 * 
+	 * @return Returns the acquisition headroom.
+	 */
+	@Override
+	public double getAcquisitionHeadroom()
+	{
+		return acquisitionHeadroom;
+	}
+
+	/**
+	 * Sets the factor of extra candidates searched for when acquiring triggers. Defaults to <code>2</code>.
+	 * <p>
+	 * The acquisition search asks for the maximum number of triggers to acquire multiplied by this factor, so
+	 * that there are candidates left when other schedulers acquire some of the triggers first.
+	 * 
+	 * @param acquisitionHeadroom The acquisition headroom, at least <code>1</code>.
+	 */
+	@Override
+	public void setAcquisitionHeadroom(double acquisitionHeadroom)
+	{
+		if (acquisitionHeadroom < 1)
+		{
+			throw new IllegalArgumentException("The property 'acquisitionHeadroom' must be at least 1");
+		}
+		this.acquisitionHeadroom = acquisitionHeadroom;
+	}
+
+	public boolean isJmxExport()
+	{
+		return jmxExport;
+	}
+
+	/**
+	 * Sets whether or not the job store and its metrics are registered in the platform MBean server. Defaults to <code>false</code>.
+	 * <p>
+	 * The MBeans are named <code>com.viskan.quartz.elasticsearch:type=&lt;JobStore|Metrics&gt;,scheduler=&lt;instance name&gt;,instance=&lt;instance id&gt;</code>.
+	 * The job store MBean is described by {@link ElasticsearchJobStoreMXBean}.
+	 * 
+	 * @param jmxExport Whether or not the job store and its metrics are exported through JMX.
+	 */
+	public void setJmxExport(boolean jmxExport)
+	{
+		this.jmxExport = jmxExport;
+	}
+
+	/**
+	 * Gets the number of milliseconds of recent fires that the fire lag statistics cover.
+	 * 
+	 * @return Returns the fire lag window.
+	 */
+	public long getFireLagWindow()
+	{
+		return fireLagWindow;
+	}
+
+	/**
+	 * Sets the number of milliseconds of recent fires that the fire lag statistics cover. Defaults to <code>60000</code>.
+	 * <p>
+	 * The fire lag of a trigger is the time between its scheduled fire time and when it was actually fired.
+	 * 
+	 * @param fireLagWindow The fire lag window in milliseconds.
+	 */
+	public void setFireLagWindow(long fireLagWindow)
+	{
+		if (fireLagWindow <= 0)
+		{
+			throw new IllegalArgumentException("The property 'fireLagWindow' must be positive");
+		}
+		this.fireLagWindow = fireLagWindow;
+		metrics.getFireLagTracker().setWindow(fireLagWindow);
+	}
+
+	/**
+	 * Gets the fire lag in milliseconds above which a warning is logged.
+	 * 
+	 * @return Returns the slow fire threshold.
+	 */
+	@Override
+	public long getSlowFireThreshold()
+	{
+		return slowFireThreshold;
+	}
+
+	/**
+	 * Sets the fire lag in milliseconds above which a warning is logged. Defaults to <code>0</code>, which disables the warnings.
+	 * <p>
+	 * Slow fires are also counted in the fire lag statistics of the trigger group.
+	 * 
+	 * @param slowFireThreshold The slow fire threshold in milliseconds.
+	 */
+	@Override
+	public void setSlowFireThreshold(long slowFireThreshold)
+	{
+		if (slowFireThreshold < 0)
+		{
+			throw new IllegalArgumentException("The property 'slowFireThreshold' must not be negative");
+		}
+		this.slowFireThreshold = slowFireThreshold;
+		metrics.getFireLagTracker().setSlowFireThreshold(slowFireThreshold);
+	}
+
+	/**
+	 * Gets the usage of the job cache.
+	 * 
+	 * @return Returns the job cache statistics, or <code>null</code> if the job store is not initialized.
+	 */
+	public CacheStatistics getJobCacheStatistics()
+	{
+		return jobCache != null ? jobCache.getStatistics() : null;
+	}
+
+	/**
+	 * Gets the current usage of the HTTP connection pool.
+	 * 
+	 * @return Returns the connection pool statistics, or <code>null</code> if connection pooling is not used.
+	 */
+	public ConnectionPoolStatistics getConnectionPoolStatistics()
+	{
+		if (httpCommunicator instanceof PooledHttpCommunicator)
+		{
+			return ((PooledHttpCommunicator) httpCommunicator).getStatistics();
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the latency and throughput of the HTTP requests and job store operations.
+	 * 
+	 * @return Returns the metrics of this job store.
+	 */
+	public Metrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getLastAcquisitionMaxCount()
+	{
+		return lastAcquisitionMaxCount;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getLastAcquisitionCandidates()
+	{
+		return lastAcquisitionCandidates;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getLastAcquisitionSize()
+	{
+		return lastAcquisitionSize;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public double getLastAcquisitionTime()
+	{
+		return lastAcquisitionTime;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getRequestsInFlight()
+	{
+		return httpCommunicator != null ? httpCommunicator.getRequestsInFlight() : 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getCircuitBreakerState()
+	{
+		CircuitBreaker circuitBreaker = httpCommunicator != null ? httpCommunicator.getCircuitBreaker() : null;
+		return circuitBreaker != null ? circuitBreaker.getState().name() : "DISABLED";
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public double getJobCacheHitRatio()
+	{
+		return jobCache != null ? jobCache.getStatistics().getHitRatio() : 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public double getVersionCacheHitRatio()
+	{
+		return triggerVersions != null ? triggerVersions.getStatistics().getHitRatio() : 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getPendingCompletions()
+	{
+		return completionQueue != null ? completionQueue.size() : 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getRecoveredTriggers()
+	{
+		return recoveredTriggers.get();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getOwnedBuckets()
+	{
+		List<Integer> buckets = ownedBuckets;
+		return buckets != null ? buckets.size() : PartitionUtils.BUCKETS;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void initialize(ClassLoadHelper loadHelper, SchedulerSignaler signaler) throws SchedulerConfigException
+	{
+		this.signaler = signaler;
+		
+		if (hosts == null)
+		{
+			checkSetting(hostName,			"org.quartz.jobStore.hostName");
+		}
+		checkSetting(port,					"org.quartz.jobStore.port");
+		checkSetting(indexName,				"org.quartz.jobStore.indexName");
+		checkSetting(serializerClassName,	"org.quartz.jobStore.serializerClassName");
+		if (heartbeatInterval >= leaseDuration)
+		{
+			throw new SchedulerConfigException("The property 'org.quartz.jobStore.heartbeatInterval' must be less than 'org.quartz.jobStore.leaseDuration'");
+		}
+		if (partitioned && heartbeatInterval == 0)
+		{
+			throw new SchedulerConfigException("The property 'org.quartz.jobStore.partitioned' needs a positive 'org.quartz.jobStore.heartbeatInterval'");
+		}
+		
+		List<Node> nodes = getNodes();
+		LOGGER.info("Initializing against '{}' using index name '{}'", nodes != null ? nodes : hostName + ":" + port, indexName);
+		
+		createHttpCommunicator();
+		if (nodes != null)
+		{
+			NodeSelector.Strategy strategy = NODE_SELECTOR_LEAST_IN_FLIGHT.equals(nodeSelector) ? NodeSelector.Strategy.LEAST_IN_FLIGHT : NodeSelector.Strategy.ROUND_ROBIN;
+			httpCommunicator.setNodeSelector(new NodeSelector(nodes, strategy, deadNodeBackoff, maxDeadNodeBackoff));
+		}
+		createSerializer();
+		if (sniffNodes)
+		{
+			discoverNodes();
+		}
+		if (createIndex)
+		{
+			createIndex();
+		}
+		triggerVersions = new LruCache<>(versionCacheSize);
+		jobCache = new LruCache<>(jobCacheSize, jobCacheTimeToLive);
+		
+		if (asyncCompletion)
+		{
+			LOGGER.info("Writing completed triggers asynchronously in batches of at most {}", completionBatchSize);
+			completionQueue = new CompletionQueue(this, completionQueueSize, completionBatchSize, completionFlushInterval);
+			completionQueue.start("ElasticsearchJobStore-completion");
+		}
+		
+		if (jmxExport)
+		{
+			registerMBean("JobStore", this);
+			registerMBean("Metrics", metrics);
+		}
+	}
+	
+	/**
+	 * Gets the nodes to spread requests over, and takes the host name and port of the base URL from the first one.
+	 * 
+	 * @return Returns the nodes, or <code>null</code> if requests are only sent to the host name.
+	 */
+	private List<Node> getNodes() throws SchedulerConfigException
+	{
+		List<Node> nodes;
+		try
+		{
+			if (hosts != null)
+			{
+				nodes = Node.parse(hosts, port);
+			}
+			else if (sniffNodes)
+			{
+				nodes = Collections.singletonList(new Node(hostName, port));
+			}
+			else
+			{
+				return null;
+			}
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new SchedulerConfigException("Invalid property 'org.quartz.jobStore.hosts': " + e.getMessage(), e);
+		}
+		
+		if (nodes.isEmpty())
+		{
+			throw new SchedulerConfigException("The property 'org.quartz.jobStore.hosts' must contain at least one node");
+		}
+		hostName = nodes.get(0).getHost();
+		port = nodes.get(0).getPort();
+		return nodes;
+	}
+	
+	/**
+	 * Replaces the nodes to send requests to with the HTTP addresses of the nodes in the cluster.
+	 * The configured nodes are kept if the nodes cannot be discovered.
+	 */
+	private void discoverNodes()
+	{
+		try
+		{
+			HttpResponse response = httpCommunicator.request("GET", "http://" + hostName + ":" + port + "/_nodes/http");
+			if (!isOK(response))
+			{
+				LOGGER.warn("Got '{} {}' when discovering the nodes of the cluster", response.getResponseCode(), response.getResponseMessage());
+				return;
+			}
+			
+			List<Node> nodes = new ArrayList<>();
+			Object clusterNodes = fromResponse(response, TypeTokens.DATA_MAP).get("nodes");
+			if (clusterNodes instanceof Map)
+			{
+				for (Object clusterNode : ((Map<?, ?>) clusterNodes).values())
+				{
+					String address = getHttpAddress(clusterNode);
+					if (address != null)
+					{
+						nodes.addAll(Node.parse(address, port));
+					}
+				}
+			}
+			
+			if (nodes.isEmpty())
+			{
+				LOGGER.warn("Found no nodes with HTTP enabled in the cluster, using the configured nodes");
+				return;
+			}
+			httpCommunicator.getNodeSelector().setNodes(nodes);
+			LOGGER.info("Discovered the nodes {}", nodes);
+		}
+		catch (JobPersistenceException | IllegalArgumentException e)
+		{
+			LOGGER.warn("Could not discover the nodes of the cluster, using the configured nodes", e);
+		}
+	}
+	
+	/**
+	 * Gets the HTTP address of a node of the nodes info API, which is <code>inet[host/ip:port]</code>
+	 * in elasticsearch 1.x and <code>host/ip:port</code> or <code>ip:port</code> in later versions.
+	 */
+	private static String getHttpAddress(Object clusterNode)
+	{
+		if (!(clusterNode instanceof Map))
+		{
+			return null;
+		}
+		
+		Map<?, ?> info = (Map<?, ?>) clusterNode;
+		Object address = info.get("http_address");
+		if (address == null && info.get("http") instanceof Map)
+		{
+			address = ((Map<?, ?>) info.get("http")).get("publish_address");
+		}
+		if (!(address instanceof String))
+		{
+			return null;
+		}
+		
+		String value = (String) address;
+		if (value.startsWith("inet[") && value.endsWith("]"))
+		{
+			value = value.substring(5, value.length() - 1);
+		}
+		return value.substring(value.lastIndexOf('/') + 1);
+	}
+	
+	private void registerMBean(String type, Object mbean)
+	{
+		try
+		{
+			ObjectName name = new ObjectName("com.viskan.quartz.elasticsearch:type=" + type
+				+ ",scheduler=" + ObjectName.quote(instanceName != null ? instanceName : indexName)
+				+ ",instance=" + ObjectName.quote(instanceId != null ? instanceId : "NON_CLUSTERED"));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, name);
+			registeredMBeans.add(name);
+			LOGGER.info("Registered MBean '{}'", name);
+		}
+		catch (JMException e)
+		{
+			LOGGER.warn("Could not register the " + type + " MBean", e);
+		}
+	}
+
+	/**
+	 * Sets the HTTP communicator.
+	 * <p>
+	 * Exposed as package private to enable mocking.
+	 */
+	void createHttpCommunicator(HttpCommunicator httpCommunicator)
+	{
+		this.httpCommunicator = httpCommunicator;
+	}
+
+	private void createHttpCommunicator() throws SchedulerConfigException
+	{
+		if (asyncTransport)
+		{
+			LOGGER.info("Using asynchronous HTTP connections with at most {} per host and {} I/O threads", maxConnectionsPerHost, ioThreads);
+			try
+			{
+				createHttpCommunicator(new AsyncHttpCommunicator(maxConnectionsPerHost, connectionIdleTimeout, ioThreads));
+			}
+			catch (IOException e)
+			{
+				throw new SchedulerConfigException("Could not start the asynchronous HTTP communicator", e);
+			}
+		}
+		else if (connectionPooling)
+		{
+			LOGGER.info("Using pooled HTTP connections with at most {} connections, {} per host", maxConnections, maxConnectionsPerHost);
+			createHttpCommunicator(new PooledHttpCommunicator(maxConnections, maxConnectionsPerHost, connectionIdleTimeout, validateAfterInactivity));
+		}
+		else
+		{
+			createHttpCommunicator(new HttpCommunicator());
+		}
+		httpCommunicator.setReadTimeout(readTimeout);
+		httpCommunicator.setMetrics(metrics);
+		if (maxRetries > 0)
+		{
+			httpCommunicator.setRetryPolicy(new RetryPolicy(maxRetries, retryBackoff, maxRetryBackoff));
+		}
+		if (circuitBreakerThreshold > 0)
+		{
+			httpCommunicator.setCircuitBreaker(new CircuitBreaker(circuitBreakerThreshold, circuitBreakerOpenTime));
+		}
+	}
+
+	/**
+	 * Creates the index if it does not exist, otherwise puts the mappings of the job and trigger types.
+	 * <p>
+	 * Exposed as package private to enable testing.
+	 */
+	void createIndex() throws SchedulerConfigException
+	{
+		try
+		{
+			HttpResponse response = httpCommunicator.request("GET", getBaseURL() + "_mapping");
+			if (response.getResponseCode() == 404)
+			{
+				Map<String, Object> indexDefinition = getIndexDefinition(numberOfShards, numberOfReplicas, getTypeName(JOB_TYPE), getTypeName(TRIGGER_TYPE), getTypeName(SCHEDULER_TYPE));
+				response = httpCommunicator.request("PUT", getBaseURL(), serializer.to(indexDefinition));
+				if (isOK(response))
+				{
+					LOGGER.info("Created index '{}' with {} shards and {} replicas", new Object[] { indexName, numberOfShards, numberOfReplicas });
+					return;
+				}
+				
+				// Another scheduler might have created the index at the same time
+				LOGGER.debug("Got '{} {}' when creating index '{}'", new Object[] { response.getResponseCode(), response.getResponseMessage(), indexName });
+			}
+			else if (!isOK(response))
+			{
+				throw new SchedulerConfigException("Got '" + response.getResponseCode() + " " + response.getResponseMessage() + "' when requesting index '" + indexName + "'");
+			}
+			
+			putMapping(JOB_TYPE, getJobMapping());
+			putMapping(TRIGGER_TYPE, getTriggerMapping());
+			putMapping(SCHEDULER_TYPE, getSchedulerMapping());
+		}
+		catch (JobPersistenceException e)
+		{
+			throw new SchedulerConfigException("Could not create index '" + indexName + "'", e);
+		}
+	}
+	
+	private void putMapping(String type, Map<String, Object> mapping) throws JobPersistenceException, SchedulerConfigException
+	{
+		String typeName = getTypeName(type);
+		Map<String, Object> mappingBody = new HashMap<>();
+		mappingBody.put(typeName, mapping);
+		
+		HttpResponse response = httpCommunicator.request("PUT", getBaseURL() + "_mapping/" + typeName, serializer.to(mappingBody));
+		if (!isOK(response))
+		{
+			throw new SchedulerConfigException("The mapping of type '" + typeName + "' could not be put: " + response.getResponseCode() + " " + response.getResponseData().trim());
+		}
+		LOGGER.info("Verified mapping of type '{}'", typeName);
+	}
+
+	/**
+	 * Deserializes the body of given response, directly from its bytes if the serializer supports it.
+	 */
+	private <T> T fromResponse(HttpResponse response, TypeToken<T> type) throws JobPersistenceException
+	{
+		if (!(serializer instanceof IStreamingSerializer))
+		{
+			return serializer.from(response.getResponseData(), type);
+		}
+		
+		try
+		{
+			return ((IStreamingSerializer) serializer).from(response.getResponseStream(), type);
+		}
+		catch (IOException e)
+		{
+			throw new JobPersistenceException("Could not read JSON from response", e);
+		}
+	}
+
+	private void createSerializer() throws SchedulerConfigException
+	{
+		try
+		{
+			Class<? extends ISerializer> serializerClass = Class.forName(serializerClassName).asSubclass(ISerializer.class);
+			serializer = serializerClass.newInstance();
+			if (domainSerializer)
+			{
+				serializer = new DomainSerializer(serializer);
+			}
+		}
+		catch (Exception e)
+		{
+			throw new SchedulerConfigException("Could not create serializer", e);
+		}
+	}
+	
+	private void checkSetting(Object setting, String propertyKey) throws SchedulerConfigException
+	{
+		if (setting == null)
+		{
+			throw new SchedulerConfigException("The property '" + propertyKey + "' must be set");
+		}
+	}
+	
+	private String getTypeURL(String type, String data)
+	{
+		return new StringBuilder(getBaseURL())
+			.append(typePrefix)
+			.append(type)
+			.append("/")
+			.append(data)
+			.toString();
+	}
+	
+	private String getBaseURL()
+	{
+		return new StringBuilder("http://")
+			.append(hostName)
+			.append(":")
+			.append(port)
+			.append("/")
+			.append(indexName)
+			.append("/")
+			.toString();
+	}
+	
+	private String getTypeName(String type)
+	{
+		return typePrefix + type;
+	}
+	
+	/**
+	 * Executes a bulk request.
+	 * 
+	 * @return Returns the items of the bulk result, in the same order as the actions of the request,
+	 *         or <code>null</code> if the request as a whole failed.
+	 */
+	private List<BulkItem> executeBulk(BulkRequestBuilder bulkRequest) throws JobPersistenceException
+	{
+		return getBulkItems(bulkRequest, httpCommunicator.request("POST", getBaseURL() + "_bulk", bulkRequest.build()));
+	}
+	
+	/**
+	 * Executes several bulk requests, concurrently if the HTTP communicator is asynchronous.
+	 * 
+	 * @return Returns the items of each bulk result, as returned by {@link #executeBulk(BulkRequestBuilder)}.
+	 */
+	private List<List<BulkItem>> executeBulks(List<BulkRequestBuilder> bulkRequests) throws JobPersistenceException
+	{
+		List<List<BulkItem>> results = new ArrayList<>(bulkRequests.size());
+		if (!(httpCommunicator instanceof AsyncHttpCommunicator) || bulkRequests.size() == 1)
+		{
+			for (BulkRequestBuilder bulkRequest : bulkRequests)
+			{
+				results.add(executeBulk(bulkRequest));
+			}
+			return results;
+		}
+		
+		AsyncHttpCommunicator asyncCommunicator = (AsyncHttpCommunicator) httpCommunicator;
+		List<Future<HttpResponse>> responses = new ArrayList<>(bulkRequests.size());
+		for (BulkRequestBuilder bulkRequest : bulkRequests)
+		{
+			responses.add(asyncCommunicator.requestAsync("POST", getBaseURL() + "_bulk", bulkRequest.build()));
+		}
+		
+		// Wait for all responses before failing, so that no request is left in flight
+		JobPersistenceException exception = null;
+		for (int i = 0; i < bulkRequests.size(); i++)
+		{
+			try
+			{
+				results.add(getBulkItems(bulkRequests.get(i), AsyncHttpCommunicator.getResponse(responses.get(i))));
+			}
+			catch (JobPersistenceException e)
+			{
+				if (exception == null)
+				{
+					exception = e;
+				}
+			}
+		}
+		if (exception != null)
+		{
+			throw exception;
+		}
+		return results;
+	}
+	
+	private List<BulkItem> getBulkItems(BulkRequestBuilder bulkRequest, HttpResponse response) throws JobPersistenceException
+	{
+		if (!isOK(response))
+		{
+			LOGGER.warn("Got '{} {}' when executing bulk request", response.getResponseCode(), response.getResponseMessage());
+			return null;
+		}
+		
+		BulkResult result = fromResponse(response, TypeTokens.BULK);
+		if (result.getItems() == null || result.getItems().size() != bulkRequest.getActions())
+		{
+			throw new JobPersistenceException("Bulk request with " + bulkRequest.getActions() + " actions got an unexpected number of items in the response");
+		}
+		
+		if (result.isErrors())
+		{
+			int conflicts = 0;
+			for (BulkItem item : result.getItems())
+			{
+				if (item.getResult().isConflict())
+				{
+					conflicts++;
+				}
+			}
+			metrics.recordConflicts(conflicts);
+		}
+		return result.getItems();
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public void schedulerStarted() throws SchedulerException
+	{
+		if (heartbeatInterval == 0)
+		{
+			return;
+		}
+		if (instanceId == null || NON_CLUSTERED_INSTANCE_ID.equals(instanceId))
+		{
+			LOGGER.warn("Expired leases will not be recovered{} since the scheduler has no unique instance ID, set 'org.quartz.scheduler.instanceId' to 'AUTO'", partitioned ? " and triggers will not be partitioned" : "");
+			return;
+		}
+		
+		// Triggers that are still owned by this instance ID were left by an earlier run that did not shut down
+		try
+		{
+			recoverTriggers(getLeasedTriggersSearchBody(Collections.singletonList(getTerm("owner", instanceId))));
+		}
+		catch (JobPersistenceException e)
+		{
+			LOGGER.error("Exception occurred when recovering the triggers of instance " + instanceId, e);
+		}
+		
+		LOGGER.info("Checking in every {} ms and recovering leases that expired more than {} ms after the last check-in", heartbeatInterval, leaseDuration);
+		leaseSweeper = new LeaseSweeper(this, heartbeatInterval);
+		leaseSweeper.start("ElasticsearchJobStore-lease");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void schedulerPaused()
+	{
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void schedulerResumed()
+	{
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void shutdown()
+	{
+		for (ObjectName name : registeredMBeans)
+		{
+			try
+			{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			}
+			catch (JMException e)
+			{
+				LOGGER.warn("Could not unregister MBean '" + name + "'", e);
+			}
+		}
+		registeredMBeans.clear();
+		
+		if (leaseSweeper != null)
+		{
+			leaseSweeper.shutdown();
+		}
+		
+		if (completionQueue != null)
+		{
+			completionQueue.shutdown();
+		}
+		
+		if (httpCommunicator instanceof Closeable)
+		{
+			try
+			{
+				((Closeable) httpCommunicator).close();
+			}
+			catch (IOException e)
+			{
+				LOGGER.warn("Could not close the HTTP communicator", e);
+			}
+		}
+	}
+
+	/** Always returns <code>true</code>. */
+	@Override
+	public boolean supportsPersistence()
+	{
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getEstimatedTimeToReleaseAndAcquireTrigger()
+	{
+		return 10;
+	}
+
+	/** Always returns <code>true</code>. */
+	@Override
+	public boolean isClustered()
+	{
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void storeJobAndTrigger(JobDetail newJob, OperableTrigger newTrigger) throws ObjectAlreadyExistsException, JobPersistenceException
+	{
+		long startTime = System.nanoTime();
+		boolean failed = false;
+		try
+		{
+			List<StoredDocument> documents = new ArrayList<>();
+			documents.add(new StoredDocument(newJob));
+			documents.add(new StoredDocument(newTrigger, wrapTrigger(newTrigger, STATE_WAITING)));
+			storeInBulk(documents, false);
+		}
+		catch (JobPersistenceException | RuntimeException e)
+		{
+			failed = true;
+			throw e;
+		}
+		finally
+		{
+			metrics.recordOperation(Metrics.OPERATION_STORE, startTime, failed);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void storeJob(JobDetail newJob, boolean replaceExisting) throws ObjectAlreadyExistsException, JobPersistenceException
+	{
+		long startTime = System.nanoTime();
+		boolean failed = false;
+		try
+		{
+			JobKey key = newJob.getKey();
+			String jobURL = getTypeURL(JOB_TYPE, key.toString());
+
+			JobWrapper jobWrapper = toJobWrapper(newJob);
+			String requestData = serializer.to(jobWrapper);
+		
+			HttpResponse response;
+			try
+			{
+				response = httpCommunicator.request("PUT", jobURL, requestData);
+			}
+			finally
+			{
+				// Cleared after the write, since a concurrent read could otherwise cache the previous version again
+				jobCache.remove(key);
+			}
+		
+			int responseCode = response.getResponseCode();
+			if (responseCode == 200 || responseCode == 201)
+			{
+				PutResult result = fromResponse(response, TypeTokens.PUT);
+			
+				if (!result.isCreated())
+				{
+					throw new ObjectAlreadyExistsException(newJob);
+				}
+			}
+			else
+			{
+				throw new JobPersistenceException("Error when storing job: " + responseCode + " " + response.getResponseMessage());
+			}
+		
+			LOGGER.info("Succesfully stored job '{}'", key.toString());
+		}
+		catch (JobPersistenceException | RuntimeException e)
+		{
+			failed = true;
+			throw e;
+		}
+		finally
+		{
+			metrics.recordOperation(Metrics.OPERATION_STORE, startTime, failed);
+		}
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public void storeJobsAndTriggers(Map<JobDetail, Set<? extends Trigger>> triggersAndJobs, boolean replace)
+			throws ObjectAlreadyExistsException, JobPersistenceException
+	{
+		long startTime = System.nanoTime();
+		boolean failed = false;
+		try
+		{
+			List<StoredDocument> documents = new ArrayList<>();
+			for (Entry<JobDetail, Set<? extends Trigger>> entry : triggersAndJobs.entrySet())
+			{
+				documents.add(new StoredDocument(entry.getKey()));
+				for (Trigger trigger : entry.getValue())
+				{
+					documents.add(new StoredDocument((OperableTrigger) trigger, wrapTrigger((OperableTrigger) trigger, STATE_WAITING)));
+				}
+			}
+			storeInBulk(documents, replace);
+		}
+		catch (JobPersistenceException | RuntimeException e)
+		{
+			failed = true;
+			throw e;
+		}
+		finally
+		{
+			metrics.recordOperation(Metrics.OPERATION_STORE, startTime, failed);
+		}
+	}
+	
+	/**
+	 * Stores jobs and triggers using one or more bulk requests, limited by the bulk chunk size.
+	 * <p>
+	 * Documents are created if they should not replace existing ones. All documents that do not
+	 * already exist are stored before an {@link ObjectAlreadyExistsException} is thrown for the
+	 * first one that did.
+	 */
+	private void storeInBulk(List<StoredDocument> documents, boolean replace) throws ObjectAlreadyExistsException, JobPersistenceException
+	{
+		List<List<StoredDocument>> chunks = new ArrayList<>();
+		List<BulkRequestBuilder> bulkRequests = new ArrayList<>();
+		List<StoredDocument> chunk = new ArrayList<>();
+		BulkRequestBuilder bulkRequest = new BulkRequestBuilder(serializer);
+		for (int i = 0; i < documents.size(); i++)
+		{
+			StoredDocument document = documents.get(i);
+			if (replace)
+			{
+				bulkRequest.index(getTypeName(document.type), document.id, null, document.source);
+			}
+			else
+			{
+				bulkRequest.create(getTypeName(document.type), document.id, document.source);
+			}
+			chunk.add(document);
+			
+			boolean last = i == documents.size() - 1;
+			if (last || bulkRequest.getActions() >= bulkChunkDocuments || bulkRequest.getLength() >= bulkChunkBytes)
+			{
+				chunks.add(chunk);
+				bulkRequests.add(bulkRequest);
+				chunk = new ArrayList<>();
+				bulkRequest = new BulkRequestBuilder(serializer);
+			}
+		}
+		
+		LOGGER.debug("Storing {} jobs and triggers in {} bulk requests", documents.size(), bulkRequests.size());
+		List<List<BulkItem>> results;
+		try
+		{
+			results = executeBulks(bulkRequests);
+		}
+		finally
+		{
+			for (StoredDocument document : documents)
+			{
+				if (document.job != null)
+				{
+					jobCache.remove(document.job.getKey());
+				}
+			}
+		}
+		ObjectAlreadyExistsException alreadyExists = null;
+		for (int i = 0; i < chunks.size(); i++)
+		{
+			ObjectAlreadyExistsException exception = storeChunk(results.get(i), chunks.get(i));
+			if (alreadyExists == null)
+			{
+				alreadyExists = exception;
+			}
+		}
+		
+		if (alreadyExists != null)
+		{
+			throw alreadyExists;
+		}
+	}
+	
+	/**
+	 * Handles the result of a bulk request that stored jobs and triggers.
+	 * 
+	 * @return Returns the exception of the first document that already existed, or <code>null</code> if all documents were stored.
+	 */
+	private ObjectAlreadyExistsException storeChunk(List<BulkItem> items, List<StoredDocument> chunk) throws JobPersistenceException
+	{
+		if (items == null)
+		{
+			throw new JobPersistenceException("Error when storing " + chunk.size() + " jobs and triggers");
+		}
+		
+		ObjectAlreadyExistsException alreadyExists = null;
+		for (int i = 0; i < chunk.size(); i++)
+		{
+			StoredDocument document = chunk.get(i);
+			BulkItemResult itemResult = items.get(i).getResult();
+			if (itemResult.isSuccessful())
+			{
+				if (document.job == null)
+				{
+					rememberVersion((TriggerWrapper) document.source, itemResult.getVersion());
+				}
+			}
+			else if (itemResult.isConflict())
+			{
+				if (alreadyExists == null)
+				{
+					alreadyExists = document.job != null ? new ObjectAlreadyExistsException(document.job) : new ObjectAlreadyExistsException(document.trigger);
+				}
+			}
+			else
+			{
+				throw new JobPersistenceException("Error when storing " + document.type + " " + document.id + ": " + itemResult.getStatus() + " " + itemResult.getError());
+			}
+		}
+		
+		LOGGER.info("Succesfully stored {} jobs and triggers", chunk.size());
+		return alreadyExists;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean removeJob(JobKey key) throws JobPersistenceException
+	{
+		long startTime = System.nanoTime();
+		boolean failed = false;
+		try
+		{
+			String requestURL = getTypeURL(JOB_TYPE, key.toString());
+			HttpResponse response;
+			try
+			{
+				response = httpCommunicator.request("DELETE", requestURL);
+			}
+			finally
+			{
+				jobCache.remove(key);
+			}
+		
+			if (isOK(response))
+			{
+				LOGGER.debug("Successfully removed job {}", key);
+				return true;
+			}
+			else
+			{
+				LOGGER.warn("Got '{} {}' when attempting to remove job {}", new Object[] { response.getResponseCode(), response.getResponseMessage(), key });
+				return false;
+			}
+		}
+		catch (JobPersistenceException | RuntimeException e)
+		{
+			failed = true;
+			throw e;
+		}
+		finally
+		{
+			metrics.recordOperation(Metrics.OPERATION_REMOVE, startTime, failed);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean removeJobs(List<JobKey> keys) throws JobPersistenceException
+	{
+		long startTime = System.nanoTime();
+		boolean failed = false;
+		try
+		{
+			List<String> ids = new ArrayList<>();
+			for (JobKey key : keys)
+			{
+				ids.add(key.toString());
+			}
+			try
+			{
+				return deleteInBulk(JOB_TYPE, ids);
+			}
+			finally
+			{
+				for (JobKey key : keys)
+				{
+					jobCache.remove(key);
+				}
+			}
+		}
+		catch (JobPersistenceException | RuntimeException e)
+		{
+			failed = true;
+			throw e;
+		}
+		finally
+		{
+			metrics.recordOperation(Metrics.OPERATION_REMOVE, startTime, failed);
+		}
+	}
+	
+	/**
+	 * Deletes documents of given type using one or more bulk requests, limited by the bulk chunk size.
+	 * 
+	 * @return Returns <code>true</code> if all documents were deleted.
+	 */
+	private boolean deleteInBulk(String type, List<String> ids) throws JobPersistenceException
+	{
+		List<List<String>> chunks = new ArrayList<>();
+		List<BulkRequestBuilder> bulkRequests = new ArrayList<>();
+		for (int start = 0; start < ids.size(); start += bulkChunkDocuments)
+		{
+			List<String> chunk = ids.subList(start, Math.min(start + bulkChunkDocuments, ids.size()));
+			BulkRequestBuilder bulkRequest = new BulkRequestBuilder(serializer);
+			for (String id : chunk)
+			{
+				bulkRequest.delete(getTypeName(type), id);
+			}
+			chunks.add(chunk);
+			bulkRequests.add(bulkRequest);
+		}
+		
+		boolean failed = false;
+		List<List<BulkItem>> results = executeBulks(bulkRequests);
+		for (int c = 0; c < chunks.size(); c++)
+		{
+			List<String> chunk = chunks.get(c);
+			List<BulkItem> items = results.get(c);
+			if (items == null)
+			{
+				failed = true;
+				continue;
+			}
+			for (int i = 0; i < chunk.size(); i++)
+			{
+				BulkItemResult itemResult = items.get(i).getResult();
+				if (itemResult.isSuccessful())
+				{
+					LOGGER.debug("Successfully removed {} {}", type, chunk.get(i));
+				}
+				else
+				{
+					LOGGER.warn("Got '{}' when attempting to remove {} {}", new Object[] { itemResult.getStatus(), type, chunk.get(i) });
+					failed = true;
+				}
+			}
+		}
+		return !failed;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public JobDetail retrieveJob(JobKey jobKey) throws JobPersistenceException
+	{
+		GetResult<JobDetail> cachedJob = jobCache.get(jobKey);
+		if (cachedJob != null && (!jobCacheRevalidate || isCurrentVersion(jobKey, cachedJob)))
+		{
+			return copyOf(cachedJob);
+		}
+		
+		String requestURL = getTypeURL(JOB_TYPE, jobKey.toString());
+		HttpResponse response = httpCommunicator.request("GET", requestURL);
+		if (!isOK(response))
+		{
+			LOGGER.debug("Error when requesting job {}", jobKey);
+			return null;
+		}
+		
+		GetResult<JobWrapper> result = fromResponse(response, TypeTokens.GET_JOB);
+		if (!result.isFound())
+		{
+			LOGGER.debug("Did not find any jobs with the key {}", jobKey);
+			return null;
+		}
+		
+		return cacheJob(jobKey, result, null);
+	}
+	
+	/**
+	 * Checks whether a cached job is still the latest version, without reading the source of the stored job.
+	 */
+	private boolean isCurrentVersion(JobKey jobKey, GetResult<JobDetail> cachedJob) throws JobPersistenceException
+	{
+		String requestURL = getTypeURL(JOB_TYPE, jobKey.toString()) + "?_source=false";
+		HttpResponse response = httpCommunicator.request("GET", requestURL);
+		if (isOK(response))
+		{
+			GetResult<JobWrapper> result = fromResponse(response, TypeTokens.GET_JOB);
+			if (result.isFound() && result.getVersion() == cachedJob.getVersion())
+			{
+				return true;
+			}
+		}
+		
+		LOGGER.debug("Cached job {} is outdated", jobKey);
+		jobCache.remove(jobKey);
+		return false;
+	}
+	
+	/**
+	 * Creates a job from given result and caches it.
+	 * 
+	 * @param cachedJobs Jobs resolved within the current operation, which the job is added to, or <code>null</code>.
+	 * @return Returns a copy of the cached job, that the caller is free to modify.
+	 */
+	private JobDetail cacheJob(JobKey jobKey, GetResult<JobWrapper> result, Map<String, GetResult<JobDetail>> cachedJobs) throws JobPersistenceException
+	{
+		GetResult<JobDetail> cachedJob = new GetResult<>();
+		cachedJob.setFound(true);
+		cachedJob.setVersion(result.getVersion());
+		cachedJob.setSource(fromWrapper(result.getSource()));
+		jobCache.put(jobKey, cachedJob);
+		if (cachedJobs != null)
+		{
+			cachedJobs.put(jobKey.toString(), cachedJob);
+		}
+		return copyOf(cachedJob);
+	}
+	
+	private JobDetail copyOf(GetResult<JobDetail> cachedJob)
+	{
+		return (JobDetail) cachedJob.getSource().clone();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void storeTrigger(OperableTrigger newTrigger, boolean replaceExisting) throws ObjectAlreadyExistsException, JobPersistenceException
+	{
+		long startTime = System.nanoTime();
+		boolean failed = false;
+		try
+		{
+			TriggerKey key = newTrigger.getKey();
+			String requestURL = getTypeURL(TRIGGER_TYPE, key.toString());
+
+			TriggerWrapper triggerWrapper = wrapTrigger(newTrigger, STATE_WAITING);
+			String requestData = serializer.to(triggerWrapper);
+		
+			HttpResponse response = httpCommunicator.request("PUT", requestURL, requestData);
+		
+			int responseCode = response.getResponseCode();
+			if (responseCode == 200 || responseCode == 201)
+			{
+				PutResult result = fromResponse(response, TypeTokens.PUT);
+				rememberVersion(triggerWrapper, result.getVersion());
+			
+				if (!result.isCreated())
+				{
+					throw new ObjectAlreadyExistsException(newTrigger);
+				}
+			}
+			else
+			{
+				throw new JobPersistenceException("Error when storing trigger: " + responseCode + " " + response.getResponseMessage());
+			}
+		
+			LOGGER.info("Succesfully stored trigger '{}'", key.toString());
+		}
+		catch (JobPersistenceException | RuntimeException e)
+		{
+			failed = true;
+			throw e;
+		}
+		finally
+		{
+			metrics.recordOperation(Metrics.OPERATION_STORE, startTime, failed);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean removeTrigger(TriggerKey key) throws JobPersistenceException
+	{
+		long startTime = System.nanoTime();
+		boolean failed = false;
+		try
+		{
+			triggerVersions.remove(key);
+			String requestURL = getTypeURL(TRIGGER_TYPE, key.toString());
+			HttpResponse response = httpCommunicator.request("DELETE", requestURL);
+		
+			if (isOK(response))
+			{
+				LOGGER.debug("Successfully removed trigger {}", key);
+				return true;
+			}
+			else
+			{
+				LOGGER.warn("Got '{} {}' when attempting to remove trigger {}", new Object[] { response.getResponseCode(), response.getResponseMessage(), key });
+				return false;
+			}
+		}
+		catch (JobPersistenceException | RuntimeException e)
+		{
+			failed = true;
+			throw e;
+		}
+		finally
+		{
+			metrics.recordOperation(Metrics.OPERATION_REMOVE, startTime, failed);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean removeTriggers(List<TriggerKey> keys) throws JobPersistenceException
+	{
+		long startTime = System.nanoTime();
+		boolean failed = false;
+		try
+		{
+			List<String> ids = new ArrayList<>();
+			for (TriggerKey key : keys)
+			{
+				triggerVersions.remove(key);
+				ids.add(key.toString());
+			}
+			return deleteInBulk(TRIGGER_TYPE, ids);
+		}
+		catch (JobPersistenceException | RuntimeException e)
+		{
+			failed = true;
+			throw e;
+		}
+		finally
+		{
+			metrics.recordOperation(Metrics.OPERATION_REMOVE, startTime, failed);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean replaceTrigger(TriggerKey key, OperableTrigger newTrigger) throws JobPersistenceException
+	{
+		boolean removed = removeTrigger(key);
+		storeTrigger(newTrigger, false);
+		return removed;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public OperableTrigger retrieveTrigger(TriggerKey triggerKey) throws JobPersistenceException
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean checkExists(JobKey jobKey) throws JobPersistenceException
+	{
+		String requestURL = getTypeURL(JOB_TYPE, jobKey.toString());
+		HttpResponse response = httpCommunicator.request("GET", requestURL);
+		return isOK(response);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean checkExists(TriggerKey triggerKey) throws JobPersistenceException
+	{
+		String requestURL = getTypeURL(TRIGGER_TYPE, triggerKey.toString());
+		HttpResponse response = httpCommunicator.request("GET", requestURL);
+		return isOK(response);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void clearAllSchedulingData() throws JobPersistenceException
+	{
+		// Delete all jobs and triggers with a single delete by query, leaving other types of the index untouched
+		String requestURL = new StringBuilder(getBaseURL())
+			.append(getTypeName(JOB_TYPE))
+			.append(",")
+			.append(getTypeName(TRIGGER_TYPE))
+			.append("/_query?q=*:*")
+			.toString();
+		HttpResponse response;
+		try
+		{
+			response = httpCommunicator.request("DELETE", requestURL);
+		}
+		finally
+		{
+			triggerVersions.clear();
+			jobCache.clear();
+		}
+		if (!isOK(response))
+		{
+			throw new JobPersistenceException("Got HTTP response code " + response.getResponseCode() + " when clearing all scheduling data");
+		}
+		
+		LOGGER.info("Successfully cleared all scheduling data");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void storeCalendar(String name, Calendar calendar, boolean replaceExisting, boolean updateTriggers)
+			throws ObjectAlreadyExistsException, JobPersistenceException
+	{
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean removeCalendar(String calName) throws JobPersistenceException
+	{
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Calendar retrieveCalendar(String calName) throws JobPersistenceException
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getNumberOfJobs() throws JobPersistenceException
+	{
+		String requestURL = getTypeURL(JOB_TYPE, "_count");
+		HttpResponse response = httpCommunicator.request("GET", requestURL);
+		if (isOK(response))
+		{
+			CountResult result = fromResponse(response, TypeTokens.COUNT);
+			return result.getCount();
+		}
+		throw new JobPersistenceException("Got HTTP response code " + response.getResponseCode() + " when counting jobs");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getNumberOfTriggers() throws JobPersistenceException
+	{
+		String requestURL = getTypeURL(TRIGGER_TYPE, "_count");
+		HttpResponse response = httpCommunicator.request("GET", requestURL);
+		if (isOK(response))
+		{
+			CountResult result = fromResponse(response, TypeTokens.COUNT);
+			return result.getCount();
+		}
+		throw new JobPersistenceException("Got HTTP response code " + response.getResponseCode() + " when counting triggers");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getNumberOfCalendars() throws JobPersistenceException
+	{
+		return 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Set<JobKey> getJobKeys(GroupMatcher<JobKey> matcher) throws JobPersistenceException
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Set<TriggerKey> getTriggerKeys(GroupMatcher<TriggerKey> matcher) throws JobPersistenceException
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public List<String> getJobGroupNames() throws JobPersistenceException
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public List<String> getTriggerGroupNames() throws JobPersistenceException
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public List<String> getCalendarNames() throws JobPersistenceException
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public List<OperableTrigger> getTriggersForJob(JobKey jobKey) throws JobPersistenceException
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public TriggerState getTriggerState(TriggerKey triggerKey) throws JobPersistenceException
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void pauseTrigger(TriggerKey triggerKey) throws JobPersistenceException
+	{
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Collection<String> pauseTriggers(GroupMatcher<TriggerKey> matcher) throws JobPersistenceException
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void pauseJob(JobKey jobKey) throws JobPersistenceException
+	{
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Collection<String> pauseJobs(GroupMatcher<JobKey> groupMatcher) throws JobPersistenceException
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void resumeTrigger(TriggerKey triggerKey) throws JobPersistenceException
+	{
+	}
+
+	/** {@inheritDoc} */
 	@Override
 	public Collection<String> resumeTriggers(GroupMatcher<TriggerKey> matcher) throws JobPersistenceException
 	{
-		return null;
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Set<String> getPausedTriggerGroups() throws JobPersistenceException
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void resumeJob(JobKey jobKey) throws JobPersistenceException
+	{
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Collection<String> resumeJobs(GroupMatcher<JobKey> matcher) throws JobPersistenceException
+	{
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void pauseAll() throws JobPersistenceException
+	{
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void resumeAll() throws JobPersistenceException
+	{
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public List<OperableTrigger> acquireNextTriggers(long noLaterThan, int maxCount, long timeWindow) throws JobPersistenceException
+	{
+		long startTime = System.nanoTime();
+		boolean failed = false;
+		try
+		{
+			List<OperableTrigger> acquiredTriggers = new ArrayList<>();
+		
+			// Search for triggers that should execute
+			String requestURL = getTypeURL(TRIGGER_TYPE, "_search");
+			int limit = Math.max(maxCount, 1);
+			lastAcquisitionMaxCount = maxCount;
+			String requestData = getSearchBody(noLaterThan, timeWindow, (int) Math.ceil(limit * acquisitionHeadroom));
+			HttpResponse response = httpCommunicator.request("POST", requestURL, requestData);
+		
+			// If we did not get a successful search result, return zero triggers
+			if (response.getResponseCode() != 200)
+			{
+				return acquiredTriggers;
+			}
+		
+			SearchResult<TriggerWrapper> searchResult = fromResponse(response, TypeTokens.SEARCH_TRIGGERS);
+		
+			// The search is near real-time, so the hits might be outdated. The versioned writes below make sure
+			// that we only acquire triggers that nobody else has changed since the hits were indexed.
+			List<Hit<TriggerWrapper>> candidates = new ArrayList<>();
+			for (Hit<TriggerWrapper> hit : searchResult.getHits().getHits())
+			{
+				if (hit.getSource().getState() == STATE_WAITING)
+				{
+					candidates.add(hit);
+				}
+				else
+				{
+					LOGGER.debug("Trigger {} is not waiting", hit.getId());
+				}
+			}
+		
+			// Claim the candidates in bulk, taking more candidates if some of them were lost to other instances.
+			// At least one trigger is always acquired if available.
+			long now = System.currentTimeMillis();
+			int nextCandidate = 0;
+			while (acquiredTriggers.size() < limit && nextCandidate < candidates.size())
+			{
+				int batchSize = Math.min(limit - acquiredTriggers.size(), candidates.size() - nextCandidate);
+				List<Hit<TriggerWrapper>> batch = candidates.subList(nextCandidate, nextCandidate + batchSize);
+				nextCandidate += batchSize;
+			
+				BulkRequestBuilder bulkRequest = new BulkRequestBuilder(serializer);
+				for (Hit<TriggerWrapper> hit : batch)
+				{
+					TriggerWrapper triggerWrapper = withState(hit.getSource(), STATE_ACQUIRED);
+					bulkRequest.index(getTypeName(TRIGGER_TYPE), hit.getId(), hit.getVersion(), lease(triggerWrapper, Math.max(now, triggerWrapper.getNextFireTime())));
+				}
+			
+				List<BulkItem> items = executeBulk(bulkRequest);
+				if (items == null)
+				{
+					break;
+				}
+			
+				for (int i = 0; i < batch.size(); i++)
+				{
+					Hit<TriggerWrapper> hit = batch.get(i);
+					BulkItemResult result = items.get(i).getResult();
+					if (result.isSuccessful())
+					{
+						rememberVersion(hit.getSource(), result.getVersion());
+						acquiredTriggers.add(fromWrapper(hit.getSource()));
+					}
+					else if (result.isConflict())
+					{
+						LOGGER.debug("Trigger {} was acquired by someone else", hit.getId());
+					}
+					else
+					{
+						LOGGER.warn("Got '{} {}' when acquiring trigger {}", new Object[] { result.getStatus(), result.getError(), hit.getId() });
+					}
+				}
+			}
+		
+			lastAcquisitionCandidates = candidates.size();
+			lastAcquisitionSize = acquiredTriggers.size();
+			return acquiredTriggers;
+		}
+		catch (JobPersistenceException | RuntimeException e)
+		{
+			failed = true;
+			throw e;
+		}
+		finally
+		{
+			lastAcquisitionTime = (System.nanoTime() - startTime) / 1e6;
+			metrics.recordOperation(Metrics.OPERATION_ACQUIRE, startTime, failed);
+		}
+	}
+	
+	/**
+	 * Gets the body of the search for triggers to acquire, ordered by next fire time and then by priority,
+	 * the same way the RAMJobStore orders them.
+	 */
+	String getSearchBody(long noLaterThan, long timeWindow, int size)
+	{
+		Map<String, Object> term = new HashMap<>();
+		term.put("state", STATE_WAITING);
+
+		Map<String, Object> termObject = new HashMap<>();
+		termObject.put("term", term);
+
+		Map<String, Object> nextFireTime = new LinkedHashMap<>();
+		nextFireTime.put("gte", 0);
+		nextFireTime.put("lte", noLaterThan + timeWindow);
+		
+		Map<String, Object> range = new HashMap<>();
+		range.put("nextFireTime", nextFireTime);
+		
+		Map<String, Object> rangeObject = new HashMap<>();
+		rangeObject.put("range", range);
+		
+		List<Map<String, Object>> and = new ArrayList<>();
+		and.add(termObject);
+		and.add(rangeObject);
+		
+		// Only acquire triggers from the buckets of this instance, and triggers that were stored before the partitioning
+		List<Integer> buckets = ownedBuckets;
+		if (buckets != null)
+		{
+			Map<String, Object> missing = new HashMap<>();
+			missing.put("field", "bucket");
+			
+			Map<String, Object> missingObject = new HashMap<>();
+			missingObject.put("missing", missing);
+			
+			Map<String, Object> orObject = new HashMap<>();
+			orObject.put("or", Arrays.asList(getTerms("bucket", buckets), missingObject));
+			and.add(orObject);
+		}
+
+		Map<String, Object> filter = new HashMap<>();
+		filter.put("and", and);
+		
+		// Filter in a filtered query, so that the filters are applied before the hits are collected
+		Map<String, Object> filtered = new HashMap<>();
+		filtered.put("filter", filter);
+		
+		Map<String, Object> query = new HashMap<>();
+		query.put("filtered", filtered);
+		
+		List<Map<String, Object>> sort = new ArrayList<>();
+		sort.add(getSort("nextFireTime", "asc"));
+		sort.add(getSort("priority", "desc"));
+		
+		Map<String, Object> searchBody = new LinkedHashMap<>();
+		searchBody.put("query", query);
+		searchBody.put("sort", sort);
+		searchBody.put("size", size);
+		searchBody.put("version", true);
+		
+		return serializer.to(searchBody);
+	}
+	
+	private Map<String, Object> getSort(String field, String order)
+	{
+		Map<String, Object> fieldSort = new LinkedHashMap<>();
+		fieldSort.put("order", order);
+		fieldSort.put("ignore_unmapped", true);
+		
+		Map<String, Object> sort = new HashMap<>();
+		sort.put(field, fieldSort);
+		return sort;
 	}
-
+	
 	/** {@inheritDoc} */
 	@Override
-	public Set<String> getPausedTriggerGroups() throws JobPersistenceException
+	public void releaseAcquiredTrigger(OperableTrigger trigger)
 	{
-		return null;
+		TriggerKey key = trigger.getKey();
+		LOGGER.debug("Releasing trigger {}", key);
+		try
+		{
+			String requestURL = getTypeURL(TRIGGER_TYPE, key.toString());
+			TriggerWrapper triggerWrapper = wrapTrigger(trigger, STATE_WAITING);
+			String requestData = serializer.to(triggerWrapper);
+			
+			// The version remembered from the acquisition only matches if nobody has changed the trigger since
+			HttpResponse response = null;
+			GetResult<TriggerWrapper> rememberedResult = triggerVersions.get(key);
+			if (rememberedResult != null && rememberedResult.getSource().getState() == STATE_ACQUIRED)
+			{
+				response = httpCommunicator.request("PUT", requestURL + "?version=" + rememberedResult.getVersion(), requestData);
+				if (isConflict(response))
+				{
+					LOGGER.debug("Remembered version of trigger {} is outdated", key);
+					triggerVersions.remove(key);
+					response = null;
+				}
+			}
+			
+			if (response == null)
+			{
+				response = httpCommunicator.request("GET", requestURL);
+				if (!isOK(response))
+				{
+					LOGGER.warn("Error when requesting trigger {}", key);
+					return;
+				}
+				
+				// Only release the trigger if it is still acquired by this instance
+				GetResult<TriggerWrapper> result = fromResponse(response, TypeTokens.GET_TRIGGER);
+				if (!result.isFound() || result.getSource().getState() != STATE_ACQUIRED
+					|| result.getSource().getOwner() != null && !result.getSource().getOwner().equals(instanceId))
+				{
+					LOGGER.debug("Trigger {} is no longer acquired by this instance", key);
+					return;
+				}
+				
+				response = httpCommunicator.request("PUT", requestURL + "?version=" + result.getVersion(), requestData);
+			}
+			
+			if (isOK(response))
+			{
+				PutResult result = fromResponse(response, TypeTokens.PUT);
+				rememberVersion(triggerWrapper, result.getVersion());
+				LOGGER.debug("Successfully released trigger {}", key);
+			}
+			else
+			{
+				LOGGER.warn("Got '{} {}' when releasing trigger {}", new Object[] { response.getResponseCode(), response.getResponseMessage(), key });
+			}
+		}
+		catch (JobPersistenceException e)
+		{
+			LOGGER.error("Exception occurred when releasing trigger " + key, e);
+		}
 	}
-
-	/** {@inheritDoc} */
-	@Override
-	public void resumeJob(JobKey jobKey) throws JobPersistenceException
+	
+	/**
+	 * Writes the heartbeat of this instance.
+	 * <p>
+	 * Called by the background thread of the {@link LeaseSweeper}.
+	 * 
+	 * @return Returns <code>true</code> if the heartbeat was written.
+	 */
+	boolean checkIn()
 	{
+		SchedulerState schedulerState = new SchedulerState();
+		schedulerState.setInstanceId(instanceId);
+		schedulerState.setInstanceName(instanceName);
+		schedulerState.setLastCheckin(System.currentTimeMillis());
+		schedulerState.setCheckinInterval(heartbeatInterval);
+		try
+		{
+			HttpResponse response = httpCommunicator.request("PUT", getTypeURL(SCHEDULER_TYPE, instanceId), serializer.to(schedulerState));
+			int responseCode = response.getResponseCode();
+			if (responseCode == 200 || responseCode == 201)
+			{
+				return true;
+			}
+			LOGGER.warn("Got '{} {}' when checking in instance {}", new Object[] { responseCode, response.getResponseMessage(), instanceId });
+		}
+		catch (JobPersistenceException e)
+		{
+			LOGGER.warn("Could not check in instance " + instanceId, e);
+		}
+		return false;
 	}
-
-	/** {@inheritDoc} */
-	@Override
-	public Collection<String> resumeJobs(GroupMatcher<JobKey> matcher) throws JobPersistenceException
+	
+	/**
+	 * Gets the instances that have checked in within the lease duration.
+	 * <p>
+	 * Called by the background thread of the {@link LeaseSweeper}, after this instance has checked in.
+	 * 
+	 * @return Returns the IDs of the live instances, including this one, or <code>null</code> if the request failed.
+	 */
+	List<String> getLiveInstances()
 	{
-		return null;
+		try
+		{
+			String requestData = getSearchBody(getRange("lastCheckin", "gte", System.currentTimeMillis() - leaseDuration), LEASE_RECOVERY_BATCH_SIZE);
+			HttpResponse response = httpCommunicator.request("POST", getTypeURL(SCHEDULER_TYPE, "_search"), requestData);
+			if (!isOK(response))
+			{
+				LOGGER.warn("Got '{} {}' when requesting the instances that have checked in", response.getResponseCode(), response.getResponseMessage());
+				return null;
+			}
+			
+			// This instance has just checked in, but the heartbeat might not be searchable yet
+			List<String> liveInstances = new ArrayList<>();
+			liveInstances.add(instanceId);
+			for (Hit<SchedulerState> hit : fromResponse(response, TypeTokens.SEARCH_SCHEDULERS).getHits().getHits())
+			{
+				if (!hit.getId().equals(instanceId))
+				{
+					liveInstances.add(hit.getId());
+				}
+			}
+			return liveInstances;
+		}
+		catch (JobPersistenceException e)
+		{
+			LOGGER.error("Exception occurred when requesting the instances that have checked in", e);
+			return null;
+		}
 	}
-
-	/** {@inheritDoc} */
-	@Override
-	public void pauseAll() throws JobPersistenceException
+	
+	/**
+	 * Assigns the buckets of the triggers among the live instances, if the triggers are partitioned.
+	 * <p>
+	 * Called by the background thread of the {@link LeaseSweeper}.
+	 */
+	void assignBuckets(List<String> liveInstances)
 	{
+		if (!partitioned)
+		{
+			return;
+		}
+		
+		List<Integer> buckets = PartitionUtils.getOwnedBuckets(instanceId, liveInstances);
+		if (!buckets.equals(ownedBuckets))
+		{
+			LOGGER.info("Acquiring triggers from {} of {} buckets, shared by {} instances", new Object[] { buckets.size(), PartitionUtils.BUCKETS, liveInstances.size() });
+			ownedBuckets = buckets;
+			
+			// Buckets taken over from other instances might have triggers that should fire right away
+			signaler.signalSchedulingChange(0L);
+		}
 	}
-
-	/** {@inheritDoc} */
-	@Override
-	public void resumeAll() throws JobPersistenceException
+	
+	/**
+	 * Makes the triggers of instances that have stopped checking in waiting again, once their leases have expired.
+	 * <p>
+	 * Called by the background thread of the {@link LeaseSweeper}.
+	 */
+	void recoverExpiredLeases(List<String> liveInstances)
 	{
+		try
+		{
+			Map<String, Object> not = new HashMap<>();
+			not.put("not", getTerms("owner", liveInstances));
+			
+			List<Map<String, Object>> filters = new ArrayList<>();
+			filters.add(getRange("leaseExpiry", "lt", System.currentTimeMillis()));
+			filters.add(not);
+			recoverTriggers(getLeasedTriggersSearchBody(filters));
+		}
+		catch (JobPersistenceException e)
+		{
+			LOGGER.error("Exception occurred when recovering expired leases", e);
+		}
 	}
-
-	/** {@inheritDoc} */
-	@Override
-	public List<OperableTrigger> acquireNextTriggers(long noLaterThan, int maxCount, long timeWindow) throws JobPersistenceException
+	
+	/**
+	 * Makes the found acquired and executing triggers waiting again, in a single request. Triggers that were
+	 * executing are fired again, since their jobs never completed.
+	 */
+	private void recoverTriggers(String searchBody) throws JobPersistenceException
 	{
-		List<OperableTrigger> acquiredTriggers = new ArrayList<>();
+		HttpResponse response = httpCommunicator.request("POST", getTypeURL(TRIGGER_TYPE, "_search"), searchBody);
+		if (!isOK(response))
+		{
+			LOGGER.warn("Got '{} {}' when searching for triggers to recover", response.getResponseCode(), response.getResponseMessage());
+			return;
+		}
 		
-		// Search for triggers that should execute
-		String requestURL = getTypeURL(TRIGGER_TYPE, "_search");
-		String requestData = getSearchBody(noLaterThan, timeWindow);
-		HttpResponse response = httpCommunicator.request("POST", requestURL, requestData);
+		List<Hit<TriggerWrapper>> hits = fromResponse(response, TypeTokens.SEARCH_TRIGGERS).getHits().getHits();
+		if (hits.isEmpty())
+		{
+			return;
+		}
 		
-		// If we did not get a successful search result, return zero triggers
-		if (response.getResponseCode() != 200)
+		BulkRequestBuilder bulkRequest = new BulkRequestBuilder(serializer);
+		for (Hit<TriggerWrapper> hit : hits)
 		{
-			return acquiredTriggers;
+			TriggerWrapper triggerWrapper = hit.getSource();
+			LOGGER.info("Recovering trigger {} from instance {}, whose lease expired at {}", new Object[] { hit.getId(), triggerWrapper.getOwner(), new Date(triggerWrapper.getLeaseExpiry()) });
+			triggerWrapper.setState(STATE_WAITING);
+			triggerWrapper.setOwner(null);
+			triggerWrapper.setLeaseExpiry(null);
+			bulkRequest.index(getTypeName(TRIGGER_TYPE), hit.getId(), hit.getVersion(), triggerWrapper);
 		}
 		
-		SearchResult<TriggerWrapper> searchResult = serializer.from(response.getResponseData(), new TypeToken<SearchResult<TriggerWrapper>>() {});
+		List<BulkItem> items = executeBulk(bulkRequest);
+		if (items == null)
+		{
+			return;
+		}
 		
-		for (Hit<TriggerWrapper> hit : searchResult.getHits().getHits())
+		int recovered = 0;
+		for (int i = 0; i < hits.size(); i++)
 		{
-			// Get the trigger to retrieve the version number
-			requestURL = getTypeURL(TRIGGER_TYPE, hit.getId());
-			response = httpCommunicator.request("GET", requestURL);
-			GetResult<TriggerWrapper> result = serializer.from(response.getResponseData(), new TypeToken<GetResult<TriggerWrapper>>() {});
-			
-			// If the requested trigger was not found, continue to the next
-			if (!result.isFound())
+			BulkItemResult result = items.get(i).getResult();
+			if (result.isSuccessful())
 			{
-				LOGGER.warn("Trigger {} was searched for, but not found when requesting it", hit.getId());
-				continue;
+				recovered++;
 			}
-			
-			// If the trigger actually did not have a waiting state, continue to the next
-			if (result.getSource().getState() != TriggerWrapper.STATE_WAITING)
+			else if (result.isConflict())
 			{
-				LOGGER.debug("Trigger {} is not waiting", hit.getId());
-				continue;
+				LOGGER.debug("Trigger {} was changed by someone else while it was recovered", hits.get(i).getId());
 			}
-			
-			// Update the state of the trigger
-			TriggerWrapper triggerWrapper = result.getSource();
-			triggerWrapper.setState(STATE_ACQUIRED);
-			requestData = serializer.to(triggerWrapper);
-			requestURL = requestURL + "?version=" + result.getVersion();
-			response = httpCommunicator.request("PUT", requestURL, requestData);
-			
-			if (isOK(response))
+			else
 			{
-				OperableTrigger operableTrigger = fromWrapper(triggerWrapper);
-				acquiredTriggers.add(operableTrigger);
-				
-				// Have we gotten enough triggers?
-				if (acquiredTriggers.size() >= maxCount)
-				{
-					break;
-				}
+				LOGGER.warn("Got '{} {}' when recovering trigger {}", new Object[] { result.getStatus(), result.getError(), hits.get(i).getId() });
 			}
 		}
 		
-		return acquiredTriggers;
+		if (recovered > 0)
+		{
+			LOGGER.warn("Recovered {} triggers with expired leases", recovered);
+			recoveredTriggers.addAndGet(recovered);
+			signaler.signalSchedulingChange(0L);
+		}
 	}
 	
-	private String getSearchBody(long noLaterThan, long timeWindow)
+	/**
+	 * Gets the body of a search for acquired and executing triggers that also match given filters.
+	 */
+	private String getLeasedTriggersSearchBody(List<Map<String, Object>> filters)
 	{
-		HashMap<String, Object> term = new HashMap<>();
-		term.put("state", STATE_WAITING);
-
-		HashMap<String, Object> termObject = new HashMap<>();
-		termObject.put("term", term);
-
-		HashMap<String, Object> nextFireTime = new HashMap<>();
-		nextFireTime.put("gte", 0);
-		nextFireTime.put("lte", noLaterThan + timeWindow);
-		
-		HashMap<String, Object> range = new HashMap<>();
-		range.put("nextFireTime", nextFireTime);
-		
-		HashMap<String, Object> rangeObject = new HashMap<>();
-		rangeObject.put("range", range);
+		List<Map<String, Object>> and = new ArrayList<>();
+		and.add(getTerms("state", Arrays.asList(STATE_ACQUIRED, STATE_EXECUTING)));
+		and.addAll(filters);
 		
-		ArrayList<Map<String, Object>> and = new ArrayList<>();
-		and.add(termObject);
-		and.add(rangeObject);
-
 		Map<String, Object> filter = new HashMap<>();
 		filter.put("and", and);
+		return getSearchBody(filter, LEASE_RECOVERY_BATCH_SIZE);
+	}
+	
+	private String getSearchBody(Map<String, Object> filter, int size)
+	{
+		Map<String, Object> filtered = new HashMap<>();
+		filtered.put("filter", filter);
 		
-		Map<String, Object> searchBody = new HashMap<>();
-		searchBody.put("filter", filter);
+		Map<String, Object> query = new HashMap<>();
+		query.put("filtered", filtered);
 		
+		Map<String, Object> searchBody = new LinkedHashMap<>();
+		searchBody.put("query", query);
+		searchBody.put("size", size);
+		searchBody.put("version", true);
 		return serializer.to(searchBody);
 	}
 	
-	/** {@inheritDoc} */
-	@Override
-	public void releaseAcquiredTrigger(OperableTrigger trigger)
+	private Map<String, Object> getTerm(String field, Object value)
+	{
+		Map<String, Object> term = new HashMap<>();
+		term.put(field, value);
+		
+		Map<String, Object> termObject = new HashMap<>();
+		termObject.put("term", term);
+		return termObject;
+	}
+	
+	private Map<String, Object> getTerms(String field, List<?> values)
+	{
+		Map<String, Object> terms = new HashMap<>();
+		terms.put(field, values);
+		
+		Map<String, Object> termsObject = new HashMap<>();
+		termsObject.put("terms", terms);
+		return termsObject;
+	}
+	
+	private Map<String, Object> getRange(String field, String operator, long value)
 	{
+		Map<String, Object> bound = new HashMap<>();
+		bound.put(operator, value);
+		
+		Map<String, Object> range = new HashMap<>();
+		range.put(field, bound);
+		
+		Map<String, Object> rangeObject = new HashMap<>();
+		rangeObject.put("range", range);
+		return rangeObject;
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public List<TriggerFiredResult> triggersFired(List<OperableTrigger> triggers) throws JobPersistenceException
 	{
-		List<TriggerFiredResult> fireResult = new ArrayList<>();
+		long startTime = System.nanoTime();
+		boolean failed = false;
+		try
+		{
+			TriggerFiredResult[] results = new TriggerFiredResult[triggers.size()];
+			Map<String, GetResult<JobWrapper>> jobResults = new HashMap<>();
+			Map<String, GetResult<JobDetail>> cachedJobs = new HashMap<>();
+		
+			// Start with the versions remembered from the acquisition. If any of them are outdated, those
+			// triggers are read again and fired in another round.
+			List<Integer> remaining = new ArrayList<>();
+			for (int i = 0; i < triggers.size(); i++)
+			{
+				remaining.add(i);
+			}
+			boolean useRememberedVersions = true;
+		
+			while (!remaining.isEmpty())
+			{
+				// Get the triggers with unknown versions, together with their jobs, in a single request
+				List<GetResult<TriggerWrapper>> triggerResults = new ArrayList<>();
+				List<String> triggerIds = new ArrayList<>();
+				List<String> jobIds = new ArrayList<>();
+				Map<JobKey, GetResult<JobDetail>> validatedJobs = new LinkedHashMap<>();
+				for (int i : remaining)
+				{
+					OperableTrigger trigger = triggers.get(i);
+					GetResult<TriggerWrapper> rememberedResult = useRememberedVersions ? triggerVersions.get(trigger.getKey()) : null;
+					triggerResults.add(rememberedResult);
+					if (rememberedResult == null)
+					{
+						triggerIds.add(trigger.getKey().toString());
+					}
+				
+					JobKey jobKey = trigger.getJobKey();
+					String jobId = jobKey.toString();
+					if (jobResults.containsKey(jobId) || cachedJobs.containsKey(jobId) || jobIds.contains(jobId) || validatedJobs.containsKey(jobKey))
+					{
+						continue;
+					}
+				
+					// Cached jobs are only validated, without reading their source
+					GetResult<JobDetail> cachedJob = jobCache.get(jobKey);
+					if (cachedJob == null)
+					{
+						jobIds.add(jobId);
+					}
+					else if (jobCacheRevalidate)
+					{
+						validatedJobs.put(jobKey, cachedJob);
+					}
+					else
+					{
+						cachedJobs.put(jobId, cachedJob);
+					}
+				}
+			
+				if (!triggerIds.isEmpty() || !jobIds.isEmpty() || !validatedJobs.isEmpty())
+				{
+					List<JobKey> validatedJobKeys = new ArrayList<>(validatedJobs.keySet());
+					MultiGetDocuments documents = multiGet(triggerIds, jobIds, validatedJobKeys);
+					if (documents == null)
+					{
+						for (int i : remaining)
+						{
+							results[i] = fireError("Error when requesting trigger " + triggers.get(i).getKey());
+						}
+						break;
+					}
+				
+					int nextTrigger = 0;
+					for (int j = 0; j < triggerResults.size(); j++)
+					{
+						if (triggerResults.get(j) == null)
+						{
+							triggerResults.set(j, documents.triggers.get(nextTrigger++));
+						}
+					}
+					for (int j = 0; j < jobIds.size(); j++)
+					{
+						jobResults.put(jobIds.get(j), documents.jobs.get(j));
+					}
+					for (int j = 0; j < validatedJobKeys.size(); j++)
+					{
+						JobKey jobKey = validatedJobKeys.get(j);
+						validateCachedJob(jobKey, validatedJobs.get(jobKey), documents.validatedJobs.get(j), jobResults, cachedJobs);
+					}
+				}
+			
+				remaining = fireTriggers(triggers, remaining, triggerResults, jobResults, cachedJobs, results, useRememberedVersions);
+				useRememberedVersions = false;
+			}
 		
-		for (OperableTrigger trigger : triggers)
+			return new ArrayList<>(Arrays.asList(results));
+		}
+		catch (JobPersistenceException | RuntimeException e)
+		{
+			failed = true;
+			throw e;
+		}
+		finally
+		{
+			metrics.recordOperation(Metrics.OPERATION_FIRE, startTime, failed);
+		}
+	}
+	
+	/**
+	 * Moves the acquired triggers to the executing state in a single request.
+	 * 
+	 * @return Returns the indexes of the triggers that must be retried since their remembered versions were outdated.
+	 */
+	private List<Integer> fireTriggers(List<OperableTrigger> triggers, List<Integer> indexes, List<GetResult<TriggerWrapper>> triggerResults,
+			Map<String, GetResult<JobWrapper>> jobResults, Map<String, GetResult<JobDetail>> cachedJobs, TriggerFiredResult[] results,
+			boolean rememberedVersions) throws JobPersistenceException
+	{
+		JobDetail[] jobs = new JobDetail[indexes.size()];
+		List<Integer> updatedTriggers = new ArrayList<>();
+		BulkRequestBuilder bulkRequest = new BulkRequestBuilder(serializer);
+		for (int j = 0; j < indexes.size(); j++)
 		{
-			TriggerKey key = trigger.getKey();
+			int i = indexes.get(j);
+			TriggerKey key = triggers.get(i).getKey();
 			LOGGER.debug("Firing trigger {}", key);
 			
-			// Get the trigger to retrieve the version number
-			String requestURL = getTypeURL(TRIGGER_TYPE, key.toString());
-			HttpResponse response = httpCommunicator.request("GET", requestURL);
-			if (!isOK(response))
+			// If the requested trigger was not found, continue to the next
+			GetResult<TriggerWrapper> result = triggerResults.get(j);
+			if (!result.isFound())
+			{
+				results[i] = fireError("Trigger " + key + " was requested, but not found when requesting it");
+				continue;
+			}
+			
+			// If the trigger actually did not have an acquired state, or was recovered and acquired by another instance, continue to the next
+			TriggerWrapper triggerWrapper = result.getSource();
+			if (triggerWrapper.getState() != STATE_ACQUIRED)
+			{
+				LOGGER.debug("Trigger {} is not acquired", key);
+				results[i] = fireError();
+				continue;
+			}
+			if (triggerWrapper.getOwner() != null && !triggerWrapper.getOwner().equals(instanceId))
 			{
-				fireResult.add(fireError("Error when requesting trigger " + key));
+				LOGGER.debug("Trigger {} is acquired by instance '{}'", key, triggerWrapper.getOwner());
+				results[i] = fireError();
 				continue;
 			}
-			GetResult<TriggerWrapper> result = serializer.from(response.getResponseData(), new TypeToken<GetResult<TriggerWrapper>>() {});
 			
-			// If the requested trigger was not found, continue to the next
-			if (!result.isFound())
+			// If the job of the trigger could not be loaded, continue to the next
+			JobKey jobKey = new JobKey(triggerWrapper.getJobName(), triggerWrapper.getJobGroup());
+			GetResult<JobDetail> cachedJob = cachedJobs.get(jobKey.toString());
+			GetResult<JobWrapper> jobResult = jobResults.get(jobKey.toString());
+			if (cachedJob == null && (jobResult == null || !jobResult.isFound()))
 			{
-				fireResult.add(fireError("Trigger " + key + " was requested, but not found when requesting it"));
+				results[i] = fireError("Job " + jobKey + " of trigger " + key + " was requested, but not found when requesting it");
 				continue;
 			}
-			
-			// If the trigger actually did not have a waiting state, continue to the next
-			if (result.getSource().getState() != STATE_ACQUIRED)
+			try
 			{
-				LOGGER.debug("Trigger {} is not acquired", key);
-				fireResult.add(fireError());
+				jobs[j] = cachedJob != null ? copyOf(cachedJob) : cacheJob(jobKey, jobResult, cachedJobs);
+			}
+			catch (JobPersistenceException e)
+			{
+				results[i] = new TriggerFiredResult(e);
 				continue;
 			}
 			
-			// Update the state of the trigger
-			TriggerWrapper triggerWrapper = result.getSource();
-			triggerWrapper.setState(STATE_EXECUTING);
-			String requestData = serializer.to(triggerWrapper);
-			requestURL = requestURL + "?version=" + result.getVersion();
-			response = httpCommunicator.request("PUT", requestURL, requestData);
-			
-			if (isOK(response))
+			bulkRequest.index(getTypeName(TRIGGER_TYPE), key.toString(), result.getVersion(), lease(withState(triggerWrapper, STATE_EXECUTING), System.currentTimeMillis()));
+			updatedTriggers.add(j);
+		}
+		
+		List<Integer> outdated = new ArrayList<>();
+		if (bulkRequest.isEmpty())
+		{
+			return outdated;
+		}
+		
+		List<BulkItem> items = executeBulk(bulkRequest);
+		for (int k = 0; k < updatedTriggers.size(); k++)
+		{
+			int j = updatedTriggers.get(k);
+			int i = indexes.get(j);
+			BulkItemResult itemResult = items != null ? items.get(k).getResult() : null;
+			if (itemResult != null && itemResult.isSuccessful())
+			{
+				TriggerWrapper triggerWrapper = withState(triggerResults.get(j).getSource(), STATE_EXECUTING);
+				rememberVersion(triggerWrapper, itemResult.getVersion());
+				results[i] = new TriggerFiredResult(getTriggeredFireBundle(triggerWrapper, jobs[j]));
+			}
+			else if (itemResult != null && itemResult.isConflict() && rememberedVersions)
 			{
-				TriggerFiredBundle triggerFiredBundle = getTriggeredFireBundle(triggerWrapper);
-				fireResult.add(new TriggerFiredResult(triggerFiredBundle));
+				LOGGER.debug("Remembered version of trigger {} is outdated", triggers.get(i).getKey());
+				triggerVersions.remove(triggers.get(i).getKey());
+				outdated.add(i);
 			}
 			else
 			{
 				// This should not technically happen, but we do this to be sure
-				fireResult.add(fireError());
+				triggerVersions.remove(triggers.get(i).getKey());
+				results[i] = fireError();
 			}
 		}
+		return outdated;
+	}
+	
+	/**
+	 * Gets triggers and jobs in a single request.
+	 * 
+	 * @return Returns the documents in the order they were requested, or <code>null</code> if the request failed.
+	 */
+	private MultiGetDocuments multiGet(List<String> triggerIds, List<String> jobIds, List<JobKey> validatedJobKeys) throws JobPersistenceException
+	{
+		String requestURL = getBaseURL() + "_mget";
+		String requestData = getMultiGetBody(triggerIds, jobIds, validatedJobKeys);
+		HttpResponse response = httpCommunicator.request("POST", requestURL, requestData);
+		if (!isOK(response))
+		{
+			LOGGER.warn("Got '{} {}' when requesting triggers and jobs", response.getResponseCode(), response.getResponseMessage());
+			return null;
+		}
+		
+		// The documents are returned in the order they were requested, the triggers first, then the jobs and
+		// last the validated jobs. The response is read once per document type since the serializer can only
+		// read one type at a time.
+		MultiGetDocuments documents = new MultiGetDocuments();
+		if (!triggerIds.isEmpty())
+		{
+			documents.triggers = fromResponse(response, TypeTokens.MULTI_GET_TRIGGERS).getDocs().subList(0, triggerIds.size());
+		}
+		if (!jobIds.isEmpty() || !validatedJobKeys.isEmpty())
+		{
+			List<GetResult<JobWrapper>> docs = fromResponse(response, TypeTokens.MULTI_GET_JOBS).getDocs();
+			int validatedStart = triggerIds.size() + jobIds.size();
+			documents.jobs = docs.subList(triggerIds.size(), validatedStart);
+			documents.validatedJobs = docs.subList(validatedStart, docs.size());
+		}
+		return documents;
+	}
+	
+	private TriggerWrapper withState(TriggerWrapper triggerWrapper, int state)
+	{
+		triggerWrapper.setState(state);
+		return triggerWrapper;
+	}
+	
+	/**
+	 * Creates the stored form of a trigger, which is put in its bucket when the triggers are partitioned.
+	 */
+	private TriggerWrapper wrapTrigger(OperableTrigger trigger, int state)
+	{
+		TriggerWrapper triggerWrapper = toTriggerWrapper(trigger, state);
+		if (partitioned)
+		{
+			triggerWrapper.setBucket(getBucket(trigger.getKey()));
+		}
+		return triggerWrapper;
+	}
+	
+	/**
+	 * Leases a trigger to this instance, until the lease duration after given time. Triggers are not leased
+	 * without an instance ID, since there is no owner to recover them from.
+	 */
+	private TriggerWrapper lease(TriggerWrapper triggerWrapper, long time)
+	{
+		if (instanceId != null)
+		{
+			triggerWrapper.setOwner(instanceId);
+			triggerWrapper.setLeaseExpiry(time + leaseDuration);
+		}
+		return triggerWrapper;
+	}
+	
+	/**
+	 * Uses a cached job if its version is still current, otherwise reads the job again.
+	 */
+	private void validateCachedJob(JobKey jobKey, GetResult<JobDetail> cachedJob, GetResult<JobWrapper> result,
+			Map<String, GetResult<JobWrapper>> jobResults, Map<String, GetResult<JobDetail>> cachedJobs) throws JobPersistenceException
+	{
+		if (result.isFound() && result.getVersion() == cachedJob.getVersion())
+		{
+			cachedJobs.put(jobKey.toString(), cachedJob);
+			return;
+		}
+		
+		LOGGER.debug("Cached job {} is outdated", jobKey);
+		jobCache.remove(jobKey);
+		if (!result.isFound())
+		{
+			jobResults.put(jobKey.toString(), result);
+			return;
+		}
+		
+		String requestURL = getTypeURL(JOB_TYPE, jobKey.toString());
+		HttpResponse response = httpCommunicator.request("GET", requestURL);
+		if (isOK(response))
+		{
+			jobResults.put(jobKey.toString(), fromResponse(response, TypeTokens.GET_JOB));
+		}
+	}
+	
+	private String getMultiGetBody(List<String> triggerIds, List<String> jobIds, List<JobKey> validatedJobKeys)
+	{
+		List<Map<String, Object>> docs = new ArrayList<>();
+		for (String triggerId : triggerIds)
+		{
+			docs.add(getMultiGetDoc(TRIGGER_TYPE, triggerId));
+		}
+		for (String jobId : jobIds)
+		{
+			docs.add(getMultiGetDoc(JOB_TYPE, jobId));
+		}
+		for (JobKey jobKey : validatedJobKeys)
+		{
+			Map<String, Object> doc = getMultiGetDoc(JOB_TYPE, jobKey.toString());
+			doc.put("_source", false);
+			docs.add(doc);
+		}
 		
-		return fireResult;
+		Map<String, Object> multiGetBody = new HashMap<>();
+		multiGetBody.put("docs", docs);
+		
+		return serializer.to(multiGetBody);
+	}
+	
+	private Map<String, Object> getMultiGetDoc(String type, String id)
+	{
+		Map<String, Object> doc = new LinkedHashMap<>();
+		doc.put("_type", getTypeName(type));
+		doc.put("_id", id);
+		return doc;
 	}
 	
-	private TriggerFiredBundle getTriggeredFireBundle(TriggerWrapper triggerWrapper) throws JobPersistenceException
+	private TriggerFiredBundle getTriggeredFireBundle(TriggerWrapper triggerWrapper, JobDetail job)
 	{
-		JobKey jobKey = new JobKey(triggerWrapper.getJobName(), triggerWrapper.getJobGroup());
-		JobDetail job = retrieveJob(jobKey);
 		OperableTrigger trigger = fromWrapper(triggerWrapper);
 		
-		Date scheduledFireTime = trigger.getPreviousFireTime();
-		trigger.triggered(null);
 		Date previousFireTime = trigger.getPreviousFireTime();
+		trigger.triggered(null);
+		Date scheduledFireTime = trigger.getPreviousFireTime();
+		Date fireTime = new Date();
+		
+		if (scheduledFireTime != null)
+		{
+			long lag = fireTime.getTime() - scheduledFireTime.getTime();
+			if (metrics.recordFireLag(trigger.getKey().getGroup(), lag))
+			{
+				LOGGER.warn("Trigger {} fired {} ms after its scheduled fire time", trigger.getKey(), lag);
+			}
+		}
 		
-		return new TriggerFiredBundle(job, trigger, null, false, new Date(), scheduledFireTime, previousFireTime, trigger.getNextFireTime());
+		return new TriggerFiredBundle(job, trigger, null, false, fireTime, scheduledFireTime, previousFireTime, trigger.getNextFireTime());
 	}
 
 	private TriggerFiredResult fireError(String message)
@@ -890,102 +3545,345 @@ public class ElasticsearchJobStore implements JobStore
 	public void triggeredJobComplete(OperableTrigger trigger, JobDetail jobDetail,
 			CompletedExecutionInstruction triggerInstCode)
 	{
-		List<OperableTrigger> triggersForJob = null;
-		LOGGER.debug("Job {} completed and was triggered by {}", jobDetail.getKey(), trigger.getKey());
-
+		long startTime = System.nanoTime();
+		boolean failed = false;
 		try
 		{
-			boolean signal = true;
-			switch (triggerInstCode)
+			List<OperableTrigger> triggersForJob = null;
+			LOGGER.debug("Job {} completed and was triggered by {}", jobDetail.getKey(), trigger.getKey());
+		
+			if (completionQueue != null && queueCompletion(trigger, triggerInstCode))
 			{
-				case NOOP:
-					updateTrigger(trigger, STATE_WAITING);
-					break;
+				return;
+			}
+
+			try
+			{
+				boolean signal = true;
+				switch (triggerInstCode)
+				{
+					case NOOP:
+						updateTrigger(trigger, STATE_WAITING);
+						break;
 					
-				case DELETE_TRIGGER:
-					signal = deleteTrigger(trigger);
-					break;
+					case DELETE_TRIGGER:
+						signal = deleteTrigger(trigger);
+						break;
 					
-				case SET_TRIGGER_COMPLETE:
-					updateTrigger(trigger, STATE_COMPLETED);
-					break;
+					case SET_TRIGGER_COMPLETE:
+						updateTrigger(trigger, STATE_COMPLETED);
+						break;
 
-				case SET_TRIGGER_ERROR:
-					updateTrigger(trigger, STATE_ERROR);
-					break;
+					case SET_TRIGGER_ERROR:
+						updateTrigger(trigger, STATE_ERROR);
+						break;
 					
-				case SET_ALL_JOB_TRIGGERS_COMPLETE:
-					triggersForJob = getTriggersForJob(jobDetail.getKey());
-					for (OperableTrigger triggerForJob : triggersForJob)
-					{
-						updateTrigger(triggerForJob, STATE_COMPLETED);
-					}
-					break;
+					case SET_ALL_JOB_TRIGGERS_COMPLETE:
+						triggersForJob = getTriggersForJob(jobDetail.getKey());
+						for (OperableTrigger triggerForJob : triggersForJob)
+						{
+							updateTrigger(triggerForJob, STATE_COMPLETED);
+						}
+						break;
 					
-				case SET_ALL_JOB_TRIGGERS_ERROR:
-					triggersForJob = getTriggersForJob(jobDetail.getKey());
-					for (OperableTrigger triggerForJob : triggersForJob)
-					{
-						updateTrigger(triggerForJob, STATE_ERROR);
-					}
-					break;
+					case SET_ALL_JOB_TRIGGERS_ERROR:
+						triggersForJob = getTriggersForJob(jobDetail.getKey());
+						for (OperableTrigger triggerForJob : triggersForJob)
+						{
+							updateTrigger(triggerForJob, STATE_ERROR);
+						}
+						break;
 					
-				case RE_EXECUTE_JOB:
-					LOGGER.warn("Not yet implemented!");
-					break;
+					case RE_EXECUTE_JOB:
+						LOGGER.warn("Not yet implemented!");
+						break;
+				}
+				if (signal)
+				{
+	                signaler.signalSchedulingChange(0L);
+				}
+			}
+			catch (JobPersistenceException e)
+			{
+				LOGGER.error("Exception occurred when handling completed job " + jobDetail.getKey(), e);
+			}
+		}
+		catch (RuntimeException e)
+		{
+			failed = true;
+			throw e;
+		}
+		finally
+		{
+			metrics.recordOperation(Metrics.OPERATION_COMPLETE, startTime, failed);
+		}
+	}
+
+	/**
+	 * Queues the completion of a trigger, if it can be written asynchronously.
+	 * 
+	 * @return Returns <code>true</code> if the completion was queued.
+	 */
+	private boolean queueCompletion(OperableTrigger trigger, CompletedExecutionInstruction triggerInstCode)
+	{
+		CompletionQueue.Completion completion;
+		switch (triggerInstCode)
+		{
+			case NOOP:
+				completion = CompletionQueue.Completion.update(trigger.getKey(), wrapTrigger(trigger, STATE_WAITING));
+				break;
+				
+			case DELETE_TRIGGER:
+				completion = CompletionQueue.Completion.delete(trigger.getKey(), trigger.getNextFireTime() != null);
+				break;
+				
+			case SET_TRIGGER_COMPLETE:
+				completion = CompletionQueue.Completion.update(trigger.getKey(), wrapTrigger(trigger, STATE_COMPLETED));
+				break;
+				
+			case SET_TRIGGER_ERROR:
+				completion = CompletionQueue.Completion.update(trigger.getKey(), wrapTrigger(trigger, STATE_ERROR));
+				break;
+				
+			default:
+				return false;
+		}
+		
+		try
+		{
+			return completionQueue.add(completion);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			LOGGER.warn("Interrupted while queuing completed trigger {}, writing it directly", trigger.getKey());
+			return false;
+		}
+	}
+	
+	/**
+	 * Writes completed triggers in a single bulk request.
+	 * <p>
+	 * Completions that could not be written in bulk, because a request failed or a trigger was changed
+	 * since its version was read, are written one at a time instead, so that no trigger is left executing.
+	 * <p>
+	 * Called by the background thread of the {@link CompletionQueue}.
+	 */
+	void flushCompletions(List<CompletionQueue.Completion> completions)
+	{
+		LOGGER.debug("Writing {} completed triggers", completions.size());
+		
+		// Get the versions of updated triggers that are not remembered
+		Map<TriggerKey, Integer> versions = new HashMap<>();
+		List<TriggerKey> requestedKeys = new ArrayList<>();
+		for (CompletionQueue.Completion completion : completions)
+		{
+			GetResult<TriggerWrapper> rememberedResult = completion.isDelete() ? null : triggerVersions.get(completion.getKey());
+			if (rememberedResult != null)
+			{
+				versions.put(completion.getKey(), rememberedResult.getVersion());
+			}
+			else if (!completion.isDelete())
+			{
+				requestedKeys.add(completion.getKey());
+			}
+		}
+		Set<TriggerKey> missingKeys = new HashSet<>();
+		if (!requestedKeys.isEmpty())
+		{
+			List<String> triggerIds = new ArrayList<>();
+			for (TriggerKey key : requestedKeys)
+			{
+				triggerIds.add(key.toString());
+			}
+			
+			MultiGetDocuments documents = null;
+			try
+			{
+				documents = multiGet(triggerIds, new ArrayList<String>(), new ArrayList<JobKey>());
+			}
+			catch (JobPersistenceException e)
+			{
+				LOGGER.warn("Exception occurred when requesting " + triggerIds.size() + " completed triggers", e);
+			}
+			for (int i = 0; documents != null && i < triggerIds.size(); i++)
+			{
+				GetResult<TriggerWrapper> result = documents.triggers.get(i);
+				if (result.isFound())
+				{
+					versions.put(requestedKeys.get(i), result.getVersion());
+				}
+				else
+				{
+					missingKeys.add(requestedKeys.get(i));
+				}
+			}
+		}
+		
+		boolean signal = false;
+		List<CompletionQueue.Completion> written = new ArrayList<>();
+		BulkRequestBuilder bulkRequest = new BulkRequestBuilder(serializer);
+		for (CompletionQueue.Completion completion : completions)
+		{
+			TriggerKey key = completion.getKey();
+			if (completion.isDelete())
+			{
+				triggerVersions.remove(key);
+				bulkRequest.delete(getTypeName(TRIGGER_TYPE), key.toString());
+			}
+			else if (versions.containsKey(key))
+			{
+				bulkRequest.index(getTypeName(TRIGGER_TYPE), key.toString(), versions.get(key), completion.getTriggerWrapper());
+			}
+			else if (missingKeys.contains(key))
+			{
+				LOGGER.warn("Trigger {} was completed, but not found when requesting it", key);
+				continue;
+			}
+			else
+			{
+				// The version could not be requested, so write the trigger the slow way
+				updateTrigger(completion.getTriggerWrapper());
+				signal |= completion.isSignal();
+				continue;
+			}
+			written.add(completion);
+		}
+		
+		List<BulkItem> items = new ArrayList<>();
+		if (!bulkRequest.isEmpty())
+		{
+			try
+			{
+				items = executeBulk(bulkRequest);
+			}
+			catch (JobPersistenceException e)
+			{
+				LOGGER.warn("Exception occurred when writing " + written.size() + " completed triggers", e);
+				items = null;
+			}
+		}
+		for (int i = 0; i < written.size(); i++)
+		{
+			CompletionQueue.Completion completion = written.get(i);
+			BulkItemResult itemResult = items != null ? items.get(i).getResult() : null;
+			if (itemResult != null && itemResult.isSuccessful())
+			{
+				if (!completion.isDelete())
+				{
+					rememberVersion(completion.getTriggerWrapper(), itemResult.getVersion());
+				}
+			}
+			else if (completion.isDelete())
+			{
+				removeCompletedTrigger(completion.getKey());
 			}
-			if (signal)
+			else
 			{
-                signaler.signalSchedulingChange(0L);
+				// The trigger was changed since its version was read, or the bulk request failed, so write it the slow way
+				if (itemResult != null)
+				{
+					triggerVersions.remove(completion.getKey());
+				}
+				updateTrigger(completion.getTriggerWrapper());
 			}
+			signal |= completion.isSignal();
+		}
+		
+		if (signal)
+		{
+			signaler.signalSchedulingChange(0L);
+		}
+	}
+	
+	/**
+	 * Removes a completed trigger that could not be removed in bulk.
+	 */
+	private void removeCompletedTrigger(TriggerKey key)
+	{
+		try
+		{
+			removeTrigger(key);
 		}
 		catch (JobPersistenceException e)
 		{
-			LOGGER.error("Exception occurred when handling completed job " + jobDetail.getKey(), e);
+			LOGGER.error("Exception occurred when removing completed trigger " + key, e);
 		}
 	}
 
 	private void updateTrigger(OperableTrigger trigger, int state)
 	{
+		updateTrigger(wrapTrigger(trigger, state));
+	}
+
+	private void updateTrigger(TriggerWrapper triggerWrapper)
+	{
+		TriggerKey key = new TriggerKey(triggerWrapper.getName(), triggerWrapper.getGroup());
 		try
 		{
-			// Get the trigger to retrieve the version number
-			String requestURL = getTypeURL(TRIGGER_TYPE, trigger.getKey().toString());
-			HttpResponse response = httpCommunicator.request("GET", requestURL);
-			if (!isOK(response))
+			String requestURL = getTypeURL(TRIGGER_TYPE, key.toString());
+			String requestData = serializer.to(triggerWrapper);
+			
+			// Try with the version remembered from when the trigger was fired, and only get the trigger if it is outdated
+			HttpResponse response = null;
+			GetResult<TriggerWrapper> rememberedResult = triggerVersions.get(key);
+			if (rememberedResult != null)
 			{
-				LOGGER.warn("Error when requesting trigger {}", trigger.getKey());
-				return;
+				response = httpCommunicator.request("PUT", requestURL + "?version=" + rememberedResult.getVersion(), requestData);
+				if (isConflict(response))
+				{
+					LOGGER.debug("Remembered version of trigger {} is outdated", key);
+					triggerVersions.remove(key);
+					response = null;
+				}
 			}
-			GetResult<TriggerWrapper> result = serializer.from(response.getResponseData(), new TypeToken<GetResult<TriggerWrapper>>() {});
 			
-			// If the requested trigger was not found, continue to the next
-			if (!result.isFound())
+			if (response == null)
 			{
-				LOGGER.warn("Trigger {} was requested, but not found when requesting it", trigger.getKey());
-				return;
+				// Get the trigger to retrieve the version number
+				response = httpCommunicator.request("GET", requestURL);
+				if (!isOK(response))
+				{
+					LOGGER.warn("Error when requesting trigger {}", key);
+					return;
+				}
+				GetResult<TriggerWrapper> result = fromResponse(response, TypeTokens.GET_TRIGGER);
+				
+				// If the requested trigger was not found, continue to the next
+				if (!result.isFound())
+				{
+					LOGGER.warn("Trigger {} was requested, but not found when requesting it", key);
+					return;
+				}
+				
+				response = httpCommunicator.request("PUT", requestURL + "?version=" + result.getVersion(), requestData);
 			}
 			
-			// Update the state and times of the trigger
-			TriggerWrapper triggerWrapper = toTriggerWrapper(trigger, state);
-			String requestData = serializer.to(triggerWrapper);
-			requestURL = requestURL + "?version=" + result.getVersion();
-			response = httpCommunicator.request("PUT", requestURL, requestData);
-			
 			if (isOK(response))
 			{
-				LOGGER.debug("Successfully updated trigger {}", trigger.getKey());
+				PutResult result = fromResponse(response, TypeTokens.PUT);
+				rememberVersion(triggerWrapper, result.getVersion());
+				LOGGER.debug("Successfully updated trigger {}", key);
 			}
 			else
 			{
-				LOGGER.error("Got error code '{} {}' when updating trigger {}", new Object[] { response.getResponseCode(), response.getResponseMessage(), trigger.getKey() });
+				LOGGER.error("Got error code '{} {}' when updating trigger {}", new Object[] { response.getResponseCode(), response.getResponseMessage(), key });
 			}
 		}
 		catch (JobPersistenceException e)
 		{
-			LOGGER.error("Exception occurred when updating trigger " + trigger.getKey(), e);
+			LOGGER.error("Exception occurred when updating trigger " + key, e);
 		}
 	}
+	
+	private void rememberVersion(TriggerWrapper triggerWrapper, int version)
+	{
+		GetResult<TriggerWrapper> result = new GetResult<>();
+		result.setFound(true);
+		result.setVersion(version);
+		result.setSource(triggerWrapper);
+		triggerVersions.put(new TriggerKey(triggerWrapper.getName(), triggerWrapper.getGroup()), result);
+	}
 
 	private boolean deleteTrigger(OperableTrigger trigger) throws JobPersistenceException
 	{
@@ -1000,18 +3898,18 @@ public class ElasticsearchJobStore implements JobStore
 		}
 	}
 
-	/** Does nothing. */
+	/** {@inheritDoc} */
 	@Override
 	public void setInstanceId(String schedInstId)
 	{
-		// Not needed
+		this.instanceId = schedInstId;
 	}
 
-	/** Does nothing. */
+	/** {@inheritDoc} */
 	@Override
 	public void setInstanceName(String schedName)
 	{
-		// Not needed
+		this.instanceName = schedName;
 	}
 
 	/** Does nothing. */
@@ -1020,4 +3918,44 @@ public class ElasticsearchJobStore implements JobStore
 	{
 		// Not needed
 	}
+
+	/**
+	 * A job or trigger to store in a bulk request.
+	 */
+	private static class StoredDocument
+	{
+		private final String type;
+		private final String id;
+		private final Object source;
+		private final JobDetail job;
+		private final OperableTrigger trigger;
+		
+		private StoredDocument(JobDetail job)
+		{
+			this.type = JOB_TYPE;
+			this.id = job.getKey().toString();
+			this.source = toJobWrapper(job);
+			this.job = job;
+			this.trigger = null;
+		}
+		
+		private StoredDocument(OperableTrigger trigger, TriggerWrapper triggerWrapper)
+		{
+			this.type = TRIGGER_TYPE;
+			this.id = trigger.getKey().toString();
+			this.source = triggerWrapper;
+			this.job = null;
+			this.trigger = trigger;
+		}
+	}
+
+	/**
+	 * Holds the triggers and jobs of a multi GET request.
+	 */
+	private static class MultiGetDocuments
+	{
+		private List<GetResult<TriggerWrapper>> triggers;
+		private List<GetResult<JobWrapper>> jobs;
+		private List<GetResult<JobWrapper>> validatedJobs;
+	}
 }
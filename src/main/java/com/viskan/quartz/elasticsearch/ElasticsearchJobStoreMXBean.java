@@ -0,0 +1,97 @@
+package com.viskan.quartz.elasticsearch;
+
+/**
+ * Exposes the current state of an {@link ElasticsearchJobStore} through JMX, and the
+ * properties that can be tuned while the scheduler is running.
+ *
+ * @author Anton Johansson
+ */
+public interface ElasticsearchJobStoreMXBean
+{
+	/**
+	 * Gets the maximum number of triggers that the scheduler asked for in the last acquisition.
+	 *
+	 * @return Returns the requested batch size.
+	 */
+	int getLastAcquisitionMaxCount();
+
+	/**
+	 * Gets the number of waiting triggers that were found by the last acquisition.
+	 *
+	 * @return Returns the number of candidates.
+	 */
+	int getLastAcquisitionCandidates();
+
+	/**
+	 * Gets the number of triggers that were acquired by the last acquisition.
+	 *
+	 * @return Returns the acquired batch size.
+	 */
+	int getLastAcquisitionSize();
+
+	/**
+	 * Gets the time it took to make the last acquisition.
+	 *
+	 * @return Returns the latency in milliseconds.
+	 */
+	double getLastAcquisitionTime();
+
+	/**
+	 * Gets the number of HTTP requests that are currently waiting for a response.
+	 *
+	 * @return Returns the number of requests in flight.
+	 */
+	int getRequestsInFlight();
+
+	/**
+	 * Gets the state of the circuit breaker around the HTTP requests.
+	 *
+	 * @return Returns <code>CLOSED</code>, <code>OPEN</code> or <code>HALF_OPEN</code>, or <code>DISABLED</code> if there is no circuit breaker.
+	 */
+	String getCircuitBreakerState();
+
+	double getJobCacheHitRatio();
+
+	double getVersionCacheHitRatio();
+
+	/**
+	 * Gets the number of completed triggers waiting to be written, when completions are written asynchronously.
+	 *
+	 * @return Returns the number of pending completions.
+	 */
+	int getPendingCompletions();
+
+	/**
+	 * Gets the number of triggers that this instance has recovered from instances that stopped checking in.
+	 *
+	 * @return Returns the number of recovered triggers.
+	 */
+	long getRecoveredTriggers();
+
+	/**
+	 * Gets the number of trigger buckets that this instance acquires triggers from.
+	 *
+	 * @return Returns the number of owned buckets, which is all of them unless the triggers are partitioned.
+	 */
+	int getOwnedBuckets();
+
+	int getReadTimeout();
+
+	void setReadTimeout(int readTimeout);
+
+	double getAcquisitionHeadroom();
+
+	void setAcquisitionHeadroom(double acquisitionHeadroom);
+
+	int getBulkChunkDocuments();
+
+	void setBulkChunkDocuments(int bulkChunkDocuments);
+
+	int getBulkChunkBytes();
+
+	void setBulkChunkBytes(int bulkChunkBytes);
+
+	long getSlowFireThreshold();
+
+	void setSlowFireThreshold(long slowFireThreshold);
+}
@@ -0,0 +1,122 @@
+package com.viskan.quartz.elasticsearch;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the scheduler instance in and recovers the triggers of instances that have stopped
+ * checking in, from a background thread.
+ * <p>
+ * Each round first writes the heartbeat of this instance, and then looks for triggers whose
+ * leases have expired while their owners were silent. A round that could not check in does
+ * not recover anything, since this instance might be the one that is cut off. When the triggers
+ * are partitioned, the buckets are also assigned among the instances that have checked in.
+ *
+ * @author Anton Johansson
+ */
+class LeaseSweeper implements Runnable
+{
+	private static final transient Logger LOGGER = LoggerFactory.getLogger(LeaseSweeper.class);
+
+	private final ElasticsearchJobStore jobStore;
+	private final long interval;
+	private Thread thread;
+	private boolean stopped;
+
+	LeaseSweeper(ElasticsearchJobStore jobStore, long interval)
+	{
+		this.jobStore = jobStore;
+		this.interval = interval;
+	}
+
+	/**
+	 * Starts the background thread that checks in and recovers triggers.
+	 *
+	 * @param name The name of the thread.
+	 */
+	synchronized void start(String name)
+	{
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the background thread, waiting for the current round to finish.
+	 */
+	void shutdown()
+	{
+		Thread sweepThread;
+		synchronized (this)
+		{
+			stopped = true;
+			sweepThread = thread;
+			notifyAll();
+		}
+
+		if (sweepThread != null)
+		{
+			try
+			{
+				sweepThread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				LOGGER.warn("Interrupted while waiting for the lease sweeper to stop");
+			}
+		}
+	}
+
+	@Override
+	public void run()
+	{
+		while (true)
+		{
+			try
+			{
+				List<String> liveInstances = jobStore.checkIn() ? jobStore.getLiveInstances() : null;
+				if (liveInstances != null)
+				{
+					jobStore.assignBuckets(liveInstances);
+					jobStore.recoverExpiredLeases(liveInstances);
+				}
+			}
+			catch (RuntimeException e)
+			{
+				LOGGER.error("Exception occurred when recovering expired leases", e);
+			}
+
+			try
+			{
+				if (!await())
+				{
+					return;
+				}
+			}
+			catch (InterruptedException e)
+			{
+				LOGGER.warn("Interrupted while waiting for the next check-in, expired leases will not be recovered");
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Waits until the next round.
+	 *
+	 * @return Returns <code>false</code> if the sweeper is stopped.
+	 */
+	private synchronized boolean await() throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + interval;
+		long remaining;
+		while (!stopped && (remaining = deadline - System.currentTimeMillis()) > 0)
+		{
+			wait(remaining);
+		}
+		return !stopped;
+	}
+}
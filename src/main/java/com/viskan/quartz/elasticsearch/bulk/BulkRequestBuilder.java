@@ -0,0 +1,129 @@
+package com.viskan.quartz.elasticsearch.bulk;
+
+import com.viskan.quartz.elasticsearch.serializer.ISerializer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Builds the newline delimited body of an elasticsearch bulk request.
+ *
+ * @author Anton Johansson
+ */
+public class BulkRequestBuilder
+{
+	private final ISerializer serializer;
+	private final StringBuilder body = new StringBuilder();
+	private int actions;
+
+	public BulkRequestBuilder(ISerializer serializer)
+	{
+		this.serializer = serializer;
+	}
+
+	/**
+	 * Adds an action that creates or replaces a document.
+	 * 
+	 * @param type The type of the document.
+	 * @param id The ID of the document.
+	 * @param version The version the document must have, or <code>null</code> to write unconditionally.
+	 * @param source The document to write.
+	 * @return Returns this builder.
+	 */
+	public BulkRequestBuilder index(String type, String id, Integer version, Object source)
+	{
+		appendAction("index", type, id, version);
+		appendSource(source);
+		return this;
+	}
+
+	/**
+	 * Adds an action that creates a document, failing if it already exists.
+	 * 
+	 * @param type The type of the document.
+	 * @param id The ID of the document.
+	 * @param source The document to write.
+	 * @return Returns this builder.
+	 */
+	public BulkRequestBuilder create(String type, String id, Object source)
+	{
+		appendAction("create", type, id, null);
+		appendSource(source);
+		return this;
+	}
+
+	/**
+	 * Adds an action that deletes a document.
+	 * 
+	 * @param type The type of the document.
+	 * @param id The ID of the document.
+	 * @return Returns this builder.
+	 */
+	public BulkRequestBuilder delete(String type, String id)
+	{
+		appendAction("delete", type, id, null);
+		return this;
+	}
+
+	private void appendAction(String action, String type, String id, Integer version)
+	{
+		Map<String, Object> metadata = new LinkedHashMap<>();
+		metadata.put("_type", type);
+		metadata.put("_id", id);
+		if (version != null)
+		{
+			metadata.put("_version", version);
+		}
+
+		Map<String, Object> actionObject = new LinkedHashMap<>();
+		actionObject.put(action, metadata);
+
+		body.append(serializer.to(actionObject)).append('\n');
+		actions++;
+	}
+
+	private void appendSource(Object source)
+	{
+		body.append(serializer.to(source)).append('\n');
+	}
+
+	/**
+	 * Gets the number of actions added to this builder.
+	 * 
+	 * @return Returns the number of actions.
+	 */
+	public int getActions()
+	{
+		return actions;
+	}
+
+	/**
+	 * Gets the current length of the body.
+	 * 
+	 * @return Returns the length of the body.
+	 */
+	public int getLength()
+	{
+		return body.length();
+	}
+
+	/**
+	 * Checks whether any actions have been added to this builder.
+	 * 
+	 * @return Returns <code>true</code> if no actions have been added.
+	 */
+	public boolean isEmpty()
+	{
+		return actions == 0;
+	}
+
+	/**
+	 * Builds the body of the bulk request.
+	 * 
+	 * @return Returns the body of the bulk request.
+	 */
+	public String build()
+	{
+		return body.toString();
+	}
+}
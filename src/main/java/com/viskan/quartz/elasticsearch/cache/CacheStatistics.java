@@ -0,0 +1,71 @@
+package com.viskan.quartz.elasticsearch.cache;
+
+/**
+ * A snapshot of the usage of a {@link LruCache}.
+ *
+ * @author Anton Johansson
+ */
+public class CacheStatistics
+{
+	private final int maxSize;
+	private final int size;
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+
+	public CacheStatistics(int maxSize, int size, long hits, long misses, long evictions)
+	{
+		this.maxSize = maxSize;
+		this.size = size;
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+	}
+
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	public int getSize()
+	{
+		return size;
+	}
+
+	public long getHits()
+	{
+		return hits;
+	}
+
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Gets the number of entries that were removed because the cache was full or because they expired.
+	 *
+	 * @return Returns the number of evictions.
+	 */
+	public long getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * Gets the share of lookups that were found in the cache.
+	 *
+	 * @return Returns the hit ratio, between <code>0</code> and <code>1</code>.
+	 */
+	public double getHitRatio()
+	{
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "size=" + size + ", max=" + maxSize + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+	}
+}
@@ -0,0 +1,163 @@
+package com.viskan.quartz.elasticsearch.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread safe cache that holds at most a fixed number of entries, evicting
+ * the least recently used entry when it is full.
+ * <p>
+ * Entries can optionally expire a fixed time after they were cached.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ * @author Anton Johansson
+ */
+public class LruCache<K, V>
+{
+	private final int maxSize;
+	private final long timeToLive;
+	private final Map<K, Entry<V>> entries;
+
+	// Statistics
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Creates a new cache whose entries never expire.
+	 *
+	 * @param maxSize The maximum number of entries. A size of zero disables the cache.
+	 */
+	public LruCache(int maxSize)
+	{
+		this(maxSize, 0);
+	}
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param maxSize The maximum number of entries. A size of zero disables the cache.
+	 * @param timeToLive The number of milliseconds an entry is kept. Zero keeps entries until they are evicted.
+	 */
+	public LruCache(final int maxSize, long timeToLive)
+	{
+		if (maxSize < 0)
+		{
+			throw new IllegalArgumentException("The size of the cache cannot be negative");
+		}
+		if (timeToLive < 0)
+		{
+			throw new IllegalArgumentException("The time to live of the cache cannot be negative");
+		}
+		this.maxSize = maxSize;
+		this.timeToLive = timeToLive;
+		this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest)
+			{
+				if (size() > maxSize)
+				{
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Gets the value of given key.
+	 *
+	 * @param key The key to get value of.
+	 * @return Returns the value, or <code>null</code> if the key is not cached or has expired.
+	 */
+	public synchronized V get(K key)
+	{
+		Entry<V> entry = entries.get(key);
+		if (entry == null)
+		{
+			misses++;
+			return null;
+		}
+		if (timeToLive > 0 && System.currentTimeMillis() - entry.created > timeToLive)
+		{
+			entries.remove(key);
+			evictions++;
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.value;
+	}
+
+	/**
+	 * Caches a value.
+	 *
+	 * @param key The key of the value.
+	 * @param value The value to cache.
+	 */
+	public synchronized void put(K key, V value)
+	{
+		if (maxSize > 0)
+		{
+			entries.put(key, new Entry<>(value, System.currentTimeMillis()));
+		}
+	}
+
+	/**
+	 * Removes the value of given key.
+	 *
+	 * @param key The key to remove.
+	 */
+	public synchronized void remove(K key)
+	{
+		entries.remove(key);
+	}
+
+	/**
+	 * Removes all values.
+	 */
+	public synchronized void clear()
+	{
+		entries.clear();
+	}
+
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	/**
+	 * Gets the usage of the cache.
+	 *
+	 * @return Returns a snapshot of the cache statistics.
+	 */
+	public synchronized CacheStatistics getStatistics()
+	{
+		return new CacheStatistics(maxSize, entries.size(), hits, misses, evictions);
+	}
+
+	/**
+	 * A cached value together with the time it was cached.
+	 */
+	private static class Entry<V>
+	{
+		private final V value;
+		private final long created;
+
+		private Entry(V value, long created)
+		{
+			this.value = value;
+			this.created = created;
+		}
+	}
+}
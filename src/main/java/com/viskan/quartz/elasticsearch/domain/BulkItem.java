@@ -0,0 +1,61 @@
+package com.viskan.quartz.elasticsearch.domain;
+
+/**
+ * Represents a single item of a bulk result, keyed by the action that was performed.
+ *
+ * @author Anton Johansson
+ */
+public class BulkItem
+{
+	private BulkItemResult index;
+	private BulkItemResult create;
+	private BulkItemResult delete;
+
+	public BulkItemResult getIndex()
+	{
+		return index;
+	}
+
+	public void setIndex(BulkItemResult index)
+	{
+		this.index = index;
+	}
+
+	public BulkItemResult getCreate()
+	{
+		return create;
+	}
+
+	public void setCreate(BulkItemResult create)
+	{
+		this.create = create;
+	}
+
+	public BulkItemResult getDelete()
+	{
+		return delete;
+	}
+
+	public void setDelete(BulkItemResult delete)
+	{
+		this.delete = delete;
+	}
+
+	/**
+	 * Gets the result of the item, regardless of which action was performed.
+	 * 
+	 * @return Returns the result of the item.
+	 */
+	public BulkItemResult getResult()
+	{
+		if (index != null)
+		{
+			return index;
+		}
+		if (create != null)
+		{
+			return create;
+		}
+		return delete;
+	}
+}
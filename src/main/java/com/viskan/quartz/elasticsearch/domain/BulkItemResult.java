@@ -0,0 +1,76 @@
+package com.viskan.quartz.elasticsearch.domain;
+
+/**
+ * Represents the result of a single action within a bulk request.
+ *
+ * @author Anton Johansson
+ */
+public class BulkItemResult
+{
+	public static final transient int STATUS_CONFLICT = 409;
+
+	private String id;
+	private int version;
+	private int status;
+	private String error;
+
+	public String getId()
+	{
+		return id;
+	}
+
+	public void setId(String id)
+	{
+		this.id = id;
+	}
+
+	public int getVersion()
+	{
+		return version;
+	}
+
+	public void setVersion(int version)
+	{
+		this.version = version;
+	}
+
+	public int getStatus()
+	{
+		return status;
+	}
+
+	public void setStatus(int status)
+	{
+		this.status = status;
+	}
+
+	public String getError()
+	{
+		return error;
+	}
+
+	public void setError(String error)
+	{
+		this.error = error;
+	}
+
+	/**
+	 * Returns whether or not the action succeeded.
+	 * 
+	 * @return Returns <code>true</code> if the action succeeded.
+	 */
+	public boolean isSuccessful()
+	{
+		return status == 200 || status == 201;
+	}
+
+	/**
+	 * Returns whether or not the action failed because the document had been changed by someone else.
+	 * 
+	 * @return Returns <code>true</code> if the action failed due to a version conflict.
+	 */
+	public boolean isConflict()
+	{
+		return status == STATUS_CONFLICT;
+	}
+}
@@ -0,0 +1,45 @@
+package com.viskan.quartz.elasticsearch.domain;
+
+import java.util.List;
+
+/**
+ * Represents the result of a bulk request.
+ *
+ * @author Anton Johansson
+ */
+public class BulkResult
+{
+	private int took;
+	private boolean errors;
+	private List<BulkItem> items;
+
+	public int getTook()
+	{
+		return took;
+	}
+
+	public void setTook(int took)
+	{
+		this.took = took;
+	}
+
+	public boolean isErrors()
+	{
+		return errors;
+	}
+
+	public void setErrors(boolean errors)
+	{
+		this.errors = errors;
+	}
+
+	public List<BulkItem> getItems()
+	{
+		return items;
+	}
+
+	public void setItems(List<BulkItem> items)
+	{
+		this.items = items;
+	}
+}
@@ -7,10 +7,21 @@ package com.viskan.quartz.elasticsearch.domain;
  */
 public class GetResult<T>
 {
+	private String id;
 	private int version;
 	private boolean found;
 	private T source;
 
+	public String getId()
+	{
+		return id;
+	}
+
+	public void setId(String id)
+	{
+		this.id = id;
+	}
+
 	public int getVersion()
 	{
 		return version;
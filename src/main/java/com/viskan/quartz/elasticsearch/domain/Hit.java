@@ -8,6 +8,7 @@ package com.viskan.quartz.elasticsearch.domain;
 public class Hit<T>
 {
 	private String id;
+	private int version;
 	private T source;
 
 	public String getId()
@@ -20,6 +21,16 @@ public class Hit<T>
 		this.id = id;
 	}
 
+	public int getVersion()
+	{
+		return version;
+	}
+
+	public void setVersion(int version)
+	{
+		this.version = version;
+	}
+
 	public T getSource()
 	{
 		return source;
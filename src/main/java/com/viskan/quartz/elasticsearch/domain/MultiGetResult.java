@@ -0,0 +1,23 @@
+package com.viskan.quartz.elasticsearch.domain;
+
+import java.util.List;
+
+/**
+ * Represents the result of a multi GET request.
+ *
+ * @author Anton Johansson
+ */
+public class MultiGetResult<T>
+{
+	private List<GetResult<T>> docs;
+
+	public List<GetResult<T>> getDocs()
+	{
+		return docs;
+	}
+
+	public void setDocs(List<GetResult<T>> docs)
+	{
+		this.docs = docs;
+	}
+}
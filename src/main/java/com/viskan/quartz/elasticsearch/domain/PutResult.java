@@ -8,6 +8,7 @@ package com.viskan.quartz.elasticsearch.domain;
 public class PutResult
 {
 	private String id;
+	private int version;
 	private boolean created;
 
 	public String getId()
@@ -20,6 +21,16 @@ public class PutResult
 		this.id = id;
 	}
 
+	public int getVersion()
+	{
+		return version;
+	}
+
+	public void setVersion(int version)
+	{
+		this.version = version;
+	}
+
 	public boolean isCreated()
 	{
 		return created;
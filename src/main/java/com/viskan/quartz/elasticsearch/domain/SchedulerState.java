@@ -0,0 +1,55 @@
+package com.viskan.quartz.elasticsearch.domain;
+
+/**
+ * Represents the heartbeat of a scheduler instance, which tells the other instances
+ * that the triggers it owns should not be recovered.
+ *
+ * @author Anton Johansson
+ */
+public class SchedulerState
+{
+	private String instanceId;
+	private String instanceName;
+	private long lastCheckin;
+	private long checkinInterval;
+
+	public String getInstanceId()
+	{
+		return instanceId;
+	}
+
+	public void setInstanceId(String instanceId)
+	{
+		this.instanceId = instanceId;
+	}
+
+	public String getInstanceName()
+	{
+		return instanceName;
+	}
+
+	public void setInstanceName(String instanceName)
+	{
+		this.instanceName = instanceName;
+	}
+
+	public long getLastCheckin()
+	{
+		return lastCheckin;
+	}
+
+	public void setLastCheckin(long lastCheckin)
+	{
+		this.lastCheckin = lastCheckin;
+	}
+
+	public long getCheckinInterval()
+	{
+		return checkinInterval;
+	}
+
+	public void setCheckinInterval(long checkinInterval)
+	{
+		this.checkinInterval = checkinInterval;
+	}
+}
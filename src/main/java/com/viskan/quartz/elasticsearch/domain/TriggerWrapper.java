@@ -28,6 +28,9 @@ public class TriggerWrapper
 	private long repeatInterval;
 	private int timesTriggered;
 	private String cronExpression;
+	private String owner;
+	private Long leaseExpiry;
+	private Integer bucket;
 
 	public String getName()
 	{
@@ -178,4 +181,50 @@ public class TriggerWrapper
 	{
 		this.cronExpression = cronExpression;
 	}
+
+	/**
+	 * Gets the instance ID of the scheduler that acquired or fired the trigger.
+	 *
+	 * @return Returns the owner, or <code>null</code> if the trigger is not leased.
+	 */
+	public String getOwner()
+	{
+		return owner;
+	}
+
+	public void setOwner(String owner)
+	{
+		this.owner = owner;
+	}
+
+	/**
+	 * Gets the time when the lease of the owner expires, after which the trigger can be
+	 * recovered by another scheduler if the owner has stopped checking in.
+	 *
+	 * @return Returns the lease expiry in milliseconds since the epoch, or <code>null</code> if the trigger is not leased.
+	 */
+	public Long getLeaseExpiry()
+	{
+		return leaseExpiry;
+	}
+
+	public void setLeaseExpiry(Long leaseExpiry)
+	{
+		this.leaseExpiry = leaseExpiry;
+	}
+
+	/**
+	 * Gets the bucket that the trigger is partitioned into.
+	 *
+	 * @return Returns the bucket, or <code>null</code> if the trigger was stored without partitioning.
+	 */
+	public Integer getBucket()
+	{
+		return bucket;
+	}
+
+	public void setBucket(Integer bucket)
+	{
+		this.bucket = bucket;
+	}
 }
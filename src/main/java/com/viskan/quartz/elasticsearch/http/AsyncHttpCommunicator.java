@@ -0,0 +1,526 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.quartz.JobPersistenceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@link HttpCommunicator} that makes requests over non-blocking
+ * persistent connections, so that many requests can be in flight without a thread
+ * blocking on each of them.
+ * <p>
+ * {@link #requestAsync(String, String, String)} returns as soon as the request has been
+ * queued. Requests beyond the maximum number of connections to a host wait for one of them
+ * to become idle. {@link #request(String, String, String)} waits for the response.
+ *
+ * @author Anton Johansson
+ */
+public class AsyncHttpCommunicator extends HttpCommunicator implements Closeable
+{
+	private static final transient Logger LOGGER = LoggerFactory.getLogger(AsyncHttpCommunicator.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final int maxConnectionsPerHost;
+	private final long idleTimeout;
+	private final ScheduledThreadPoolExecutor executor;
+	private final AsynchronousChannelGroup group;
+	private final Map<String, Route> routes = new HashMap<>();
+	private volatile boolean closed;
+
+	/**
+	 * Creates a new asynchronous communicator.
+	 *
+	 * @param maxConnectionsPerHost The maximum number of open connections to a single host.
+	 * @param idleTimeout The number of milliseconds a connection can be idle before it is closed.
+	 * @param ioThreads The number of threads that complete the requests.
+	 * @throws IOException Thrown if the I/O threads could not be started.
+	 */
+	public AsyncHttpCommunicator(int maxConnectionsPerHost, long idleTimeout, int ioThreads) throws IOException
+	{
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		this.idleTimeout = idleTimeout;
+		this.executor = new ScheduledThreadPoolExecutor(ioThreads, new ThreadFactory()
+		{
+			private final AtomicInteger threadNumber = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "ElasticsearchJobStore-io-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.executor.setRemoveOnCancelPolicy(true);
+		this.group = AsynchronousChannelGroup.withThreadPool(executor);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public HttpResponse request(String method, String requestURL, String requestData) throws JobPersistenceException
+	{
+		return getResponse(requestAsync(method, requestURL, requestData));
+	}
+
+	/**
+	 * Waits for the response of a request made by {@link #requestAsync(String, String, String)}.
+	 *
+	 * @param future The pending response.
+	 * @return Returns the HTTP response.
+	 * @throws JobPersistenceException Thrown if any error has occurred during the HTTP request.
+	 */
+	public static HttpResponse getResponse(Future<HttpResponse> future) throws JobPersistenceException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof JobPersistenceException)
+			{
+				throw (JobPersistenceException) e.getCause();
+			}
+			throw new JobPersistenceException("Error when making HTTP request", e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new JobPersistenceException("Interrupted while waiting for HTTP response", e);
+		}
+	}
+
+	/**
+	 * Performs an HTTP request without waiting for the response.
+	 *
+	 * @param method The method to use.
+	 * @param requestURL The URL to request.
+	 * @param requestData The data to include in the body.
+	 * @return Returns the pending HTTP response, which fails with a {@link JobPersistenceException}
+	 *         if any error has occurred during the HTTP request.
+	 */
+	public Future<HttpResponse> requestAsync(String method, String requestURL, String requestData)
+	{
+		Exchange exchange = new Exchange(method, requestURL, requestData.getBytes(UTF_8), startRequest(), getNodeSelector());
+		LOGGER.debug("Executing HTTP {} against '{}' with body '{}'", new Object[] { method, requestURL, requestData });
+		exchange.start();
+		return exchange.future;
+	}
+
+	/**
+	 * Sends given exchange over an idle connection, opens a new connection if the host has
+	 * fewer than the maximum, or queues the exchange until a connection is released.
+	 */
+	private void dispatch(Exchange exchange)
+	{
+		Route route = getRoute(exchange.host, exchange.port);
+		AsyncHttpConnection connection;
+		synchronized (route)
+		{
+			if (closed)
+			{
+				exchange.failed(new IOException("The communicator is closed"));
+				return;
+			}
+
+			connection = route.pollIdle(System.currentTimeMillis());
+			if (connection == null)
+			{
+				if (route.openConnections >= maxConnectionsPerHost)
+				{
+					route.waiting.add(exchange);
+					return;
+				}
+				route.openConnections++;
+			}
+		}
+
+		if (connection != null)
+		{
+			execute(route, connection, exchange);
+		}
+		else
+		{
+			connect(route, exchange);
+		}
+	}
+
+	private void connect(final Route route, final Exchange exchange)
+	{
+		AsyncHttpConnection.open(group, executor, exchange.host, exchange.port, getReadTimeout(), new AsyncHttpConnection.Callback<AsyncHttpConnection>()
+		{
+			@Override
+			public void completed(AsyncHttpConnection connection)
+			{
+				execute(route, connection, exchange);
+			}
+
+			@Override
+			public void failed(Throwable e)
+			{
+				release(route, null, false);
+				exchange.failed(e);
+			}
+		});
+	}
+
+	private void execute(final Route route, final AsyncHttpConnection connection, final Exchange exchange)
+	{
+		connection.execute(exchange.method, exchange.hostHeader, exchange.path, exchange.body, getReadTimeout(), new AsyncHttpConnection.Callback<HttpConnection.Response>()
+		{
+			@Override
+			public void completed(HttpConnection.Response response)
+			{
+				release(route, connection, response.isKeepAlive());
+				exchange.complete(response);
+			}
+
+			@Override
+			public void failed(Throwable e)
+			{
+				release(route, connection, false);
+
+				// The server may have closed a reused connection before we could send the request, try again with another one
+				if (connection.isReused() && connection.canResend() && !exchange.retried)
+				{
+					LOGGER.debug("Reused connection to '{}' failed, retrying", connection.getRoute());
+					exchange.retried = true;
+					dispatch(exchange);
+				}
+				else
+				{
+					exchange.failed(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns a connection to the idle connections of its route, or closes it, and hands the
+	 * freed capacity to the next waiting exchange.
+	 *
+	 * @param connection The released connection, or <code>null</code> if it could not be opened.
+	 */
+	private void release(Route route, AsyncHttpConnection connection, boolean reusable)
+	{
+		Exchange next;
+		synchronized (route)
+		{
+			if (reusable && !closed)
+			{
+				connection.markIdle(System.currentTimeMillis());
+				route.idleConnections.push(connection);
+			}
+			else
+			{
+				if (connection != null)
+				{
+					connection.close();
+				}
+				route.openConnections--;
+			}
+			next = route.waiting.poll();
+		}
+
+		if (next != null)
+		{
+			dispatch(next);
+		}
+	}
+
+	private Route getRoute(String host, int port)
+	{
+		String key = ConnectionPool.getRoute(host, port);
+		synchronized (routes)
+		{
+			Route route = routes.get(key);
+			if (route == null)
+			{
+				route = new Route();
+				routes.put(key, route);
+			}
+			return route;
+		}
+	}
+
+	/**
+	 * Gets the number of open connections to all hosts.
+	 *
+	 * @return Returns the number of open connections.
+	 */
+	public int getOpenConnections()
+	{
+		int openConnections = 0;
+		for (Route route : getRoutes())
+		{
+			synchronized (route)
+			{
+				openConnections += route.openConnections;
+			}
+		}
+		return openConnections;
+	}
+
+	private List<Route> getRoutes()
+	{
+		synchronized (routes)
+		{
+			return new ArrayList<>(routes.values());
+		}
+	}
+
+	/**
+	 * Closes all idle connections and fails the requests that wait for a connection.
+	 * Requests in flight are completed before the I/O threads are stopped.
+	 */
+	@Override
+	public void close()
+	{
+		closed = true;
+		List<Exchange> waiting = new ArrayList<>();
+		for (Route route : getRoutes())
+		{
+			synchronized (route)
+			{
+				waiting.addAll(route.waiting);
+				route.waiting.clear();
+				for (AsyncHttpConnection connection : route.idleConnections)
+				{
+					connection.close();
+					route.openConnections--;
+				}
+				route.idleConnections.clear();
+			}
+		}
+
+		for (Exchange exchange : waiting)
+		{
+			exchange.fail(new IOException("The communicator is closed"));
+		}
+		group.shutdown();
+	}
+
+	/**
+	 * The connections to a single host and the exchanges waiting for one of them.
+	 */
+	private class Route
+	{
+		private final Deque<AsyncHttpConnection> idleConnections = new ArrayDeque<>();
+		private final Deque<Exchange> waiting = new ArrayDeque<>();
+		private int openConnections;
+
+		/**
+		 * Takes the most recently used idle connection, closing the ones that have been idle for too long.
+		 */
+		private AsyncHttpConnection pollIdle(long now)
+		{
+			AsyncHttpConnection connection;
+			while ((connection = idleConnections.poll()) != null)
+			{
+				if (now - connection.getLastUsed() <= idleTimeout)
+				{
+					return connection;
+				}
+				connection.close();
+				openConnections--;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * A request and its pending response.
+	 * <p>
+	 * If a node selector is set, a request that fails is sent to the next node, until it
+	 * succeeds or all nodes have failed it. Requests that can be sent again are retried
+	 * according to the retry policy, after a backoff scheduled on the I/O executor.
+	 */
+	private class Exchange
+	{
+		private final String method;
+		private final String requestURL;
+		private final byte[] body;
+		private final NodeSelector selector;
+		private final ResponseFuture future = new ResponseFuture();
+		private long startTime;
+		private int retry;
+		private Iterator<Node> candidates;
+		private Node node;
+		private String host;
+		private int port;
+		private String hostHeader;
+		private String path;
+		private boolean retried;
+
+		private Exchange(String method, String requestURL, byte[] body, long startTime, NodeSelector selector)
+		{
+			this.method = method;
+			this.requestURL = requestURL;
+			this.body = body;
+			this.startTime = startTime;
+			this.selector = selector;
+		}
+
+		private void start()
+		{
+			try
+			{
+				checkCircuitBreaker();
+			}
+			catch (JobPersistenceException e)
+			{
+				fail(e);
+				return;
+			}
+
+			if (selector != null)
+			{
+				candidates = selector.select().iterator();
+				node = candidates.next();
+				node.requestStarted();
+			}
+			send();
+		}
+
+		private void send()
+		{
+			try
+			{
+				setURL(new URL(node != null ? node.resolve(requestURL) : requestURL));
+			}
+			catch (MalformedURLException e)
+			{
+				fail(e);
+				return;
+			}
+			dispatch(this);
+		}
+
+		private void setURL(URL url)
+		{
+			host = url.getHost();
+			port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+			hostHeader = url.getPort() != -1 ? host + ":" + port : host;
+			path = url.getFile().isEmpty() ? "/" : url.getFile();
+		}
+
+		private void complete(HttpConnection.Response response)
+		{
+			if (node != null)
+			{
+				selector.succeeded(node);
+				releaseNode();
+			}
+
+			int responseCode = response.getResponseCode();
+			recordRequest(method, startTime, body.length, responseCode, response.getResponseData().length);
+			recordAvailability(!RetryPolicy.isUnavailable(responseCode));
+			if (!closed && shouldRetry(retry) && RetryPolicy.canResend(method, requestURL, responseCode))
+			{
+				scheduleRetry();
+				return;
+			}
+
+			HttpResponse httpResponse = new HttpResponse(responseCode, response.getResponseMessage(), response.getResponseData());
+			requestFinished();
+			if (LOGGER.isDebugEnabled())
+			{
+				LOGGER.debug("Received response '{} {}' with body '{}'", new Object[] { responseCode, response.getResponseMessage(), httpResponse.getResponseData().trim() });
+			}
+			future.complete(httpResponse);
+		}
+
+		/**
+		 * Fails over to the next node or retries the request, if it can be sent again, or fails it.
+		 */
+		private void failed(Throwable e)
+		{
+			boolean canResend = !closed && RetryPolicy.canResend(method, requestURL, e);
+			if (node != null)
+			{
+				selector.failed(node, e);
+				if (canResend && candidates.hasNext())
+				{
+					recordRequest(method, startTime, body.length, -1, 0);
+					node.requestFinished();
+					node = candidates.next();
+					node.requestStarted();
+					startTime = System.nanoTime();
+					retried = false;
+					send();
+					return;
+				}
+			}
+
+			recordAvailability(false);
+			if (canResend && shouldRetry(retry))
+			{
+				recordRequest(method, startTime, body.length, -1, 0);
+				releaseNode();
+				scheduleRetry();
+				return;
+			}
+			fail(e);
+		}
+
+		private void scheduleRetry()
+		{
+			long backoff = getRetryBackoff(method, requestURL, retry++);
+			try
+			{
+				executor.schedule(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						startTime = System.nanoTime();
+						retried = false;
+						start();
+					}
+				}, backoff, TimeUnit.MILLISECONDS);
+			}
+			catch (RejectedExecutionException e)
+			{
+				fail(new IOException("The communicator is closed"));
+			}
+		}
+
+		private void releaseNode()
+		{
+			if (node != null)
+			{
+				node.requestFinished();
+				node = null;
+			}
+		}
+
+		private void fail(Throwable e)
+		{
+			releaseNode();
+			recordRequest(method, startTime, body.length, -1, 0);
+			requestFinished();
+			future.fail(e instanceof JobPersistenceException ? (JobPersistenceException) e : new JobPersistenceException("Error when making HTTP request", e));
+		}
+	}
+}
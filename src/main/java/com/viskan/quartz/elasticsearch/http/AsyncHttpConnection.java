@@ -0,0 +1,292 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single persistent HTTP/1.1 connection to an elasticsearch node, that writes requests
+ * and reads responses without blocking the calling thread.
+ * <p>
+ * Instances are handed out by the {@link AsyncHttpCommunicator} to one request at a time.
+ *
+ * @author Anton Johansson
+ */
+class AsyncHttpConnection
+{
+	private static final int BUFFER_SIZE = 8192;
+
+	private final String route;
+	private final AsynchronousSocketChannel channel;
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private long lastUsed;
+	private boolean reused;
+	private boolean resendable;
+
+	private AsyncHttpConnection(String route, AsynchronousSocketChannel channel)
+	{
+		this.route = route;
+		this.channel = channel;
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Opens a new connection.
+	 *
+	 * @param group The group that runs the completion handlers of the connection.
+	 * @param timer The executor that closes the channel if the connect times out.
+	 * @param host The host to connect to.
+	 * @param port The port to connect to.
+	 * @param timeout The connect timeout, in milliseconds.
+	 * @param callback The callback that gets the opened connection.
+	 */
+	static void open(AsynchronousChannelGroup group, ScheduledExecutorService timer, String host, int port, int timeout, final Callback<AsyncHttpConnection> callback)
+	{
+		final AsynchronousSocketChannel channel;
+		try
+		{
+			channel = AsynchronousSocketChannel.open(group);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+		}
+		catch (IOException e)
+		{
+			callback.failed(e);
+			return;
+		}
+
+		final String route = ConnectionPool.getRoute(host, port);
+		final Future<?> connectTimeout;
+		try
+		{
+			connectTimeout = timer.schedule(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					closeQuietly(channel);
+				}
+			}, timeout, TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException e)
+		{
+			closeQuietly(channel);
+			callback.failed(new IOException("The connection to '" + route + "' was rejected since the communicator is closed"));
+			return;
+		}
+
+		channel.connect(new InetSocketAddress(host, port), null, new CompletionHandler<Void, Void>()
+		{
+			@Override
+			public void completed(Void result, Void attachment)
+			{
+				if (connectTimeout.cancel(false))
+				{
+					callback.completed(new AsyncHttpConnection(route, channel));
+				}
+				else
+				{
+					closeQuietly(channel);
+					callback.failed(new ConnectException("Connect to '" + route + "' timed out"));
+				}
+			}
+
+			@Override
+			public void failed(Throwable e, Void attachment)
+			{
+				closeQuietly(channel);
+				callback.failed(connectTimeout.cancel(false) ? e : new ConnectException("Connect to '" + route + "' timed out"));
+			}
+		});
+	}
+
+	String getRoute()
+	{
+		return route;
+	}
+
+	long getLastUsed()
+	{
+		return lastUsed;
+	}
+
+	boolean isReused()
+	{
+		return reused;
+	}
+
+	void markIdle(long now)
+	{
+		lastUsed = now;
+		reused = true;
+	}
+
+	/**
+	 * Checks whether the failed request can be sent again on another connection.
+	 * <p>
+	 * This is only the case if the request could not be written, or if the server closed the
+	 * connection before sending any of the response, which is how an idle connection that has
+	 * been closed by the server shows. Once the server may have started processing the request,
+	 * it is up to the caller to decide whether it can be sent again.
+	 *
+	 * @return Returns <code>true</code> if the request can be sent again.
+	 */
+	boolean canResend()
+	{
+		return resendable;
+	}
+
+	/**
+	 * Writes a request and reads its response.
+	 * <p>
+	 * The connection must not be used again if the request fails.
+	 *
+	 * @param method The method to use.
+	 * @param host The value of the <code>Host</code> header.
+	 * @param path The path and query of the request.
+	 * @param body The request body, which can be empty.
+	 * @param timeout The write and read timeout, in milliseconds.
+	 * @param callback The callback that gets the read response.
+	 */
+	void execute(String method, String host, String path, byte[] body, int timeout, Callback<HttpConnection.Response> callback)
+	{
+		ByteBuffer[] request = new ByteBuffer[] { ByteBuffer.wrap(HttpConnection.encodeRequestHead(method, host, path, body.length)), ByteBuffer.wrap(body) };
+		new Exchange(request, new ResponseParser(method), timeout, callback).write();
+	}
+
+	void close()
+	{
+		closeQuietly(channel);
+	}
+
+	private static void closeQuietly(AsynchronousSocketChannel channel)
+	{
+		try
+		{
+			channel.close();
+		}
+		catch (IOException e)
+		{
+			// Nothing to do
+		}
+	}
+
+	/**
+	 * Writes one request and reads its response, continuing from the completion handlers
+	 * until the response is complete.
+	 */
+	private class Exchange
+	{
+		private final ByteBuffer[] request;
+		private final ResponseParser parser;
+		private final int timeout;
+		private final Callback<HttpConnection.Response> callback;
+
+		private Exchange(ByteBuffer[] request, ResponseParser parser, int timeout, Callback<HttpConnection.Response> callback)
+		{
+			this.request = request;
+			this.parser = parser;
+			this.timeout = timeout;
+			this.callback = callback;
+		}
+
+		private void write()
+		{
+			channel.write(request, 0, request.length, timeout, TimeUnit.MILLISECONDS, null, new CompletionHandler<Long, Void>()
+			{
+				@Override
+				public void completed(Long written, Void attachment)
+				{
+					if (request[request.length - 1].hasRemaining())
+					{
+						write();
+					}
+					else
+					{
+						read();
+					}
+				}
+
+				@Override
+				public void failed(Throwable e, Void attachment)
+				{
+					fail(e, true);
+				}
+			});
+		}
+
+		private void read()
+		{
+			readBuffer.clear();
+			channel.read(readBuffer, timeout, TimeUnit.MILLISECONDS, null, new CompletionHandler<Integer, Void>()
+			{
+				@Override
+				public void completed(Integer read, Void attachment)
+				{
+					HttpConnection.Response response;
+					try
+					{
+						if (read == -1)
+						{
+							response = parser.endOfStream();
+						}
+						else
+						{
+							readBuffer.flip();
+							if (!parser.parse(readBuffer))
+							{
+								read();
+								return;
+							}
+							response = parser.getResponse();
+						}
+					}
+					catch (IOException | RuntimeException e)
+					{
+						// A connection that is closed before the response starts has not processed the request
+						fail(e, read == -1 && !parser.isStarted());
+						return;
+					}
+					callback.completed(response);
+				}
+
+				@Override
+				public void failed(Throwable e, Void attachment)
+				{
+					fail(e, false);
+				}
+			});
+		}
+
+		private void fail(Throwable e, boolean resendable)
+		{
+			closeQuietly(channel);
+			boolean timedOut = e instanceof InterruptedByTimeoutException;
+			AsyncHttpConnection.this.resendable = resendable && !timedOut;
+			callback.failed(timedOut ? new SocketTimeoutException("Read from '" + route + "' timed out") : e);
+		}
+	}
+
+	/**
+	 * Receives the outcome of an asynchronous operation on a connection.
+	 *
+	 * @param <T> The type of the result.
+	 */
+	interface Callback<T>
+	{
+		void completed(T result);
+
+		void failed(Throwable e);
+	}
+}
@@ -0,0 +1,124 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fails requests fast while elasticsearch is unavailable, instead of letting every thread wait
+ * for its own timeout.
+ * <p>
+ * The breaker opens after a number of consecutive failed requests. While open, requests are
+ * rejected without being made. When the open time has passed, a single trial request is let
+ * through: the breaker closes if it succeeds and opens again if it fails. A trial request whose
+ * outcome is never recorded, for example because it ended with an unexpected exception, is
+ * given up after another open time, and a new trial request is let through.
+ *
+ * @author Anton Johansson
+ */
+public class CircuitBreaker
+{
+	private static final transient Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	/**
+	 * The states of a circuit breaker.
+	 */
+	public enum State
+	{
+		/** Requests are made. */
+		CLOSED,
+
+		/** Requests are rejected. */
+		OPEN,
+
+		/** A trial request is made to find out whether elasticsearch is available again. */
+		HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long openTime;
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedAt;
+	private boolean trialInFlight;
+	private long trialStartedAt;
+
+	/**
+	 * Creates a new circuit breaker.
+	 *
+	 * @param failureThreshold The number of consecutive failures that opens the breaker.
+	 * @param openTime The number of milliseconds the breaker stays open before a trial request is made.
+	 */
+	public CircuitBreaker(int failureThreshold, long openTime)
+	{
+		this.failureThreshold = failureThreshold;
+		this.openTime = openTime;
+	}
+
+	public synchronized State getState()
+	{
+		return state;
+	}
+
+	/**
+	 * Checks whether a request may be made, and lets the trial request through when the open time has passed.
+	 *
+	 * @return Returns <code>true</code> if the request may be made.
+	 */
+	public synchronized boolean allowRequest()
+	{
+		long now = System.currentTimeMillis();
+		switch (state)
+		{
+			case OPEN:
+				if (now - openedAt < openTime)
+				{
+					return false;
+				}
+				state = State.HALF_OPEN;
+				trialInFlight = true;
+				trialStartedAt = now;
+				return true;
+
+			case HALF_OPEN:
+				if (trialInFlight && now - trialStartedAt < openTime)
+				{
+					return false;
+				}
+				trialInFlight = true;
+				trialStartedAt = now;
+				return true;
+
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * Records a request that got a response from elasticsearch.
+	 */
+	public synchronized void succeeded()
+	{
+		consecutiveFailures = 0;
+		trialInFlight = false;
+		if (state != State.CLOSED)
+		{
+			LOGGER.info("Closing the circuit breaker, elasticsearch is available again");
+			state = State.CLOSED;
+		}
+	}
+
+	/**
+	 * Records a request that failed because elasticsearch was unavailable.
+	 */
+	public synchronized void failed()
+	{
+		consecutiveFailures++;
+		trialInFlight = false;
+		if (state == State.HALF_OPEN || state == State.CLOSED && consecutiveFailures >= failureThreshold)
+		{
+			LOGGER.warn("Opening the circuit breaker for {} ms after {} consecutive failed requests", openTime, consecutiveFailures);
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+		}
+	}
+}
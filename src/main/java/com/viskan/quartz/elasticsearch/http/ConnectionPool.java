@@ -0,0 +1,315 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.quartz.JobPersistenceException;
+
+/**
+ * Keeps persistent {@link HttpConnection connections} to the elasticsearch
+ * nodes so that they can be reused between requests.
+ * <p>
+ * The pool is bounded both in total and per route (host and port). Connections
+ * that have been idle for longer than the idle timeout are evicted, and connections
+ * that have been idle for longer than the validation interval are checked before
+ * they are handed out again.
+ *
+ * @author Anton Johansson
+ */
+class ConnectionPool
+{
+	private final int maxConnections;
+	private final int maxConnectionsPerRoute;
+	private final long idleTimeout;
+	private final long validateAfterInactivity;
+	private volatile int timeout;
+
+	private final Map<String, Deque<HttpConnection>> idleConnections = new HashMap<>();
+	private final Map<String, Integer> openConnectionsPerRoute = new HashMap<>();
+	private int openConnections;
+	private int leasedConnections;
+	private int idleConnectionCount;
+	private boolean closed;
+
+	// Statistics
+	private long created;
+	private long reused;
+	private long evicted;
+	private long discarded;
+	private long waits;
+	private long timeouts;
+
+	ConnectionPool(int maxConnections, int maxConnectionsPerRoute, long idleTimeout, long validateAfterInactivity, int timeout)
+	{
+		this.maxConnections = maxConnections;
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		this.idleTimeout = idleTimeout;
+		this.validateAfterInactivity = validateAfterInactivity;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Sets the timeout of connecting, reading and waiting for a connection, in milliseconds.
+	 * Connections that are already open get the new read timeout on their next request.
+	 */
+	void setTimeout(int timeout)
+	{
+		this.timeout = timeout;
+	}
+
+	static String getRoute(String host, int port)
+	{
+		return host + ":" + port;
+	}
+
+	/**
+	 * Leases a connection to given host, waiting for one to become available
+	 * if the pool is exhausted.
+	 *
+	 * @param host The host to connect to.
+	 * @param port The port to connect to.
+	 * @return Returns the leased connection.
+	 * @throws IOException Thrown if a new connection could not be opened.
+	 * @throws JobPersistenceException Thrown if no connection became available in time.
+	 */
+	HttpConnection lease(String host, int port) throws IOException, JobPersistenceException
+	{
+		String route = getRoute(host, port);
+		while (true)
+		{
+			HttpConnection connection = leaseIdleOrReserve(route);
+			if (connection == null)
+			{
+				return open(route, host, port);
+			}
+
+			if (System.currentTimeMillis() - connection.getLastUsed() > validateAfterInactivity && connection.isStale())
+			{
+				release(connection, false);
+				continue;
+			}
+			return connection;
+		}
+	}
+
+	private synchronized HttpConnection leaseIdleOrReserve(String route) throws JobPersistenceException
+	{
+		long deadline = System.currentTimeMillis() + timeout;
+		boolean waited = false;
+		while (true)
+		{
+			if (closed)
+			{
+				throw new JobPersistenceException("The connection pool is closed");
+			}
+
+			long now = System.currentTimeMillis();
+			evictExpired(now);
+
+			Deque<HttpConnection> idle = idleConnections.get(route);
+			if (idle != null && !idle.isEmpty())
+			{
+				idleConnectionCount--;
+				leasedConnections++;
+				reused++;
+				return idle.pop();
+			}
+
+			int openForRoute = getOpenConnections(route);
+			if (openForRoute < maxConnectionsPerRoute)
+			{
+				if (openConnections < maxConnections)
+				{
+					openConnections++;
+					openConnectionsPerRoute.put(route, openForRoute + 1);
+					leasedConnections++;
+					return null;
+				}
+
+				// Make room by closing a connection that is idle towards another route
+				if (closeOldestIdle())
+				{
+					continue;
+				}
+			}
+
+			long remaining = deadline - now;
+			if (remaining <= 0)
+			{
+				timeouts++;
+				throw new JobPersistenceException("Timed out waiting for a connection to '" + route + "'");
+			}
+			if (!waited)
+			{
+				waits++;
+				waited = true;
+			}
+			try
+			{
+				wait(remaining);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new JobPersistenceException("Interrupted while waiting for a connection to '" + route + "'", e);
+			}
+		}
+	}
+
+	private HttpConnection open(String route, String host, int port) throws IOException
+	{
+		try
+		{
+			HttpConnection connection = HttpConnection.open(host, port, timeout);
+			synchronized (this)
+			{
+				created++;
+			}
+			return connection;
+		}
+		catch (IOException e)
+		{
+			synchronized (this)
+			{
+				leasedConnections--;
+				removeOpenConnection(route);
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a leased connection to the pool.
+	 *
+	 * @param connection The connection to return.
+	 * @param reusable Whether or not the connection can be used for another request.
+	 */
+	synchronized void release(HttpConnection connection, boolean reusable)
+	{
+		leasedConnections--;
+		if (reusable && !closed)
+		{
+			String route = connection.getRoute();
+			Deque<HttpConnection> idle = idleConnections.get(route);
+			if (idle == null)
+			{
+				idle = new ArrayDeque<>();
+				idleConnections.put(route, idle);
+			}
+			connection.markIdle(System.currentTimeMillis());
+			idle.push(connection);
+			idleConnectionCount++;
+		}
+		else
+		{
+			connection.close();
+			removeOpenConnection(connection.getRoute());
+			discarded++;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Closes all connections that have been idle for longer than the idle timeout.
+	 */
+	synchronized void evictIdleConnections()
+	{
+		evictExpired(System.currentTimeMillis());
+		notifyAll();
+	}
+
+	private void evictExpired(long now)
+	{
+		for (Deque<HttpConnection> idle : idleConnections.values())
+		{
+			// The oldest connections are at the end since they are returned to the head
+			while (!idle.isEmpty() && now - idle.peekLast().getLastUsed() > idleTimeout)
+			{
+				HttpConnection connection = idle.removeLast();
+				connection.close();
+				idleConnectionCount--;
+				removeOpenConnection(connection.getRoute());
+				evicted++;
+			}
+		}
+	}
+
+	private boolean closeOldestIdle()
+	{
+		HttpConnection oldest = null;
+		Deque<HttpConnection> oldestDeque = null;
+		for (Deque<HttpConnection> idle : idleConnections.values())
+		{
+			HttpConnection candidate = idle.peekLast();
+			if (candidate != null && (oldest == null || candidate.getLastUsed() < oldest.getLastUsed()))
+			{
+				oldest = candidate;
+				oldestDeque = idle;
+			}
+		}
+
+		if (oldest == null)
+		{
+			return false;
+		}
+
+		oldestDeque.removeLast();
+		oldest.close();
+		idleConnectionCount--;
+		removeOpenConnection(oldest.getRoute());
+		evicted++;
+		return true;
+	}
+
+	private int getOpenConnections(String route)
+	{
+		Integer open = openConnectionsPerRoute.get(route);
+		return open != null ? open : 0;
+	}
+
+	private void removeOpenConnection(String route)
+	{
+		openConnections--;
+		int open = getOpenConnections(route) - 1;
+		if (open > 0)
+		{
+			openConnectionsPerRoute.put(route, open);
+		}
+		else
+		{
+			openConnectionsPerRoute.remove(route);
+		}
+	}
+
+	/**
+	 * Closes all idle connections and prevents new leases. Leased connections
+	 * are closed when they are released.
+	 */
+	synchronized void close()
+	{
+		closed = true;
+		for (Deque<HttpConnection> idle : idleConnections.values())
+		{
+			for (Iterator<HttpConnection> iterator = idle.iterator(); iterator.hasNext();)
+			{
+				HttpConnection connection = iterator.next();
+				connection.close();
+				removeOpenConnection(connection.getRoute());
+				iterator.remove();
+			}
+		}
+		idleConnectionCount = 0;
+		notifyAll();
+	}
+
+	synchronized ConnectionPoolStatistics getStatistics()
+	{
+		return new ConnectionPoolStatistics(maxConnections, maxConnectionsPerRoute, leasedConnections, idleConnectionCount,
+			openConnectionsPerRoute.size(), created, reused, evicted, discarded, waits, timeouts);
+	}
+}
@@ -0,0 +1,137 @@
+package com.viskan.quartz.elasticsearch.http;
+
+/**
+ * A snapshot of the usage of the HTTP connection pool.
+ *
+ * @author Anton Johansson
+ */
+public class ConnectionPoolStatistics
+{
+	private final int maxConnections;
+	private final int maxConnectionsPerHost;
+	private final int leasedConnections;
+	private final int idleConnections;
+	private final int hosts;
+	private final long createdConnections;
+	private final long reusedConnections;
+	private final long evictedConnections;
+	private final long discardedConnections;
+	private final long waits;
+	private final long timeouts;
+
+	public ConnectionPoolStatistics(int maxConnections, int maxConnectionsPerHost, int leasedConnections, int idleConnections, int hosts,
+			long createdConnections, long reusedConnections, long evictedConnections, long discardedConnections, long waits, long timeouts)
+	{
+		this.maxConnections = maxConnections;
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		this.leasedConnections = leasedConnections;
+		this.idleConnections = idleConnections;
+		this.hosts = hosts;
+		this.createdConnections = createdConnections;
+		this.reusedConnections = reusedConnections;
+		this.evictedConnections = evictedConnections;
+		this.discardedConnections = discardedConnections;
+		this.waits = waits;
+		this.timeouts = timeouts;
+	}
+
+	public int getMaxConnections()
+	{
+		return maxConnections;
+	}
+
+	public int getMaxConnectionsPerHost()
+	{
+		return maxConnectionsPerHost;
+	}
+
+	/**
+	 * Gets the number of connections currently used by a request.
+	 *
+	 * @return Returns the number of leased connections.
+	 */
+	public int getLeasedConnections()
+	{
+		return leasedConnections;
+	}
+
+	/**
+	 * Gets the number of open connections that are waiting to be reused.
+	 *
+	 * @return Returns the number of idle connections.
+	 */
+	public int getIdleConnections()
+	{
+		return idleConnections;
+	}
+
+	/**
+	 * Gets the number of hosts that currently have open connections.
+	 *
+	 * @return Returns the number of hosts.
+	 */
+	public int getHosts()
+	{
+		return hosts;
+	}
+
+	public long getCreatedConnections()
+	{
+		return createdConnections;
+	}
+
+	public long getReusedConnections()
+	{
+		return reusedConnections;
+	}
+
+	/**
+	 * Gets the number of connections closed because they were idle for too long.
+	 *
+	 * @return Returns the number of evicted connections.
+	 */
+	public long getEvictedConnections()
+	{
+		return evictedConnections;
+	}
+
+	/**
+	 * Gets the number of connections closed because they were broken, stale
+	 * or closed by the server.
+	 *
+	 * @return Returns the number of discarded connections.
+	 */
+	public long getDiscardedConnections()
+	{
+		return discardedConnections;
+	}
+
+	/**
+	 * Gets the number of leases that had to wait for a connection to become available.
+	 *
+	 * @return Returns the number of waits.
+	 */
+	public long getWaits()
+	{
+		return waits;
+	}
+
+	/**
+	 * Gets the number of leases that gave up waiting for a connection.
+	 *
+	 * @return Returns the number of timeouts.
+	 */
+	public long getTimeouts()
+	{
+		return timeouts;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "leased=" + leasedConnections + ", idle=" + idleConnections + ", max=" + maxConnections
+			+ ", maxPerHost=" + maxConnectionsPerHost + ", hosts=" + hosts + ", created=" + createdConnections
+			+ ", reused=" + reusedConnections + ", evicted=" + evictedConnections + ", discarded=" + discardedConnections
+			+ ", waits=" + waits + ", timeouts=" + timeouts;
+	}
+}
@@ -1,17 +1,20 @@
 package com.viskan.quartz.elasticsearch.http;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.quartz.JobPersistenceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.viskan.quartz.elasticsearch.metrics.Metrics;
+
 /**
  * Provides utilities for managing HTTP requests.
  *
@@ -20,6 +23,102 @@ import org.slf4j.LoggerFactory;
 public class HttpCommunicator
 {
 	private static final transient Logger LOGGER = LoggerFactory.getLogger(HttpCommunicator.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 8192;
+	public static final int DEFAULT_READ_TIMEOUT = 2000;
+	
+	private final AtomicInteger requestsInFlight = new AtomicInteger();
+	private volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+	private volatile NodeSelector nodeSelector;
+	private volatile RetryPolicy retryPolicy;
+	private volatile CircuitBreaker circuitBreaker;
+	private Metrics metrics;
+	
+	public int getReadTimeout()
+	{
+		return readTimeout;
+	}
+	
+	/**
+	 * Sets the number of milliseconds to wait for a response. Takes effect for the next request.
+	 * 
+	 * @param readTimeout The read timeout in milliseconds.
+	 */
+	public void setReadTimeout(int readTimeout)
+	{
+		if (readTimeout <= 0)
+		{
+			throw new IllegalArgumentException("The property 'readTimeout' must be positive");
+		}
+		this.readTimeout = readTimeout;
+	}
+	
+	/**
+	 * Gets the number of requests that are currently being made.
+	 * 
+	 * @return Returns the number of requests in flight.
+	 */
+	public int getRequestsInFlight()
+	{
+		return requestsInFlight.get();
+	}
+	
+	public NodeSelector getNodeSelector()
+	{
+		return nodeSelector;
+	}
+	
+	/**
+	 * Sets the selector of the nodes to send requests to. The host and port of each request URL
+	 * are then replaced with the ones of the selected node, and failed requests are retried on the
+	 * other nodes.
+	 * 
+	 * @param nodeSelector The node selector, or <code>null</code> to send requests to the host of their URL.
+	 */
+	public void setNodeSelector(NodeSelector nodeSelector)
+	{
+		this.nodeSelector = nodeSelector;
+	}
+	
+	public RetryPolicy getRetryPolicy()
+	{
+		return retryPolicy;
+	}
+	
+	/**
+	 * Sets the policy of making failed requests again.
+	 * 
+	 * @param retryPolicy The retry policy, or <code>null</code> to never retry.
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy)
+	{
+		this.retryPolicy = retryPolicy;
+	}
+	
+	public CircuitBreaker getCircuitBreaker()
+	{
+		return circuitBreaker;
+	}
+	
+	/**
+	 * Sets the circuit breaker that rejects requests while elasticsearch is unavailable.
+	 * 
+	 * @param circuitBreaker The circuit breaker, or <code>null</code> to always make requests.
+	 */
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker)
+	{
+		this.circuitBreaker = circuitBreaker;
+	}
+	
+	/**
+	 * Sets the metrics to record the requests in.
+	 * 
+	 * @param metrics The metrics, or <code>null</code> to not record requests.
+	 */
+	public void setMetrics(Metrics metrics)
+	{
+		this.metrics = metrics;
+	}
 	
 	/**
 	 * Performs an HTTP request.
@@ -45,14 +144,94 @@ public class HttpCommunicator
 	 */
 	public HttpResponse request(String method, String requestURL, String requestData) throws JobPersistenceException
 	{
+		for (int retry = 0; ; retry++)
+		{
+			checkCircuitBreaker();
+			HttpResponse response;
+			try
+			{
+				response = requestAnyNode(method, requestURL, requestData);
+			}
+			catch (JobPersistenceException e)
+			{
+				recordAvailability(false);
+				if (!shouldRetry(retry) || !RetryPolicy.canResend(method, requestURL, e))
+				{
+					throw e;
+				}
+				sleep(getRetryBackoff(method, requestURL, retry));
+				continue;
+			}
+			
+			int responseCode = response.getResponseCode();
+			recordAvailability(!RetryPolicy.isUnavailable(responseCode));
+			if (!shouldRetry(retry) || !RetryPolicy.canResend(method, requestURL, responseCode))
+			{
+				return response;
+			}
+			sleep(getRetryBackoff(method, requestURL, retry));
+		}
+	}
+	
+	/**
+	 * Performs an HTTP request against the selected node, failing over to the other nodes if it can be sent again.
+	 */
+	private HttpResponse requestAnyNode(String method, String requestURL, String requestData) throws JobPersistenceException
+	{
+		NodeSelector selector = nodeSelector;
+		if (selector == null)
+		{
+			return execute(method, requestURL, requestData);
+		}
+		
+		JobPersistenceException failure = null;
+		for (Node node : selector.select())
+		{
+			node.requestStarted();
+			try
+			{
+				HttpResponse response = execute(method, node.resolve(requestURL), requestData);
+				selector.succeeded(node);
+				return response;
+			}
+			catch (JobPersistenceException e)
+			{
+				selector.failed(node, e);
+				if (!RetryPolicy.canResend(method, requestURL, e))
+				{
+					throw e;
+				}
+				failure = e;
+			}
+			finally
+			{
+				node.requestFinished();
+			}
+		}
+		throw failure;
+	}
+	
+	/**
+	 * Performs an HTTP request against the host of given URL.
+	 * 
+	 * @param method The method to use.
+	 * @param requestURL The URL to request.
+	 * @param requestData The data to include in the body.
+	 * @return Returns the HTTP response.
+	 * @throws JobPersistenceException Thrown if any error has occurred during the HTTP request.
+	 */
+	protected HttpResponse execute(String method, String requestURL, String requestData) throws JobPersistenceException
+	{
+		long startTime = startRequest();
+		int requestLength = 0;
 		try
 		{
 			URL url = new URL(requestURL);
 		
 			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-			connection.setReadTimeout(2000);
+			connection.setReadTimeout(readTimeout);
 			connection.setRequestMethod(method);
-			connection.addRequestProperty("Content-Type", "application/json");
+			connection.addRequestProperty("Content-Type", "application/json; charset=UTF-8");
 			connection.addRequestProperty("Accept", "application/json");
 			connection.setDoInput(true);
 			
@@ -60,9 +239,11 @@ public class HttpCommunicator
 			{
 				connection.setDoOutput(true);
 				
-				try (DataOutputStream outputStream = new DataOutputStream(connection.getOutputStream()))
+				byte[] body = requestData.getBytes(UTF_8);
+				requestLength = body.length;
+				try (OutputStream outputStream = connection.getOutputStream())
 				{
-					outputStream.writeBytes(requestData);
+					outputStream.write(body);
 					outputStream.flush();
 				}
 			}
@@ -70,18 +251,132 @@ public class HttpCommunicator
 			LOGGER.debug("Executing HTTP {} against '{}' with body '{}'", new Object[] { method, requestURL, requestData });
 			int responseCode = connection.getResponseCode();
 			String responseMessage = connection.getResponseMessage();
-			String responseData = getResponseData(responseCode, connection);
+			byte[] responseData = getResponseData(responseCode, connection);
+			HttpResponse response = new HttpResponse(responseCode, responseMessage, responseData);
+			recordRequest(method, startTime, requestLength, responseCode, responseData.length);
 			
-			LOGGER.debug("Received response '{} {}' with body '{}'", new Object[] { responseCode, responseMessage, responseData.trim() });
-			return new HttpResponse(responseCode, responseMessage, responseData);
+			if (LOGGER.isDebugEnabled())
+			{
+				LOGGER.debug("Received response '{} {}' with body '{}'", new Object[] { responseCode, responseMessage, response.getResponseData().trim() });
+			}
+			return response;
 		}
 		catch (Exception e)
 		{
+			recordRequest(method, startTime, requestLength, -1, 0);
 			throw new JobPersistenceException("Error when making HTTP request", e);
 		}
+		finally
+		{
+			requestFinished();
+		}
+	}
+	
+	/**
+	 * Rejects the request if the circuit breaker is open.
+	 * 
+	 * @throws JobPersistenceException Thrown if the request must not be made.
+	 */
+	protected void checkCircuitBreaker() throws JobPersistenceException
+	{
+		CircuitBreaker breaker = circuitBreaker;
+		if (breaker != null && !breaker.allowRequest())
+		{
+			if (metrics != null)
+			{
+				metrics.recordRejection();
+			}
+			throw new JobPersistenceException("Elasticsearch is unavailable, the circuit breaker is open");
+		}
+	}
+	
+	/**
+	 * Records whether or not a request found elasticsearch available, in the circuit breaker if any.
+	 */
+	protected void recordAvailability(boolean available)
+	{
+		CircuitBreaker breaker = circuitBreaker;
+		if (breaker == null)
+		{
+			return;
+		}
+		if (available)
+		{
+			breaker.succeeded();
+		}
+		else
+		{
+			breaker.failed();
+		}
+	}
+	
+	/**
+	 * Checks whether the retry policy allows another retry of a failed request.
+	 * 
+	 * @param retry The number of retries made so far.
+	 */
+	protected boolean shouldRetry(int retry)
+	{
+		RetryPolicy policy = retryPolicy;
+		return policy != null && retry < policy.getMaxRetries();
+	}
+	
+	/**
+	 * Gets the number of milliseconds to wait before a retry, and records the retry.
+	 */
+	protected long getRetryBackoff(String method, String requestURL, int retry)
+	{
+		RetryPolicy policy = retryPolicy;
+		long backoff = policy != null ? policy.getBackoff(retry) : 0;
+		if (metrics != null)
+		{
+			metrics.recordRetry();
+		}
+		LOGGER.debug("Retrying HTTP {} against '{}' in {} ms", new Object[] { method, requestURL, backoff });
+		return backoff;
+	}
+	
+	private static void sleep(long backoff) throws JobPersistenceException
+	{
+		try
+		{
+			Thread.sleep(backoff);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new JobPersistenceException("Interrupted while waiting to retry HTTP request", e);
+		}
+	}
+	
+	/**
+	 * Counts a request as in flight until {@link #requestFinished()} is called.
+	 * 
+	 * @return Returns the {@link System#nanoTime()} when the request was started.
+	 */
+	protected long startRequest()
+	{
+		requestsInFlight.incrementAndGet();
+		return System.nanoTime();
+	}
+	
+	protected void requestFinished()
+	{
+		requestsInFlight.decrementAndGet();
+	}
+	
+	/**
+	 * Records a request in the metrics, if any.
+	 */
+	protected void recordRequest(String method, long startTime, int requestLength, int responseCode, int responseLength)
+	{
+		if (metrics != null)
+		{
+			metrics.recordRequest(method, startTime, requestLength, responseCode, responseLength);
+		}
 	}
 
-	private String getResponseData(int responseCode, HttpURLConnection connection) throws JobPersistenceException
+	private byte[] getResponseData(int responseCode, HttpURLConnection connection) throws JobPersistenceException
 	{
 		int responseSeries = responseCode / 100;
 		
@@ -97,7 +392,7 @@ public class HttpCommunicator
 					return fromInputStream(connection.getErrorStream());
 					
 				default:
-					return "";
+					return new byte[0];
 			}
 		}
 		catch (IOException e)
@@ -106,15 +401,23 @@ public class HttpCommunicator
 		}
 	}
 
-	private static String fromInputStream(InputStream inputStream) throws IOException
+	private static byte[] fromInputStream(InputStream inputStream) throws IOException
 	{
-		StringBuilder data = new StringBuilder();
-		String nextLine = null;
-		BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-		while ((nextLine = reader.readLine()) != null)
+		if (inputStream == null)
 		{
-			data.append(nextLine).append(System.lineSeparator());
+			return new byte[0];
+		}
+		
+		try (InputStream stream = inputStream)
+		{
+			ByteArrayOutputStream data = new ByteArrayOutputStream();
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = stream.read(buffer)) != -1)
+			{
+				data.write(buffer, 0, read);
+			}
+			return data.toByteArray();
 		}
-		return data.toString();
 	}
 }
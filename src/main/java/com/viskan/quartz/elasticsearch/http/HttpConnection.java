@@ -0,0 +1,287 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A single persistent HTTP/1.1 connection to an elasticsearch node.
+ * <p>
+ * Instances are not thread safe and are handed out by the {@link ConnectionPool}
+ * to one request at a time.
+ *
+ * @author Anton Johansson
+ */
+class HttpConnection
+{
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	private static final int BUFFER_SIZE = 8192;
+
+	private final String route;
+	private final Socket socket;
+	private final InputStream inputStream;
+	private final OutputStream outputStream;
+	private int readTimeout;
+	private long lastUsed;
+	private boolean reused;
+	private boolean resendable;
+
+	private HttpConnection(String route, Socket socket, int readTimeout) throws IOException
+	{
+		this.route = route;
+		this.socket = socket;
+		this.readTimeout = readTimeout;
+		this.inputStream = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+		this.outputStream = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Opens a new connection.
+	 *
+	 * @param host The host to connect to.
+	 * @param port The port to connect to.
+	 * @param timeout The connect and read timeout, in milliseconds.
+	 * @return Returns the opened connection.
+	 * @throws IOException Thrown if the connection could not be established.
+	 */
+	static HttpConnection open(String host, int port, int timeout) throws IOException
+	{
+		Socket socket = new Socket();
+		try
+		{
+			socket.setTcpNoDelay(true);
+			socket.setKeepAlive(true);
+			socket.connect(new InetSocketAddress(host, port), timeout);
+			socket.setSoTimeout(timeout);
+			return new HttpConnection(ConnectionPool.getRoute(host, port), socket, timeout);
+		}
+		catch (IOException e)
+		{
+			closeQuietly(socket);
+			throw e;
+		}
+	}
+
+	String getRoute()
+	{
+		return route;
+	}
+
+	long getLastUsed()
+	{
+		return lastUsed;
+	}
+
+	boolean isReused()
+	{
+		return reused;
+	}
+
+	void markIdle(long now)
+	{
+		lastUsed = now;
+		reused = true;
+	}
+
+	/**
+	 * Checks whether the failed request can be sent again on another connection.
+	 * <p>
+	 * This is only the case if the request could not be written, or if the server closed the
+	 * connection before sending any of the response, which is how an idle connection that has
+	 * been closed by the server shows. Once the server may have started processing the request,
+	 * it is up to the caller to decide whether it can be sent again.
+	 *
+	 * @return Returns <code>true</code> if the request can be sent again.
+	 */
+	boolean canResend()
+	{
+		return resendable;
+	}
+
+	/**
+	 * Checks whether the server has closed this connection while it was idle.
+	 *
+	 * @return Returns <code>true</code> if the connection can no longer be used.
+	 */
+	boolean isStale()
+	{
+		if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown())
+		{
+			return true;
+		}
+
+		try
+		{
+			socket.setSoTimeout(1);
+			inputStream.mark(1);
+			int data = inputStream.read();
+			if (data == -1)
+			{
+				return true;
+			}
+
+			// Nothing should be sent by the server between responses
+			inputStream.reset();
+			return true;
+		}
+		catch (SocketTimeoutException e)
+		{
+			return false;
+		}
+		catch (IOException e)
+		{
+			return true;
+		}
+		finally
+		{
+			try
+			{
+				socket.setSoTimeout(readTimeout);
+			}
+			catch (IOException e)
+			{
+				// The socket is broken and will be detected by the next request
+			}
+		}
+	}
+
+	/**
+	 * Writes a request and reads its response.
+	 *
+	 * @param method The method to use.
+	 * @param host The value of the <code>Host</code> header.
+	 * @param path The path and query of the request.
+	 * @param body The request body, which can be empty.
+	 * @param timeout The read timeout, in milliseconds.
+	 * @return Returns the read response.
+	 * @throws IOException Thrown if the connection failed.
+	 */
+	Response execute(String method, String host, String path, byte[] body, int timeout) throws IOException
+	{
+		if (timeout != readTimeout)
+		{
+			socket.setSoTimeout(timeout);
+			readTimeout = timeout;
+		}
+		resendable = true;
+		writeRequest(method, host, path, body);
+		resendable = false;
+		return readResponse(method);
+	}
+
+	private void writeRequest(String method, String host, String path, byte[] body) throws IOException
+	{
+		outputStream.write(encodeRequestHead(method, host, path, body.length));
+		outputStream.write(body);
+		outputStream.flush();
+	}
+
+	/**
+	 * Encodes the request line and headers of a request.
+	 *
+	 * @param method The method to use.
+	 * @param host The value of the <code>Host</code> header.
+	 * @param path The path and query of the request.
+	 * @param contentLength The length of the request body.
+	 * @return Returns the encoded head, including the empty line that ends it.
+	 */
+	static byte[] encodeRequestHead(String method, String host, String path, int contentLength)
+	{
+		StringBuilder head = new StringBuilder(128)
+			.append(method).append(' ').append(path).append(" HTTP/1.1\r\n")
+			.append("Host: ").append(host).append("\r\n")
+			.append("Connection: keep-alive\r\n")
+			.append("Accept: application/json\r\n");
+
+		if (contentLength > 0)
+		{
+			head.append("Content-Type: application/json; charset=UTF-8\r\n");
+		}
+		head.append("Content-Length: ").append(contentLength).append("\r\n\r\n");
+		return head.toString().getBytes(ASCII);
+	}
+
+	private Response readResponse(String method) throws IOException
+	{
+		ResponseParser parser = new ResponseParser(method);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		while (true)
+		{
+			int read = inputStream.read(buffer);
+			if (read == -1)
+			{
+				// A connection that is closed before the response starts has not processed the request
+				resendable = !parser.isStarted();
+				return parser.endOfStream();
+			}
+			if (parser.parse(ByteBuffer.wrap(buffer, 0, read)))
+			{
+				return parser.getResponse();
+			}
+		}
+	}
+
+	void close()
+	{
+		closeQuietly(socket);
+	}
+
+	private static void closeQuietly(Socket socket)
+	{
+		try
+		{
+			socket.close();
+		}
+		catch (IOException e)
+		{
+			// Nothing to do
+		}
+	}
+
+	/**
+	 * A response read from the connection.
+	 */
+	static class Response
+	{
+		private final int responseCode;
+		private final String responseMessage;
+		private final byte[] responseData;
+		private final boolean keepAlive;
+
+		Response(int responseCode, String responseMessage, byte[] responseData, boolean keepAlive)
+		{
+			this.responseCode = responseCode;
+			this.responseMessage = responseMessage;
+			this.responseData = responseData;
+			this.keepAlive = keepAlive;
+		}
+
+		int getResponseCode()
+		{
+			return responseCode;
+		}
+
+		String getResponseMessage()
+		{
+			return responseMessage;
+		}
+
+		byte[] getResponseData()
+		{
+			return responseData;
+		}
+
+		boolean isKeepAlive()
+		{
+			return keepAlive;
+		}
+	}
+}
@@ -1,5 +1,9 @@
 package com.viskan.quartz.elasticsearch.http;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
 /**
  * Defines a HTTP response.
  *
@@ -7,16 +11,34 @@ package com.viskan.quartz.elasticsearch.http;
  */
 public class HttpResponse
 {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
 	private final int responseCode;
 	private final String responseMessage;
-	private final String responseData;
+	private final byte[] responseBytes;
+	private String responseData;
 	
 	public HttpResponse(int responseCode, String responseMessage, String responseData)
 	{
 		this.responseCode = responseCode;
 		this.responseMessage = responseMessage;
+		this.responseBytes = null;
 		this.responseData = responseData;
 	}
+	
+	/**
+	 * Creates a response with a body that is decoded as UTF-8 first when it is requested as a string.
+	 * 
+	 * @param responseCode The status code of the response.
+	 * @param responseMessage The status message of the response.
+	 * @param responseBytes The UTF-8 encoded body of the response.
+	 */
+	public HttpResponse(int responseCode, String responseMessage, byte[] responseBytes)
+	{
+		this.responseCode = responseCode;
+		this.responseMessage = responseMessage;
+		this.responseBytes = responseBytes;
+	}
 
 	public int getResponseCode()
 	{
@@ -30,9 +52,23 @@ public class HttpResponse
 
 	public String getResponseData()
 	{
+		if (responseData == null && responseBytes != null)
+		{
+			responseData = new String(responseBytes, UTF_8);
+		}
 		return responseData;
 	}
 	
+	/**
+	 * Gets the body of the response as a UTF-8 encoded stream, without decoding it into a string.
+	 * 
+	 * @return Returns a stream of the body.
+	 */
+	public InputStream getResponseStream()
+	{
+		return new ByteArrayInputStream(responseBytes != null ? responseBytes : responseData.getBytes(UTF_8));
+	}
+	
 	/**
 	 * Returns whether or not given response is a 200 OK.
 	 * 
@@ -43,4 +79,16 @@ public class HttpResponse
 	{
 		return response.getResponseCode() == 200;
 	}
+	
+	/**
+	 * Returns whether or not given response is a 409 Conflict, meaning that a versioned write
+	 * was rejected because the document has been changed by someone else.
+	 * 
+	 * @param response The response to check.
+	 * @return Returns <code>true</code> if the response is a 409 Conflict.
+	 */
+	public static boolean isConflict(HttpResponse response)
+	{
+		return response.getResponseCode() == 409;
+	}
 }
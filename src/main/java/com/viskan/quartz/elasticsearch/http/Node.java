@@ -0,0 +1,187 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An elasticsearch node that requests can be sent to.
+ * <p>
+ * A node that fails a request is marked as dead and is not preferred again until its
+ * backoff has passed. The backoff doubles with each consecutive failure.
+ *
+ * @author Anton Johansson
+ */
+public class Node
+{
+	private final String host;
+	private final int port;
+	private final AtomicInteger requestsInFlight = new AtomicInteger();
+	private int failures;
+	private long retryTime;
+
+	public Node(String host, int port)
+	{
+		if (host.isEmpty())
+		{
+			throw new IllegalArgumentException("The host of a node cannot be empty");
+		}
+		if (port <= 0 || port > 65535)
+		{
+			throw new IllegalArgumentException("The port of node '" + host + "' must be between 1 and 65535");
+		}
+		this.host = host;
+		this.port = port;
+	}
+
+	/**
+	 * Parses a comma separated list of nodes.
+	 *
+	 * @param hosts The nodes, as <code>host</code> or <code>host:port</code>.
+	 * @param defaultPort The port of the nodes that do not specify one.
+	 * @return Returns the parsed nodes.
+	 */
+	public static List<Node> parse(String hosts, int defaultPort)
+	{
+		List<Node> nodes = new ArrayList<>();
+		for (String value : hosts.split(","))
+		{
+			String host = value.trim();
+			if (host.isEmpty())
+			{
+				continue;
+			}
+
+			int colon = host.lastIndexOf(':');
+			if (colon < 0)
+			{
+				nodes.add(new Node(host, defaultPort));
+				continue;
+			}
+			try
+			{
+				nodes.add(new Node(host.substring(0, colon), Integer.parseInt(host.substring(colon + 1))));
+			}
+			catch (NumberFormatException e)
+			{
+				throw new IllegalArgumentException("Invalid port of node '" + host + "'", e);
+			}
+		}
+		return nodes;
+	}
+
+	public String getHost()
+	{
+		return host;
+	}
+
+	public int getPort()
+	{
+		return port;
+	}
+
+	public int getRequestsInFlight()
+	{
+		return requestsInFlight.get();
+	}
+
+	/**
+	 * Replaces the host and port of given URL with the ones of this node.
+	 *
+	 * @param requestURL An absolute URL to any node.
+	 * @return Returns the URL of the same resource on this node.
+	 */
+	String resolve(String requestURL)
+	{
+		int hostStart = requestURL.indexOf("://") + 3;
+		int pathStart = requestURL.indexOf('/', hostStart);
+		return new StringBuilder(requestURL.length() + 16)
+			.append(requestURL, 0, hostStart)
+			.append(host)
+			.append(':')
+			.append(port)
+			.append(pathStart < 0 ? "/" : requestURL.substring(pathStart))
+			.toString();
+	}
+
+	void requestStarted()
+	{
+		requestsInFlight.incrementAndGet();
+	}
+
+	void requestFinished()
+	{
+		requestsInFlight.decrementAndGet();
+	}
+
+	/**
+	 * Gets whether or not this node should be sent requests.
+	 *
+	 * @param now The current time in milliseconds.
+	 * @return Returns <code>true</code> if the node has not failed, or if its backoff has passed.
+	 */
+	synchronized boolean isAlive(long now)
+	{
+		return now >= retryTime;
+	}
+
+	synchronized long getRetryTime()
+	{
+		return retryTime;
+	}
+
+	synchronized int getFailures()
+	{
+		return failures;
+	}
+
+	/**
+	 * Marks this node as dead.
+	 *
+	 * @return Returns the number of milliseconds until the node is retried.
+	 */
+	synchronized long markDead(long now, long minBackoff, long maxBackoff)
+	{
+		long backoff = minBackoff << Math.min(failures, 30);
+		backoff = backoff < minBackoff ? maxBackoff : Math.min(backoff, maxBackoff);
+		failures++;
+		retryTime = now + backoff;
+		return backoff;
+	}
+
+	/**
+	 * Marks this node as alive.
+	 *
+	 * @return Returns <code>true</code> if the node was dead.
+	 */
+	synchronized boolean markAlive()
+	{
+		boolean dead = failures > 0;
+		failures = 0;
+		retryTime = 0;
+		return dead;
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (!(obj instanceof Node))
+		{
+			return false;
+		}
+		Node other = (Node) obj;
+		return host.equals(other.host) && port == other.port;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return host.hashCode() * 31 + port;
+	}
+
+	@Override
+	public String toString()
+	{
+		return host + ":" + port;
+	}
+}
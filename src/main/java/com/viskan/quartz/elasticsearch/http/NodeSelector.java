@@ -0,0 +1,168 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selects which of several elasticsearch {@link Node nodes} a request is sent to, and which
+ * ones it fails over to.
+ * <p>
+ * Requests are spread over the live nodes, either in turn or to the node with the fewest
+ * requests in flight. Dead nodes are tried last, in the order they are due to be retried.
+ *
+ * @author Anton Johansson
+ */
+public class NodeSelector
+{
+	private static final transient Logger LOGGER = LoggerFactory.getLogger(NodeSelector.class);
+	private static final Comparator<Node> BY_REQUESTS_IN_FLIGHT = new Comparator<Node>()
+	{
+		@Override
+		public int compare(Node node1, Node node2)
+		{
+			return Integer.compare(node1.getRequestsInFlight(), node2.getRequestsInFlight());
+		}
+	};
+	private static final Comparator<Node> BY_RETRY_TIME = new Comparator<Node>()
+	{
+		@Override
+		public int compare(Node node1, Node node2)
+		{
+			return Long.compare(node1.getRetryTime(), node2.getRetryTime());
+		}
+	};
+
+	/**
+	 * The strategies of spreading requests over the live nodes.
+	 */
+	public enum Strategy
+	{
+		/** Sends requests to the nodes in turn. */
+		ROUND_ROBIN,
+
+		/** Sends requests to the node with the fewest requests in flight. */
+		LEAST_IN_FLIGHT
+	}
+
+	private final Strategy strategy;
+	private final long minBackoff;
+	private final long maxBackoff;
+	private final AtomicInteger nextNode = new AtomicInteger();
+	private volatile List<Node> nodes;
+
+	/**
+	 * Creates a new node selector.
+	 *
+	 * @param nodes The nodes to select from.
+	 * @param strategy The strategy of spreading requests over the live nodes.
+	 * @param minBackoff The number of milliseconds before a node that failed once is retried.
+	 * @param maxBackoff The maximum number of milliseconds before a dead node is retried.
+	 */
+	public NodeSelector(List<Node> nodes, Strategy strategy, long minBackoff, long maxBackoff)
+	{
+		this.strategy = strategy;
+		this.minBackoff = minBackoff;
+		this.maxBackoff = maxBackoff;
+		setNodes(nodes);
+	}
+
+	public List<Node> getNodes()
+	{
+		return nodes;
+	}
+
+	/**
+	 * Replaces the nodes to select from. Nodes that were already known keep their state.
+	 *
+	 * @param nodes The new nodes.
+	 */
+	public void setNodes(List<Node> nodes)
+	{
+		if (nodes.isEmpty())
+		{
+			throw new IllegalArgumentException("At least one node must be given");
+		}
+
+		Map<Node, Node> knownNodes = new HashMap<>();
+		if (this.nodes != null)
+		{
+			for (Node node : this.nodes)
+			{
+				knownNodes.put(node, node);
+			}
+		}
+
+		List<Node> newNodes = new ArrayList<>(nodes.size());
+		for (Node node : nodes)
+		{
+			Node knownNode = knownNodes.get(node);
+			newNodes.add(knownNode != null ? knownNode : node);
+		}
+		this.nodes = Collections.unmodifiableList(newNodes);
+	}
+
+	public Strategy getStrategy()
+	{
+		return strategy;
+	}
+
+	/**
+	 * Gets the nodes to try for a request, in order.
+	 *
+	 * @return Returns the live nodes followed by the dead ones.
+	 */
+	List<Node> select()
+	{
+		List<Node> current = nodes;
+		int size = current.size();
+		long now = System.currentTimeMillis();
+
+		// Rotate the starting point also for least in flight, so that ties are spread over the nodes
+		int start = (nextNode.getAndIncrement() & Integer.MAX_VALUE) % size;
+		List<Node> alive = new ArrayList<>(size);
+		List<Node> dead = new ArrayList<>(0);
+		for (int i = 0; i < size; i++)
+		{
+			Node node = current.get((start + i) % size);
+			if (node.isAlive(now))
+			{
+				alive.add(node);
+			}
+			else
+			{
+				dead.add(node);
+			}
+		}
+
+		if (strategy == Strategy.LEAST_IN_FLIGHT)
+		{
+			Collections.sort(alive, BY_REQUESTS_IN_FLIGHT);
+		}
+		Collections.sort(dead, BY_RETRY_TIME);
+		alive.addAll(dead);
+		return alive;
+	}
+
+	void succeeded(Node node)
+	{
+		if (node.markAlive())
+		{
+			LOGGER.info("Elasticsearch node '{}' is available again", node);
+		}
+	}
+
+	void failed(Node node, Throwable e)
+	{
+		long backoff = node.markDead(System.currentTimeMillis(), minBackoff, maxBackoff);
+		Throwable cause = e.getCause() != null ? e.getCause() : e;
+		LOGGER.warn("Elasticsearch node '{}' failed, retrying it in {} ms: {}", new Object[] { node, backoff, cause });
+	}
+}
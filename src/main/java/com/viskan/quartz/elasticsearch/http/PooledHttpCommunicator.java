@@ -0,0 +1,148 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.URL;
+import java.nio.charset.Charset;
+
+import org.quartz.JobPersistenceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@link HttpCommunicator} that keeps persistent connections
+ * in a bounded {@link ConnectionPool} instead of opening a new connection for
+ * each request.
+ *
+ * @author Anton Johansson
+ */
+public class PooledHttpCommunicator extends HttpCommunicator implements Closeable
+{
+	private static final transient Logger LOGGER = LoggerFactory.getLogger(PooledHttpCommunicator.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final ConnectionPool pool;
+
+	/**
+	 * Creates a new pooled communicator.
+	 *
+	 * @param maxConnections The maximum number of open connections in total.
+	 * @param maxConnectionsPerHost The maximum number of open connections to a single host.
+	 * @param idleTimeout The number of milliseconds a connection can be idle before it is closed.
+	 * @param validateAfterInactivity The number of milliseconds a connection can be idle before it is validated on reuse.
+	 */
+	public PooledHttpCommunicator(int maxConnections, int maxConnectionsPerHost, long idleTimeout, long validateAfterInactivity)
+	{
+		this.pool = new ConnectionPool(maxConnections, maxConnectionsPerHost, idleTimeout, validateAfterInactivity, DEFAULT_READ_TIMEOUT);
+	}
+
+	/**
+	 * Sets the read timeout, which is also the connect timeout and the time to wait for a pooled connection.
+	 */
+	@Override
+	public void setReadTimeout(int readTimeout)
+	{
+		super.setReadTimeout(readTimeout);
+		pool.setTimeout(readTimeout);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected HttpResponse execute(String method, String requestURL, String requestData) throws JobPersistenceException
+	{
+		long startTime = startRequest();
+		byte[] body = requestData.getBytes(UTF_8);
+		try
+		{
+			URL url = new URL(requestURL);
+
+			LOGGER.debug("Executing HTTP {} against '{}' with body '{}'", new Object[] { method, requestURL, requestData });
+			HttpConnection.Response response = exchange(method, url, body);
+
+			HttpResponse httpResponse = new HttpResponse(response.getResponseCode(), response.getResponseMessage(), response.getResponseData());
+			recordRequest(method, startTime, body.length, response.getResponseCode(), response.getResponseData().length);
+			if (LOGGER.isDebugEnabled())
+			{
+				LOGGER.debug("Received response '{} {}' with body '{}'", new Object[] { response.getResponseCode(), response.getResponseMessage(), httpResponse.getResponseData().trim() });
+			}
+			return httpResponse;
+		}
+		catch (IOException e)
+		{
+			recordRequest(method, startTime, body.length, -1, 0);
+			throw new JobPersistenceException("Error when making HTTP request", e);
+		}
+		catch (JobPersistenceException e)
+		{
+			// No connection could be leased
+			recordRequest(method, startTime, body.length, -1, 0);
+			throw e;
+		}
+		finally
+		{
+			requestFinished();
+		}
+	}
+
+	private HttpConnection.Response exchange(String method, URL url, byte[] body) throws IOException, JobPersistenceException
+	{
+		String host = url.getHost();
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+		String hostHeader = url.getPort() != -1 ? host + ":" + port : host;
+		String path = url.getFile().isEmpty() ? "/" : url.getFile();
+
+		while (true)
+		{
+			HttpConnection connection = pool.lease(host, port);
+			boolean reusable = false;
+			try
+			{
+				HttpConnection.Response response = connection.execute(method, hostHeader, path, body, getReadTimeout());
+				reusable = response.isKeepAlive();
+				return response;
+			}
+			catch (EOFException | SocketException e)
+			{
+				// The server may have closed a reused connection before we could send the request, try again with another one
+				if (!connection.isReused() || !connection.canResend())
+				{
+					throw e;
+				}
+				LOGGER.debug("Reused connection to '{}' was closed by the server, retrying", connection.getRoute());
+			}
+			finally
+			{
+				pool.release(connection, reusable);
+			}
+		}
+	}
+
+	/**
+	 * Closes all connections that have been idle for longer than the idle timeout.
+	 */
+	public void evictIdleConnections()
+	{
+		pool.evictIdleConnections();
+	}
+
+	/**
+	 * Gets the current usage of the connection pool.
+	 *
+	 * @return Returns a snapshot of the connection pool statistics.
+	 */
+	public ConnectionPoolStatistics getStatistics()
+	{
+		return pool.getStatistics();
+	}
+
+	/**
+	 * Closes the connection pool.
+	 */
+	@Override
+	public void close()
+	{
+		pool.close();
+	}
+}
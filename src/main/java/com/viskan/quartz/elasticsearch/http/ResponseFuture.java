@@ -0,0 +1,84 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.quartz.JobPersistenceException;
+
+/**
+ * The pending response of a request made by the {@link AsyncHttpCommunicator}.
+ * <p>
+ * Requests cannot be cancelled, since the request may already have been written.
+ *
+ * @author Anton Johansson
+ */
+class ResponseFuture implements Future<HttpResponse>
+{
+	private final CountDownLatch done = new CountDownLatch(1);
+	private volatile HttpResponse response;
+	private volatile JobPersistenceException exception;
+
+	void complete(HttpResponse response)
+	{
+		this.response = response;
+		done.countDown();
+	}
+
+	void fail(JobPersistenceException exception)
+	{
+		this.exception = exception;
+		done.countDown();
+	}
+
+	/** Always returns <code>false</code>. */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning)
+	{
+		return false;
+	}
+
+	/** Always returns <code>false</code>. */
+	@Override
+	public boolean isCancelled()
+	{
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isDone()
+	{
+		return done.getCount() == 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public HttpResponse get() throws InterruptedException, ExecutionException
+	{
+		done.await();
+		return getResult();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public HttpResponse get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+	{
+		if (!done.await(timeout, unit))
+		{
+			throw new TimeoutException();
+		}
+		return getResult();
+	}
+
+	private HttpResponse getResult() throws ExecutionException
+	{
+		if (exception != null)
+		{
+			throw new ExecutionException(exception);
+		}
+		return response;
+	}
+}
@@ -0,0 +1,269 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Parses an HTTP/1.1 response from the bytes read so far, so that a response can be read
+ * both from a blocking stream and from the buffers of a non-blocking channel.
+ * <p>
+ * Instances parse a single response and are not thread safe.
+ *
+ * @author Anton Johansson
+ */
+class ResponseParser
+{
+	private enum State
+	{
+		STATUS_LINE,
+		HEADERS,
+		BODY,
+		BODY_TO_END,
+		CHUNK_SIZE,
+		CHUNK_DATA,
+		CHUNK_END,
+		TRAILERS,
+		DONE
+	}
+
+	private final String method;
+	private final StringBuilder line = new StringBuilder(64);
+	private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+	private State state = State.STATUS_LINE;
+	private long bytesRead;
+	private int responseCode;
+	private String responseMessage;
+	private boolean keepAlive;
+	private long contentLength = -1;
+	private boolean chunked;
+	private long remaining;
+
+	/**
+	 * Creates a parser of the response to a request.
+	 *
+	 * @param method The method of the request, since responses to <code>HEAD</code> have no body.
+	 */
+	ResponseParser(String method)
+	{
+		this.method = method;
+	}
+
+	/**
+	 * Parses the available bytes of given buffer.
+	 *
+	 * @param buffer The buffer to read from.
+	 * @return Returns <code>true</code> if the response is complete.
+	 * @throws IOException Thrown if the response is malformed.
+	 */
+	boolean parse(ByteBuffer buffer) throws IOException
+	{
+		bytesRead += buffer.remaining();
+		while (buffer.hasRemaining() && state != State.DONE)
+		{
+			switch (state)
+			{
+				case STATUS_LINE:
+					if (readLine(buffer))
+					{
+						parseStatusLine(takeLine());
+						state = State.HEADERS;
+					}
+					break;
+
+				case HEADERS:
+					if (readLine(buffer))
+					{
+						String header = takeLine();
+						if (header.isEmpty())
+						{
+							startBody();
+						}
+						else
+						{
+							parseHeader(header);
+						}
+					}
+					break;
+
+				case BODY:
+				case CHUNK_DATA:
+					int length = (int) Math.min(remaining, buffer.remaining());
+					body.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+					buffer.position(buffer.position() + length);
+					remaining -= length;
+					if (remaining == 0)
+					{
+						state = state == State.BODY ? State.DONE : State.CHUNK_END;
+					}
+					break;
+
+				case BODY_TO_END:
+					body.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+					buffer.position(buffer.limit());
+					break;
+
+				case CHUNK_SIZE:
+					if (readLine(buffer))
+					{
+						String sizeLine = takeLine();
+						int extension = sizeLine.indexOf(';');
+						remaining = Long.parseLong((extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+						state = remaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+					}
+					break;
+
+				case CHUNK_END:
+					if (readLine(buffer))
+					{
+						takeLine();
+						state = State.CHUNK_SIZE;
+					}
+					break;
+
+				case TRAILERS:
+					if (readLine(buffer) && takeLine().isEmpty())
+					{
+						state = State.DONE;
+					}
+					break;
+
+				default:
+					break;
+			}
+		}
+		return state == State.DONE;
+	}
+
+	/**
+	 * Completes the response when the server has closed the connection.
+	 *
+	 * @return Returns the response, if it is delimited by the end of the stream.
+	 * @throws IOException Thrown if the connection was closed before the response was complete.
+	 */
+	HttpConnection.Response endOfStream() throws IOException
+	{
+		if (state == State.BODY_TO_END)
+		{
+			state = State.DONE;
+			return getResponse();
+		}
+		if (bytesRead == 0)
+		{
+			throw new EOFException("Connection closed by server before response");
+		}
+		throw new EOFException("Connection closed by server after " + bytesRead + " bytes of the response");
+	}
+
+	/**
+	 * Gets whether or not any bytes of the response have been read.
+	 *
+	 * @return Returns <code>true</code> if the response has started.
+	 */
+	boolean isStarted()
+	{
+		return bytesRead > 0;
+	}
+
+	HttpConnection.Response getResponse()
+	{
+		return new HttpConnection.Response(responseCode, responseMessage, body.toByteArray(), keepAlive);
+	}
+
+	private void parseStatusLine(String statusLine) throws IOException
+	{
+		int firstSpace = statusLine.indexOf(' ');
+		int secondSpace = statusLine.indexOf(' ', firstSpace + 1);
+		if (firstSpace < 0)
+		{
+			throw new IOException("Malformed status line '" + statusLine + "'");
+		}
+		try
+		{
+			responseCode = Integer.parseInt(secondSpace < 0 ? statusLine.substring(firstSpace + 1) : statusLine.substring(firstSpace + 1, secondSpace));
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IOException("Malformed status line '" + statusLine + "'", e);
+		}
+		responseMessage = secondSpace < 0 ? "" : statusLine.substring(secondSpace + 1);
+		keepAlive = statusLine.startsWith("HTTP/1.1");
+	}
+
+	private void parseHeader(String header)
+	{
+		int colon = header.indexOf(':');
+		if (colon < 0)
+		{
+			return;
+		}
+		String name = header.substring(0, colon).trim();
+		String value = header.substring(colon + 1).trim();
+		if ("Content-Length".equalsIgnoreCase(name))
+		{
+			contentLength = Long.parseLong(value);
+		}
+		else if ("Transfer-Encoding".equalsIgnoreCase(name))
+		{
+			chunked = value.toLowerCase().contains("chunked");
+		}
+		else if ("Connection".equalsIgnoreCase(name))
+		{
+			keepAlive = !"close".equalsIgnoreCase(value);
+		}
+	}
+
+	private void startBody()
+	{
+		if ("HEAD".equals(method) || responseCode == 204 || responseCode == 304 || responseCode / 100 == 1)
+		{
+			state = State.DONE;
+		}
+		else if (chunked)
+		{
+			state = State.CHUNK_SIZE;
+		}
+		else if (contentLength >= 0)
+		{
+			remaining = contentLength;
+			state = contentLength == 0 ? State.DONE : State.BODY;
+		}
+		else
+		{
+			keepAlive = false;
+			state = State.BODY_TO_END;
+		}
+	}
+
+	/**
+	 * Reads from given buffer until the end of the current line.
+	 *
+	 * @return Returns <code>true</code> if the line is complete.
+	 */
+	private boolean readLine(ByteBuffer buffer)
+	{
+		while (buffer.hasRemaining())
+		{
+			char data = (char) (buffer.get() & 0xFF);
+			if (data == '\n')
+			{
+				int length = line.length();
+				if (length > 0 && line.charAt(length - 1) == '\r')
+				{
+					line.setLength(length - 1);
+				}
+				return true;
+			}
+			line.append(data);
+		}
+		return false;
+	}
+
+	private String takeLine()
+	{
+		String value = line.toString();
+		line.setLength(0);
+		return value;
+	}
+}
@@ -0,0 +1,135 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import java.net.ConnectException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which failed HTTP requests are made again, and how long to wait before each retry.
+ * <p>
+ * A request is only resent if doing so cannot apply it twice:
+ * <ul>
+ * <li>The connection could not be established, so the request was never sent.</li>
+ * <li>Elasticsearch rejected the request as a whole with <code>429 Too Many Requests</code> or
+ * <code>503 Service Unavailable</code>.</li>
+ * <li>The request only reads, such as <code>GET</code> and searches, regardless of how it failed.</li>
+ * </ul>
+ * The backoff doubles for each retry, up to the maximum, and is jittered so that schedulers
+ * that failed at the same time do not retry at the same time.
+ *
+ * @author Anton Johansson
+ */
+public class RetryPolicy
+{
+	private static final int STATUS_BAD_GATEWAY = 502;
+	private static final int STATUS_SERVICE_UNAVAILABLE = 503;
+	private static final int STATUS_GATEWAY_TIMEOUT = 504;
+	private static final int STATUS_TOO_MANY_REQUESTS = 429;
+
+	private final int maxRetries;
+	private final long minBackoff;
+	private final long maxBackoff;
+
+	/**
+	 * Creates a new retry policy.
+	 *
+	 * @param maxRetries The maximum number of times a request is made again.
+	 * @param minBackoff The number of milliseconds to wait before the first retry.
+	 * @param maxBackoff The maximum number of milliseconds to wait before a retry.
+	 */
+	public RetryPolicy(int maxRetries, long minBackoff, long maxBackoff)
+	{
+		this.maxRetries = maxRetries;
+		this.minBackoff = minBackoff;
+		this.maxBackoff = maxBackoff;
+	}
+
+	public int getMaxRetries()
+	{
+		return maxRetries;
+	}
+
+	/**
+	 * Gets the number of milliseconds to wait before a retry.
+	 *
+	 * @param retry The number of the retry, starting at <code>0</code>.
+	 * @return Returns a random backoff between half and all of the exponential backoff.
+	 */
+	public long getBackoff(int retry)
+	{
+		long backoff = minBackoff << Math.min(retry, 30);
+		backoff = backoff < minBackoff ? maxBackoff : Math.min(backoff, maxBackoff);
+		return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+	}
+
+	/**
+	 * Checks whether a request that failed without a response can be sent again.
+	 *
+	 * @param method The method of the request.
+	 * @param requestURL The URL of the request.
+	 * @param e The failure.
+	 * @return Returns <code>true</code> if the request can be sent again.
+	 */
+	public static boolean canResend(String method, String requestURL, Throwable e)
+	{
+		for (Throwable cause = e; cause != null; cause = cause.getCause())
+		{
+			if (cause instanceof ConnectException)
+			{
+				return true;
+			}
+		}
+		return isReadOnly(method, requestURL);
+	}
+
+	/**
+	 * Checks whether a request that got given response can be sent again.
+	 *
+	 * @param method The method of the request.
+	 * @param requestURL The URL of the request.
+	 * @param responseCode The status code of the response.
+	 * @return Returns <code>true</code> if the request can be sent again.
+	 */
+	public static boolean canResend(String method, String requestURL, int responseCode)
+	{
+		switch (responseCode)
+		{
+			case STATUS_TOO_MANY_REQUESTS:
+			case STATUS_SERVICE_UNAVAILABLE:
+				return true;
+
+			case STATUS_BAD_GATEWAY:
+			case STATUS_GATEWAY_TIMEOUT:
+				return isReadOnly(method, requestURL);
+
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Checks whether given response code means that elasticsearch is overloaded or unreachable.
+	 *
+	 * @param responseCode The status code of the response.
+	 * @return Returns <code>true</code> if the response code is 429, 502, 503 or 504.
+	 */
+	public static boolean isUnavailable(int responseCode)
+	{
+		return responseCode == STATUS_TOO_MANY_REQUESTS || responseCode == STATUS_BAD_GATEWAY || responseCode == STATUS_SERVICE_UNAVAILABLE || responseCode == STATUS_GATEWAY_TIMEOUT;
+	}
+
+	private static boolean isReadOnly(String method, String requestURL)
+	{
+		if ("GET".equals(method) || "HEAD".equals(method))
+		{
+			return true;
+		}
+		if (!"POST".equals(method))
+		{
+			return false;
+		}
+
+		int queryStart = requestURL.indexOf('?');
+		String path = queryStart < 0 ? requestURL : requestURL.substring(0, queryStart);
+		return path.endsWith("/_search") || path.endsWith("/_count") || path.endsWith("/_mget");
+	}
+}
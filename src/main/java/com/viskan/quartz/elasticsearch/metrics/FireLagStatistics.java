@@ -0,0 +1,83 @@
+package com.viskan.quartz.elasticsearch.metrics;
+
+/**
+ * A snapshot of how late the triggers of a group fired compared to their scheduled fire times.
+ * <p>
+ * Lags are in milliseconds. Both the lags and the number of slow fires cover the rolling window
+ * of the {@link FireLagTracker}.
+ *
+ * @author Anton Johansson
+ */
+public class FireLagStatistics
+{
+	private final long count;
+	private final long slowFires;
+	private final double meanLag;
+	private final double medianLag;
+	private final double percentile90Lag;
+	private final double percentile99Lag;
+	private final double maxLag;
+
+	public FireLagStatistics(long count, long slowFires, double meanLag, double medianLag, double percentile90Lag, double percentile99Lag, double maxLag)
+	{
+		this.count = count;
+		this.slowFires = slowFires;
+		this.meanLag = meanLag;
+		this.medianLag = medianLag;
+		this.percentile90Lag = percentile90Lag;
+		this.percentile99Lag = percentile99Lag;
+		this.maxLag = maxLag;
+	}
+
+	/**
+	 * Gets the number of fires within the window.
+	 *
+	 * @return Returns the number of fires.
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Gets the number of fires within the window that lagged more than the slow fire threshold.
+	 *
+	 * @return Returns the number of slow fires, which is at most the number of fires.
+	 */
+	public long getSlowFires()
+	{
+		return slowFires;
+	}
+
+	public double getMeanLag()
+	{
+		return meanLag;
+	}
+
+	public double getMedianLag()
+	{
+		return medianLag;
+	}
+
+	public double getPercentile90Lag()
+	{
+		return percentile90Lag;
+	}
+
+	public double getPercentile99Lag()
+	{
+		return percentile99Lag;
+	}
+
+	public double getMaxLag()
+	{
+		return maxLag;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("count=%d, slow=%d, mean=%.1fms, p50=%.1fms, p90=%.1fms, p99=%.1fms, max=%.1fms",
+			count, slowFires, meanLag, medianLag, percentile90Lag, percentile99Lag, maxLag);
+	}
+}
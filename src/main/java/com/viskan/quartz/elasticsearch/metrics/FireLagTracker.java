@@ -0,0 +1,130 @@
+package com.viskan.quartz.elasticsearch.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks the lag between the scheduled and actual fire times of triggers, per trigger group.
+ * <p>
+ * The lags of each group are kept in a {@link RollingLatencyHistogram}, so the statistics
+ * describe the recent fires rather than all fires since the scheduler was started. Slow fires
+ * are kept in a histogram of their own with the same slots, so they cover the same fires.
+ *
+ * @author Anton Johansson
+ */
+public class FireLagTracker
+{
+	private static final int SLOTS = 6;
+	private static final double MICROS_PER_MILLI = 1000.0;
+
+	private final ConcurrentMap<String, Group> groups = new ConcurrentHashMap<>();
+	private volatile long window;
+	private volatile long slowFireThreshold;
+
+	/**
+	 * Creates a new tracker.
+	 *
+	 * @param window The length of the rolling window, in milliseconds.
+	 * @param slowFireThreshold The lag in milliseconds above which a fire is slow, or <code>0</code> to not detect slow fires.
+	 */
+	public FireLagTracker(long window, long slowFireThreshold)
+	{
+		this.window = window;
+		this.slowFireThreshold = slowFireThreshold;
+	}
+
+	/**
+	 * Sets the length of the rolling window. Clears the tracked lags if it is changed.
+	 *
+	 * @param window The length of the rolling window, in milliseconds.
+	 */
+	public void setWindow(long window)
+	{
+		if (this.window != window)
+		{
+			this.window = window;
+			groups.clear();
+		}
+	}
+
+	public void setSlowFireThreshold(long slowFireThreshold)
+	{
+		this.slowFireThreshold = slowFireThreshold;
+	}
+
+	/**
+	 * Records the lag of a fire.
+	 *
+	 * @param group The group of the fired trigger.
+	 * @param lag The number of milliseconds between the scheduled and actual fire time. Triggers that fire early have no lag.
+	 * @return Returns <code>true</code> if the fire was slow.
+	 */
+	public boolean record(String group, long lag)
+	{
+		Group groupLags = groups.get(group);
+		if (groupLags == null)
+		{
+			Group created = new Group(window);
+			groupLags = groups.putIfAbsent(group, created);
+			if (groupLags == null)
+			{
+				groupLags = created;
+			}
+		}
+
+		long now = System.currentTimeMillis();
+		groupLags.lags.record(Math.max(lag, 0) * 1000, now);
+		if (slowFireThreshold > 0 && lag > slowFireThreshold)
+		{
+			groupLags.slowLags.record(lag * 1000, now);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the lags of all trigger groups that have fired.
+	 *
+	 * @return Returns the statistics by trigger group.
+	 */
+	public Map<String, FireLagStatistics> getStatistics()
+	{
+		Map<String, FireLagStatistics> statistics = new TreeMap<>();
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, Group> entry : groups.entrySet())
+		{
+			RollingLatencyHistogram.Snapshot snapshot = entry.getValue().lags.getSnapshot(now);
+			statistics.put(entry.getKey(), new FireLagStatistics(
+				snapshot.getCount(),
+				entry.getValue().slowLags.getSnapshot(now).getCount(),
+				snapshot.getMean() / MICROS_PER_MILLI,
+				snapshot.getPercentile(50) / MICROS_PER_MILLI,
+				snapshot.getPercentile(90) / MICROS_PER_MILLI,
+				snapshot.getPercentile(99) / MICROS_PER_MILLI,
+				snapshot.getMax() / MICROS_PER_MILLI));
+		}
+		return statistics;
+	}
+
+	public void reset()
+	{
+		groups.clear();
+	}
+
+	/**
+	 * The lags of a trigger group.
+	 */
+	private static class Group
+	{
+		private final RollingLatencyHistogram lags;
+		private final RollingLatencyHistogram slowLags;
+
+		private Group(long window)
+		{
+			this.lags = new RollingLatencyHistogram(window, SLOTS);
+			this.slowLags = new RollingLatencyHistogram(window, SLOTS);
+		}
+	}
+}
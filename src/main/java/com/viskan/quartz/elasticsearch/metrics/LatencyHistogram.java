@@ -0,0 +1,167 @@
+package com.viskan.quartz.elasticsearch.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of latencies in microseconds.
+ * <p>
+ * Latencies below four microseconds get a bucket each, and every power of two above that is
+ * split into four buckets. Percentiles are reported as the upper bound of their bucket, so they
+ * are at most 25% above the actual latency.
+ *
+ * @author Anton Johansson
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param latency The latency in microseconds.
+	 */
+	public void record(long latency)
+	{
+		long value = Math.max(latency, 0);
+		buckets.incrementAndGet(getBucket(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+
+		long currentMax;
+		while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value))
+		{
+			// Retry until the max is updated or another thread recorded a larger latency
+		}
+	}
+
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	/**
+	 * Gets the sum of all recorded latencies.
+	 *
+	 * @return Returns the total latency in microseconds.
+	 */
+	public long getTotal()
+	{
+		return total.get();
+	}
+
+	/**
+	 * Gets the largest recorded latency.
+	 *
+	 * @return Returns the max latency in microseconds.
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * Gets the latency that given share of the recorded latencies are at or below.
+	 *
+	 * @param percentile The percentile, between <code>0</code> and <code>100</code>.
+	 * @return Returns the latency in microseconds, or <code>0</code> if nothing is recorded.
+	 */
+	public long getPercentile(double percentile)
+	{
+		long[] counts = newCounts();
+		addCounts(counts);
+		return getPercentile(counts, percentile, max.get());
+	}
+
+	/**
+	 * Clears all recorded latencies.
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * Adds the number of recorded latencies of each bucket to given counts.
+	 */
+	void addCounts(long[] counts)
+	{
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			counts[i] += buckets.get(i);
+		}
+	}
+
+	static long[] newCounts()
+	{
+		return new long[BUCKETS];
+	}
+
+	/**
+	 * Gets a percentile of the latencies of given bucket counts.
+	 *
+	 * @param counts The number of recorded latencies of each bucket.
+	 * @param percentile The percentile, between <code>0</code> and <code>100</code>.
+	 * @param max The largest recorded latency, which caps the upper bound of the last bucket.
+	 * @return Returns the latency in microseconds, or <code>0</code> if nothing is recorded.
+	 */
+	static long getPercentile(long[] counts, double percentile, long max)
+	{
+		long recorded = 0;
+		for (long count : counts)
+		{
+			recorded += count;
+		}
+		if (recorded == 0)
+		{
+			return 0;
+		}
+
+		long rank = Math.max((long) Math.ceil(percentile / 100 * recorded), 1);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+			{
+				return Math.min(getUpperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+	static int getBucket(long value)
+	{
+		if (value < SUB_BUCKETS)
+		{
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	static long getUpperBound(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+		{
+			return bucket;
+		}
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+	}
+}
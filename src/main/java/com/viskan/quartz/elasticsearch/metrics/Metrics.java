@@ -0,0 +1,249 @@
+package com.viskan.quartz.elasticsearch.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the latency and throughput of the HTTP requests and job store operations.
+ * <p>
+ * Recording is lock free, so a single instance is shared by all threads of a job store.
+ *
+ * @author Anton Johansson
+ */
+public class Metrics implements MetricsMXBean
+{
+	public static final String OPERATION_ACQUIRE = "acquire";
+	public static final String OPERATION_FIRE = "fire";
+	public static final String OPERATION_COMPLETE = "complete";
+	public static final String OPERATION_STORE = "store";
+	public static final String OPERATION_REMOVE = "remove";
+	public static final long DEFAULT_FIRE_LAG_WINDOW = 60000;
+
+	private static final int STATUS_CONFLICT = 409;
+	private static final int STATUS_SERVER_ERROR = 500;
+
+	private final ConcurrentMap<String, OperationMetrics> httpRequests = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+	private final AtomicLong conflicts = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+	private final AtomicLong bytesReceived = new AtomicLong();
+	private final FireLagTracker fireLags = new FireLagTracker(DEFAULT_FIRE_LAG_WINDOW, 0);
+
+	/**
+	 * Records an HTTP request.
+	 *
+	 * @param method The HTTP method of the request.
+	 * @param startTime The {@link System#nanoTime()} when the request was started.
+	 * @param requestLength The number of bytes in the body of the request.
+	 * @param responseCode The status code of the response, or <code>-1</code> if the request failed without a response.
+	 * @param responseLength The number of bytes in the body of the response.
+	 */
+	public void recordRequest(String method, long startTime, int requestLength, int responseCode, int responseLength)
+	{
+		boolean failed = responseCode < 0 || responseCode >= STATUS_SERVER_ERROR;
+		get(httpRequests, method).record(System.nanoTime() - startTime, failed);
+		bytesSent.addAndGet(requestLength);
+		bytesReceived.addAndGet(responseLength);
+		if (failed)
+		{
+			errors.incrementAndGet();
+		}
+		else if (responseCode == STATUS_CONFLICT)
+		{
+			conflicts.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Records a call of a job store operation.
+	 *
+	 * @param operation The name of the operation.
+	 * @param startTime The {@link System#nanoTime()} when the operation was started.
+	 * @param failed Whether or not the operation threw an exception.
+	 */
+	public void recordOperation(String operation, long startTime, boolean failed)
+	{
+		get(operations, operation).record(System.nanoTime() - startTime, failed);
+	}
+
+	/**
+	 * Records version conflicts that are reported within a successful response, such as for the items of a bulk request.
+	 *
+	 * @param count The number of conflicts.
+	 */
+	public void recordConflicts(int count)
+	{
+		conflicts.addAndGet(count);
+	}
+
+	/**
+	 * Records that a failed HTTP request is made again.
+	 */
+	public void recordRetry()
+	{
+		retries.incrementAndGet();
+	}
+
+	/**
+	 * Records that an HTTP request was not made since the circuit breaker was open.
+	 */
+	public void recordRejection()
+	{
+		rejections.incrementAndGet();
+	}
+
+	/**
+	 * Records how late a trigger fired.
+	 *
+	 * @param group The group of the trigger.
+	 * @param lag The number of milliseconds between the scheduled and actual fire time.
+	 * @return Returns <code>true</code> if the lag is above the slow fire threshold.
+	 */
+	public boolean recordFireLag(String group, long lag)
+	{
+		return fireLags.record(group, lag);
+	}
+
+	/**
+	 * Gets the tracker of the fire lags, to configure its window and slow fire threshold.
+	 *
+	 * @return Returns the fire lag tracker.
+	 */
+	public FireLagTracker getFireLagTracker()
+	{
+		return fireLags;
+	}
+
+	/**
+	 * Gets the statistics of a single job store operation.
+	 *
+	 * @param operation The name of the operation.
+	 * @return Returns the statistics of the operation.
+	 */
+	public OperationStatistics getOperation(String operation)
+	{
+		return get(operations, operation).getStatistics();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Map<String, OperationStatistics> getHttpRequests()
+	{
+		return getStatistics(httpRequests);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Map<String, OperationStatistics> getOperations()
+	{
+		return getStatistics(operations);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Map<String, FireLagStatistics> getFireLag()
+	{
+		return fireLags.getStatistics();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getConflicts()
+	{
+		return conflicts.get();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getErrors()
+	{
+		return errors.get();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getRetries()
+	{
+		return retries.get();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getRejections()
+	{
+		return rejections.get();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getBytesSent()
+	{
+		return bytesSent.get();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getBytesReceived()
+	{
+		return bytesReceived.get();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void reset()
+	{
+		for (OperationMetrics metrics : httpRequests.values())
+		{
+			metrics.reset();
+		}
+		for (OperationMetrics metrics : operations.values())
+		{
+			metrics.reset();
+		}
+		fireLags.reset();
+		conflicts.set(0);
+		errors.set(0);
+		retries.set(0);
+		rejections.set(0);
+		bytesSent.set(0);
+		bytesReceived.set(0);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "httpRequests=" + getHttpRequests() + ", operations=" + getOperations() + ", fireLag=" + getFireLag() + ", conflicts=" + conflicts
+			+ ", errors=" + errors + ", retries=" + retries + ", rejections=" + rejections + ", bytesSent=" + bytesSent + ", bytesReceived=" + bytesReceived;
+	}
+
+	private static OperationMetrics get(ConcurrentMap<String, OperationMetrics> metrics, String name)
+	{
+		OperationMetrics operationMetrics = metrics.get(name);
+		if (operationMetrics == null)
+		{
+			OperationMetrics created = new OperationMetrics();
+			operationMetrics = metrics.putIfAbsent(name, created);
+			if (operationMetrics == null)
+			{
+				operationMetrics = created;
+			}
+		}
+		return operationMetrics;
+	}
+
+	private static Map<String, OperationStatistics> getStatistics(Map<String, OperationMetrics> metrics)
+	{
+		Map<String, OperationStatistics> statistics = new TreeMap<>();
+		for (Map.Entry<String, OperationMetrics> entry : metrics.entrySet())
+		{
+			statistics.put(entry.getKey(), entry.getValue().getStatistics());
+		}
+		return statistics;
+	}
+}
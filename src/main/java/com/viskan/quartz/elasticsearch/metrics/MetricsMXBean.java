@@ -0,0 +1,69 @@
+package com.viskan.quartz.elasticsearch.metrics;
+
+import java.util.Map;
+
+/**
+ * Exposes the {@link Metrics} of a job store through JMX.
+ *
+ * @author Anton Johansson
+ */
+public interface MetricsMXBean
+{
+	/**
+	 * Gets the statistics of the HTTP requests against elasticsearch.
+	 *
+	 * @return Returns the statistics by HTTP method.
+	 */
+	Map<String, OperationStatistics> getHttpRequests();
+
+	/**
+	 * Gets the statistics of the job store operations.
+	 *
+	 * @return Returns the statistics by operation name.
+	 */
+	Map<String, OperationStatistics> getOperations();
+
+	/**
+	 * Gets how late the triggers fired within the recent window.
+	 *
+	 * @return Returns the fire lag statistics by trigger group.
+	 */
+	Map<String, FireLagStatistics> getFireLag();
+
+	/**
+	 * Gets the number of writes that failed because the document was changed by someone else.
+	 *
+	 * @return Returns the number of version conflicts.
+	 */
+	long getConflicts();
+
+	/**
+	 * Gets the number of HTTP requests that could not be made or got a server error.
+	 *
+	 * @return Returns the number of errors.
+	 */
+	long getErrors();
+
+	/**
+	 * Gets the number of HTTP requests that were made again after failing.
+	 *
+	 * @return Returns the number of retries.
+	 */
+	long getRetries();
+
+	/**
+	 * Gets the number of HTTP requests that failed fast since the circuit breaker was open.
+	 *
+	 * @return Returns the number of rejected requests.
+	 */
+	long getRejections();
+
+	long getBytesSent();
+
+	long getBytesReceived();
+
+	/**
+	 * Resets all statistics.
+	 */
+	void reset();
+}
@@ -0,0 +1,59 @@
+package com.viskan.quartz.elasticsearch.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the number of calls, errors and latencies of a single operation.
+ *
+ * @author Anton Johansson
+ */
+public class OperationMetrics
+{
+	private static final double MICROS_PER_MILLI = 1000.0;
+
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final AtomicLong errors = new AtomicLong();
+	private volatile long resetTime = System.nanoTime();
+
+	/**
+	 * Records a call of the operation.
+	 *
+	 * @param time The duration of the call in nanoseconds.
+	 * @param failed Whether or not the call failed.
+	 */
+	public void record(long time, boolean failed)
+	{
+		latencies.record(time / 1000);
+		if (failed)
+		{
+			errors.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Gets a snapshot of the calls since the operation was last reset.
+	 *
+	 * @return Returns the operation statistics.
+	 */
+	public OperationStatistics getStatistics()
+	{
+		long count = latencies.getCount();
+		double seconds = (System.nanoTime() - resetTime) / 1e9;
+		return new OperationStatistics(
+			count,
+			errors.get(),
+			seconds > 0 ? count / seconds : 0,
+			count > 0 ? latencies.getTotal() / MICROS_PER_MILLI / count : 0,
+			latencies.getPercentile(50) / MICROS_PER_MILLI,
+			latencies.getPercentile(90) / MICROS_PER_MILLI,
+			latencies.getPercentile(99) / MICROS_PER_MILLI,
+			latencies.getMax() / MICROS_PER_MILLI);
+	}
+
+	public void reset()
+	{
+		latencies.reset();
+		errors.set(0);
+		resetTime = System.nanoTime();
+	}
+}
@@ -0,0 +1,89 @@
+package com.viskan.quartz.elasticsearch.metrics;
+
+/**
+ * A snapshot of the calls of an operation, such as an HTTP method or a job store operation.
+ * <p>
+ * Times are in milliseconds.
+ *
+ * @author Anton Johansson
+ */
+public class OperationStatistics
+{
+	private final long count;
+	private final long errors;
+	private final double rate;
+	private final double meanTime;
+	private final double medianTime;
+	private final double percentile90Time;
+	private final double percentile99Time;
+	private final double maxTime;
+
+	public OperationStatistics(long count, long errors, double rate, double meanTime, double medianTime, double percentile90Time, double percentile99Time, double maxTime)
+	{
+		this.count = count;
+		this.errors = errors;
+		this.rate = rate;
+		this.meanTime = meanTime;
+		this.medianTime = medianTime;
+		this.percentile90Time = percentile90Time;
+		this.percentile99Time = percentile99Time;
+		this.maxTime = maxTime;
+	}
+
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Gets the number of calls that failed.
+	 *
+	 * @return Returns the number of errors.
+	 */
+	public long getErrors()
+	{
+		return errors;
+	}
+
+	/**
+	 * Gets the average number of calls per second since the statistics were reset.
+	 *
+	 * @return Returns the throughput.
+	 */
+	public double getRate()
+	{
+		return rate;
+	}
+
+	public double getMeanTime()
+	{
+		return meanTime;
+	}
+
+	public double getMedianTime()
+	{
+		return medianTime;
+	}
+
+	public double getPercentile90Time()
+	{
+		return percentile90Time;
+	}
+
+	public double getPercentile99Time()
+	{
+		return percentile99Time;
+	}
+
+	public double getMaxTime()
+	{
+		return maxTime;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("count=%d, errors=%d, rate=%.1f/s, mean=%.2fms, p50=%.2fms, p90=%.2fms, p99=%.2fms, max=%.2fms",
+			count, errors, rate, meanTime, medianTime, percentile90Time, percentile99Time, maxTime);
+	}
+}
@@ -0,0 +1,161 @@
+package com.viskan.quartz.elasticsearch.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link LatencyHistogram} of the latencies recorded within a rolling time window.
+ * <p>
+ * The window is divided into slots that each keep a histogram. When the oldest slot has
+ * passed out of the window, it is cleared and reused for the latencies that are recorded
+ * next. The window therefore slides in steps of one slot.
+ *
+ * @author Anton Johansson
+ */
+public class RollingLatencyHistogram
+{
+	private final long slotLength;
+	private final LatencyHistogram[] slots;
+	private final AtomicLongArray slotIds;
+
+	/**
+	 * Creates a new rolling histogram.
+	 *
+	 * @param window The length of the window, in milliseconds.
+	 * @param slotCount The number of slots that the window is divided into.
+	 */
+	public RollingLatencyHistogram(long window, int slotCount)
+	{
+		this.slotLength = Math.max(window / slotCount, 1);
+		this.slots = new LatencyHistogram[slotCount];
+		this.slotIds = new AtomicLongArray(slotCount);
+		for (int i = 0; i < slotCount; i++)
+		{
+			slots[i] = new LatencyHistogram();
+			slotIds.set(i, -1);
+		}
+	}
+
+	/**
+	 * Records a latency at the current time.
+	 *
+	 * @param latency The latency in microseconds.
+	 */
+	public void record(long latency)
+	{
+		record(latency, System.currentTimeMillis());
+	}
+
+	void record(long latency, long now)
+	{
+		long slotId = now / slotLength;
+		int index = (int) (slotId % slots.length);
+		long currentId = slotIds.get(index);
+		if (currentId != slotId)
+		{
+			synchronized (slots[index])
+			{
+				if (slotIds.get(index) == currentId)
+				{
+					slots[index].reset();
+					slotIds.set(index, slotId);
+				}
+			}
+		}
+		slots[index].record(latency);
+	}
+
+	/**
+	 * Gets the latencies recorded within the window.
+	 *
+	 * @return Returns a snapshot of the window.
+	 */
+	public Snapshot getSnapshot()
+	{
+		return getSnapshot(System.currentTimeMillis());
+	}
+
+	Snapshot getSnapshot(long now)
+	{
+		long oldestId = now / slotLength - slots.length + 1;
+		long[] counts = LatencyHistogram.newCounts();
+		long count = 0;
+		long total = 0;
+		long max = 0;
+		for (int i = 0; i < slots.length; i++)
+		{
+			if (slotIds.get(i) >= oldestId)
+			{
+				slots[i].addCounts(counts);
+				count += slots[i].getCount();
+				total += slots[i].getTotal();
+				max = Math.max(max, slots[i].getMax());
+			}
+		}
+		return new Snapshot(counts, count, total, max);
+	}
+
+	/**
+	 * Clears all recorded latencies.
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < slots.length; i++)
+		{
+			synchronized (slots[i])
+			{
+				slots[i].reset();
+				slotIds.set(i, -1);
+			}
+		}
+	}
+
+	/**
+	 * The latencies recorded within the window when the snapshot was taken.
+	 */
+	public static class Snapshot
+	{
+		private final long[] counts;
+		private final long count;
+		private final long total;
+		private final long max;
+
+		private Snapshot(long[] counts, long count, long total, long max)
+		{
+			this.counts = counts;
+			this.count = count;
+			this.total = total;
+			this.max = max;
+		}
+
+		public long getCount()
+		{
+			return count;
+		}
+
+		/**
+		 * Gets the average latency.
+		 *
+		 * @return Returns the mean latency in microseconds, or <code>0</code> if nothing is recorded.
+		 */
+		public long getMean()
+		{
+			return count > 0 ? total / count : 0;
+		}
+
+		public long getMax()
+		{
+			return max;
+		}
+
+		/**
+		 * Gets the latency that given share of the latencies are at or below.
+		 *
+		 * @param percentile The percentile, between <code>0</code> and <code>100</code>.
+		 * @return Returns the latency in microseconds, or <code>0</code> if nothing is recorded.
+		 */
+		public long getPercentile(double percentile)
+		{
+			return LatencyHistogram.getPercentile(counts, percentile, max);
+		}
+	}
+}
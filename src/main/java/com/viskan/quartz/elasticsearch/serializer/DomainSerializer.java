@@ -0,0 +1,818 @@
+package com.viskan.quartz.elasticsearch.serializer;
+
+import com.viskan.quartz.elasticsearch.domain.BulkItem;
+import com.viskan.quartz.elasticsearch.domain.BulkItemResult;
+import com.viskan.quartz.elasticsearch.domain.BulkResult;
+import com.viskan.quartz.elasticsearch.domain.CountResult;
+import com.viskan.quartz.elasticsearch.domain.GetResult;
+import com.viskan.quartz.elasticsearch.domain.Hit;
+import com.viskan.quartz.elasticsearch.domain.Hits;
+import com.viskan.quartz.elasticsearch.domain.JobWrapper;
+import com.viskan.quartz.elasticsearch.domain.MultiGetResult;
+import com.viskan.quartz.elasticsearch.domain.PutResult;
+import com.viskan.quartz.elasticsearch.domain.SchedulerState;
+import com.viskan.quartz.elasticsearch.domain.SearchResult;
+import com.viskan.quartz.elasticsearch.domain.TriggerWrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of {@link IStreamingSerializer} that reads and writes the domain types
+ * of the job store by hand, without reflection.
+ * <p>
+ * The data maps of jobs can contain arbitrary values, so they are read and written by
+ * the wrapped serializer, as are any types that this serializer does not know about.
+ * <p>
+ * The readers of the domain types are looked up by the resolved {@link Type} of the
+ * given token, so tokens from {@link TypeTokens} and new tokens of the same type are
+ * read the same way.
+ *
+ * @author Anton Johansson
+ */
+public class DomainSerializer implements IStreamingSerializer
+{
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 4096;
+
+	private final ISerializer serializer;
+	private final Map<Type, TypeReader<?>> readers = new HashMap<>();
+
+	/**
+	 * Creates a new domain serializer.
+	 *
+	 * @param serializer The serializer to use for data maps and unknown types.
+	 */
+	public DomainSerializer(ISerializer serializer)
+	{
+		this.serializer = serializer;
+
+		TypeReader<TriggerWrapper> triggerReader = new TypeReader<TriggerWrapper>()
+		{
+			@Override
+			public TriggerWrapper read(JsonReader reader) throws IOException
+			{
+				return readTriggerWrapper(reader);
+			}
+		};
+		TypeReader<JobWrapper> jobReader = new TypeReader<JobWrapper>()
+		{
+			@Override
+			public JobWrapper read(JsonReader reader) throws IOException
+			{
+				return readJobWrapper(reader);
+			}
+		};
+
+		register(TypeTokens.TRIGGER, triggerReader);
+		register(TypeTokens.JOB, jobReader);
+		registerResults(triggerReader, TypeTokens.GET_TRIGGER, TypeTokens.MULTI_GET_TRIGGERS, TypeTokens.SEARCH_TRIGGERS);
+		registerResults(jobReader, TypeTokens.GET_JOB, TypeTokens.MULTI_GET_JOBS, TypeTokens.SEARCH_JOBS);
+		final TypeReader<SchedulerState> schedulerReader = new TypeReader<SchedulerState>()
+		{
+			@Override
+			public SchedulerState read(JsonReader reader) throws IOException
+			{
+				return readSchedulerState(reader);
+			}
+		};
+		register(TypeTokens.SEARCH_SCHEDULERS, new TypeReader<SearchResult<SchedulerState>>()
+		{
+			@Override
+			public SearchResult<SchedulerState> read(JsonReader reader) throws IOException
+			{
+				return readSearchResult(reader, schedulerReader);
+			}
+		});
+		register(TypeTokens.PUT, new TypeReader<PutResult>()
+		{
+			@Override
+			public PutResult read(JsonReader reader) throws IOException
+			{
+				return readPutResult(reader);
+			}
+		});
+		register(TypeTokens.COUNT, new TypeReader<CountResult>()
+		{
+			@Override
+			public CountResult read(JsonReader reader) throws IOException
+			{
+				return readCountResult(reader);
+			}
+		});
+		register(TypeTokens.BULK, new TypeReader<BulkResult>()
+		{
+			@Override
+			public BulkResult read(JsonReader reader) throws IOException
+			{
+				return readBulkResult(reader);
+			}
+		});
+	}
+
+	private <T> void register(TypeToken<T> type, TypeReader<T> reader)
+	{
+		readers.put(type.getType(), reader);
+	}
+
+	private <T> void registerResults(final TypeReader<T> sourceReader, TypeToken<GetResult<T>> getType, TypeToken<MultiGetResult<T>> multiGetType, TypeToken<SearchResult<T>> searchType)
+	{
+		register(getType, new TypeReader<GetResult<T>>()
+		{
+			@Override
+			public GetResult<T> read(JsonReader reader) throws IOException
+			{
+				return readGetResult(reader, sourceReader);
+			}
+		});
+		register(multiGetType, new TypeReader<MultiGetResult<T>>()
+		{
+			@Override
+			public MultiGetResult<T> read(JsonReader reader) throws IOException
+			{
+				return readMultiGetResult(reader, sourceReader);
+			}
+		});
+		register(searchType, new TypeReader<SearchResult<T>>()
+		{
+			@Override
+			public SearchResult<T> read(JsonReader reader) throws IOException
+			{
+				return readSearchResult(reader, sourceReader);
+			}
+		});
+	}
+
+	/**
+	 * Gets the serializer that is used for data maps and unknown types.
+	 *
+	 * @return Returns the wrapped serializer.
+	 */
+	public ISerializer getSerializer()
+	{
+		return serializer;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <T> T from(String objectAsJSON, TypeToken<T> type)
+	{
+		TypeReader<T> reader = getReader(type);
+		if (reader == null)
+		{
+			return serializer.from(objectAsJSON, type);
+		}
+
+		try
+		{
+			return reader.read(new JsonReader(new StringReader(objectAsJSON)));
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Could not deserialize JSON to " + type.getType(), e);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <T> T from(InputStream inputStream, TypeToken<T> type) throws IOException
+	{
+		TypeReader<T> reader = getReader(type);
+		if (reader != null)
+		{
+			return reader.read(new JsonReader(new InputStreamReader(inputStream, UTF_8)));
+		}
+		else if (serializer instanceof IStreamingSerializer)
+		{
+			return ((IStreamingSerializer) serializer).from(inputStream, type);
+		}
+		return serializer.from(readFully(inputStream), type);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <T> String to(T object)
+	{
+		if (!isSupported(object))
+		{
+			return serializer.to(object);
+		}
+
+		try
+		{
+			StringWriter writer = new StringWriter();
+			write(new JsonWriter(writer), object);
+			return writer.toString();
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Could not serialize " + object.getClass().getName() + " to JSON", e);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <T> void to(T object, OutputStream outputStream) throws IOException
+	{
+		if (!isSupported(object) && serializer instanceof IStreamingSerializer)
+		{
+			((IStreamingSerializer) serializer).to(object, outputStream);
+			return;
+		}
+
+		// The writer is only flushed, since the stream belongs to the caller
+		Writer writer = new OutputStreamWriter(outputStream, UTF_8);
+		if (isSupported(object))
+		{
+			write(new JsonWriter(writer), object);
+		}
+		else
+		{
+			writer.write(serializer.to(object));
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Gets the reader of given type.
+	 *
+	 * @return Returns the reader, or <code>null</code> if the type is not a domain type.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> TypeReader<T> getReader(TypeToken<T> type)
+	{
+		return (TypeReader<T>) readers.get(type.getType());
+	}
+
+	private static String readFully(InputStream inputStream) throws IOException
+	{
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+		while ((read = inputStream.read(buffer)) != -1)
+		{
+			data.write(buffer, 0, read);
+		}
+		return new String(data.toByteArray(), UTF_8);
+	}
+
+	/**
+	 * Checks whether given object can be written by this serializer.
+	 * Maps and collections are written by hand, while their values are written by the wrapped serializer if needed.
+	 */
+	private static boolean isSupported(Object object)
+	{
+		return object instanceof TriggerWrapper
+			|| object instanceof JobWrapper
+			|| object instanceof Map
+			|| object instanceof Collection
+			|| object instanceof Object[];
+	}
+
+	private static <T> T readNullable(JsonReader reader, TypeReader<T> sourceReader) throws IOException
+	{
+		if (reader.peek() == JsonReader.Token.NULL)
+		{
+			reader.nextNull();
+			return null;
+		}
+		return sourceReader.read(reader);
+	}
+
+	private <T> GetResult<T> readGetResult(JsonReader reader, TypeReader<T> sourceReader) throws IOException
+	{
+		GetResult<T> result = new GetResult<>();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			switch (reader.nextName())
+			{
+				case "_id":
+					result.setId(nextString(reader));
+					break;
+				case "_version":
+					result.setVersion(reader.nextInt());
+					break;
+				case "found":
+					result.setFound(reader.nextBoolean());
+					break;
+				case "_source":
+					result.setSource(readNullable(reader, sourceReader));
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return result;
+	}
+
+	private <T> MultiGetResult<T> readMultiGetResult(JsonReader reader, TypeReader<T> sourceReader) throws IOException
+	{
+		MultiGetResult<T> result = new MultiGetResult<>();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			if ("docs".equals(reader.nextName()))
+			{
+				List<GetResult<T>> docs = new ArrayList<>();
+				reader.beginArray();
+				while (reader.hasNext())
+				{
+					docs.add(readGetResult(reader, sourceReader));
+				}
+				reader.endArray();
+				result.setDocs(docs);
+			}
+			else
+			{
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return result;
+	}
+
+	private <T> SearchResult<T> readSearchResult(JsonReader reader, TypeReader<T> sourceReader) throws IOException
+	{
+		SearchResult<T> result = new SearchResult<>();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			switch (reader.nextName())
+			{
+				case "took":
+					result.setTook(reader.nextInt());
+					break;
+				case "timed_out":
+					result.setTimed_out(reader.nextBoolean());
+					break;
+				case "hits":
+					result.setHits(readHits(reader, sourceReader));
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return result;
+	}
+
+	private <T> Hits<T> readHits(JsonReader reader, TypeReader<T> sourceReader) throws IOException
+	{
+		Hits<T> hits = new Hits<>();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			switch (reader.nextName())
+			{
+				case "total":
+					hits.setTotal(reader.nextInt());
+					break;
+				case "hits":
+					List<Hit<T>> list = new ArrayList<>();
+					reader.beginArray();
+					while (reader.hasNext())
+					{
+						list.add(readHit(reader, sourceReader));
+					}
+					reader.endArray();
+					hits.setHits(list);
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return hits;
+	}
+
+	private <T> Hit<T> readHit(JsonReader reader, TypeReader<T> sourceReader) throws IOException
+	{
+		Hit<T> hit = new Hit<>();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			switch (reader.nextName())
+			{
+				case "_id":
+					hit.setId(nextString(reader));
+					break;
+				case "_version":
+					hit.setVersion(reader.nextInt());
+					break;
+				case "_source":
+					hit.setSource(readNullable(reader, sourceReader));
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return hit;
+	}
+
+	private PutResult readPutResult(JsonReader reader) throws IOException
+	{
+		PutResult result = new PutResult();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			switch (reader.nextName())
+			{
+				case "_id":
+					result.setId(nextString(reader));
+					break;
+				case "_version":
+					result.setVersion(reader.nextInt());
+					break;
+				case "created":
+					result.setCreated(reader.nextBoolean());
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return result;
+	}
+
+	private CountResult readCountResult(JsonReader reader) throws IOException
+	{
+		CountResult result = new CountResult();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			if ("count".equals(reader.nextName()))
+			{
+				result.setCount(reader.nextInt());
+			}
+			else
+			{
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return result;
+	}
+
+	private BulkResult readBulkResult(JsonReader reader) throws IOException
+	{
+		BulkResult result = new BulkResult();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			switch (reader.nextName())
+			{
+				case "took":
+					result.setTook(reader.nextInt());
+					break;
+				case "errors":
+					result.setErrors(reader.nextBoolean());
+					break;
+				case "items":
+					List<BulkItem> items = new ArrayList<>();
+					reader.beginArray();
+					while (reader.hasNext())
+					{
+						items.add(readBulkItem(reader));
+					}
+					reader.endArray();
+					result.setItems(items);
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return result;
+	}
+
+	private BulkItem readBulkItem(JsonReader reader) throws IOException
+	{
+		BulkItem item = new BulkItem();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			switch (reader.nextName())
+			{
+				case "index":
+					item.setIndex(readBulkItemResult(reader));
+					break;
+				case "create":
+					item.setCreate(readBulkItemResult(reader));
+					break;
+				case "delete":
+					item.setDelete(readBulkItemResult(reader));
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return item;
+	}
+
+	private BulkItemResult readBulkItemResult(JsonReader reader) throws IOException
+	{
+		BulkItemResult result = new BulkItemResult();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			switch (reader.nextName())
+			{
+				case "_id":
+					result.setId(nextString(reader));
+					break;
+				case "_version":
+					result.setVersion(reader.nextInt());
+					break;
+				case "status":
+					result.setStatus(reader.nextInt());
+					break;
+				case "error":
+					// Later versions of elasticsearch describe errors as objects
+					result.setError(reader.peek() == JsonReader.Token.STRING ? reader.nextString() : reader.nextRaw());
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return result;
+	}
+
+	private TriggerWrapper readTriggerWrapper(JsonReader reader) throws IOException
+	{
+		TriggerWrapper triggerWrapper = new TriggerWrapper();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			switch (reader.nextName())
+			{
+				case "name":
+					triggerWrapper.setName(nextString(reader));
+					break;
+				case "group":
+					triggerWrapper.setGroup(nextString(reader));
+					break;
+				case "triggerClass":
+					triggerWrapper.setTriggerClass(nextString(reader));
+					break;
+				case "jobName":
+					triggerWrapper.setJobName(nextString(reader));
+					break;
+				case "jobGroup":
+					triggerWrapper.setJobGroup(nextString(reader));
+					break;
+				case "state":
+					triggerWrapper.setState(reader.nextInt());
+					break;
+				case "startTime":
+					triggerWrapper.setStartTime(reader.nextLong());
+					break;
+				case "endTime":
+					triggerWrapper.setEndTime(reader.nextLong());
+					break;
+				case "nextFireTime":
+					triggerWrapper.setNextFireTime(reader.nextLong());
+					break;
+				case "previousFireTime":
+					triggerWrapper.setPreviousFireTime(reader.nextLong());
+					break;
+				case "priority":
+					triggerWrapper.setPriority(reader.nextInt());
+					break;
+				case "repeatCount":
+					triggerWrapper.setRepeatCount(reader.nextInt());
+					break;
+				case "repeatInterval":
+					triggerWrapper.setRepeatInterval(reader.nextLong());
+					break;
+				case "timesTriggered":
+					triggerWrapper.setTimesTriggered(reader.nextInt());
+					break;
+				case "cronExpression":
+					triggerWrapper.setCronExpression(nextString(reader));
+					break;
+				case "owner":
+					triggerWrapper.setOwner(nextString(reader));
+					break;
+				case "leaseExpiry":
+					triggerWrapper.setLeaseExpiry(reader.nextLong());
+					break;
+				case "bucket":
+					triggerWrapper.setBucket(reader.nextInt());
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return triggerWrapper;
+	}
+
+	private JobWrapper readJobWrapper(JsonReader reader) throws IOException
+	{
+		JobWrapper jobWrapper = new JobWrapper();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			switch (reader.nextName())
+			{
+				case "name":
+					jobWrapper.setName(nextString(reader));
+					break;
+				case "group":
+					jobWrapper.setGroup(nextString(reader));
+					break;
+				case "jobClass":
+					jobWrapper.setJobClass(nextString(reader));
+					break;
+				case "dataMap":
+					jobWrapper.setDataMap(serializer.from(reader.nextRaw(), TypeTokens.DATA_MAP));
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return jobWrapper;
+	}
+
+	private SchedulerState readSchedulerState(JsonReader reader) throws IOException
+	{
+		SchedulerState schedulerState = new SchedulerState();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			switch (reader.nextName())
+			{
+				case "instanceId":
+					schedulerState.setInstanceId(nextString(reader));
+					break;
+				case "instanceName":
+					schedulerState.setInstanceName(nextString(reader));
+					break;
+				case "lastCheckin":
+					schedulerState.setLastCheckin(reader.nextLong());
+					break;
+				case "checkinInterval":
+					schedulerState.setCheckinInterval(reader.nextLong());
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return schedulerState;
+	}
+
+	private static String nextString(JsonReader reader) throws IOException
+	{
+		if (reader.peek() == JsonReader.Token.NULL)
+		{
+			reader.nextNull();
+			return null;
+		}
+		return reader.nextString();
+	}
+
+	private void write(JsonWriter writer, Object object) throws IOException
+	{
+		if (object == null)
+		{
+			writer.nullValue();
+		}
+		else if (object instanceof String)
+		{
+			writer.value((String) object);
+		}
+		else if (object instanceof Number)
+		{
+			writer.value((Number) object);
+		}
+		else if (object instanceof Boolean)
+		{
+			writer.value(((Boolean) object).booleanValue());
+		}
+		else if (object instanceof TriggerWrapper)
+		{
+			writeTriggerWrapper(writer, (TriggerWrapper) object);
+		}
+		else if (object instanceof JobWrapper)
+		{
+			writeJobWrapper(writer, (JobWrapper) object);
+		}
+		else if (object instanceof Map)
+		{
+			writer.beginObject();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet())
+			{
+				// Null values are left out, as with the properties of the domain types
+				if (entry.getValue() != null)
+				{
+					writer.name(String.valueOf(entry.getKey()));
+					write(writer, entry.getValue());
+				}
+			}
+			writer.endObject();
+		}
+		else if (object instanceof Collection)
+		{
+			writer.beginArray();
+			for (Object element : (Collection<?>) object)
+			{
+				write(writer, element);
+			}
+			writer.endArray();
+		}
+		else if (object instanceof Object[])
+		{
+			writer.beginArray();
+			for (Object element : (Object[]) object)
+			{
+				write(writer, element);
+			}
+			writer.endArray();
+		}
+		else
+		{
+			writer.rawValue(serializer.to(object));
+		}
+	}
+
+	private void writeTriggerWrapper(JsonWriter writer, TriggerWrapper triggerWrapper) throws IOException
+	{
+		// Properties are written in the same order as they are declared, and null values are left out
+		writer.beginObject();
+		writeString(writer, "name", triggerWrapper.getName());
+		writeString(writer, "group", triggerWrapper.getGroup());
+		writeString(writer, "triggerClass", triggerWrapper.getTriggerClass());
+		writeString(writer, "jobName", triggerWrapper.getJobName());
+		writeString(writer, "jobGroup", triggerWrapper.getJobGroup());
+		writer.name("state").value(triggerWrapper.getState());
+		writer.name("startTime").value(triggerWrapper.getStartTime());
+		writer.name("endTime").value(triggerWrapper.getEndTime());
+		writer.name("nextFireTime").value(triggerWrapper.getNextFireTime());
+		writer.name("previousFireTime").value(triggerWrapper.getPreviousFireTime());
+		writer.name("priority").value(triggerWrapper.getPriority());
+		writer.name("repeatCount").value(triggerWrapper.getRepeatCount());
+		writer.name("repeatInterval").value(triggerWrapper.getRepeatInterval());
+		writer.name("timesTriggered").value(triggerWrapper.getTimesTriggered());
+		writeString(writer, "cronExpression", triggerWrapper.getCronExpression());
+		writeString(writer, "owner", triggerWrapper.getOwner());
+		if (triggerWrapper.getLeaseExpiry() != null)
+		{
+			writer.name("leaseExpiry").value(triggerWrapper.getLeaseExpiry());
+		}
+		if (triggerWrapper.getBucket() != null)
+		{
+			writer.name("bucket").value(triggerWrapper.getBucket());
+		}
+		writer.endObject();
+	}
+
+	private void writeJobWrapper(JsonWriter writer, JobWrapper jobWrapper) throws IOException
+	{
+		writer.beginObject();
+		writeString(writer, "name", jobWrapper.getName());
+		writeString(writer, "group", jobWrapper.getGroup());
+		writeString(writer, "jobClass", jobWrapper.getJobClass());
+		if (jobWrapper.getDataMap() != null)
+		{
+			writer.name("dataMap").rawValue(serializer.to(jobWrapper.getDataMap()));
+		}
+		writer.endObject();
+	}
+
+	private static void writeString(JsonWriter writer, String name, String value) throws IOException
+	{
+		if (value != null)
+		{
+			writer.name(name).value(value);
+		}
+	}
+
+	/**
+	 * Reads a value of a domain type.
+	 */
+	private interface TypeReader<T>
+	{
+		T read(JsonReader reader) throws IOException;
+	}
+}
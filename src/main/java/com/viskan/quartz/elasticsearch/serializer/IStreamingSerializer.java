@@ -0,0 +1,36 @@
+package com.viskan.quartz.elasticsearch.serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Extends {@link ISerializer} with serialization from and to UTF-8 encoded streams.
+ * <p>
+ * The job store reads responses directly from their bytes when the serializer implements
+ * this interface, instead of decoding them into strings first. Implementations should not
+ * close the given streams.
+ *
+ * @author Anton Johansson
+ */
+public interface IStreamingSerializer extends ISerializer
+{
+	/**
+	 * Deserializes a JSON stream to an object of given type.
+	 *
+	 * @param inputStream The stream to read the JSON object from.
+	 * @param type The type to deserialize to.
+	 * @return Returns the deserialized object.
+	 * @throws IOException Thrown if the stream could not be read or does not contain valid JSON.
+	 */
+	<T> T from(InputStream inputStream, TypeToken<T> type) throws IOException;
+
+	/**
+	 * Serializes given object into a JSON stream.
+	 *
+	 * @param object The object to serialize.
+	 * @param outputStream The stream to write the JSON object to.
+	 * @throws IOException Thrown if the stream could not be written.
+	 */
+	<T> void to(T object, OutputStream outputStream) throws IOException;
+}
@@ -0,0 +1,424 @@
+package com.viskan.quartz.elasticsearch.serializer;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads JSON tokens from a character stream.
+ * <p>
+ * This reader is meant for the well-formed responses of elasticsearch. Separators
+ * are consumed where they are expected, but the full grammar is not validated.
+ * Characters are read through an internal buffer, and strings and numbers are
+ * parsed without creating intermediate objects.
+ *
+ * @author Anton Johansson
+ */
+public final class JsonReader
+{
+	/**
+	 * The kinds of values that can follow in the stream.
+	 */
+	public enum Token
+	{
+		BEGIN_OBJECT,
+		END_OBJECT,
+		BEGIN_ARRAY,
+		END_ARRAY,
+		STRING,
+		NUMBER,
+		BOOLEAN,
+		NULL,
+		END_DOCUMENT
+	}
+
+	private static final int BUFFER_SIZE = 1024;
+
+	private final Reader reader;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private final StringBuilder text = new StringBuilder();
+	private int position;
+	private int limit;
+	private long offset;
+
+	public JsonReader(Reader reader)
+	{
+		this.reader = reader;
+	}
+
+	/**
+	 * Gets the kind of the next value, without consuming it.
+	 *
+	 * @return Returns the kind of the next value.
+	 * @throws IOException Thrown if the stream could not be read or contains an unexpected character.
+	 */
+	public Token peek() throws IOException
+	{
+		int c = peekNonWhitespace();
+		switch (c)
+		{
+			case -1:
+				return Token.END_DOCUMENT;
+			case '{':
+				return Token.BEGIN_OBJECT;
+			case '}':
+				return Token.END_OBJECT;
+			case '[':
+				return Token.BEGIN_ARRAY;
+			case ']':
+				return Token.END_ARRAY;
+			case '"':
+				return Token.STRING;
+			case 't':
+			case 'f':
+				return Token.BOOLEAN;
+			case 'n':
+				return Token.NULL;
+			default:
+				if (c == '-' || (c >= '0' && c <= '9'))
+				{
+					return Token.NUMBER;
+				}
+				throw syntaxError("Unexpected character '" + (char) c + "'");
+		}
+	}
+
+	public void beginObject() throws IOException
+	{
+		expect('{');
+	}
+
+	public void endObject() throws IOException
+	{
+		expect('}');
+	}
+
+	public void beginArray() throws IOException
+	{
+		expect('[');
+	}
+
+	public void endArray() throws IOException
+	{
+		expect(']');
+	}
+
+	/**
+	 * Checks whether the current object or array has more elements, consuming the separator before the next element.
+	 *
+	 * @return Returns <code>true</code> if there are more elements.
+	 * @throws IOException Thrown if the stream could not be read.
+	 */
+	public boolean hasNext() throws IOException
+	{
+		int c = peekNonWhitespace();
+		if (c == ',')
+		{
+			position++;
+			c = peekNonWhitespace();
+		}
+		return c != '}' && c != ']' && c != -1;
+	}
+
+	/**
+	 * Reads the name of the next property of an object, including the following colon.
+	 *
+	 * @return Returns the name of the property.
+	 * @throws IOException Thrown if the stream could not be read or is malformed.
+	 */
+	public String nextName() throws IOException
+	{
+		String name = nextString();
+		expect(':');
+		return name;
+	}
+
+	public String nextString() throws IOException
+	{
+		expect('"');
+		text.setLength(0);
+		while (true)
+		{
+			int c = read();
+			if (c == '"')
+			{
+				return text.toString();
+			}
+			else if (c == '\\')
+			{
+				text.append(readEscaped());
+			}
+			else if (c == -1)
+			{
+				throw syntaxError("Unterminated string");
+			}
+			else
+			{
+				text.append((char) c);
+			}
+		}
+	}
+
+	public boolean nextBoolean() throws IOException
+	{
+		if (peekNonWhitespace() == 't')
+		{
+			expectLiteral("true");
+			return true;
+		}
+		expectLiteral("false");
+		return false;
+	}
+
+	public void nextNull() throws IOException
+	{
+		peekNonWhitespace();
+		expectLiteral("null");
+	}
+
+	/**
+	 * Reads a number as a long. Numbers with a fraction or an exponent are truncated.
+	 *
+	 * @return Returns the number.
+	 * @throws IOException Thrown if the stream could not be read or the next value is not a number.
+	 */
+	public long nextLong() throws IOException
+	{
+		peekNonWhitespace();
+		boolean negative = false;
+		if (peekChar() == '-')
+		{
+			negative = true;
+			position++;
+		}
+
+		long value = 0;
+		int digits = 0;
+		int c;
+		while ((c = peekChar()) >= '0' && c <= '9')
+		{
+			value = value * 10 + (c - '0');
+			digits++;
+			position++;
+		}
+		if (digits == 0)
+		{
+			throw syntaxError("Expected a number");
+		}
+
+		if (c == '.' || c == 'e' || c == 'E')
+		{
+			// Rare enough to not be worth parsing by hand
+			text.setLength(0);
+			text.append(negative ? "-" : "").append(value);
+			while ((c = peekChar()) == '.' || c == 'e' || c == 'E' || c == '+' || c == '-' || (c >= '0' && c <= '9'))
+			{
+				text.append((char) c);
+				position++;
+			}
+			return (long) Double.parseDouble(text.toString());
+		}
+		return negative ? -value : value;
+	}
+
+	public int nextInt() throws IOException
+	{
+		return (int) nextLong();
+	}
+
+	/**
+	 * Skips the next value, including any nested values.
+	 *
+	 * @throws IOException Thrown if the stream could not be read or is malformed.
+	 */
+	public void skipValue() throws IOException
+	{
+		scanValue(null);
+	}
+
+	/**
+	 * Reads the next value, including any nested values, as unparsed JSON.
+	 *
+	 * @return Returns the JSON of the value.
+	 * @throws IOException Thrown if the stream could not be read or is malformed.
+	 */
+	public String nextRaw() throws IOException
+	{
+		StringBuilder raw = new StringBuilder();
+		scanValue(raw);
+		return raw.toString();
+	}
+
+	private void scanValue(StringBuilder raw) throws IOException
+	{
+		int c = peekNonWhitespace();
+		if (c != '{' && c != '[' && c != '"')
+		{
+			// A number or a literal
+			if (c == -1)
+			{
+				throw syntaxError("Expected a value");
+			}
+			while ((c = peekChar()) != -1 && c != ',' && c != '}' && c != ']' && !isWhitespace(c))
+			{
+				append(raw, c);
+				position++;
+			}
+			return;
+		}
+
+		int depth = 0;
+		boolean inString = false;
+		do
+		{
+			c = read();
+			if (c == -1)
+			{
+				throw syntaxError("Unterminated value");
+			}
+			append(raw, c);
+
+			if (inString)
+			{
+				if (c == '\\')
+				{
+					append(raw, read());
+				}
+				else if (c == '"')
+				{
+					inString = false;
+				}
+			}
+			else if (c == '"')
+			{
+				inString = true;
+			}
+			else if (c == '{' || c == '[')
+			{
+				depth++;
+			}
+			else if (c == '}' || c == ']')
+			{
+				depth--;
+			}
+		}
+		while (depth > 0 || inString);
+	}
+
+	private static void append(StringBuilder raw, int c)
+	{
+		if (raw != null)
+		{
+			raw.append((char) c);
+		}
+	}
+
+	private char readEscaped() throws IOException
+	{
+		int c = read();
+		switch (c)
+		{
+			case '"':
+			case '\\':
+			case '/':
+				return (char) c;
+			case 'b':
+				return '\b';
+			case 'f':
+				return '\f';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 't':
+				return '\t';
+			case 'u':
+				int value = 0;
+				for (int i = 0; i < 4; i++)
+				{
+					int digit = Character.digit(read(), 16);
+					if (digit == -1)
+					{
+						throw syntaxError("Invalid unicode escape");
+					}
+					value = (value << 4) | digit;
+				}
+				return (char) value;
+			default:
+				throw syntaxError("Invalid escape sequence");
+		}
+	}
+
+	private void expect(char expected) throws IOException
+	{
+		int c = peekNonWhitespace();
+		if (c != expected)
+		{
+			throw syntaxError("Expected '" + expected + "' but found " + (c == -1 ? "end of document" : "'" + (char) c + "'"));
+		}
+		position++;
+	}
+
+	private void expectLiteral(String literal) throws IOException
+	{
+		for (int i = 0; i < literal.length(); i++)
+		{
+			if (read() != literal.charAt(i))
+			{
+				throw syntaxError("Expected '" + literal + "'");
+			}
+		}
+	}
+
+	private int peekNonWhitespace() throws IOException
+	{
+		int c;
+		while (isWhitespace(c = peekChar()))
+		{
+			position++;
+		}
+		return c;
+	}
+
+	private static boolean isWhitespace(int c)
+	{
+		return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+	}
+
+	private int peekChar() throws IOException
+	{
+		if (position == limit && !fill())
+		{
+			return -1;
+		}
+		return buffer[position];
+	}
+
+	private int read() throws IOException
+	{
+		int c = peekChar();
+		if (c != -1)
+		{
+			position++;
+		}
+		return c;
+	}
+
+	private boolean fill() throws IOException
+	{
+		offset += limit;
+		position = 0;
+		limit = 0;
+		int read = reader.read(buffer);
+		if (read <= 0)
+		{
+			return false;
+		}
+		limit = read;
+		return true;
+	}
+
+	private IOException syntaxError(String message)
+	{
+		return new IOException(message + " at position " + (offset + position));
+	}
+}
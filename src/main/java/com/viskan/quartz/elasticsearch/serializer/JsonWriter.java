@@ -0,0 +1,207 @@
+package com.viskan.quartz.elasticsearch.serializer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes JSON tokens to a character stream.
+ * <p>
+ * Separators between elements are written automatically. Values that are already
+ * serialized can be written as they are with {@link #rawValue(String)}.
+ *
+ * @author Anton Johansson
+ */
+public final class JsonWriter
+{
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Writer writer;
+	private boolean[] empty = new boolean[16];
+	private int depth;
+	private boolean afterName;
+
+	public JsonWriter(Writer writer)
+	{
+		this.writer = writer;
+	}
+
+	public JsonWriter beginObject() throws IOException
+	{
+		return open('{');
+	}
+
+	public JsonWriter endObject() throws IOException
+	{
+		return close('}');
+	}
+
+	public JsonWriter beginArray() throws IOException
+	{
+		return open('[');
+	}
+
+	public JsonWriter endArray() throws IOException
+	{
+		return close(']');
+	}
+
+	/**
+	 * Writes the name of the next property of an object.
+	 *
+	 * @param name The name of the property.
+	 * @return Returns this writer.
+	 * @throws IOException Thrown if the stream could not be written.
+	 */
+	public JsonWriter name(String name) throws IOException
+	{
+		beforeValue();
+		writeString(name);
+		writer.write(':');
+		afterName = true;
+		return this;
+	}
+
+	public JsonWriter value(String value) throws IOException
+	{
+		if (value == null)
+		{
+			return nullValue();
+		}
+		beforeValue();
+		writeString(value);
+		return this;
+	}
+
+	public JsonWriter value(long value) throws IOException
+	{
+		beforeValue();
+		writer.write(Long.toString(value));
+		return this;
+	}
+
+	public JsonWriter value(boolean value) throws IOException
+	{
+		beforeValue();
+		writer.write(value ? "true" : "false");
+		return this;
+	}
+
+	public JsonWriter value(Number value) throws IOException
+	{
+		if (value == null)
+		{
+			return nullValue();
+		}
+		beforeValue();
+		writer.write(value.toString());
+		return this;
+	}
+
+	public JsonWriter nullValue() throws IOException
+	{
+		beforeValue();
+		writer.write("null");
+		return this;
+	}
+
+	/**
+	 * Writes a value that is already serialized to JSON.
+	 *
+	 * @param json The serialized value.
+	 * @return Returns this writer.
+	 * @throws IOException Thrown if the stream could not be written.
+	 */
+	public JsonWriter rawValue(String json) throws IOException
+	{
+		beforeValue();
+		writer.write(json);
+		return this;
+	}
+
+	public void flush() throws IOException
+	{
+		writer.flush();
+	}
+
+	private JsonWriter open(char bracket) throws IOException
+	{
+		beforeValue();
+		if (depth == empty.length)
+		{
+			empty = Arrays.copyOf(empty, depth * 2);
+		}
+		empty[depth++] = true;
+		writer.write(bracket);
+		return this;
+	}
+
+	private JsonWriter close(char bracket) throws IOException
+	{
+		depth--;
+		writer.write(bracket);
+		return this;
+	}
+
+	private void beforeValue() throws IOException
+	{
+		if (afterName)
+		{
+			afterName = false;
+		}
+		else if (depth > 0)
+		{
+			if (!empty[depth - 1])
+			{
+				writer.write(',');
+			}
+			empty[depth - 1] = false;
+		}
+	}
+
+	private void writeString(String value) throws IOException
+	{
+		writer.write('"');
+		int start = 0;
+		int length = value.length();
+		for (int i = 0; i < length; i++)
+		{
+			char c = value.charAt(i);
+			String replacement;
+			if (c == '"')
+			{
+				replacement = "\\\"";
+			}
+			else if (c == '\\')
+			{
+				replacement = "\\\\";
+			}
+			else if (c == '\n')
+			{
+				replacement = "\\n";
+			}
+			else if (c == '\r')
+			{
+				replacement = "\\r";
+			}
+			else if (c == '\t')
+			{
+				replacement = "\\t";
+			}
+			else if (c < 0x20 || c == '\u2028' || c == '\u2029')
+			{
+				replacement = "\\u" + HEX[c >> 12] + HEX[(c >> 8) & 0xf] + HEX[(c >> 4) & 0xf] + HEX[c & 0xf];
+			}
+			else
+			{
+				continue;
+			}
+
+			writer.write(value, start, i - start);
+			writer.write(replacement);
+			start = i + 1;
+		}
+		writer.write(value, start, length - start);
+		writer.write('"');
+	}
+}
@@ -0,0 +1,42 @@
+package com.viskan.quartz.elasticsearch.serializer;
+
+import com.viskan.quartz.elasticsearch.domain.BulkResult;
+import com.viskan.quartz.elasticsearch.domain.CountResult;
+import com.viskan.quartz.elasticsearch.domain.GetResult;
+import com.viskan.quartz.elasticsearch.domain.JobWrapper;
+import com.viskan.quartz.elasticsearch.domain.MultiGetResult;
+import com.viskan.quartz.elasticsearch.domain.PutResult;
+import com.viskan.quartz.elasticsearch.domain.SchedulerState;
+import com.viskan.quartz.elasticsearch.domain.SearchResult;
+import com.viskan.quartz.elasticsearch.domain.TriggerWrapper;
+
+import java.util.Map;
+
+/**
+ * Provides the type tokens of the domain types.
+ * <p>
+ * Creating a {@link TypeToken} resolves its type through reflection, so the tokens
+ * are created once and shared instead of being created for every call.
+ *
+ * @author Anton Johansson
+ */
+public final class TypeTokens
+{
+	public static final TypeToken<TriggerWrapper> TRIGGER = new TypeToken<TriggerWrapper>() {};
+	public static final TypeToken<JobWrapper> JOB = new TypeToken<JobWrapper>() {};
+	public static final TypeToken<GetResult<TriggerWrapper>> GET_TRIGGER = new TypeToken<GetResult<TriggerWrapper>>() {};
+	public static final TypeToken<GetResult<JobWrapper>> GET_JOB = new TypeToken<GetResult<JobWrapper>>() {};
+	public static final TypeToken<MultiGetResult<TriggerWrapper>> MULTI_GET_TRIGGERS = new TypeToken<MultiGetResult<TriggerWrapper>>() {};
+	public static final TypeToken<MultiGetResult<JobWrapper>> MULTI_GET_JOBS = new TypeToken<MultiGetResult<JobWrapper>>() {};
+	public static final TypeToken<SearchResult<TriggerWrapper>> SEARCH_TRIGGERS = new TypeToken<SearchResult<TriggerWrapper>>() {};
+	public static final TypeToken<SearchResult<JobWrapper>> SEARCH_JOBS = new TypeToken<SearchResult<JobWrapper>>() {};
+	public static final TypeToken<SearchResult<SchedulerState>> SEARCH_SCHEDULERS = new TypeToken<SearchResult<SchedulerState>>() {};
+	public static final TypeToken<PutResult> PUT = new TypeToken<PutResult>() {};
+	public static final TypeToken<CountResult> COUNT = new TypeToken<CountResult>() {};
+	public static final TypeToken<BulkResult> BULK = new TypeToken<BulkResult>() {};
+	public static final TypeToken<Map<String, Object>> DATA_MAP = new TypeToken<Map<String, Object>>() {};
+
+	private TypeTokens()
+	{
+	}
+}
@@ -46,6 +46,25 @@ public final class JobUtils
 		return job;
 	}
 
+	/**
+	 * Creates a {@link JobWrapper} that can be stored from a {@link JobDetail}.
+	 * 
+	 * @param job The job to create wrapper from.
+	 * @return Returns the created {@link JobWrapper}.
+	 */
+	public static JobWrapper toJobWrapper(JobDetail job)
+	{
+		JobKey key = job.getKey();
+		
+		JobWrapper jobWrapper = new JobWrapper();
+		jobWrapper.setName(key.getName());
+		jobWrapper.setGroup(key.getGroup());
+		jobWrapper.setJobClass(job.getJobClass().getName());
+		jobWrapper.setDataMap(job.getJobDataMap().getWrappedMap());
+		
+		return jobWrapper;
+	}
+
 	private static Class<? extends Job> getJobClass(JobWrapper jobWrapper) throws JobPersistenceException
 	{
 		String jobClass = jobWrapper.getJobClass();
@@ -0,0 +1,161 @@
+package com.viskan.quartz.elasticsearch.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Provides the index settings and mappings used by the job store.
+ * <p>
+ * Keys are stored as not analyzed strings, and the fields that are used in filters
+ * and sorts when acquiring triggers are stored with doc values. Fields that are only
+ * read from the source are not indexed at all.
+ *
+ * @author Anton Johansson
+ */
+public final class MappingUtils
+{
+	private MappingUtils()
+	{
+	}
+
+	/**
+	 * Gets the definition of the index, including settings and the mappings of all types.
+	 *
+	 * @param numberOfShards The number of primary shards of the index.
+	 * @param numberOfReplicas The number of replicas of each primary shard.
+	 * @param jobType The name of the job type.
+	 * @param triggerType The name of the trigger type.
+	 * @param schedulerType The name of the type of the scheduler heartbeats.
+	 * @return Returns the index definition.
+	 */
+	public static Map<String, Object> getIndexDefinition(int numberOfShards, int numberOfReplicas, String jobType, String triggerType, String schedulerType)
+	{
+		Map<String, Object> settings = new LinkedHashMap<>();
+		settings.put("number_of_shards", numberOfShards);
+		settings.put("number_of_replicas", numberOfReplicas);
+
+		Map<String, Object> mappings = new LinkedHashMap<>();
+		mappings.put(jobType, getJobMapping());
+		mappings.put(triggerType, getTriggerMapping());
+		mappings.put(schedulerType, getSchedulerMapping());
+
+		Map<String, Object> index = new LinkedHashMap<>();
+		index.put("settings", settings);
+		index.put("mappings", mappings);
+		return index;
+	}
+
+	/**
+	 * Gets the mapping of the job type.
+	 *
+	 * @return Returns the job mapping.
+	 */
+	public static Map<String, Object> getJobMapping()
+	{
+		Map<String, Object> properties = new LinkedHashMap<>();
+		properties.put("name", keyword());
+		properties.put("group", keyword());
+		properties.put("jobClass", notIndexed("string"));
+		properties.put("dataMap", disabledObject());
+
+		return getTypeMapping(properties);
+	}
+
+	/**
+	 * Gets the mapping of the trigger type.
+	 *
+	 * @return Returns the trigger mapping.
+	 */
+	public static Map<String, Object> getTriggerMapping()
+	{
+		Map<String, Object> properties = new LinkedHashMap<>();
+		properties.put("name", keyword());
+		properties.put("group", keyword());
+		properties.put("triggerClass", notIndexed("string"));
+		properties.put("jobName", keyword());
+		properties.put("jobGroup", keyword());
+		properties.put("state", numeric("integer"));
+		properties.put("startTime", numeric("long"));
+		properties.put("endTime", numeric("long"));
+		properties.put("nextFireTime", numeric("long"));
+		properties.put("previousFireTime", numeric("long"));
+		properties.put("priority", numeric("integer"));
+		properties.put("repeatCount", notIndexed("integer"));
+		properties.put("repeatInterval", notIndexed("long"));
+		properties.put("timesTriggered", notIndexed("integer"));
+		properties.put("cronExpression", notIndexed("string"));
+		properties.put("owner", keyword());
+		properties.put("leaseExpiry", numeric("long"));
+		properties.put("bucket", numeric("integer"));
+
+		return getTypeMapping(properties);
+	}
+
+	/**
+	 * Gets the mapping of the type of the scheduler heartbeats.
+	 *
+	 * @return Returns the scheduler mapping.
+	 */
+	public static Map<String, Object> getSchedulerMapping()
+	{
+		Map<String, Object> properties = new LinkedHashMap<>();
+		properties.put("instanceId", keyword());
+		properties.put("instanceName", notIndexed("string"));
+		properties.put("lastCheckin", numeric("long"));
+		properties.put("checkinInterval", notIndexed("long"));
+
+		return getTypeMapping(properties);
+	}
+
+	private static Map<String, Object> getTypeMapping(Map<String, Object> properties)
+	{
+		Map<String, Object> all = new LinkedHashMap<>();
+		all.put("enabled", false);
+
+		// Fields that are added later should not be analyzed either
+		Map<String, Object> strings = new LinkedHashMap<>();
+		strings.put("match_mapping_type", "string");
+		strings.put("mapping", keyword());
+		Map<String, Object> dynamicTemplate = new LinkedHashMap<>();
+		dynamicTemplate.put("strings", strings);
+
+		Map<String, Object> mapping = new LinkedHashMap<>();
+		mapping.put("_all", all);
+		mapping.put("dynamic_templates", new Object[] { dynamicTemplate });
+		mapping.put("properties", properties);
+		return mapping;
+	}
+
+	private static Map<String, Object> keyword()
+	{
+		Map<String, Object> field = new LinkedHashMap<>();
+		field.put("type", "string");
+		field.put("index", "not_analyzed");
+		field.put("doc_values", true);
+		return field;
+	}
+
+	private static Map<String, Object> numeric(String type)
+	{
+		Map<String, Object> field = new LinkedHashMap<>();
+		field.put("type", type);
+		field.put("doc_values", true);
+		return field;
+	}
+
+	private static Map<String, Object> notIndexed(String type)
+	{
+		Map<String, Object> field = new LinkedHashMap<>();
+		field.put("type", type);
+		field.put("index", "no");
+		return field;
+	}
+
+	private static Map<String, Object> disabledObject()
+	{
+		Map<String, Object> field = new LinkedHashMap<>();
+		field.put("type", "object");
+		field.put("enabled", false);
+		return field;
+	}
+}
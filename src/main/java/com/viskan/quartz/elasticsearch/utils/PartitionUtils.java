@@ -0,0 +1,102 @@
+package com.viskan.quartz.elasticsearch.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.quartz.TriggerKey;
+
+/**
+ * Partitions the triggers into a fixed number of buckets, and assigns the buckets to the
+ * scheduler instances through consistent hashing.
+ * <p>
+ * Each instance is placed on a hash ring at a number of virtual nodes, and each bucket is owned
+ * by the instance at the first virtual node after the bucket. Every instance computes the
+ * assignment from the same set of live instances, so they agree on the owners without
+ * coordinating, and an instance that joins or leaves only moves its own share of the buckets.
+ * <p>
+ * Hashes are based on {@link String#hashCode()}, which is the same in every JVM.
+ *
+ * @author Anton Johansson
+ */
+public final class PartitionUtils
+{
+	/** The number of buckets that the triggers are partitioned into. */
+	public static final int BUCKETS = 256;
+
+	private static final int VIRTUAL_NODES = 64;
+
+	private PartitionUtils()
+	{
+	}
+
+	/**
+	 * Gets the bucket of a trigger.
+	 *
+	 * @param key The key of the trigger.
+	 * @return Returns the bucket, from <code>0</code> to {@link #BUCKETS}, exclusive.
+	 */
+	public static int getBucket(TriggerKey key)
+	{
+		return (mix(key.toString().hashCode()) & Integer.MAX_VALUE) % BUCKETS;
+	}
+
+	/**
+	 * Gets the buckets that are owned by given instance.
+	 *
+	 * @param instanceId The ID of the instance to get the buckets of.
+	 * @param instanceIds The IDs of all live instances, including the given one.
+	 * @return Returns the owned buckets in ascending order.
+	 */
+	public static List<Integer> getOwnedBuckets(String instanceId, Collection<String> instanceIds)
+	{
+		// The instances are placed in a fixed order, so that colliding virtual nodes go to the same instance everywhere
+		TreeMap<Integer, String> ring = new TreeMap<>();
+		for (String id : new TreeSet<>(instanceIds))
+		{
+			for (int i = 0; i < VIRTUAL_NODES; i++)
+			{
+				int position = mix((id + "#" + i).hashCode());
+				if (!ring.containsKey(position))
+				{
+					ring.put(position, id);
+				}
+			}
+		}
+
+		List<Integer> buckets = new ArrayList<>();
+		if (ring.isEmpty())
+		{
+			return buckets;
+		}
+		for (int bucket = 0; bucket < BUCKETS; bucket++)
+		{
+			Map.Entry<Integer, String> owner = ring.ceilingEntry(mix(bucket));
+			if (owner == null)
+			{
+				owner = ring.firstEntry();
+			}
+			if (owner.getValue().equals(instanceId))
+			{
+				buckets.add(bucket);
+			}
+		}
+		return buckets;
+	}
+
+	/**
+	 * Spreads the bits of a hash, using the finalizer of MurmurHash3.
+	 */
+	private static int mix(int hash)
+	{
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+}
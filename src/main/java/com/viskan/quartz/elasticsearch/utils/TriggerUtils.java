@@ -113,6 +113,7 @@ public final class TriggerUtils
 		trigger.setEndTime(getTime(triggerWrapper.getEndTime()));
 		trigger.setNextFireTime(getTime(triggerWrapper.getNextFireTime()));
 		trigger.setPreviousFireTime(getTime(triggerWrapper.getPreviousFireTime()));
+		trigger.setPriority(triggerWrapper.getPriority());
 	}
 	
 	/**
@@ -135,6 +136,7 @@ public final class TriggerUtils
 		triggerWrapper.setEndTime(getTime(trigger.getEndTime()));
 		triggerWrapper.setNextFireTime(getTime(trigger.getNextFireTime()));
 		triggerWrapper.setPreviousFireTime(getTime(trigger.getPreviousFireTime()));
+		triggerWrapper.setPriority(trigger.getPriority());
 		
 		if (trigger instanceof SimpleTriggerImpl)
 		{
@@ -1,6 +1,9 @@
 package com.viskan.quartz.elasticsearch;
 
 import static java.util.Arrays.asList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -12,7 +15,8 @@ import static org.quartz.TriggerBuilder.newTrigger;
 import java.util.AbstractMap;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -21,7 +25,10 @@ import java.util.TreeSet;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.quartz.Job;
 import org.quartz.JobBuilder;
 import org.quartz.JobDataMap;
@@ -34,10 +41,15 @@ import org.quartz.ObjectAlreadyExistsException;
 import org.quartz.SchedulerConfigException;
 import org.quartz.SchedulerException;
 import org.quartz.Trigger;
+import org.quartz.Trigger.CompletedExecutionInstruction;
 import org.quartz.TriggerKey;
 import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+import org.quartz.spi.TriggerFiredBundle;
+import org.quartz.spi.TriggerFiredResult;
 
 import com.viskan.quartz.elasticsearch.common.GsonSerializer;
+import com.viskan.quartz.elasticsearch.domain.TriggerWrapper;
 import com.viskan.quartz.elasticsearch.http.HttpCommunicator;
 import com.viskan.quartz.elasticsearch.http.HttpResponse;
 
@@ -50,6 +62,7 @@ public class ElasticsearchJobStoreTest extends Assert
 {
 	private ElasticsearchJobStore store;
 	@Mock private HttpCommunicator httpCommunicator;
+	@Mock private SchedulerSignaler signaler;
 	private Date testDate;
 
 	@Before
@@ -62,7 +75,7 @@ public class ElasticsearchJobStoreTest extends Assert
 		store.setSerializerClassName(GsonSerializer.class.getName());
 		store.setTypePrefix("prefix_");
 		store.setIndexName("index");
-		store.initialize(null, null);
+		store.initialize(null, signaler);
 		store.createHttpCommunicator(httpCommunicator);
 		testDate = new Date(1416826800844L);
 	}
@@ -101,6 +114,20 @@ public class ElasticsearchJobStoreTest extends Assert
 		store.setSerializerClassName("");
 	}
 
+	@Test(expected = IllegalArgumentException.class)
+	public void test_setting_non_positive_read_timeout()
+	{
+		store.setReadTimeout(0);
+	}
+
+	@Test
+	public void test_that_read_timeout_is_changed_while_running()
+	{
+		store.setReadTimeout(5000);
+		assertEquals(5000, store.getReadTimeout());
+		verify(httpCommunicator).setReadTimeout(5000);
+	}
+
 	@Test(expected = SchedulerConfigException.class)
 	public void test_setting_invalid_serializer() throws SchedulerConfigException
 	{
@@ -133,6 +160,50 @@ public class ElasticsearchJobStoreTest extends Assert
 		assertEquals(10, store.getEstimatedTimeToReleaseAndAcquireTrigger());
 	}
 
+	@Test
+	public void test_creating_index_that_does_not_exist() throws SchedulerConfigException, JobPersistenceException
+	{
+		when(httpCommunicator.request("GET", "http://localhost:9200/index/_mapping")).thenReturn(response(404, "{\"error\":\"IndexMissingException[[index] missing]\",\"status\":404}"));
+		when(httpCommunicator.request(eq("PUT"), eq("http://localhost:9200/index/"), anyString())).thenReturn(response(200, "{\"acknowledged\":true}"));
+
+		store.createIndex();
+
+		ArgumentCaptor<String> indexDefinition = ArgumentCaptor.forClass(String.class);
+		verify(httpCommunicator).request("GET", "http://localhost:9200/index/_mapping");
+		verify(httpCommunicator).request(eq("PUT"), eq("http://localhost:9200/index/"), indexDefinition.capture());
+		verifyNoMoreInteractions(httpCommunicator);
+		assertTrue(indexDefinition.getValue().startsWith("{\"settings\":{\"number_of_shards\":5,\"number_of_replicas\":1},\"mappings\":{\"prefix_job\":{"));
+		assertTrue(indexDefinition.getValue().contains("\"nextFireTime\":{\"type\":\"long\",\"doc_values\":true}"));
+		assertTrue(indexDefinition.getValue().contains("\"dataMap\":{\"type\":\"object\",\"enabled\":false}"));
+	}
+
+	@Test
+	public void test_creating_index_that_already_exists() throws SchedulerConfigException, JobPersistenceException
+	{
+		when(httpCommunicator.request("GET", "http://localhost:9200/index/_mapping")).thenReturn(response(200, "{\"index\":{\"mappings\":{}}}"));
+		when(httpCommunicator.request(eq("PUT"), eq("http://localhost:9200/index/_mapping/prefix_job"), anyString())).thenReturn(response(200, "{\"acknowledged\":true}"));
+		when(httpCommunicator.request(eq("PUT"), eq("http://localhost:9200/index/_mapping/prefix_trigger"), anyString())).thenReturn(response(200, "{\"acknowledged\":true}"));
+		when(httpCommunicator.request(eq("PUT"), eq("http://localhost:9200/index/_mapping/prefix_scheduler"), anyString())).thenReturn(response(200, "{\"acknowledged\":true}"));
+
+		store.createIndex();
+
+		verify(httpCommunicator).request("GET", "http://localhost:9200/index/_mapping");
+		verify(httpCommunicator).request(eq("PUT"), eq("http://localhost:9200/index/_mapping/prefix_job"), anyString());
+		verify(httpCommunicator).request(eq("PUT"), eq("http://localhost:9200/index/_mapping/prefix_trigger"), anyString());
+		verify(httpCommunicator).request(eq("PUT"), eq("http://localhost:9200/index/_mapping/prefix_scheduler"), anyString());
+		verifyNoMoreInteractions(httpCommunicator);
+	}
+
+	@Test(expected = SchedulerConfigException.class)
+	public void test_creating_index_with_conflicting_mapping() throws SchedulerConfigException, JobPersistenceException
+	{
+		when(httpCommunicator.request("GET", "http://localhost:9200/index/_mapping")).thenReturn(response(200, "{\"index\":{\"mappings\":{}}}"));
+		when(httpCommunicator.request(eq("PUT"), eq("http://localhost:9200/index/_mapping/prefix_job"), anyString()))
+			.thenReturn(response(400, "{\"error\":\"MergeMappingException[Merge failed with failures {[mapper [name] has different index values]}]\",\"status\":400}"));
+
+		store.createIndex();
+	}
+
 	@Test
 	public void test_storing_job_successfully() throws ObjectAlreadyExistsException, JobPersistenceException
 	{
@@ -187,10 +258,8 @@ public class ElasticsearchJobStoreTest extends Assert
 	@Test
 	public void test_storing_job_and_trigger() throws ObjectAlreadyExistsException, JobPersistenceException
 	{
-		when(httpCommunicator.request("PUT", "http://localhost:9200/index/prefix_job/Group1.Job1", "{\"name\":\"Job1\",\"group\":\"Group1\",\"jobClass\":\"com.viskan.quartz.elasticsearch.ElasticsearchJobStoreTest$TestJob\",\"dataMap\":{\"intKey\":5,\"booleanKey\":true,\"stringKey\":\"stringValue\"}}"))
-			.thenReturn(response(201, "{\"_index\":\"scheduler\",\"_type\":\"quartz_job\",\"_id\":\"Group1.Job1\",\"_version\":1,\"created\":true}"));
-		when(httpCommunicator.request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1", "{\"name\":\"Trigger1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":0,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}"))
-			.thenReturn(response(201, "{\"_index\":\"scheduler\",\"_type\":\"quartz_trigger\",\"_id\":\"Group1.Trigger1\",\"_version\":1,\"created\":true}"));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", "{\"create\":{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\"}}\n{\"name\":\"Job1\",\"group\":\"Group1\",\"jobClass\":\"com.viskan.quartz.elasticsearch.ElasticsearchJobStoreTest$TestJob\",\"dataMap\":{\"intKey\":5,\"booleanKey\":true,\"stringKey\":\"stringValue\"}}\n{\"create\":{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"}}\n{\"name\":\"Trigger1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":5,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}\n"))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("create", "job", "Job1", 1, 201) + "," + bulkItem("create", "trigger", "Trigger1", 1, 201) + "]}"));
 
 		JobDetail newJob = newJob()
 			.ofType(TestJob.class)
@@ -211,27 +280,23 @@ public class ElasticsearchJobStoreTest extends Assert
 
 		store.storeJobAndTrigger(newJob, newTrigger);
 
-		verify(httpCommunicator).request("PUT", "http://localhost:9200/index/prefix_job/Group1.Job1", "{\"name\":\"Job1\",\"group\":\"Group1\",\"jobClass\":\"com.viskan.quartz.elasticsearch.ElasticsearchJobStoreTest$TestJob\",\"dataMap\":{\"intKey\":5,\"booleanKey\":true,\"stringKey\":\"stringValue\"}}");
-		verify(httpCommunicator).request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1", "{\"name\":\"Trigger1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":0,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}");
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/_bulk", "{\"create\":{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\"}}\n{\"name\":\"Job1\",\"group\":\"Group1\",\"jobClass\":\"com.viskan.quartz.elasticsearch.ElasticsearchJobStoreTest$TestJob\",\"dataMap\":{\"intKey\":5,\"booleanKey\":true,\"stringKey\":\"stringValue\"}}\n{\"create\":{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"}}\n{\"name\":\"Trigger1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":5,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}\n");
 		verifyNoMoreInteractions(httpCommunicator);
 	}
 
 	@Test
 	public void test_storing_jobs_and_triggers() throws ObjectAlreadyExistsException, JobPersistenceException
 	{
-		when(httpCommunicator.request("PUT", "http://localhost:9200/index/prefix_job/Group1.Job1", "{\"name\":\"Job1\",\"group\":\"Group1\",\"jobClass\":\"com.viskan.quartz.elasticsearch.ElasticsearchJobStoreTest$TestJob\",\"dataMap\":{\"intKey\":5,\"booleanKey\":true,\"stringKey\":\"stringValue\"}}"))
-			.thenReturn(response(201, "{\"_index\":\"scheduler\",\"_type\":\"quartz_job\",\"_id\":\"Group1.Job1\",\"_version\":1,\"created\":true}"));
-		when(httpCommunicator.request("PUT", "http://localhost:9200/index/prefix_job/Group1.Job2", "{\"name\":\"Job2\",\"group\":\"Group1\",\"jobClass\":\"com.viskan.quartz.elasticsearch.ElasticsearchJobStoreTest$TestJob\",\"dataMap\":{\"intKey\":5,\"booleanKey\":true,\"stringKey\":\"stringValue\"}}"))
-			.thenReturn(response(201, "{\"_index\":\"scheduler\",\"_type\":\"quartz_job\",\"_id\":\"Group1.Job2\",\"_version\":1,\"created\":true}"));
-		when(httpCommunicator.request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1_1", "{\"name\":\"Trigger1_1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":0,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}"))
-			.thenReturn(response(201, "{\"_index\":\"scheduler\",\"_type\":\"quartz_trigger\",\"_id\":\"Group1.Trigger1_1\",\"_version\":1,\"created\":true}"));
-		when(httpCommunicator.request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1_2", "{\"name\":\"Trigger1_2\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":0,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}"))
-			.thenReturn(response(201, "{\"_index\":\"scheduler\",\"_type\":\"quartz_trigger\",\"_id\":\"Group1.Trigger1_2\",\"_version\":1,\"created\":true}"));
-		when(httpCommunicator.request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger2_1", "{\"name\":\"Trigger2_1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job2\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":0,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}"))
-			.thenReturn(response(201, "{\"_index\":\"scheduler\",\"_type\":\"quartz_trigger\",\"_id\":\"Group1.Trigger2_1\",\"_version\":1,\"created\":true}"));
-		when(httpCommunicator.request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger2_2", "{\"name\":\"Trigger2_2\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job2\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":0,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}"))
-			.thenReturn(response(201, "{\"_index\":\"scheduler\",\"_type\":\"quartz_trigger\",\"_id\":\"Group1.Trigger2_2\",\"_version\":1,\"created\":true}"));
-
+		String bulkBody = "{\"create\":{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\"}}\n{\"name\":\"Job1\",\"group\":\"Group1\",\"jobClass\":\"com.viskan.quartz.elasticsearch.ElasticsearchJobStoreTest$TestJob\",\"dataMap\":{\"intKey\":5,\"booleanKey\":true,\"stringKey\":\"stringValue\"}}\n"
+			+ "{\"create\":{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1_1\"}}\n{\"name\":\"Trigger1_1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":5,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}\n"
+			+ "{\"create\":{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1_2\"}}\n{\"name\":\"Trigger1_2\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":5,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}\n"
+			+ "{\"create\":{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job2\"}}\n{\"name\":\"Job2\",\"group\":\"Group1\",\"jobClass\":\"com.viskan.quartz.elasticsearch.ElasticsearchJobStoreTest$TestJob\",\"dataMap\":{\"intKey\":5,\"booleanKey\":true,\"stringKey\":\"stringValue\"}}\n"
+			+ "{\"create\":{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger2_1\"}}\n{\"name\":\"Trigger2_1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job2\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":5,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}\n"
+			+ "{\"create\":{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger2_2\"}}\n{\"name\":\"Trigger2_2\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job2\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":5,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}\n";
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", bulkBody))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("create", "job", "Job1", 1, 201) + "," + bulkItem("create", "trigger", "Trigger1_1", 1, 201) + ","
+				+ bulkItem("create", "trigger", "Trigger1_2", 1, 201) + "," + bulkItem("create", "job", "Job2", 1, 201) + "," + bulkItem("create", "trigger", "Trigger2_1", 1, 201) + ","
+				+ bulkItem("create", "trigger", "Trigger2_2", 1, 201) + "]}"));
 
 		JobDetail newJob1 = newJob()
 			.ofType(TestJob.class)
@@ -286,21 +351,43 @@ public class ElasticsearchJobStoreTest extends Assert
 		job2Triggers.add(newTrigger2_1);
 		job2Triggers.add(newTrigger2_2);
 
-		Map<JobDetail, Set<? extends Trigger>> triggersAndJobs = new HashMap<>();
+		Map<JobDetail, Set<? extends Trigger>> triggersAndJobs = new LinkedHashMap<>();
 		triggersAndJobs.put(newJob1, job1Triggers);
 		triggersAndJobs.put(newJob2, job2Triggers);
 
 		store.storeJobsAndTriggers(triggersAndJobs, false);
 
-		verify(httpCommunicator).request("PUT", "http://localhost:9200/index/prefix_job/Group1.Job1", "{\"name\":\"Job1\",\"group\":\"Group1\",\"jobClass\":\"com.viskan.quartz.elasticsearch.ElasticsearchJobStoreTest$TestJob\",\"dataMap\":{\"intKey\":5,\"booleanKey\":true,\"stringKey\":\"stringValue\"}}");
-		verify(httpCommunicator).request("PUT", "http://localhost:9200/index/prefix_job/Group1.Job2", "{\"name\":\"Job2\",\"group\":\"Group1\",\"jobClass\":\"com.viskan.quartz.elasticsearch.ElasticsearchJobStoreTest$TestJob\",\"dataMap\":{\"intKey\":5,\"booleanKey\":true,\"stringKey\":\"stringValue\"}}");
-		verify(httpCommunicator).request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1_1", "{\"name\":\"Trigger1_1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":0,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}");
-		verify(httpCommunicator).request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1_2", "{\"name\":\"Trigger1_2\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":0,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}");
-		verify(httpCommunicator).request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger2_1", "{\"name\":\"Trigger2_1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job2\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":0,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}");
-		verify(httpCommunicator).request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger2_2", "{\"name\":\"Trigger2_2\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job2\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":0,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}");
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/_bulk", bulkBody);
 		verifyNoMoreInteractions(httpCommunicator);
 	}
 
+	@Test(expected = ObjectAlreadyExistsException.class)
+	public void test_storing_job_and_trigger_but_trigger_already_exists() throws ObjectAlreadyExistsException, JobPersistenceException
+	{
+		when(httpCommunicator.request(eq("POST"), eq("http://localhost:9200/index/_bulk"), anyString()))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":true,\"items\":[" + bulkItem("create", "job", "Job1", 1, 201) + "," + bulkItem("create", "trigger", "Trigger1", 1, 409) + "]}"));
+
+		store.storeJobAndTrigger(newJob(TestJob.class).withIdentity("Job1", "Group1").build(), trigger("Trigger1"));
+	}
+
+	@Test
+	public void test_storing_jobs_and_triggers_in_chunks() throws ObjectAlreadyExistsException, JobPersistenceException
+	{
+		store.setBulkChunkDocuments(1);
+		when(httpCommunicator.request(eq("POST"), eq("http://localhost:9200/index/_bulk"), anyString()))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("index", "job", "Job1", 2, 200) + "]}"))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("index", "trigger", "Trigger1", 2, 200) + "]}"));
+
+		Map<JobDetail, Set<? extends Trigger>> triggersAndJobs = new LinkedHashMap<>();
+		triggersAndJobs.put(newJob(TestJob.class).withIdentity("Job1", "Group1").build(), new TreeSet<>(asList(trigger("Trigger1"))));
+		store.storeJobsAndTriggers(triggersAndJobs, true);
+
+		ArgumentCaptor<String> bulkBody = ArgumentCaptor.forClass(String.class);
+		verify(httpCommunicator, times(2)).request(eq("POST"), eq("http://localhost:9200/index/_bulk"), bulkBody.capture());
+		assertTrue(bulkBody.getAllValues().get(0).startsWith("{\"index\":{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\"}}\n"));
+		assertTrue(bulkBody.getAllValues().get(1).startsWith("{\"index\":{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"}}\n"));
+	}
+
 	@Test
 	public void test_removing_job_successfully() throws JobPersistenceException
 	{
@@ -320,8 +407,8 @@ public class ElasticsearchJobStoreTest extends Assert
 	@Test
 	public void test_removing_several_jobs_successfully() throws JobPersistenceException
 	{
-		when(httpCommunicator.request("DELETE", "http://localhost:9200/index/prefix_job/Group1.Job1")).thenReturn(new HttpResponse(200, "OK", ""));
-		when(httpCommunicator.request("DELETE", "http://localhost:9200/index/prefix_job/Group1.Job2")).thenReturn(new HttpResponse(200, "OK", ""));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", "{\"delete\":{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\"}}\n{\"delete\":{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job2\"}}\n"))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("delete", "job", "Job1", 2, 200) + "," + bulkItem("delete", "job", "Job2", 2, 200) + "]}"));
 		boolean success = store.removeJobs(asList(new JobKey("Job1", "Group1"), new JobKey("Job2", "Group1")));
 		assertTrue(success);
 	}
@@ -329,12 +416,21 @@ public class ElasticsearchJobStoreTest extends Assert
 	@Test
 	public void test_removing_several_jobs_and_one_does_not_exist() throws JobPersistenceException
 	{
-		when(httpCommunicator.request("DELETE", "http://localhost:9200/index/prefix_job/Group1.Job1")).thenReturn(new HttpResponse(200, "OK", ""));
-		when(httpCommunicator.request("DELETE", "http://localhost:9200/index/prefix_job/Group1.Job2")).thenReturn(new HttpResponse(404, "Not Found", ""));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", "{\"delete\":{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\"}}\n{\"delete\":{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job2\"}}\n"))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("delete", "job", "Job1", 2, 200) + "," + bulkItem("delete", "job", "Job2", 1, 404) + "]}"));
 		boolean success = store.removeJobs(asList(new JobKey("Job1", "Group1"), new JobKey("Job2", "Group1")));
 		assertFalse(success);
 	}
 
+	@Test
+	public void test_clearing_all_scheduling_data() throws JobPersistenceException
+	{
+		when(httpCommunicator.request("DELETE", "http://localhost:9200/index/prefix_job,prefix_trigger/_query?q=*:*")).thenReturn(response(200, "{\"_indices\":{\"index\":{\"_shards\":{\"total\":5,\"successful\":5,\"failed\":0}}}}"));
+		store.clearAllSchedulingData();
+		verify(httpCommunicator).request("DELETE", "http://localhost:9200/index/prefix_job,prefix_trigger/_query?q=*:*");
+		verifyNoMoreInteractions(httpCommunicator);
+	}
+
 	@Test
 	public void test_retriving_job_successfully() throws JobPersistenceException
 	{
@@ -366,6 +462,63 @@ public class ElasticsearchJobStoreTest extends Assert
 		assertNull(job);
 	}
 
+	@Test
+	public void test_retrieving_cached_job_until_it_is_stored_again() throws JobPersistenceException
+	{
+		when(httpCommunicator.request("GET", "http://localhost:9200/index/prefix_job/Group1.Job1")).thenReturn(response(200, jobDoc("Job1", 1)));
+		when(httpCommunicator.request(eq("PUT"), eq("http://localhost:9200/index/prefix_job/Group1.Job1"), anyString())).thenReturn(response(201, "{\"created\":true}"));
+
+		JobDetail first = store.retrieveJob(new JobKey("Job1", "Group1"));
+		JobDetail second = store.retrieveJob(new JobKey("Job1", "Group1"));
+		store.storeJob(first, false);
+		store.retrieveJob(new JobKey("Job1", "Group1"));
+
+		assertEquals(first, second);
+		assertNotSame(first, second);
+		verify(httpCommunicator, times(2)).request("GET", "http://localhost:9200/index/prefix_job/Group1.Job1");
+		assertEquals(1, store.getJobCacheStatistics().getHits());
+		assertEquals(2, store.getJobCacheStatistics().getMisses());
+	}
+
+	@Test
+	public void test_that_job_cached_while_storing_is_not_retrieved() throws JobPersistenceException
+	{
+		when(httpCommunicator.request("GET", "http://localhost:9200/index/prefix_job/Group1.Job1")).thenReturn(response(200, jobDoc("Job1", 1)));
+		when(httpCommunicator.request(eq("PUT"), eq("http://localhost:9200/index/prefix_job/Group1.Job1"), anyString())).thenAnswer(new Answer<HttpResponse>()
+		{
+			@Override
+			public HttpResponse answer(InvocationOnMock invocation) throws Throwable
+			{
+				// A concurrent read that caches the previous version while the job is written
+				store.retrieveJob(new JobKey("Job1", "Group1"));
+				return response(201, "{\"created\":true}");
+			}
+		});
+
+		store.storeJob(newJob(TestJob.class).withIdentity("Job1", "Group1").build(), false);
+		store.retrieveJob(new JobKey("Job1", "Group1"));
+
+		verify(httpCommunicator, times(2)).request("GET", "http://localhost:9200/index/prefix_job/Group1.Job1");
+		assertEquals(0, store.getJobCacheStatistics().getHits());
+	}
+
+	@Test
+	public void test_retrieving_cached_job_with_revalidation() throws JobPersistenceException
+	{
+		store.setJobCacheRevalidate(true);
+		when(httpCommunicator.request("GET", "http://localhost:9200/index/prefix_job/Group1.Job1")).thenReturn(response(200, jobDoc("Job1", 1)));
+		when(httpCommunicator.request("GET", "http://localhost:9200/index/prefix_job/Group1.Job1?_source=false"))
+			.thenReturn(response(200, "{\"_id\":\"Group1.Job1\",\"_version\":1,\"found\":true}"))
+			.thenReturn(response(200, "{\"_id\":\"Group1.Job1\",\"_version\":2,\"found\":true}"));
+
+		store.retrieveJob(new JobKey("Job1", "Group1"));
+		store.retrieveJob(new JobKey("Job1", "Group1"));
+		store.retrieveJob(new JobKey("Job1", "Group1"));
+
+		verify(httpCommunicator, times(2)).request("GET", "http://localhost:9200/index/prefix_job/Group1.Job1?_source=false");
+		verify(httpCommunicator, times(2)).request("GET", "http://localhost:9200/index/prefix_job/Group1.Job1");
+	}
+
 	@SafeVarargs
 	private final JobDetail expectedJobDetail(String jobName, String jobGroup, Class<? extends Job> jobClass, SimpleEntry<String, Object>... jobData)
 	{
@@ -384,7 +537,7 @@ public class ElasticsearchJobStoreTest extends Assert
 	@Test
 	public void test_storing_trigger_successfully() throws ObjectAlreadyExistsException, JobPersistenceException
 	{
-		when(httpCommunicator.request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1", "{\"name\":\"Trigger1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":0,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}"))
+		when(httpCommunicator.request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1", "{\"name\":\"Trigger1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":5,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}"))
 			.thenReturn(response(201, "{\"_index\":\"scheduler\",\"_type\":\"quartz_trigger\",\"_id\":\"Group1.Trigger1\",\"_version\":1,\"created\":true}"));
 
 		OperableTrigger trigger = (OperableTrigger) newTrigger()
@@ -402,7 +555,7 @@ public class ElasticsearchJobStoreTest extends Assert
 	@Test(expected = ObjectAlreadyExistsException.class)
 	public void test_storing_trigger_but_one_already_exists() throws ObjectAlreadyExistsException, JobPersistenceException
 	{
-		when(httpCommunicator.request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1", "{\"name\":\"Trigger1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":0,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}"))
+		when(httpCommunicator.request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1", "{\"name\":\"Trigger1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":5,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}"))
 			.thenReturn(response(200, "{\"_index\":\"scheduler\",\"_type\":\"quartz_trigger\",\"_id\":\"Group1.Trigger1\",\"_version\":1,\"created\":false}"));
 
 		OperableTrigger trigger = (OperableTrigger) newTrigger()
@@ -420,7 +573,7 @@ public class ElasticsearchJobStoreTest extends Assert
 	@Test(expected = JobPersistenceException.class)
 	public void test_storing_trigger_but_invalid_http_code_is_returned() throws ObjectAlreadyExistsException, JobPersistenceException
 	{
-		when(httpCommunicator.request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1", "{\"name\":\"Trigger1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":0,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}"))
+		when(httpCommunicator.request("PUT", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1", "{\"name\":\"Trigger1\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":0,\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":0,\"previousFireTime\":0,\"priority\":5,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}"))
 			.thenReturn(response(423, ""));
 
 		OperableTrigger trigger = (OperableTrigger) newTrigger()
@@ -454,8 +607,8 @@ public class ElasticsearchJobStoreTest extends Assert
 	@Test
 	public void test_removing_several_triggers_successfully() throws JobPersistenceException
 	{
-		when(httpCommunicator.request("DELETE", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1")).thenReturn(new HttpResponse(200, "OK", ""));
-		when(httpCommunicator.request("DELETE", "http://localhost:9200/index/prefix_trigger/Group1.Trigger2")).thenReturn(new HttpResponse(200, "OK", ""));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", "{\"delete\":{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"}}\n{\"delete\":{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger2\"}}\n"))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("delete", "trigger", "Trigger1", 2, 200) + "," + bulkItem("delete", "trigger", "Trigger2", 2, 200) + "]}"));
 		boolean success = store.removeTriggers(asList(new TriggerKey("Trigger1", "Group1"), new TriggerKey("Trigger2", "Group1")));
 		assertTrue(success);
 	}
@@ -463,8 +616,8 @@ public class ElasticsearchJobStoreTest extends Assert
 	@Test
 	public void test_removing_several_triggers_and_one_does_not_exist() throws JobPersistenceException
 	{
-		when(httpCommunicator.request("DELETE", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1")).thenReturn(new HttpResponse(200, "OK", ""));
-		when(httpCommunicator.request("DELETE", "http://localhost:9200/index/prefix_trigger/Group1.Trigger2")).thenReturn(new HttpResponse(404, "Not Found", ""));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", "{\"delete\":{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"}}\n{\"delete\":{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger2\"}}\n"))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("delete", "trigger", "Trigger1", 2, 200) + "," + bulkItem("delete", "trigger", "Trigger2", 1, 404) + "]}"));
 		boolean success = store.removeTriggers(asList(new TriggerKey("Trigger1", "Group1"), new TriggerKey("Trigger2", "Group1")));
 		assertFalse(success);
 	}
@@ -517,6 +670,383 @@ public class ElasticsearchJobStoreTest extends Assert
 		store.getNumberOfTriggers();
 	}
 
+	@Test
+	public void test_acquiring_triggers_in_bulk_using_versions_from_search_hits() throws JobPersistenceException
+	{
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/prefix_trigger/_search", searchBody(20)))
+			.thenReturn(response(200, "{\"took\":1,\"timed_out\":false,\"hits\":{\"total\":2,\"hits\":[" + hit("Trigger1", 3, 0) + "," + hit("Trigger2", 5, 0) + "]}}"));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger1", 3, 1) + bulkIndex("Trigger2", 5, 1)))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":true,\"items\":[" + bulkItem("index", "Trigger1", 4, 200) + "," + bulkItem("index", "Trigger2", 5, 409) + "]}"));
+
+		List<OperableTrigger> triggers = store.acquireNextTriggers(1416826800844L, 10, 30000);
+
+		assertEquals(1, triggers.size());
+		assertEquals(new TriggerKey("Trigger1", "Group1"), triggers.get(0).getKey());
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/prefix_trigger/_search", searchBody(20));
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger1", 3, 1) + bulkIndex("Trigger2", 5, 1));
+		verifyNoMoreInteractions(httpCommunicator);
+	}
+
+	@Test
+	public void test_acquiring_triggers_takes_more_candidates_when_losing_races() throws JobPersistenceException
+	{
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/prefix_trigger/_search", searchBody(2)))
+			.thenReturn(response(200, "{\"took\":1,\"timed_out\":false,\"hits\":{\"total\":2,\"hits\":[" + hit("Trigger1", 3, 0) + "," + hit("Trigger2", 5, 0) + "]}}"));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger1", 3, 1)))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":true,\"items\":[" + bulkItem("index", "Trigger1", 3, 409) + "]}"));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger2", 5, 1)))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("index", "Trigger2", 6, 200) + "]}"));
+
+		List<OperableTrigger> triggers = store.acquireNextTriggers(1416826800844L, 1, 30000);
+
+		assertEquals(1, triggers.size());
+		assertEquals(new TriggerKey("Trigger2", "Group1"), triggers.get(0).getKey());
+	}
+
+	@Test
+	public void test_acquiring_triggers_skips_hits_that_are_not_waiting() throws JobPersistenceException
+	{
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/prefix_trigger/_search", searchBody(20)))
+			.thenReturn(response(200, "{\"took\":1,\"timed_out\":false,\"hits\":{\"total\":1,\"hits\":[" + hit("Trigger1", 3, 1) + "]}}"));
+
+		List<OperableTrigger> triggers = store.acquireNextTriggers(1416826800844L, 10, 30000);
+
+		assertTrue(triggers.isEmpty());
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/prefix_trigger/_search", searchBody(20));
+		verifyNoMoreInteractions(httpCommunicator);
+	}
+
+	@Test
+	public void test_firing_triggers_in_bulk() throws JobPersistenceException
+	{
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"},{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger2\"},{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\"}]}"))
+			.thenReturn(response(200, "{\"docs\":[" + triggerDoc("Trigger1", 4, 1) + "," + triggerDoc("Trigger2", 2, 0) + "," + jobDoc("Job1", 1) + "]}"));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger1", 4, 2)))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("index", "Trigger1", 5, 200) + "]}"));
+
+		store.setSlowFireThreshold(60000);
+		List<TriggerFiredResult> results = store.triggersFired(asList(trigger("Trigger1"), trigger("Trigger2")));
+
+		assertEquals(2, results.size());
+		TriggerFiredBundle bundle = results.get(0).getTriggerFiredBundle();
+		assertEquals(new TriggerKey("Trigger1", "Group1"), bundle.getTrigger().getKey());
+		assertEquals(new Date(1416826800844L), bundle.getScheduledFireTime());
+		assertNull(bundle.getPrevFireTime());
+		assertEquals(bundle.getFireTime().getTime() - 1416826800844L, store.getMetrics().getFireLag().get("Group1").getMaxLag(), 0);
+		assertEquals(1, store.getMetrics().getFireLag().get("Group1").getSlowFires());
+		assertEquals(new JobKey("Job1", "Group1"), bundle.getJobDetail().getKey());
+		assertEquals(com.viskan.quartz.elasticsearch.common.TestJob.class, bundle.getJobDetail().getJobClass());
+		assertNull(results.get(1).getTriggerFiredBundle());
+		assertNull(results.get(1).getException());
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"},{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger2\"},{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\"}]}");
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger1", 4, 2));
+		verifyNoMoreInteractions(httpCommunicator);
+	}
+
+	@Test
+	public void test_firing_triggers_whose_job_is_missing() throws JobPersistenceException
+	{
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"},{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\"}]}"))
+			.thenReturn(response(200, "{\"docs\":[" + triggerDoc("Trigger1", 4, 1) + ",{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\",\"found\":false}]}"));
+
+		List<TriggerFiredResult> results = store.triggersFired(asList(trigger("Trigger1")));
+
+		assertEquals(1, results.size());
+		assertNotNull(results.get(0).getException());
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"},{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\"}]}");
+		verifyNoMoreInteractions(httpCommunicator);
+	}
+
+	@Test
+	public void test_firing_triggers_acquired_by_another_instance() throws JobPersistenceException
+	{
+		String triggerDoc = triggerDoc("Trigger1", 4, 1).replace("\"state\":1", "\"state\":1,\"owner\":\"node2\",\"leaseExpiry\":1416826815844");
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"},{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\"}]}"))
+			.thenReturn(response(200, "{\"docs\":[" + triggerDoc + "," + jobDoc("Job1", 1) + "]}"));
+
+		List<TriggerFiredResult> results = store.triggersFired(asList(trigger("Trigger1")));
+
+		assertEquals(1, results.size());
+		assertNull(results.get(0).getTriggerFiredBundle());
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"},{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\"}]}");
+		verifyNoMoreInteractions(httpCommunicator);
+	}
+
+	@Test
+	public void test_firing_triggers_with_cached_job() throws JobPersistenceException
+	{
+		when(httpCommunicator.request("GET", "http://localhost:9200/index/prefix_job/Group1.Job1")).thenReturn(response(200, jobDoc("Job1", 1)));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"}]}"))
+			.thenReturn(response(200, "{\"docs\":[" + triggerDoc("Trigger1", 4, 1) + "]}"));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger1", 4, 2)))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("index", "Trigger1", 5, 200) + "]}"));
+
+		store.retrieveJob(new JobKey("Job1", "Group1"));
+		List<TriggerFiredResult> results = store.triggersFired(asList(trigger("Trigger1")));
+
+		assertEquals(new JobKey("Job1", "Group1"), results.get(0).getTriggerFiredBundle().getJobDetail().getKey());
+		verify(httpCommunicator).request("GET", "http://localhost:9200/index/prefix_job/Group1.Job1");
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"}]}");
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger1", 4, 2));
+		verifyNoMoreInteractions(httpCommunicator);
+	}
+
+	@Test
+	public void test_firing_triggers_with_outdated_cached_job() throws JobPersistenceException
+	{
+		store.setJobCacheRevalidate(true);
+		when(httpCommunicator.request("GET", "http://localhost:9200/index/prefix_job/Group1.Job1")).thenReturn(response(200, jobDoc("Job1", 1)));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"},{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\",\"_source\":false}]}"))
+			.thenReturn(response(200, "{\"docs\":[" + triggerDoc("Trigger1", 4, 1) + ",{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\",\"_version\":2,\"found\":true}]}"));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger1", 4, 2)))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("index", "Trigger1", 5, 200) + "]}"));
+
+		store.retrieveJob(new JobKey("Job1", "Group1"));
+		List<TriggerFiredResult> results = store.triggersFired(asList(trigger("Trigger1")));
+
+		assertNotNull(results.get(0).getTriggerFiredBundle());
+		verify(httpCommunicator, times(2)).request("GET", "http://localhost:9200/index/prefix_job/Group1.Job1");
+	}
+
+	@Test
+	public void test_firing_and_completing_acquired_triggers_uses_remembered_versions() throws JobPersistenceException
+	{
+		acquireTrigger1();
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\"}]}"))
+			.thenReturn(response(200, "{\"docs\":[" + jobDoc("Job1", 1) + "]}"));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger1", 4, 2)))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("index", "Trigger1", 5, 200) + "]}"));
+		when(httpCommunicator.request(eq("PUT"), eq("http://localhost:9200/index/prefix_trigger/Group1.Trigger1?version=5"), anyString()))
+			.thenReturn(response(200, "{\"_id\":\"Group1.Trigger1\",\"_version\":6,\"created\":false}"));
+
+		List<TriggerFiredResult> results = store.triggersFired(asList(trigger("Trigger1")));
+		TriggerFiredBundle bundle = results.get(0).getTriggerFiredBundle();
+		store.triggeredJobComplete(bundle.getTrigger(), bundle.getJobDetail(), CompletedExecutionInstruction.NOOP);
+
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\"}]}");
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger1", 4, 2));
+		verify(httpCommunicator).request(eq("PUT"), eq("http://localhost:9200/index/prefix_trigger/Group1.Trigger1?version=5"), anyString());
+		verifyNoMoreInteractions(httpCommunicator);
+	}
+
+	@Test
+	public void test_firing_triggers_with_outdated_remembered_versions() throws JobPersistenceException
+	{
+		acquireTrigger1();
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_job\",\"_id\":\"Group1.Job1\"}]}"))
+			.thenReturn(response(200, "{\"docs\":[" + jobDoc("Job1", 1) + "]}"));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger1", 4, 2)))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":true,\"items\":[" + bulkItem("index", "Trigger1", 6, 409) + "]}"));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"}]}"))
+			.thenReturn(response(200, "{\"docs\":[" + triggerDoc("Trigger1", 6, 1) + "]}"));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger1", 6, 2)))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("index", "Trigger1", 7, 200) + "]}"));
+
+		List<TriggerFiredResult> results = store.triggersFired(asList(trigger("Trigger1")));
+
+		assertEquals(1, results.size());
+		assertNotNull(results.get(0).getTriggerFiredBundle());
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger1", 6, 2));
+	}
+
+	@Test
+	public void test_completing_trigger_with_outdated_remembered_version() throws JobPersistenceException
+	{
+		acquireTrigger1();
+		when(httpCommunicator.request(eq("PUT"), eq("http://localhost:9200/index/prefix_trigger/Group1.Trigger1?version=4"), anyString()))
+			.thenReturn(response(409, "{\"error\":\"VersionConflictEngineException\",\"status\":409}"));
+		when(httpCommunicator.request("GET", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1"))
+			.thenReturn(response(200, triggerDoc("Trigger1", 7, 2)));
+		when(httpCommunicator.request(eq("PUT"), eq("http://localhost:9200/index/prefix_trigger/Group1.Trigger1?version=7"), anyString()))
+			.thenReturn(response(200, "{\"_id\":\"Group1.Trigger1\",\"_version\":8,\"created\":false}"));
+
+		store.triggeredJobComplete(trigger("Trigger1"), newJob(TestJob.class).withIdentity("Job1", "Group1").build(), CompletedExecutionInstruction.SET_TRIGGER_COMPLETE);
+
+		verify(httpCommunicator).request(eq("PUT"), eq("http://localhost:9200/index/prefix_trigger/Group1.Trigger1?version=4"), anyString());
+		verify(httpCommunicator).request("GET", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1");
+		verify(httpCommunicator).request(eq("PUT"), eq("http://localhost:9200/index/prefix_trigger/Group1.Trigger1?version=7"), anyString());
+		verify(signaler).signalSchedulingChange(0L);
+	}
+
+	@Test
+	public void test_completing_triggers_asynchronously() throws SchedulerException
+	{
+		enableAsyncCompletion();
+		acquireTrigger1();
+		when(httpCommunicator.request(eq("POST"), eq("http://localhost:9200/index/_bulk"), anyString()))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("index", "Trigger1", 5, 200) + "," + bulkItem("delete", "Trigger2", 2, 200) + "]}"));
+
+		JobDetail job = newJob(TestJob.class).withIdentity("Job1", "Group1").build();
+		store.triggeredJobComplete(trigger("Trigger1"), job, CompletedExecutionInstruction.NOOP);
+		store.triggeredJobComplete(trigger("Trigger1"), job, CompletedExecutionInstruction.SET_TRIGGER_ERROR);
+		store.triggeredJobComplete(trigger("Trigger2"), job, CompletedExecutionInstruction.DELETE_TRIGGER);
+		verifyNoMoreInteractions(httpCommunicator);
+
+		store.shutdown();
+
+		ArgumentCaptor<String> bulkBody = ArgumentCaptor.forClass(String.class);
+		verify(httpCommunicator, times(2)).request(eq("POST"), eq("http://localhost:9200/index/_bulk"), bulkBody.capture());
+		String[] lines = bulkBody.getAllValues().get(1).split("\n");
+		assertEquals(3, lines.length);
+		assertEquals("{\"index\":{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\",\"_version\":4}}", lines[0]);
+		assertTrue(lines[1].contains("\"state\":" + TriggerWrapper.STATE_ERROR));
+		assertEquals("{\"delete\":{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger2\"}}", lines[2]);
+		verify(signaler).signalSchedulingChange(0L);
+		verifyNoMoreInteractions(httpCommunicator);
+	}
+
+	@Test
+	public void test_completing_triggers_asynchronously_with_unknown_versions() throws SchedulerException
+	{
+		enableAsyncCompletion();
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"}]}"))
+			.thenReturn(response(200, "{\"docs\":[" + triggerDoc("Trigger1", 3, 2) + "]}"));
+		when(httpCommunicator.request(eq("POST"), eq("http://localhost:9200/index/_bulk"), anyString()))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":true,\"items\":[" + bulkItem("index", "Trigger1", 4, 409) + "]}"));
+		when(httpCommunicator.request("GET", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1"))
+			.thenReturn(response(200, triggerDoc("Trigger1", 4, 2)));
+		when(httpCommunicator.request(eq("PUT"), eq("http://localhost:9200/index/prefix_trigger/Group1.Trigger1?version=4"), anyString()))
+			.thenReturn(response(200, "{\"_id\":\"Group1.Trigger1\",\"_version\":5,\"created\":false}"));
+
+		store.triggeredJobComplete(trigger("Trigger1"), newJob(TestJob.class).withIdentity("Job1", "Group1").build(), CompletedExecutionInstruction.SET_TRIGGER_COMPLETE);
+		store.shutdown();
+
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"}]}");
+		verify(httpCommunicator).request(eq("PUT"), eq("http://localhost:9200/index/prefix_trigger/Group1.Trigger1?version=4"), anyString());
+		verify(signaler).signalSchedulingChange(0L);
+	}
+
+	@Test
+	public void test_completing_triggers_asynchronously_when_versions_cannot_be_requested() throws SchedulerException
+	{
+		enableAsyncCompletion();
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"}]}"))
+			.thenThrow(new JobPersistenceException("Read timed out"));
+		when(httpCommunicator.request("GET", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1"))
+			.thenReturn(response(200, triggerDoc("Trigger1", 4, 2)));
+		when(httpCommunicator.request(eq("PUT"), eq("http://localhost:9200/index/prefix_trigger/Group1.Trigger1?version=4"), anyString()))
+			.thenReturn(response(200, "{\"_id\":\"Group1.Trigger1\",\"_version\":5,\"created\":false}"));
+
+		store.triggeredJobComplete(trigger("Trigger1"), newJob(TestJob.class).withIdentity("Job1", "Group1").build(), CompletedExecutionInstruction.SET_TRIGGER_COMPLETE);
+		store.shutdown();
+
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/_mget", "{\"docs\":[{\"_type\":\"prefix_trigger\",\"_id\":\"Group1.Trigger1\"}]}");
+		verify(httpCommunicator).request("GET", "http://localhost:9200/index/prefix_trigger/Group1.Trigger1");
+		verify(httpCommunicator).request(eq("PUT"), eq("http://localhost:9200/index/prefix_trigger/Group1.Trigger1?version=4"), anyString());
+		verifyNoMoreInteractions(httpCommunicator);
+	}
+
+	@Test
+	public void test_completing_triggers_asynchronously_when_bulk_request_fails() throws SchedulerException
+	{
+		enableAsyncCompletion();
+		acquireTrigger1();
+		when(httpCommunicator.request(eq("POST"), eq("http://localhost:9200/index/_bulk"), anyString()))
+			.thenReturn(response(503, "{\"error\":\"UnavailableShardsException\",\"status\":503}"));
+		when(httpCommunicator.request(eq("PUT"), eq("http://localhost:9200/index/prefix_trigger/Group1.Trigger1?version=4"), anyString()))
+			.thenReturn(response(200, "{\"_id\":\"Group1.Trigger1\",\"_version\":5,\"created\":false}"));
+		when(httpCommunicator.request("DELETE", "http://localhost:9200/index/prefix_trigger/Group1.Trigger2"))
+			.thenReturn(response(200, "{\"found\":true,\"_id\":\"Group1.Trigger2\",\"_version\":3}"));
+
+		JobDetail job = newJob(TestJob.class).withIdentity("Job1", "Group1").build();
+		store.triggeredJobComplete(trigger("Trigger1"), job, CompletedExecutionInstruction.NOOP);
+		store.triggeredJobComplete(trigger("Trigger2"), job, CompletedExecutionInstruction.DELETE_TRIGGER);
+		store.shutdown();
+
+		verify(httpCommunicator, times(2)).request(eq("POST"), eq("http://localhost:9200/index/_bulk"), anyString());
+		verify(httpCommunicator).request(eq("PUT"), eq("http://localhost:9200/index/prefix_trigger/Group1.Trigger1?version=4"), anyString());
+		verify(httpCommunicator).request("DELETE", "http://localhost:9200/index/prefix_trigger/Group1.Trigger2");
+		verifyNoMoreInteractions(httpCommunicator);
+	}
+
+	@Test
+	public void test_releasing_acquired_trigger_with_remembered_version() throws JobPersistenceException
+	{
+		acquireTrigger1();
+		when(httpCommunicator.request(eq("PUT"), eq("http://localhost:9200/index/prefix_trigger/Group1.Trigger1?version=4"), anyString()))
+			.thenReturn(response(200, "{\"_id\":\"Group1.Trigger1\",\"_version\":5,\"created\":false}"));
+
+		store.releaseAcquiredTrigger(trigger("Trigger1"));
+
+		verify(httpCommunicator).request(eq("PUT"), eq("http://localhost:9200/index/prefix_trigger/Group1.Trigger1?version=4"), anyString());
+		verifyNoMoreInteractions(httpCommunicator);
+	}
+
+	private void enableAsyncCompletion() throws SchedulerConfigException
+	{
+		store.setAsyncCompletion(true);
+		store.setCompletionFlushInterval(60000);
+		store.initialize(null, signaler);
+		store.createHttpCommunicator(httpCommunicator);
+	}
+
+	private void acquireTrigger1() throws JobPersistenceException
+	{
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/prefix_trigger/_search", searchBody(20)))
+			.thenReturn(response(200, "{\"took\":1,\"timed_out\":false,\"hits\":{\"total\":1,\"hits\":[" + hit("Trigger1", 3, 0) + "]}}"));
+		when(httpCommunicator.request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger1", 3, 1)))
+			.thenReturn(response(200, "{\"took\":3,\"errors\":false,\"items\":[" + bulkItem("index", "Trigger1", 4, 200) + "]}"));
+
+		assertEquals(1, store.acquireNextTriggers(1416826800844L, 10, 30000).size());
+
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/prefix_trigger/_search", searchBody(20));
+		verify(httpCommunicator).request("POST", "http://localhost:9200/index/_bulk", bulkIndex("Trigger1", 3, 1));
+	}
+
+	private OperableTrigger trigger(String triggerName)
+	{
+		OperableTrigger trigger = (OperableTrigger) newTrigger()
+			.withIdentity(triggerName, "Group1")
+			.forJob("Job1", "Group1")
+			.withSchedule(simpleSchedule().withIntervalInSeconds(30))
+			.build();
+
+		trigger.setStartTime(testDate);
+		return trigger;
+	}
+
+	private String triggerDoc(String triggerName, int version, int state)
+	{
+		return "{\"_index\":\"index\",\"_type\":\"prefix_trigger\",\"_id\":\"Group1." + triggerName + "\",\"_version\":" + version + ",\"found\":true,\"_source\":" + triggerSource(triggerName, state) + "}";
+	}
+
+	private String jobDoc(String jobName, int version)
+	{
+		return "{\"_index\":\"index\",\"_type\":\"prefix_job\",\"_id\":\"Group1." + jobName + "\",\"_version\":" + version + ",\"found\":true,\"_source\":{\"name\":\"" + jobName + "\",\"group\":\"Group1\",\"jobClass\":\"com.viskan.quartz.elasticsearch.common.TestJob\",\"dataMap\":{}}}";
+	}
+
+	private String hit(String triggerName, int version, int state)
+	{
+		return "{\"_index\":\"index\",\"_type\":\"prefix_trigger\",\"_id\":\"Group1." + triggerName + "\",\"_version\":" + version + ",\"_source\":" + triggerSource(triggerName, state) + "}";
+	}
+
+	private String bulkIndex(String triggerName, int version, int state)
+	{
+		return "{\"index\":{\"_type\":\"prefix_trigger\",\"_id\":\"Group1." + triggerName + "\",\"_version\":" + version + "}}\n" + triggerSource(triggerName, state) + "\n";
+	}
+
+	private String bulkItem(String action, String triggerName, int version, int status)
+	{
+		return bulkItem(action, "trigger", triggerName, version, status);
+	}
+
+	private String bulkItem(String action, String type, String name, int version, int status)
+	{
+		String error = status == 409 ? ",\"error\":\"VersionConflictEngineException[[index][0] [prefix_" + type + "][Group1." + name + "]: version conflict]\"" : "";
+		return "{\"" + action + "\":{\"_index\":\"index\",\"_type\":\"prefix_" + type + "\",\"_id\":\"Group1." + name + "\",\"_version\":" + version + ",\"status\":" + status + error + "}}";
+	}
+
+	private String searchBody(int size)
+	{
+		return "{\"query\":{\"filtered\":{\"filter\":{\"and\":[{\"term\":{\"state\":0}},{\"range\":{\"nextFireTime\":{\"gte\":0,\"lte\":1416826830844}}}]}}},"
+			+ "\"sort\":[{\"nextFireTime\":{\"order\":\"asc\",\"ignore_unmapped\":true}},{\"priority\":{\"order\":\"desc\",\"ignore_unmapped\":true}}],\"size\":" + size + ",\"version\":true}";
+	}
+
+	private String triggerSource(String triggerName, int state)
+	{
+		return "{\"name\":\"" + triggerName + "\",\"group\":\"Group1\",\"triggerClass\":\"SIMPLE_TRIGGER_IMPL\",\"jobName\":\"Job1\",\"jobGroup\":\"Group1\",\"state\":" + state + ",\"startTime\":1416826800844,\"endTime\":0,\"nextFireTime\":1416826800844,\"previousFireTime\":0,\"priority\":0,\"repeatCount\":0,\"repeatInterval\":30000,\"timesTriggered\":0}";
+	}
+
 	@Test
 	public void test_that_methods_that_should_do_nothing_actually_does_nothing() throws SchedulerException
 	{
@@ -0,0 +1,1096 @@
+package com.viskan.quartz.elasticsearch.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A lightweight, in-memory stand-in for the parts of the elasticsearch HTTP API that the job store uses.
+ * <p>
+ * Supports versioned document writes, reads and deletes, <code>_search</code> with the filters and sorts
+ * that the job store sends, <code>_count</code>, <code>_mget</code>, <code>_bulk</code>, delete by query
+ * and the index and mapping requests. Documents are visible to searches as soon as they are written.
+ * <p>
+ * Latency, errors and version conflicts can be injected to load test the job store without a real cluster.
+ * An injected conflict bumps the version of the document, as if another node had written it first.
+ *
+ * @author Anton Johansson
+ */
+public class FakeElasticsearchServer
+{
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int STATUS_OK = 200;
+	private static final int STATUS_CREATED = 201;
+	private static final int STATUS_BAD_REQUEST = 400;
+	private static final int STATUS_NOT_FOUND = 404;
+	private static final int STATUS_CONFLICT = 409;
+	private static final int STATUS_UNAVAILABLE = 503;
+
+	private final JsonParser parser = new JsonParser();
+	private final Map<String, Map<String, Map<String, Document>>> indices = new HashMap<>();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicInteger concurrentRequests = new AtomicInteger();
+	private final AtomicInteger peakConcurrentRequests = new AtomicInteger();
+	private final AtomicLong versionedWrites = new AtomicLong();
+	private final AtomicLong conflicts = new AtomicLong();
+	private final AtomicLong injectedConflicts = new AtomicLong();
+	private final AtomicLong injectedErrors = new AtomicLong();
+	private final int port;
+	private final int threads;
+	private HttpServer server;
+	private ExecutorService executor;
+	private volatile long minLatency;
+	private volatile long maxLatency;
+	private volatile double errorRate;
+	private volatile double conflictRate;
+
+	/**
+	 * Creates a new server.
+	 *
+	 * @param port The port to listen to, or <code>0</code> to use any free port.
+	 * @param threads The number of threads that handle requests.
+	 */
+	public FakeElasticsearchServer(int port, int threads)
+	{
+		this.port = port;
+		this.threads = threads;
+	}
+
+	/**
+	 * Starts listening to requests.
+	 *
+	 * @throws IOException Thrown if the server could not be bound to its port.
+	 */
+	public void start() throws IOException
+	{
+		// Otherwise small responses are held back by delayed acknowledgements
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+
+		executor = Executors.newFixedThreadPool(threads);
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 100);
+		server.createContext("/", new RequestHandler());
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * Stops the server and discards all data.
+	 */
+	public void stop()
+	{
+		server.stop(0);
+		executor.shutdownNow();
+		synchronized (indices)
+		{
+			indices.clear();
+		}
+	}
+
+	public int getPort()
+	{
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Sets the latency that is added to every request. A random latency between the minimum and the maximum is used.
+	 *
+	 * @param minLatency The minimum latency, in milliseconds.
+	 * @param maxLatency The maximum latency, in milliseconds.
+	 */
+	public void setLatency(long minLatency, long maxLatency)
+	{
+		if (minLatency < 0 || maxLatency < minLatency)
+		{
+			throw new IllegalArgumentException("The latency must be a non-negative range");
+		}
+		this.minLatency = minLatency;
+		this.maxLatency = maxLatency;
+	}
+
+	/**
+	 * Sets the rate of requests that fail with <code>503 Service Unavailable</code> before being handled.
+	 *
+	 * @param errorRate The rate, between <code>0</code> and <code>1</code>.
+	 */
+	public void setErrorRate(double errorRate)
+	{
+		this.errorRate = checkRate(errorRate, "errorRate");
+	}
+
+	/**
+	 * Sets the rate of versioned writes that fail with a version conflict, even though the given version was current.
+	 *
+	 * @param conflictRate The rate, between <code>0</code> and <code>1</code>.
+	 */
+	public void setConflictRate(double conflictRate)
+	{
+		this.conflictRate = checkRate(conflictRate, "conflictRate");
+	}
+
+	private static double checkRate(double rate, String name)
+	{
+		if (rate < 0 || rate > 1)
+		{
+			throw new IllegalArgumentException("The property '" + name + "' must be between 0 and 1");
+		}
+		return rate;
+	}
+
+	/**
+	 * Gets the number of handled requests, including requests that failed with an injected error.
+	 */
+	public long getRequests()
+	{
+		return requests.get();
+	}
+
+	/**
+	 * Gets the highest number of requests that have been handled at the same time.
+	 */
+	public int getPeakConcurrentRequests()
+	{
+		return peakConcurrentRequests.get();
+	}
+
+	/**
+	 * Gets the number of writes that were made with an expected version.
+	 */
+	public long getVersionedWrites()
+	{
+		return versionedWrites.get();
+	}
+
+	/**
+	 * Gets the number of versioned writes that failed with a version conflict, including injected conflicts.
+	 */
+	public long getConflicts()
+	{
+		return conflicts.get();
+	}
+
+	public long getInjectedConflicts()
+	{
+		return injectedConflicts.get();
+	}
+
+	public long getInjectedErrors()
+	{
+		return injectedErrors.get();
+	}
+
+	/**
+	 * Gets the number of documents of given type.
+	 *
+	 * @param index The name of the index.
+	 * @param type The name of the type.
+	 * @return Returns the number of documents.
+	 */
+	public int count(String index, String type)
+	{
+		synchronized (indices)
+		{
+			return getDocuments(index, type, false).size();
+		}
+	}
+
+	/**
+	 * Gets the source of a document.
+	 *
+	 * @param index The name of the index.
+	 * @param type The name of the type.
+	 * @param id The ID of the document.
+	 * @return Returns the source of the document, or <code>null</code> if it does not exist.
+	 */
+	public JsonObject getSource(String index, String type, String id)
+	{
+		synchronized (indices)
+		{
+			Document document = getDocument(index, type, id);
+			return document != null ? document.source : null;
+		}
+	}
+
+	private Response handle(String method, List<String> path, Map<String, String> parameters, String body)
+	{
+		if (path.isEmpty())
+		{
+			return new Response(STATUS_OK, new JsonObject());
+		}
+
+		String index = path.get(0);
+		int length = path.size();
+		if ("_bulk".equals(index))
+		{
+			return bulk(null, body);
+		}
+		else if ("_nodes".equals(index))
+		{
+			return nodes();
+		}
+		else if (length == 1)
+		{
+			return handleIndex(method, index);
+		}
+		else if ("_mapping".equals(path.get(1)))
+		{
+			return mapping(method, index);
+		}
+		else if ("_mget".equals(path.get(1)))
+		{
+			return multiGet(index, body);
+		}
+		else if ("_bulk".equals(path.get(1)))
+		{
+			return bulk(index, body);
+		}
+		else if ("_search".equals(path.get(1)))
+		{
+			return search(index, null, body);
+		}
+		else if (length == 2)
+		{
+			return error(STATUS_BAD_REQUEST, "Unsupported request " + method + " " + path);
+		}
+
+		String type = path.get(1);
+		String id = path.get(2);
+		if ("_search".equals(id))
+		{
+			return search(index, type, body);
+		}
+		else if ("_count".equals(id))
+		{
+			return countResponse(index, type);
+		}
+		else if ("_query".equals(id) && "DELETE".equals(method))
+		{
+			return deleteByQuery(index, type);
+		}
+		else if (length == 4 && "_create".equals(path.get(3)))
+		{
+			return write(index, type, id, null, true, parseObject(body));
+		}
+
+		switch (method)
+		{
+			case "GET":
+				return get(index, type, id, !"false".equals(parameters.get("_source")));
+			case "PUT":
+			case "POST":
+				return write(index, type, id, getVersion(parameters), "create".equals(parameters.get("op_type")), parseObject(body));
+			case "DELETE":
+				return delete(index, type, id, getVersion(parameters));
+			default:
+				return error(STATUS_BAD_REQUEST, "Unsupported method " + method);
+		}
+	}
+
+	private Response handleIndex(String method, String index)
+	{
+		synchronized (indices)
+		{
+			boolean exists = indices.containsKey(index);
+			switch (method)
+			{
+				case "PUT":
+					if (exists)
+					{
+						return error(STATUS_BAD_REQUEST, "IndexAlreadyExistsException[[" + index + "] already exists]");
+					}
+					indices.put(index, new HashMap<String, Map<String, Document>>());
+					return acknowledged();
+				case "DELETE":
+					if (indices.remove(index) == null)
+					{
+						return error(STATUS_NOT_FOUND, "IndexMissingException[[" + index + "] missing]");
+					}
+					return acknowledged();
+				default:
+					return exists ? new Response(STATUS_OK, new JsonObject()) : error(STATUS_NOT_FOUND, "IndexMissingException[[" + index + "] missing]");
+			}
+		}
+	}
+
+	private Response mapping(String method, String index)
+	{
+		synchronized (indices)
+		{
+			if ("PUT".equals(method))
+			{
+				getIndex(index, true);
+				return acknowledged();
+			}
+			if (!indices.containsKey(index))
+			{
+				return error(STATUS_NOT_FOUND, "IndexMissingException[[" + index + "] missing]");
+			}
+
+			// Mappings are accepted but not kept, so an existing index has no mappings
+			JsonObject mappings = new JsonObject();
+			mappings.add("mappings", new JsonObject());
+			JsonObject response = new JsonObject();
+			response.add(index, mappings);
+			return new Response(STATUS_OK, response);
+		}
+	}
+
+	private Response get(String index, String type, String id, boolean includeSource)
+	{
+		JsonObject result = getResult(index, type, id, includeSource);
+		return new Response(result.get("found").getAsBoolean() ? STATUS_OK : STATUS_NOT_FOUND, result);
+	}
+
+	private JsonObject getResult(String index, String type, String id, boolean includeSource)
+	{
+		Document document;
+		synchronized (indices)
+		{
+			document = getDocument(index, type, id);
+		}
+
+		JsonObject result = metadata(index, type, id);
+		if (document == null)
+		{
+			result.addProperty("found", false);
+			return result;
+		}
+
+		result.addProperty("_version", document.version);
+		result.addProperty("found", true);
+		if (includeSource)
+		{
+			result.add("_source", document.source);
+		}
+		return result;
+	}
+
+	private Response write(String index, String type, String id, Long version, boolean create, JsonObject source)
+	{
+		Document document;
+		boolean created;
+		synchronized (indices)
+		{
+			Map<String, Document> documents = getDocuments(index, type, true);
+			Document existing = documents.get(id);
+			if (create && existing != null)
+			{
+				conflicts.incrementAndGet();
+				return error(STATUS_CONFLICT, "DocumentAlreadyExistsException[[" + index + "][" + type + "][" + id + "]: document already exists]");
+			}
+			Response conflict = checkVersion(index, type, id, existing, version);
+			if (conflict != null)
+			{
+				return conflict;
+			}
+
+			created = existing == null;
+			document = new Document(created ? 1 : existing.version + 1, source);
+			documents.put(id, document);
+		}
+
+		JsonObject result = metadata(index, type, id);
+		result.addProperty("_version", document.version);
+		result.addProperty("created", created);
+		return new Response(created ? STATUS_CREATED : STATUS_OK, result);
+	}
+
+	private Response delete(String index, String type, String id, Long version)
+	{
+		Document existing;
+		synchronized (indices)
+		{
+			Map<String, Document> documents = getDocuments(index, type, false);
+			existing = documents.get(id);
+			Response conflict = checkVersion(index, type, id, existing, version);
+			if (conflict != null)
+			{
+				return conflict;
+			}
+			documents.remove(id);
+		}
+
+		JsonObject result = metadata(index, type, id);
+		result.addProperty("found", existing != null);
+		result.addProperty("_version", existing != null ? existing.version + 1 : 1);
+		return new Response(existing != null ? STATUS_OK : STATUS_NOT_FOUND, result);
+	}
+
+	/**
+	 * Checks the version of a versioned write. Must be called while holding the lock of the indices.
+	 *
+	 * @return Returns the conflict response, or <code>null</code> if the write can be done.
+	 */
+	private Response checkVersion(String index, String type, String id, Document existing, Long version)
+	{
+		if (version == null)
+		{
+			return null;
+		}
+
+		versionedWrites.incrementAndGet();
+		long currentVersion = existing != null ? existing.version : -1;
+		if (currentVersion == version && ThreadLocalRandom.current().nextDouble() < conflictRate)
+		{
+			// Simulate another node writing the document first
+			getDocuments(index, type, true).put(id, new Document(existing.version + 1, existing.source));
+			injectedConflicts.incrementAndGet();
+			currentVersion++;
+		}
+
+		if (currentVersion != version)
+		{
+			conflicts.incrementAndGet();
+			return error(STATUS_CONFLICT, "VersionConflictEngineException[[" + index + "][" + type + "][" + id + "]: version conflict, current [" + currentVersion + "], provided [" + version + "]]");
+		}
+		return null;
+	}
+
+	/**
+	 * Describes this server as the only node of the cluster, in the format of elasticsearch 1.x.
+	 */
+	private Response nodes()
+	{
+		JsonObject node = new JsonObject();
+		node.addProperty("name", "fake");
+		node.addProperty("http_address", "inet[localhost/127.0.0.1:" + getPort() + "]");
+
+		JsonObject nodes = new JsonObject();
+		nodes.add("fake", node);
+		JsonObject result = new JsonObject();
+		result.addProperty("cluster_name", "fake");
+		result.add("nodes", nodes);
+		return new Response(STATUS_OK, result);
+	}
+
+	private Response countResponse(String index, String type)
+	{
+		JsonObject result = new JsonObject();
+		result.addProperty("count", count(index, type));
+		return new Response(STATUS_OK, result);
+	}
+
+	private Response deleteByQuery(String index, String types)
+	{
+		synchronized (indices)
+		{
+			for (String type : types.split(","))
+			{
+				getDocuments(index, type, false).clear();
+			}
+		}
+		JsonObject result = new JsonObject();
+		result.add("_indices", new JsonObject());
+		return new Response(STATUS_OK, result);
+	}
+
+	private Response multiGet(String index, String body)
+	{
+		JsonArray docs = new JsonArray();
+		for (JsonElement element : parseObject(body).getAsJsonArray("docs"))
+		{
+			JsonObject doc = element.getAsJsonObject();
+			String docIndex = doc.has("_index") ? doc.get("_index").getAsString() : index;
+			boolean includeSource = !doc.has("_source") || doc.get("_source").getAsBoolean();
+			docs.add(getResult(docIndex, doc.get("_type").getAsString(), doc.get("_id").getAsString(), includeSource));
+		}
+
+		JsonObject result = new JsonObject();
+		result.add("docs", docs);
+		return new Response(STATUS_OK, result);
+	}
+
+	private Response bulk(String index, String body)
+	{
+		JsonArray items = new JsonArray();
+		boolean errors = false;
+
+		String[] lines = body.split("\n");
+		for (int i = 0; i < lines.length; i++)
+		{
+			if (lines[i].trim().isEmpty())
+			{
+				continue;
+			}
+
+			Entry<String, JsonElement> action = parseObject(lines[i]).entrySet().iterator().next();
+			String actionName = action.getKey();
+			JsonObject metadata = action.getValue().getAsJsonObject();
+			String itemIndex = metadata.has("_index") ? metadata.get("_index").getAsString() : index;
+			String type = metadata.get("_type").getAsString();
+			String id = metadata.get("_id").getAsString();
+			Long version = metadata.has("_version") ? metadata.get("_version").getAsLong() : null;
+
+			Response response;
+			if ("delete".equals(actionName))
+			{
+				response = delete(itemIndex, type, id, version);
+			}
+			else
+			{
+				JsonObject source = parseObject(lines[++i]);
+				response = write(itemIndex, type, id, version, "create".equals(actionName), source);
+			}
+
+			JsonObject itemResult = response.body;
+			if (response.status == STATUS_CONFLICT)
+			{
+				JsonObject conflict = metadata(itemIndex, type, id);
+				conflict.add("error", itemResult.get("error"));
+				itemResult = conflict;
+			}
+			itemResult.addProperty("status", response.status);
+			errors |= response.status >= STATUS_BAD_REQUEST && response.status != STATUS_NOT_FOUND;
+
+			JsonObject item = new JsonObject();
+			item.add(actionName, itemResult);
+			items.add(item);
+		}
+
+		JsonObject result = new JsonObject();
+		result.addProperty("took", 1);
+		result.addProperty("errors", errors);
+		result.add("items", items);
+		return new Response(STATUS_OK, result);
+	}
+
+	private Response search(String index, String type, String body)
+	{
+		JsonObject request = body.isEmpty() ? new JsonObject() : parseObject(body);
+		JsonObject query = request.has("query") ? request.getAsJsonObject("query") : null;
+		int from = request.has("from") ? request.get("from").getAsInt() : 0;
+		int size = request.has("size") ? request.get("size").getAsInt() : 10;
+		boolean version = request.has("version") && request.get("version").getAsBoolean();
+
+		List<Hit> matches = new ArrayList<>();
+		synchronized (indices)
+		{
+			Map<String, Map<String, Document>> types = getIndex(index, false);
+			for (Entry<String, Map<String, Document>> typeEntry : types.entrySet())
+			{
+				if (type != null && !typeEntry.getKey().equals(type))
+				{
+					continue;
+				}
+				for (Entry<String, Document> document : typeEntry.getValue().entrySet())
+				{
+					if (query == null || matches(query, document.getValue().source))
+					{
+						matches.add(new Hit(typeEntry.getKey(), document.getKey(), document.getValue()));
+					}
+				}
+			}
+		}
+
+		if (request.has("sort"))
+		{
+			Collections.sort(matches, new HitComparator(request.get("sort")));
+		}
+
+		JsonArray hits = new JsonArray();
+		for (int i = from; i < matches.size() && i < from + size; i++)
+		{
+			Hit match = matches.get(i);
+			JsonObject hit = metadata(index, match.type, match.id);
+			if (version)
+			{
+				hit.addProperty("_version", match.document.version);
+			}
+			hit.add("_source", match.document.source);
+			hits.add(hit);
+		}
+
+		JsonObject hitsObject = new JsonObject();
+		hitsObject.addProperty("total", matches.size());
+		hitsObject.add("hits", hits);
+
+		JsonObject result = new JsonObject();
+		result.addProperty("took", 1);
+		result.addProperty("timed_out", false);
+		result.add("hits", hitsObject);
+		return new Response(STATUS_OK, result);
+	}
+
+	/**
+	 * Evaluates the queries and filters that the job store uses: <code>match_all</code>, <code>filtered</code>,
+	 * <code>and</code>, <code>or</code>, <code>not</code>, <code>term</code>, <code>terms</code>, <code>range</code> and <code>missing</code>.
+	 */
+	private boolean matches(JsonObject clause, JsonObject source)
+	{
+		for (Entry<String, JsonElement> entry : clause.entrySet())
+		{
+			JsonElement value = entry.getValue();
+			switch (entry.getKey())
+			{
+				case "match_all":
+					break;
+				case "filtered":
+					JsonObject filtered = value.getAsJsonObject();
+					if ((filtered.has("query") && !matches(filtered.getAsJsonObject("query"), source))
+						|| (filtered.has("filter") && !matches(filtered.getAsJsonObject("filter"), source)))
+					{
+						return false;
+					}
+					break;
+				case "and":
+					for (JsonElement filter : filters(value))
+					{
+						if (!matches(filter.getAsJsonObject(), source))
+						{
+							return false;
+						}
+					}
+					break;
+				case "or":
+					boolean any = false;
+					for (JsonElement filter : filters(value))
+					{
+						any |= matches(filter.getAsJsonObject(), source);
+					}
+					if (!any)
+					{
+						return false;
+					}
+					break;
+				case "not":
+					JsonObject not = value.getAsJsonObject();
+					if (matches(not.has("filter") ? not.getAsJsonObject("filter") : not, source))
+					{
+						return false;
+					}
+					break;
+				case "term":
+					for (Entry<String, JsonElement> term : value.getAsJsonObject().entrySet())
+					{
+						if (compare(source.get(term.getKey()), term.getValue()) != 0)
+						{
+							return false;
+						}
+					}
+					break;
+				case "terms":
+					for (Entry<String, JsonElement> terms : value.getAsJsonObject().entrySet())
+					{
+						boolean found = false;
+						for (JsonElement term : terms.getValue().getAsJsonArray())
+						{
+							found |= compare(source.get(terms.getKey()), term) == 0;
+						}
+						if (!found)
+						{
+							return false;
+						}
+					}
+					break;
+				case "range":
+					for (Entry<String, JsonElement> range : value.getAsJsonObject().entrySet())
+					{
+						if (!inRange(source.get(range.getKey()), range.getValue().getAsJsonObject()))
+						{
+							return false;
+						}
+					}
+					break;
+				case "missing":
+					JsonElement field = source.get(value.getAsJsonObject().get("field").getAsString());
+					if (field != null && !field.isJsonNull())
+					{
+						return false;
+					}
+					break;
+				default:
+					throw new IllegalArgumentException("Unsupported query '" + entry.getKey() + "'");
+			}
+		}
+		return true;
+	}
+
+	private static JsonArray filters(JsonElement value)
+	{
+		if (value.isJsonArray())
+		{
+			return value.getAsJsonArray();
+		}
+		return value.getAsJsonObject().getAsJsonArray("filters");
+	}
+
+	private static boolean inRange(JsonElement value, JsonObject range)
+	{
+		if (value == null || value.isJsonNull())
+		{
+			return false;
+		}
+		for (Entry<String, JsonElement> bound : range.entrySet())
+		{
+			int comparison = compare(value, bound.getValue());
+			boolean inRange;
+			switch (bound.getKey())
+			{
+				case "gte":
+				case "from":
+					inRange = comparison >= 0;
+					break;
+				case "gt":
+					inRange = comparison > 0;
+					break;
+				case "lte":
+				case "to":
+					inRange = comparison <= 0;
+					break;
+				case "lt":
+					inRange = comparison < 0;
+					break;
+				default:
+					inRange = true;
+			}
+			if (!inRange)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares two values, where missing values are sorted last.
+	 */
+	private static int compare(JsonElement first, JsonElement second)
+	{
+		boolean firstMissing = first == null || first.isJsonNull();
+		boolean secondMissing = second == null || second.isJsonNull();
+		if (firstMissing || secondMissing)
+		{
+			return firstMissing == secondMissing ? 0 : (firstMissing ? 1 : -1);
+		}
+
+		JsonPrimitive firstPrimitive = first.getAsJsonPrimitive();
+		JsonPrimitive secondPrimitive = second.getAsJsonPrimitive();
+		if (firstPrimitive.isNumber() && secondPrimitive.isNumber())
+		{
+			return Double.compare(firstPrimitive.getAsDouble(), secondPrimitive.getAsDouble());
+		}
+		return firstPrimitive.getAsString().compareTo(secondPrimitive.getAsString());
+	}
+
+	private Map<String, Map<String, Document>> getIndex(String index, boolean create)
+	{
+		Map<String, Map<String, Document>> types = indices.get(index);
+		if (types == null)
+		{
+			types = new HashMap<>();
+			if (create)
+			{
+				indices.put(index, types);
+			}
+		}
+		return types;
+	}
+
+	private Map<String, Document> getDocuments(String index, String type, boolean create)
+	{
+		Map<String, Map<String, Document>> types = getIndex(index, create);
+		Map<String, Document> documents = types.get(type);
+		if (documents == null)
+		{
+			documents = new HashMap<>();
+			if (create)
+			{
+				types.put(type, documents);
+			}
+		}
+		return documents;
+	}
+
+	private Document getDocument(String index, String type, String id)
+	{
+		Map<String, Map<String, Document>> types = indices.get(index);
+		Map<String, Document> documents = types != null ? types.get(type) : null;
+		return documents != null ? documents.get(id) : null;
+	}
+
+	private static Long getVersion(Map<String, String> parameters)
+	{
+		String version = parameters.get("version");
+		return version != null ? Long.valueOf(version) : null;
+	}
+
+	private JsonObject parseObject(String json)
+	{
+		return parser.parse(json).getAsJsonObject();
+	}
+
+	private static JsonObject metadata(String index, String type, String id)
+	{
+		JsonObject metadata = new JsonObject();
+		metadata.addProperty("_index", index);
+		metadata.addProperty("_type", type);
+		metadata.addProperty("_id", id);
+		return metadata;
+	}
+
+	private static Response acknowledged()
+	{
+		JsonObject result = new JsonObject();
+		result.addProperty("acknowledged", true);
+		return new Response(STATUS_OK, result);
+	}
+
+	private static Response error(int status, String message)
+	{
+		JsonObject result = new JsonObject();
+		result.addProperty("error", message);
+		result.addProperty("status", status);
+		return new Response(status, result);
+	}
+
+	private void injectLatency()
+	{
+		long latency = minLatency;
+		if (maxLatency > minLatency)
+		{
+			latency += ThreadLocalRandom.current().nextLong(maxLatency - minLatency + 1);
+		}
+		if (latency > 0)
+		{
+			try
+			{
+				TimeUnit.MILLISECONDS.sleep(latency);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Dispatches the requests and writes the responses.
+	 */
+	private class RequestHandler implements HttpHandler
+	{
+		@Override
+		public void handle(HttpExchange exchange) throws IOException
+		{
+			requests.incrementAndGet();
+			int concurrent = concurrentRequests.incrementAndGet();
+			int peak;
+			while (concurrent > (peak = peakConcurrentRequests.get()) && !peakConcurrentRequests.compareAndSet(peak, concurrent))
+			{
+				// Another request raised the peak at the same time, try again
+			}
+
+			try
+			{
+				handleRequest(exchange);
+			}
+			finally
+			{
+				concurrentRequests.decrementAndGet();
+			}
+		}
+
+		private void handleRequest(HttpExchange exchange) throws IOException
+		{
+			String body = readBody(exchange.getRequestBody());
+			injectLatency();
+
+			Response response;
+			if (ThreadLocalRandom.current().nextDouble() < errorRate)
+			{
+				injectedErrors.incrementAndGet();
+				response = error(STATUS_UNAVAILABLE, "Injected error");
+			}
+			else
+			{
+				try
+				{
+					URI uri = exchange.getRequestURI();
+					response = FakeElasticsearchServer.this.handle(exchange.getRequestMethod(), getPath(uri), getParameters(uri), body);
+				}
+				catch (RuntimeException e)
+				{
+					response = error(STATUS_BAD_REQUEST, e.toString());
+				}
+			}
+
+			byte[] data = response.body.toString().getBytes(UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+			exchange.sendResponseHeaders(response.status, data.length);
+			try (OutputStream outputStream = exchange.getResponseBody())
+			{
+				outputStream.write(data);
+			}
+		}
+
+		private String readBody(InputStream inputStream) throws IOException
+		{
+			try (InputStream stream = inputStream)
+			{
+				ByteArrayOutputStream data = new ByteArrayOutputStream();
+				byte[] buffer = new byte[4096];
+				int read;
+				while ((read = stream.read(buffer)) != -1)
+				{
+					data.write(buffer, 0, read);
+				}
+				return new String(data.toByteArray(), UTF_8);
+			}
+		}
+
+		private List<String> getPath(URI uri)
+		{
+			List<String> path = new ArrayList<>();
+			for (String segment : uri.getPath().split("/"))
+			{
+				if (!segment.isEmpty())
+				{
+					path.add(segment);
+				}
+			}
+			return path;
+		}
+
+		private Map<String, String> getParameters(URI uri)
+		{
+			Map<String, String> parameters = new HashMap<>();
+			String query = uri.getQuery();
+			if (query != null)
+			{
+				for (String parameter : query.split("&"))
+				{
+					int equals = parameter.indexOf('=');
+					parameters.put(equals < 0 ? parameter : parameter.substring(0, equals), equals < 0 ? "" : parameter.substring(equals + 1));
+				}
+			}
+			return parameters;
+		}
+	}
+
+	/**
+	 * A stored document. Sources are never changed once stored, so they can be shared with responses.
+	 */
+	private static class Document
+	{
+		private final long version;
+		private final JsonObject source;
+
+		private Document(long version, JsonObject source)
+		{
+			this.version = version;
+			this.source = source;
+		}
+	}
+
+	/**
+	 * A document that matched a search.
+	 */
+	private static class Hit
+	{
+		private final String type;
+		private final String id;
+		private final Document document;
+
+		private Hit(String type, String id, Document document)
+		{
+			this.type = type;
+			this.id = id;
+			this.document = document;
+		}
+	}
+
+	/**
+	 * Sorts hits by the fields of a <code>sort</code> clause.
+	 */
+	private static class HitComparator implements Comparator<Hit>
+	{
+		private final List<String> fields = new ArrayList<>();
+		private final Set<String> descending = new HashSet<>();
+
+		private HitComparator(JsonElement sort)
+		{
+			JsonArray sorts = sort.isJsonArray() ? sort.getAsJsonArray() : new JsonArray();
+			if (!sort.isJsonArray())
+			{
+				sorts.add(sort);
+			}
+
+			for (JsonElement element : sorts)
+			{
+				if (element.isJsonPrimitive())
+				{
+					fields.add(element.getAsString());
+					continue;
+				}
+				for (Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet())
+				{
+					fields.add(entry.getKey());
+					JsonElement order = entry.getValue().isJsonObject() ? entry.getValue().getAsJsonObject().get("order") : entry.getValue();
+					if (order != null && "desc".equals(order.getAsString()))
+					{
+						descending.add(entry.getKey());
+					}
+				}
+			}
+		}
+
+		@Override
+		public int compare(Hit first, Hit second)
+		{
+			for (String field : fields)
+			{
+				JsonElement firstValue = first.document.source.get(field);
+				JsonElement secondValue = second.document.source.get(field);
+				int comparison = FakeElasticsearchServer.compare(firstValue, secondValue);
+				if (comparison != 0)
+				{
+					// Missing values are sorted last in both directions
+					boolean missing = firstValue == null || secondValue == null;
+					return descending.contains(field) && !missing ? -comparison : comparison;
+				}
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * A response with its status.
+	 */
+	private static class Response
+	{
+		private final int status;
+		private final JsonObject body;
+
+		private Response(int status, JsonObject body)
+		{
+			this.status = status;
+			this.body = body;
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.JobPersistenceException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests of {@link AsyncHttpCommunicator}.
+ *
+ * @author Anton Johansson
+ */
+public class AsyncHttpCommunicatorTest extends Assert
+{
+	private static final AtomicInteger PARTIAL_REQUESTS = new AtomicInteger();
+
+	private HttpServer server;
+	private AsyncHttpCommunicator communicator;
+	private String baseURL;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		server = start(0);
+		baseURL = "http://localhost:" + server.getAddress().getPort();
+		communicator = new AsyncHttpCommunicator(2, 30000, 2);
+		PARTIAL_REQUESTS.set(0);
+	}
+
+	@After
+	public void tearDown()
+	{
+		communicator.close();
+		server.stop(0);
+	}
+
+	@Test
+	public void test_that_connections_are_reused() throws JobPersistenceException
+	{
+		for (int i = 0; i < 5; i++)
+		{
+			HttpResponse response = communicator.request("GET", baseURL + "/index/type/" + i);
+			assertEquals(200, response.getResponseCode());
+			assertEquals("GET /index/type/" + i + " ", response.getResponseData());
+		}
+		assertEquals(1, communicator.getOpenConnections());
+	}
+
+	@Test
+	public void test_that_request_body_is_sent_as_utf8() throws JobPersistenceException
+	{
+		HttpResponse response = communicator.request("PUT", baseURL + "/index/type/1", "{\"name\":\"Jöb\"}");
+		assertEquals("PUT /index/type/1 {\"name\":\"Jöb\"}", response.getResponseData());
+	}
+
+	@Test
+	public void test_that_error_and_chunked_responses_are_read() throws JobPersistenceException
+	{
+		HttpResponse response = communicator.request("DELETE", baseURL + "/missing");
+		assertEquals(404, response.getResponseCode());
+		assertEquals("DELETE /missing ", response.getResponseData());
+
+		response = communicator.request("POST", baseURL + "/chunked", "{}");
+		assertEquals(200, response.getResponseCode());
+		assertEquals("POST /chunked {}", response.getResponseData());
+		assertEquals(1, communicator.getOpenConnections());
+	}
+
+	@Test
+	public void test_that_requests_beyond_max_connections_wait_for_a_connection() throws JobPersistenceException
+	{
+		List<Future<HttpResponse>> responses = new ArrayList<>();
+		for (int i = 0; i < 4; i++)
+		{
+			responses.add(communicator.requestAsync("POST", baseURL + "/slow/" + i, "{}"));
+		}
+		assertEquals(2, communicator.getOpenConnections());
+
+		for (int i = 0; i < 4; i++)
+		{
+			HttpResponse response = AsyncHttpCommunicator.getResponse(responses.get(i));
+			assertEquals("POST /slow/" + i + " {}", response.getResponseData());
+		}
+		assertEquals(2, communicator.getOpenConnections());
+		assertEquals(0, communicator.getRequestsInFlight());
+	}
+
+	@Test
+	public void test_that_connections_closed_by_the_server_are_replaced() throws JobPersistenceException
+	{
+		communicator.request("GET", baseURL + "/");
+		server.stop(0);
+		server = restart(server.getAddress().getPort());
+
+		HttpResponse response = communicator.request("GET", baseURL + "/again");
+		assertEquals(200, response.getResponseCode());
+		assertEquals(1, communicator.getOpenConnections());
+	}
+
+	@Test
+	public void test_that_requests_are_not_resent_after_the_response_started() throws JobPersistenceException
+	{
+		communicator.request("GET", baseURL + "/");
+		try
+		{
+			communicator.request("POST", baseURL + "/partial", "{}");
+			fail("Expected the request to fail");
+		}
+		catch (JobPersistenceException e)
+		{
+			assertEquals(1, PARTIAL_REQUESTS.get());
+		}
+	}
+
+	@Test
+	public void test_that_requests_time_out() throws JobPersistenceException
+	{
+		communicator.setReadTimeout(100);
+		try
+		{
+			communicator.request("GET", baseURL + "/slow");
+			fail("Expected the request to time out");
+		}
+		catch (JobPersistenceException e)
+		{
+			assertEquals(0, communicator.getRequestsInFlight());
+			assertEquals(0, communicator.getOpenConnections());
+		}
+	}
+
+	@Test(expected = JobPersistenceException.class)
+	public void test_that_requests_fail_after_close() throws JobPersistenceException
+	{
+		communicator.close();
+		communicator.request("GET", baseURL + "/");
+	}
+
+	private HttpServer restart(int port)
+	{
+		try
+		{
+			return start(port);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static HttpServer start(int port) throws IOException
+	{
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		server.createContext("/", new EchoHandler());
+		server.setExecutor(Executors.newFixedThreadPool(4));
+		server.start();
+		return server;
+	}
+
+	/**
+	 * Responds with the method, path and body of the request.
+	 */
+	private static class EchoHandler implements HttpHandler
+	{
+		@Override
+		public void handle(HttpExchange exchange) throws IOException
+		{
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (InputStream inputStream = exchange.getRequestBody())
+			{
+				byte[] buffer = new byte[1024];
+				int read;
+				while ((read = inputStream.read(buffer)) != -1)
+				{
+					body.write(buffer, 0, read);
+				}
+			}
+
+			String path = exchange.getRequestURI().getPath();
+			if (path.startsWith("/slow"))
+			{
+				try
+				{
+					Thread.sleep(300);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+			byte[] response = (exchange.getRequestMethod() + " " + path + " " + body.toString("UTF-8")).getBytes("UTF-8");
+			if (path.startsWith("/partial"))
+			{
+				// Closes the connection after half of the response
+				PARTIAL_REQUESTS.incrementAndGet();
+				exchange.sendResponseHeaders(200, response.length);
+				exchange.getResponseBody().write(response, 0, response.length / 2);
+				exchange.getResponseBody().flush();
+				exchange.close();
+				return;
+			}
+			exchange.sendResponseHeaders(path.startsWith("/missing") ? 404 : 200, path.startsWith("/chunked") ? 0 : response.length);
+			try (OutputStream outputStream = exchange.getResponseBody())
+			{
+				outputStream.write(response);
+			}
+		}
+	}
+}
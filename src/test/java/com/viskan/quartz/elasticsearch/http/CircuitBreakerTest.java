@@ -0,0 +1,67 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link CircuitBreaker}.
+ *
+ * @author Anton Johansson
+ */
+public class CircuitBreakerTest extends Assert
+{
+	@Test
+	public void test_that_breaker_opens_after_consecutive_failures() throws Exception
+	{
+		CircuitBreaker breaker = new CircuitBreaker(3, 60000);
+		breaker.failed();
+		breaker.failed();
+		breaker.succeeded();
+		breaker.failed();
+		breaker.failed();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest());
+
+		breaker.failed();
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+	}
+
+	@Test
+	public void test_that_a_single_trial_request_is_made_when_open_time_has_passed() throws Exception
+	{
+		CircuitBreaker breaker = new CircuitBreaker(1, 20);
+		breaker.failed();
+		Thread.sleep(30);
+
+		assertTrue(breaker.allowRequest());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+
+		breaker.failed();
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		Thread.sleep(30);
+
+		assertTrue(breaker.allowRequest());
+		breaker.succeeded();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest());
+		assertTrue(breaker.allowRequest());
+	}
+
+	@Test
+	public void test_that_trial_request_without_outcome_is_given_up_after_open_time() throws Exception
+	{
+		CircuitBreaker breaker = new CircuitBreaker(1, 20);
+		breaker.failed();
+		Thread.sleep(30);
+
+		assertTrue(breaker.allowRequest());
+		assertFalse(breaker.allowRequest());
+		Thread.sleep(30);
+
+		assertTrue(breaker.allowRequest());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+	}
+}
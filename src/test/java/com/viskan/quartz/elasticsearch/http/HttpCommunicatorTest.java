@@ -0,0 +1,101 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.JobPersistenceException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests of {@link HttpCommunicator}.
+ *
+ * @author Anton Johansson
+ */
+public class HttpCommunicatorTest extends Assert
+{
+	private HttpServer server;
+	private HttpCommunicator communicator;
+	private String baseURL;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new EchoHandler());
+		server.start();
+		baseURL = "http://localhost:" + server.getAddress().getPort();
+		communicator = new HttpCommunicator();
+	}
+
+	@After
+	public void tearDown()
+	{
+		server.stop(0);
+	}
+
+	@Test
+	public void test_that_request_and_response_bodies_are_utf8() throws JobPersistenceException, IOException
+	{
+		HttpResponse response = communicator.request("PUT", baseURL + "/index/type/1", "{\"name\":\"Jöb €\"}\n{\"name\":\"Trigger\"}");
+		assertEquals(200, response.getResponseCode());
+		assertEquals("PUT /index/type/1 {\"name\":\"Jöb €\"}\n{\"name\":\"Trigger\"}", response.getResponseData());
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (InputStream inputStream = response.getResponseStream())
+		{
+			int data;
+			while ((data = inputStream.read()) != -1)
+			{
+				body.write(data);
+			}
+		}
+		assertEquals(response.getResponseData(), body.toString("UTF-8"));
+	}
+
+	@Test
+	public void test_that_error_responses_are_read() throws JobPersistenceException
+	{
+		HttpResponse response = communicator.request("DELETE", baseURL + "/missing");
+		assertEquals(404, response.getResponseCode());
+		assertEquals("DELETE /missing ", response.getResponseData());
+	}
+
+	/**
+	 * Responds with the method, path and body of the request.
+	 */
+	private static class EchoHandler implements HttpHandler
+	{
+		@Override
+		public void handle(HttpExchange exchange) throws IOException
+		{
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (InputStream inputStream = exchange.getRequestBody())
+			{
+				byte[] buffer = new byte[1024];
+				int read;
+				while ((read = inputStream.read(buffer)) != -1)
+				{
+					body.write(buffer, 0, read);
+				}
+			}
+
+			String path = exchange.getRequestURI().getPath();
+			byte[] response = (exchange.getRequestMethod() + " " + path + " " + body.toString("UTF-8")).getBytes("UTF-8");
+			exchange.sendResponseHeaders(path.startsWith("/missing") ? 404 : 200, response.length);
+			try (OutputStream outputStream = exchange.getResponseBody())
+			{
+				outputStream.write(response);
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link NodeSelector} and {@link Node}.
+ *
+ * @author Anton Johansson
+ */
+public class NodeSelectorTest extends Assert
+{
+	private final Node node1 = new Node("node1", 9200);
+	private final Node node2 = new Node("node2", 9200);
+	private final Node node3 = new Node("node3", 9201);
+
+	@Test
+	public void test_that_hosts_are_parsed() throws Exception
+	{
+		assertEquals(Arrays.asList(node1, node2, node3), Node.parse("node1, node2:9200,node3:9201,", 9200));
+		assertEquals("http://node3:9201/index/_bulk?refresh=true", node3.resolve("http://localhost:9200/index/_bulk?refresh=true"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_that_invalid_port_is_rejected() throws Exception
+	{
+		Node.parse("node1:http", 9200);
+	}
+
+	@Test
+	public void test_that_round_robin_rotates_over_nodes() throws Exception
+	{
+		NodeSelector selector = new NodeSelector(Arrays.asList(node1, node2, node3), NodeSelector.Strategy.ROUND_ROBIN, 1000, 60000);
+		assertEquals(Arrays.asList(node1, node2, node3), selector.select());
+		assertEquals(Arrays.asList(node2, node3, node1), selector.select());
+		assertEquals(Arrays.asList(node3, node1, node2), selector.select());
+	}
+
+	@Test
+	public void test_that_least_in_flight_prefers_idle_nodes() throws Exception
+	{
+		NodeSelector selector = new NodeSelector(Arrays.asList(node1, node2, node3), NodeSelector.Strategy.LEAST_IN_FLIGHT, 1000, 60000);
+		node1.requestStarted();
+		node2.requestStarted();
+		node2.requestStarted();
+		assertEquals(Arrays.asList(node3, node1, node2), selector.select());
+	}
+
+	@Test
+	public void test_that_dead_nodes_are_tried_last_with_exponential_backoff() throws Exception
+	{
+		NodeSelector selector = new NodeSelector(Arrays.asList(node1, node2, node3), NodeSelector.Strategy.ROUND_ROBIN, 1000, 3000);
+		selector.failed(node2, new IOException("Connection refused"));
+		selector.failed(node1, new IOException("Connection refused"));
+		selector.failed(node1, new IOException("Connection refused"));
+		assertEquals(2, node1.getFailures());
+
+		List<Node> nodes = selector.select();
+		assertEquals(Arrays.asList(node3, node2, node1), nodes);
+		assertEquals(1000, node1.getRetryTime() - node2.getRetryTime(), 100);
+
+		assertEquals(3000, node1.markDead(0, 1000, 3000));
+		selector.succeeded(node1);
+		assertTrue(node1.isAlive(System.currentTimeMillis()));
+		assertEquals(0, node1.getFailures());
+	}
+
+	@Test
+	public void test_that_known_nodes_keep_their_state() throws Exception
+	{
+		NodeSelector selector = new NodeSelector(Arrays.asList(node1, node2), NodeSelector.Strategy.ROUND_ROBIN, 1000, 60000);
+		selector.failed(node1, new IOException("Connection refused"));
+		selector.setNodes(Arrays.asList(new Node("node1", 9200), node3));
+		assertSame(node1, selector.getNodes().get(0));
+		assertEquals(Arrays.asList(node3, node1), selector.select());
+	}
+}
@@ -0,0 +1,53 @@
+package com.viskan.quartz.elasticsearch.http;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.quartz.JobPersistenceException;
+
+/**
+ * Unit tests of {@link RetryPolicy}.
+ *
+ * @author Anton Johansson
+ */
+public class RetryPolicyTest extends Assert
+{
+	private static final String BULK_URL = "http://localhost:9200/index/_bulk";
+
+	@Test
+	public void test_that_only_requests_that_cannot_be_applied_twice_are_resent() throws Exception
+	{
+		JobPersistenceException readTimeout = new JobPersistenceException("Error when making HTTP request", new SocketTimeoutException("Read timed out"));
+		JobPersistenceException connectFailure = new JobPersistenceException("Error when making HTTP request", new ConnectException("Connection refused"));
+
+		assertTrue(RetryPolicy.canResend("GET", "http://localhost:9200/index/type/1", readTimeout));
+		assertTrue(RetryPolicy.canResend("POST", "http://localhost:9200/index/type/_search?size=10", readTimeout));
+		assertFalse(RetryPolicy.canResend("POST", BULK_URL, readTimeout));
+		assertFalse(RetryPolicy.canResend("PUT", "http://localhost:9200/index/type/1", readTimeout));
+		assertTrue(RetryPolicy.canResend("POST", BULK_URL, connectFailure));
+
+		assertTrue(RetryPolicy.canResend("POST", BULK_URL, 429));
+		assertTrue(RetryPolicy.canResend("POST", BULK_URL, 503));
+		assertFalse(RetryPolicy.canResend("POST", BULK_URL, 504));
+		assertTrue(RetryPolicy.canResend("GET", BULK_URL, 504));
+		assertFalse(RetryPolicy.canResend("GET", BULK_URL, 500));
+		assertFalse(RetryPolicy.canResend("GET", BULK_URL, 404));
+	}
+
+	@Test
+	public void test_that_backoff_is_exponential_and_jittered() throws Exception
+	{
+		RetryPolicy policy = new RetryPolicy(10, 100, 1000);
+		for (int i = 0; i < 100; i++)
+		{
+			long first = policy.getBackoff(0);
+			assertTrue(first >= 50 && first <= 100);
+			long third = policy.getBackoff(2);
+			assertTrue(third >= 200 && third <= 400);
+			long last = policy.getBackoff(40);
+			assertTrue(last >= 500 && last <= 1000);
+		}
+	}
+}
@@ -19,6 +19,7 @@ import org.quartz.SimpleScheduleBuilder;
 import org.quartz.TriggerBuilder;
 import org.quartz.TriggerKey;
 import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredResult;
 
 import com.viskan.quartz.elasticsearch.ElasticsearchJobStore;
 import com.viskan.quartz.elasticsearch.common.GsonSerializer;
@@ -37,14 +38,17 @@ public class ElasticsearchJobStoreIntegrationTest extends Assert
 	@Before
 	public void setUp() throws SchedulerConfigException
 	{
+		elasticsearchServer = new ElasticsearchServer();
+
 		store = new ElasticsearchJobStore();
 		store.setHostName("localhost");
 		store.setPort(9200);
 		store.setIndexName("scheduler");
 		store.setSerializerClassName(GsonSerializer.class.getName());
+		store.setCreateIndex(true);
+		store.setNumberOfShards(1);
+		store.setNumberOfReplicas(0);
 		store.initialize(null, null);
-
-		elasticsearchServer = new ElasticsearchServer();
 	}
 
 	@After
@@ -78,6 +82,12 @@ public class ElasticsearchJobStoreIntegrationTest extends Assert
 
 		assertEquals(1, acquiredTriggers.size());
 
+		List<TriggerFiredResult> firedResults = store.triggersFired(acquiredTriggers);
+
+		assertEquals(1, firedResults.size());
+		assertEquals(newJob.getKey(), firedResults.get(0).getTriggerFiredBundle().getJobDetail().getKey());
+		assertEquals(newTrigger.getKey(), firedResults.get(0).getTriggerFiredBundle().getTrigger().getKey());
+
 		assertTrue (store.checkExists(new JobKey("Job1", "Group1")));
 		assertFalse(store.checkExists(new JobKey("Job2", "Group1")));
 		assertFalse(store.checkExists(new JobKey("Job1", "Group2")));
@@ -86,6 +96,11 @@ public class ElasticsearchJobStoreIntegrationTest extends Assert
 		assertFalse(store.checkExists(new TriggerKey("Job1_Trigger1", "Group2")));
 		assertEquals(1, store.getNumberOfJobs());
 		assertEquals(1, store.getNumberOfTriggers());
+
+		store.clearAllSchedulingData();
+
+		assertFalse(store.checkExists(new JobKey("Job1", "Group1")));
+		assertFalse(store.checkExists(new TriggerKey("Job1_Trigger1", "Group1")));
 	}
 
 	public static class TestJob implements Job
@@ -0,0 +1,448 @@
+package com.viskan.quartz.elasticsearch.integration;
+
+import static org.mockito.Mockito.mock;
+import static org.quartz.SimpleScheduleBuilder.simpleSchedule;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.JobPersistenceException;
+import org.quartz.SchedulerConfigException;
+import org.quartz.Trigger;
+import org.quartz.Trigger.CompletedExecutionInstruction;
+import org.quartz.TriggerBuilder;
+import org.quartz.TriggerKey;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+import org.quartz.spi.TriggerFiredResult;
+
+import com.viskan.quartz.elasticsearch.ElasticsearchJobStore;
+import com.viskan.quartz.elasticsearch.common.FakeElasticsearchServer;
+import com.viskan.quartz.elasticsearch.common.GsonSerializer;
+import com.viskan.quartz.elasticsearch.common.TestJob;
+import com.viskan.quartz.elasticsearch.metrics.Metrics;
+import com.viskan.quartz.elasticsearch.utils.PartitionUtils;
+
+/**
+ * Runs the job store against the {@link FakeElasticsearchServer}.
+ *
+ * @author Anton Johansson
+ */
+public class FakeElasticsearchServerTest extends Assert
+{
+	private FakeElasticsearchServer server;
+	private ElasticsearchJobStore store;
+
+	@Before
+	public void setUp() throws IOException, SchedulerConfigException
+	{
+		server = new FakeElasticsearchServer(0, 4);
+		server.start();
+
+		store = newStore();
+		store.setCreateIndex(true);
+		store.initialize(null, mock(SchedulerSignaler.class));
+	}
+
+	@After
+	public void tearDown()
+	{
+		store.shutdown();
+		server.stop();
+	}
+
+	@Test
+	public void test_that_triggers_are_acquired_fired_and_completed() throws JobPersistenceException
+	{
+		JobDetail job = newJob("Job1");
+		OperableTrigger trigger = newTrigger("Trigger1", job);
+		store.storeJobAndTrigger(job, trigger);
+		store.storeTrigger(newTrigger("Trigger2", job), false);
+		assertEquals(1, store.getNumberOfJobs());
+		assertEquals(2, store.getNumberOfTriggers());
+
+		List<OperableTrigger> acquiredTriggers = store.acquireNextTriggers(System.currentTimeMillis() + 1000, 1, 0);
+		assertEquals(1, acquiredTriggers.size());
+		assertEquals(1, server.getSource("scheduler", "quartz_trigger", acquiredTriggers.get(0).getKey().toString()).get("state").getAsInt());
+
+		List<TriggerFiredResult> firedResults = store.triggersFired(acquiredTriggers);
+		assertEquals(1, firedResults.size());
+		assertEquals(job.getKey(), firedResults.get(0).getTriggerFiredBundle().getJobDetail().getKey());
+
+		store.triggeredJobComplete(firedResults.get(0).getTriggerFiredBundle().getTrigger(), job, CompletedExecutionInstruction.DELETE_TRIGGER);
+		assertEquals(1, store.getNumberOfTriggers());
+
+		store.clearAllSchedulingData();
+		assertFalse(store.checkExists(job.getKey()));
+		assertFalse(store.checkExists(new TriggerKey("Trigger2", "Group1")));
+	}
+
+	@Test
+	public void test_that_conflicting_acquisitions_are_skipped() throws JobPersistenceException
+	{
+		JobDetail job = newJob("Job1");
+		store.storeJobAndTrigger(job, newTrigger("Trigger1", job));
+
+		server.setConflictRate(1);
+		assertTrue(store.acquireNextTriggers(System.currentTimeMillis() + 1000, 1, 0).isEmpty());
+		assertEquals(1, server.getInjectedConflicts());
+		assertEquals(1, store.getMetrics().getConflicts());
+
+		server.setConflictRate(0);
+		assertEquals(1, store.acquireNextTriggers(System.currentTimeMillis() + 1000, 1, 0).size());
+	}
+
+	@Test(expected = JobPersistenceException.class)
+	public void test_that_injected_errors_fail_requests() throws JobPersistenceException
+	{
+		server.setErrorRate(1);
+		store.storeJob(newJob("Job1"), false);
+	}
+
+	@Test
+	public void test_that_unavailable_requests_are_retried_until_the_circuit_breaker_opens() throws Exception
+	{
+		ElasticsearchJobStore retryingStore = newStore();
+		retryingStore.setRetryBackoff(1);
+		retryingStore.setCircuitBreakerThreshold(4);
+		retryingStore.setCircuitBreakerOpenTime(60000);
+		retryingStore.initialize(null, mock(SchedulerSignaler.class));
+		try
+		{
+			server.setErrorRate(1);
+			for (int i = 0; i < 2; i++)
+			{
+				try
+				{
+					retryingStore.storeJob(newJob("Job1"), false);
+					fail("Expected the store to fail");
+				}
+				catch (JobPersistenceException e)
+				{
+					// Expected
+				}
+			}
+
+			// The first call is made three times, and the breaker opens on the first retry of the second call
+			assertEquals(4, server.getInjectedErrors());
+			assertEquals(3, retryingStore.getMetrics().getRetries());
+			assertEquals(1, retryingStore.getMetrics().getRejections());
+			assertEquals("OPEN", retryingStore.getCircuitBreakerState());
+
+			server.setErrorRate(0);
+			try
+			{
+				retryingStore.getNumberOfJobs();
+				fail("Expected the circuit breaker to reject the request");
+			}
+			catch (JobPersistenceException e)
+			{
+				assertEquals(4, server.getInjectedErrors());
+				assertEquals(2, retryingStore.getMetrics().getRejections());
+			}
+		}
+		finally
+		{
+			retryingStore.shutdown();
+		}
+	}
+
+	@Test
+	public void test_that_latency_is_injected() throws JobPersistenceException
+	{
+		server.setLatency(50, 50);
+		long start = System.currentTimeMillis();
+		assertFalse(store.checkExists(new JobKey("Job1", "Group1")));
+		assertTrue(System.currentTimeMillis() - start >= 50);
+	}
+
+	@Test
+	public void test_that_metrics_are_recorded_and_exported() throws Exception
+	{
+		JobDetail job = newJob("Job1");
+		store.storeJobAndTrigger(job, newTrigger("Trigger1", job));
+		store.acquireNextTriggers(System.currentTimeMillis() + 1000, 1, 0);
+
+		Metrics metrics = store.getMetrics();
+		assertEquals(1, metrics.getOperation(Metrics.OPERATION_STORE).getCount());
+		assertEquals(1, metrics.getOperation(Metrics.OPERATION_ACQUIRE).getCount());
+		assertEquals(0, metrics.getOperation(Metrics.OPERATION_ACQUIRE).getErrors());
+		assertTrue(metrics.getHttpRequests().get("POST").getCount() >= 3);
+		assertTrue(metrics.getBytesSent() > 0);
+		assertTrue(metrics.getBytesReceived() > 0);
+
+		ElasticsearchJobStore exportingStore = newStore();
+		exportingStore.setInstanceName("FakeScheduler");
+		exportingStore.setInstanceId("node1");
+		exportingStore.setJmxExport(true);
+		exportingStore.initialize(null, mock(SchedulerSignaler.class));
+
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("com.viskan.quartz.elasticsearch:type=Metrics,scheduler=\"FakeScheduler\",instance=\"node1\"");
+		try
+		{
+			assertEquals(1, exportingStore.getNumberOfJobs());
+			assertTrue(((TabularData) mbeanServer.getAttribute(name, "HttpRequests")).containsKey(new Object[] { "GET" }));
+			assertEquals(0L, mbeanServer.getAttribute(name, "Errors"));
+
+			ObjectName jobStoreName = new ObjectName("com.viskan.quartz.elasticsearch:type=JobStore,scheduler=\"FakeScheduler\",instance=\"node1\"");
+			exportingStore.storeTrigger(newTrigger("Trigger2", job), false);
+			assertEquals(1, exportingStore.acquireNextTriggers(System.currentTimeMillis() + 1000, 3, 0).size());
+			assertEquals(3, mbeanServer.getAttribute(jobStoreName, "LastAcquisitionMaxCount"));
+			assertEquals(1, mbeanServer.getAttribute(jobStoreName, "LastAcquisitionCandidates"));
+			assertEquals(1, mbeanServer.getAttribute(jobStoreName, "LastAcquisitionSize"));
+			assertEquals(0, mbeanServer.getAttribute(jobStoreName, "RequestsInFlight"));
+			mbeanServer.setAttribute(jobStoreName, new Attribute("ReadTimeout", 5000));
+			assertEquals(5000, exportingStore.getReadTimeout());
+		}
+		finally
+		{
+			exportingStore.shutdown();
+		}
+		assertFalse(mbeanServer.isRegistered(name));
+	}
+
+	@Test
+	public void test_that_bulk_chunks_are_sent_concurrently_over_async_transport() throws Exception
+	{
+		ElasticsearchJobStore asyncStore = newStore();
+		asyncStore.setAsyncTransport(true);
+		asyncStore.setBulkChunkDocuments(3);
+		asyncStore.initialize(null, mock(SchedulerSignaler.class));
+		try
+		{
+			JobDetail job = newJob("Job1");
+			Set<OperableTrigger> triggers = new HashSet<>();
+			List<TriggerKey> triggerKeys = new ArrayList<>();
+			for (int i = 0; i < 10; i++)
+			{
+				OperableTrigger trigger = newTrigger("Trigger" + i, job);
+				triggers.add(trigger);
+				triggerKeys.add(trigger.getKey());
+			}
+			Map<JobDetail, Set<? extends Trigger>> triggersAndJobs = new HashMap<>();
+			triggersAndJobs.put(job, triggers);
+
+			server.setLatency(50, 50);
+			asyncStore.storeJobsAndTriggers(triggersAndJobs, false);
+			server.setLatency(0, 0);
+			assertTrue("The chunks should be handled at the same time", server.getPeakConcurrentRequests() > 1);
+			assertEquals(10, asyncStore.getNumberOfTriggers());
+			assertEquals(4, asyncStore.getMetrics().getHttpRequests().get("POST").getCount());
+
+			assertTrue(asyncStore.removeTriggers(triggerKeys));
+			assertEquals(0, asyncStore.getNumberOfTriggers());
+		}
+		finally
+		{
+			asyncStore.shutdown();
+		}
+	}
+
+	@Test
+	public void test_that_requests_fail_over_to_live_nodes() throws Exception
+	{
+		ElasticsearchJobStore failoverStore = newStore();
+		failoverStore.setHosts("localhost:" + getUnusedPort() + ", localhost:" + server.getPort());
+		failoverStore.setConnectionPooling(true);
+		failoverStore.setDeadNodeBackoff(60000);
+		failoverStore.initialize(null, mock(SchedulerSignaler.class));
+		try
+		{
+			for (int i = 0; i < 4; i++)
+			{
+				failoverStore.storeJob(newJob("Job" + i), false);
+			}
+			assertEquals(4, failoverStore.getNumberOfJobs());
+			assertEquals(1, failoverStore.getMetrics().getErrors());
+		}
+		finally
+		{
+			failoverStore.shutdown();
+		}
+	}
+
+	@Test
+	public void test_that_nodes_are_discovered() throws Exception
+	{
+		ElasticsearchJobStore sniffingStore = newStore();
+		sniffingStore.setHosts("localhost, localhost:" + getUnusedPort());
+		sniffingStore.setAsyncTransport(true);
+		sniffingStore.setNodeSelector("leastInFlight");
+		sniffingStore.setSniffNodes(true);
+		sniffingStore.initialize(null, mock(SchedulerSignaler.class));
+		try
+		{
+			// The unused port is not part of the discovered cluster, so no request fails
+			for (int i = 0; i < 4; i++)
+			{
+				assertEquals(0, sniffingStore.getNumberOfJobs());
+			}
+			assertEquals(0, sniffingStore.getMetrics().getErrors());
+		}
+		finally
+		{
+			sniffingStore.shutdown();
+		}
+	}
+
+	@Test
+	public void test_that_triggers_are_released_and_recovered_from_instances_that_stop_checking_in() throws Exception
+	{
+		JobDetail job = newJob("Job1");
+		store.storeJobAndTrigger(job, newTrigger("Trigger1", job));
+		store.storeTrigger(newTrigger("Trigger2", job), false);
+		store.storeTrigger(newTrigger("Trigger3", job), false);
+
+		ElasticsearchJobStore deadStore = newLeasingStore("instance1", false);
+		List<OperableTrigger> acquiredTriggers = deadStore.acquireNextTriggers(System.currentTimeMillis() + 1000, 3, 0);
+		assertEquals(3, acquiredTriggers.size());
+		assertEquals("instance1", server.getSource("scheduler", "quartz_trigger", "Group1.Trigger1").get("owner").getAsString());
+
+		deadStore.releaseAcquiredTrigger(acquiredTriggers.get(2));
+		assertFalse(server.getSource("scheduler", "quartz_trigger", acquiredTriggers.get(2).getKey().toString()).has("owner"));
+		assertEquals(1, deadStore.triggersFired(acquiredTriggers.subList(0, 1)).size());
+		deadStore.shutdown();
+
+		// Another instance recovers the acquired and the executing trigger, once their leases have expired
+		ElasticsearchJobStore liveStore = newLeasingStore("instance2", false);
+		try
+		{
+			liveStore.schedulerStarted();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (liveStore.getRecoveredTriggers() < 2 && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(20);
+			}
+			assertEquals(2, liveStore.getRecoveredTriggers());
+			for (OperableTrigger trigger : acquiredTriggers)
+			{
+				assertEquals(0, server.getSource("scheduler", "quartz_trigger", trigger.getKey().toString()).get("state").getAsInt());
+			}
+			assertEquals("instance2", server.getSource("scheduler", "quartz_scheduler", "instance2").get("instanceId").getAsString());
+		}
+		finally
+		{
+			liveStore.shutdown();
+		}
+
+		// A restarted instance recovers its own triggers right away
+		ElasticsearchJobStore restartedStore = newLeasingStore("instance2", false);
+		restartedStore.setLeaseDuration(60000);
+		assertEquals(3, restartedStore.acquireNextTriggers(System.currentTimeMillis() + 1000, 3, 0).size());
+		restartedStore.schedulerStarted();
+		restartedStore.shutdown();
+		assertEquals(3, restartedStore.getRecoveredTriggers());
+	}
+
+	@Test
+	public void test_that_partitioned_instances_acquire_their_own_buckets() throws Exception
+	{
+		JobDetail job = newJob("Job1");
+		store.storeJobAndTrigger(job, newTrigger("Unpartitioned", job));
+
+		ElasticsearchJobStore store1 = newLeasingStore("instance1", true);
+		ElasticsearchJobStore store2 = newLeasingStore("instance2", true);
+		try
+		{
+			for (int i = 0; i < 20; i++)
+			{
+				store1.storeTrigger(newTrigger("Trigger" + i, job), false);
+			}
+			store1.schedulerStarted();
+			store2.schedulerStarted();
+
+			// The first instance owns every bucket until it sees the second one check in
+			long deadline = System.currentTimeMillis() + 5000;
+			while (store1.getOwnedBuckets() + store2.getOwnedBuckets() != PartitionUtils.BUCKETS && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(20);
+			}
+			assertEquals(PartitionUtils.BUCKETS, store1.getOwnedBuckets() + store2.getOwnedBuckets());
+
+			Set<TriggerKey> acquired = new HashSet<>();
+			for (ElasticsearchJobStore partitionedStore : Arrays.asList(store1, store2))
+			{
+				for (OperableTrigger trigger : partitionedStore.acquireNextTriggers(System.currentTimeMillis() + 1000, 21, 0))
+				{
+					assertTrue(acquired.add(trigger.getKey()));
+				}
+			}
+			assertEquals(21, acquired.size());
+			assertEquals(0, store1.getMetrics().getConflicts() + store2.getMetrics().getConflicts());
+		}
+		finally
+		{
+			store1.shutdown();
+			store2.shutdown();
+		}
+	}
+
+	private ElasticsearchJobStore newStore()
+	{
+		ElasticsearchJobStore newStore = new ElasticsearchJobStore();
+		newStore.setHostName("localhost");
+		newStore.setPort(server.getPort());
+		newStore.setIndexName("scheduler");
+		newStore.setSerializerClassName(GsonSerializer.class.getName());
+		return newStore;
+	}
+
+	private ElasticsearchJobStore newLeasingStore(String instanceId, boolean partitioned) throws SchedulerConfigException
+	{
+		ElasticsearchJobStore leasingStore = newStore();
+		leasingStore.setLeaseDuration(200);
+		leasingStore.setHeartbeatInterval(50);
+		leasingStore.setInstanceId(instanceId);
+		leasingStore.setPartitioned(partitioned);
+		leasingStore.initialize(null, mock(SchedulerSignaler.class));
+		return leasingStore;
+	}
+
+	private static int getUnusedPort() throws IOException
+	{
+		try (ServerSocket socket = new ServerSocket(0))
+		{
+			return socket.getLocalPort();
+		}
+	}
+
+	private JobDetail newJob(String name)
+	{
+		return JobBuilder.newJob(TestJob.class)
+			.withIdentity(name, "Group1")
+			.build();
+	}
+
+	private OperableTrigger newTrigger(String name, JobDetail job)
+	{
+		return (OperableTrigger) TriggerBuilder.newTrigger()
+			.withIdentity(name, "Group1")
+			.forJob(job)
+			.withSchedule(simpleSchedule()
+				.withIntervalInSeconds(30)
+				.repeatForever())
+			.startNow()
+			.build();
+	}
+}
@@ -0,0 +1,54 @@
+package com.viskan.quartz.elasticsearch.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link LatencyHistogram}.
+ *
+ * @author Anton Johansson
+ */
+public class LatencyHistogramTest extends Assert
+{
+	@Test
+	public void test_that_every_value_is_within_the_bounds_of_its_bucket()
+	{
+		for (long value = 0; value < 100000; value++)
+		{
+			int bucket = LatencyHistogram.getBucket(value);
+			assertTrue(value <= LatencyHistogram.getUpperBound(bucket));
+			assertTrue(bucket == 0 || value > LatencyHistogram.getUpperBound(bucket - 1));
+		}
+		assertTrue(LatencyHistogram.getBucket(Long.MAX_VALUE) > LatencyHistogram.getBucket(Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void test_that_percentiles_are_within_a_quarter_of_the_latency()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++)
+		{
+			histogram.record(i * 10);
+		}
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(5005000, histogram.getTotal());
+		assertEquals(10000, histogram.getMax());
+		assertEquals(5000, histogram.getPercentile(50), 5000 / 4);
+		assertTrue(histogram.getPercentile(50) >= 5000);
+		assertEquals(9900, histogram.getPercentile(99), 9900 / 4);
+		assertEquals(10000, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void test_that_reset_clears_the_histogram()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(123);
+		histogram.reset();
+
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(50));
+	}
+}
@@ -0,0 +1,47 @@
+package com.viskan.quartz.elasticsearch.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link RollingLatencyHistogram}.
+ *
+ * @author Anton Johansson
+ */
+public class RollingLatencyHistogramTest extends Assert
+{
+	@Test
+	public void test_that_latencies_pass_out_of_the_window()
+	{
+		RollingLatencyHistogram histogram = new RollingLatencyHistogram(6000, 6);
+		histogram.record(100, 0);
+		histogram.record(200, 2500);
+		histogram.record(300, 5999);
+
+		RollingLatencyHistogram.Snapshot snapshot = histogram.getSnapshot(5999);
+		assertEquals(3, snapshot.getCount());
+		assertEquals(200, snapshot.getMean());
+		assertEquals(300, snapshot.getMax());
+
+		snapshot = histogram.getSnapshot(6000);
+		assertEquals(2, snapshot.getCount());
+		assertEquals(300, snapshot.getMax());
+
+		snapshot = histogram.getSnapshot(9000);
+		assertEquals(1, snapshot.getCount());
+		assertEquals(300, snapshot.getPercentile(50));
+	}
+
+	@Test
+	public void test_that_reused_slots_are_cleared()
+	{
+		RollingLatencyHistogram histogram = new RollingLatencyHistogram(6000, 6);
+		histogram.record(1000, 500);
+		histogram.record(10, 6500);
+
+		RollingLatencyHistogram.Snapshot snapshot = histogram.getSnapshot(6500);
+		assertEquals(1, snapshot.getCount());
+		assertEquals(10, snapshot.getMax());
+		assertEquals(10, snapshot.getPercentile(99));
+	}
+}
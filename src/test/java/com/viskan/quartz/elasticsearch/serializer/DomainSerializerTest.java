@@ -0,0 +1,203 @@
+package com.viskan.quartz.elasticsearch.serializer;
+
+import com.viskan.quartz.elasticsearch.common.GsonSerializer;
+import com.viskan.quartz.elasticsearch.domain.BulkItemResult;
+import com.viskan.quartz.elasticsearch.domain.BulkResult;
+import com.viskan.quartz.elasticsearch.domain.GetResult;
+import com.viskan.quartz.elasticsearch.domain.Hit;
+import com.viskan.quartz.elasticsearch.domain.JobWrapper;
+import com.viskan.quartz.elasticsearch.domain.MultiGetResult;
+import com.viskan.quartz.elasticsearch.domain.SearchResult;
+import com.viskan.quartz.elasticsearch.domain.TriggerWrapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link DomainSerializer}.
+ *
+ * @author Anton Johansson
+ */
+public class DomainSerializerTest extends Assert
+{
+	private final GsonSerializer gson = new GsonSerializer();
+	private final DomainSerializer serializer = new DomainSerializer(gson);
+
+	@Test
+	public void test_that_triggers_are_written_like_the_wrapped_serializer()
+	{
+		TriggerWrapper triggerWrapper = new TriggerWrapper();
+		triggerWrapper.setName("trigger \"1\"\n");
+		triggerWrapper.setGroup("gröup");
+		triggerWrapper.setTriggerClass("org.quartz.impl.triggers.SimpleTriggerImpl");
+		triggerWrapper.setJobName("job");
+		triggerWrapper.setJobGroup("group");
+		triggerWrapper.setState(TriggerWrapper.STATE_ACQUIRED);
+		triggerWrapper.setStartTime(1414141414000L);
+		triggerWrapper.setNextFireTime(-1);
+		triggerWrapper.setPriority(5);
+		triggerWrapper.setRepeatCount(-1);
+		triggerWrapper.setRepeatInterval(60000);
+		triggerWrapper.setOwner("instance1");
+		triggerWrapper.setLeaseExpiry(1414141429000L);
+
+		assertEquals(gson.to(triggerWrapper), serializer.to(triggerWrapper));
+	}
+
+	@Test
+	public void test_that_triggers_are_read_back()
+	{
+		TriggerWrapper triggerWrapper = new TriggerWrapper();
+		triggerWrapper.setName("trigger\t\\1 ");
+		triggerWrapper.setCronExpression("0 0 12 * * ?");
+		triggerWrapper.setNextFireTime(1414141414000L);
+		triggerWrapper.setPriority(7);
+		triggerWrapper.setOwner("instance1");
+		triggerWrapper.setLeaseExpiry(1414141429000L);
+
+		TriggerWrapper read = serializer.from(serializer.to(triggerWrapper), new TypeToken<TriggerWrapper>() {});
+		assertEquals("trigger\t\\1 ", read.getName());
+		assertNull(read.getGroup());
+		assertEquals("0 0 12 * * ?", read.getCronExpression());
+		assertEquals(1414141414000L, read.getNextFireTime());
+		assertEquals(7, read.getPriority());
+		assertEquals("instance1", read.getOwner());
+		assertEquals(Long.valueOf(1414141429000L), read.getLeaseExpiry());
+	}
+
+	@Test
+	public void test_that_data_maps_are_handled_by_the_wrapped_serializer()
+	{
+		Map<String, Object> dataMap = new LinkedHashMap<>();
+		dataMap.put("string", "value");
+		dataMap.put("number", 3);
+		dataMap.put("list", Arrays.asList("a", "b"));
+
+		JobWrapper jobWrapper = new JobWrapper();
+		jobWrapper.setName("job");
+		jobWrapper.setGroup("group");
+		jobWrapper.setJobClass("com.viskan.quartz.elasticsearch.common.TestJob");
+		jobWrapper.setDataMap(dataMap);
+
+		String json = serializer.to(jobWrapper);
+		assertEquals(gson.to(jobWrapper), json);
+
+		GetResult<JobWrapper> result = serializer.from("{\"_index\":\"index\",\"_id\":\"group.job\",\"_version\":2,\"found\":true,\"_source\":" + json + "}", new TypeToken<GetResult<JobWrapper>>() {});
+		assertEquals("group.job", result.getId());
+		assertEquals(2, result.getVersion());
+		assertTrue(result.isFound());
+		assertEquals("job", result.getSource().getName());
+		assertEquals(gson.from(json, new TypeToken<JobWrapper>() {}).getDataMap(), result.getSource().getDataMap());
+	}
+
+	@Test
+	public void test_that_search_results_are_read_and_unknown_properties_skipped()
+	{
+		String json = "{\"took\":3,\"timed_out\":false,\"_shards\":{\"total\":5,\"successful\":5,\"failed\":0},"
+			+ "\"hits\":{\"total\":2,\"max_score\":null,\"hits\":["
+			+ "{\"_index\":\"index\",\"_type\":\"quartz_trigger\",\"_id\":\"group.trigger1\",\"_version\":4,\"_score\":1.5,\"_source\":{\"name\":\"trigger1\",\"nextFireTime\":100,\"unknown\":[1,{\"a\":\"]}\"}]},\"sort\":[100,5]},"
+			+ "{\"_id\":\"group.trigger2\",\"_version\":1,\"_source\":{\"name\":\"trigger2\",\"nextFireTime\":2.0E2}}"
+			+ "]}}";
+
+		SearchResult<TriggerWrapper> result = serializer.from(json, new TypeToken<SearchResult<TriggerWrapper>>() {});
+		assertEquals(3, result.getTook());
+		assertEquals(2, result.getHits().getTotal());
+
+		Hit<TriggerWrapper> first = result.getHits().getHits().get(0);
+		assertEquals("group.trigger1", first.getId());
+		assertEquals(4, first.getVersion());
+		assertEquals("trigger1", first.getSource().getName());
+		assertEquals(100, first.getSource().getNextFireTime());
+		assertEquals(200, result.getHits().getHits().get(1).getSource().getNextFireTime());
+	}
+
+	@Test
+	public void test_that_multi_get_results_are_read()
+	{
+		String json = "{\"docs\":[{\"_id\":\"group.trigger\",\"_version\":1,\"found\":true,\"_source\":{\"name\":\"trigger\"}},{\"_id\":\"group.missing\",\"found\":false}]}";
+
+		MultiGetResult<TriggerWrapper> result = serializer.from(json, new TypeToken<MultiGetResult<TriggerWrapper>>() {});
+		assertEquals(2, result.getDocs().size());
+		assertEquals("trigger", result.getDocs().get(0).getSource().getName());
+		assertFalse(result.getDocs().get(1).isFound());
+		assertNull(result.getDocs().get(1).getSource());
+	}
+
+	@Test
+	public void test_that_bulk_results_are_read()
+	{
+		String json = "{\"took\":7,\"errors\":true,\"items\":["
+			+ "{\"index\":{\"_index\":\"index\",\"_type\":\"quartz_trigger\",\"_id\":\"group.trigger1\",\"_version\":2,\"status\":200}},"
+			+ "{\"create\":{\"_id\":\"group.trigger2\",\"status\":409,\"error\":\"DocumentAlreadyExistsException[[index][1] [quartz_trigger][group.trigger2]: document already exists]\"}},"
+			+ "{\"delete\":{\"_id\":\"group.trigger3\",\"status\":409,\"error\":{\"type\":\"version_conflict_engine_exception\"}}}"
+			+ "]}";
+
+		BulkResult result = serializer.from(json, new TypeToken<BulkResult>() {});
+		assertTrue(result.isErrors());
+		assertEquals(3, result.getItems().size());
+
+		BulkItemResult index = result.getItems().get(0).getResult();
+		assertEquals("group.trigger1", index.getId());
+		assertEquals(2, index.getVersion());
+		assertEquals(200, index.getStatus());
+		assertEquals(BulkItemResult.STATUS_CONFLICT, result.getItems().get(1).getResult().getStatus());
+		assertEquals("{\"type\":\"version_conflict_engine_exception\"}", result.getItems().get(2).getResult().getError());
+	}
+
+	@Test
+	public void test_that_request_bodies_are_written()
+	{
+		Map<String, Object> range = new LinkedHashMap<>();
+		range.put("gte", 0);
+		range.put("lte", 1000L);
+		range.put("ignored", null);
+		Map<String, Object> body = new LinkedHashMap<>();
+		body.put("range", range);
+		body.put("ids", Arrays.asList("a", "b"));
+		body.put("sort", new Object[] { "nextFireTime", 1.5, true });
+
+		assertEquals("{\"range\":{\"gte\":0,\"lte\":1000},\"ids\":[\"a\",\"b\"],\"sort\":[\"nextFireTime\",1.5,true]}", serializer.to(body));
+	}
+
+	@Test
+	public void test_that_streams_are_read_and_written_as_utf8() throws IOException
+	{
+		TriggerWrapper triggerWrapper = new TriggerWrapper();
+		triggerWrapper.setName("trïgger €");
+		triggerWrapper.setNextFireTime(1000);
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		serializer.to(triggerWrapper, outputStream);
+		assertEquals(gson.to(triggerWrapper), new String(outputStream.toByteArray(), "UTF-8"));
+
+		String json = "{\"_id\":\"group.trïgger €\",\"_version\":1,\"found\":true,\"_source\":" + new String(outputStream.toByteArray(), "UTF-8") + "}";
+		GetResult<TriggerWrapper> result = serializer.from(new ByteArrayInputStream(json.getBytes("UTF-8")), new TypeToken<GetResult<TriggerWrapper>>() {});
+		assertEquals("group.trïgger €", result.getId());
+		assertEquals("trïgger €", result.getSource().getName());
+		assertEquals(1000, result.getSource().getNextFireTime());
+	}
+
+	@Test
+	public void test_that_unknown_types_are_streamed_through_the_wrapped_serializer() throws IOException
+	{
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		serializer.to(Boolean.TRUE, outputStream);
+		assertEquals("true", new String(outputStream.toByteArray(), "UTF-8"));
+
+		Map<String, Object> map = serializer.from(new ByteArrayInputStream("{\"key\":\"välue\"}".getBytes("UTF-8")), new TypeToken<Map<String, Object>>() {});
+		assertEquals("välue", map.get("key"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_that_malformed_json_fails()
+	{
+		serializer.from("{\"_id\":\"group.trigger\",\"_version\":", new TypeToken<GetResult<TriggerWrapper>>() {});
+	}
+}
@@ -0,0 +1,60 @@
+package com.viskan.quartz.elasticsearch.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.quartz.TriggerKey;
+
+/**
+ * Unit tests of {@link PartitionUtils}.
+ *
+ * @author Anton Johansson
+ */
+public class PartitionUtilsTest extends Assert
+{
+	private final List<String> instances = Arrays.asList("node1", "node2", "node3");
+
+	@Test
+	public void test_that_buckets_are_derived_from_the_key()
+	{
+		int bucket = PartitionUtils.getBucket(new TriggerKey("Trigger1", "Group1"));
+		assertTrue(bucket >= 0 && bucket < PartitionUtils.BUCKETS);
+		assertEquals(bucket, PartitionUtils.getBucket(new TriggerKey("Trigger1", "Group1")));
+	}
+
+	@Test
+	public void test_that_every_bucket_has_one_owner()
+	{
+		Set<Integer> assigned = new HashSet<>();
+		for (String instance : instances)
+		{
+			List<Integer> buckets = PartitionUtils.getOwnedBuckets(instance, new ArrayList<>(instances));
+			assertTrue(instance + " owns " + buckets.size() + " buckets", buckets.size() > PartitionUtils.BUCKETS / 6);
+			for (int bucket : buckets)
+			{
+				assertTrue(assigned.add(bucket));
+			}
+		}
+		assertEquals(PartitionUtils.BUCKETS, assigned.size());
+		assertTrue(PartitionUtils.getOwnedBuckets("node4", instances).isEmpty());
+	}
+
+	@Test
+	public void test_that_a_joining_instance_only_takes_buckets()
+	{
+		List<String> joined = new ArrayList<>(instances);
+		joined.add("node4");
+		for (String instance : instances)
+		{
+			List<Integer> before = PartitionUtils.getOwnedBuckets(instance, instances);
+			List<Integer> after = PartitionUtils.getOwnedBuckets(instance, joined);
+			assertTrue(before.containsAll(after));
+		}
+		assertFalse(PartitionUtils.getOwnedBuckets("node4", joined).isEmpty());
+	}
+}